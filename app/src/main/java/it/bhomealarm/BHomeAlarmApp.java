@@ -7,6 +7,8 @@ import android.os.Build;
 
 import it.bhomealarm.model.database.AppDatabase;
 import it.bhomealarm.model.repository.AlarmRepository;
+import it.bhomealarm.service.OutboundCommandQueue;
+import it.bhomealarm.service.SmsLogRetentionWorker;
 
 /**
  * Classe Application principale dell'applicazione BHomeAlarm.
@@ -20,6 +22,7 @@ import it.bhomealarm.model.repository.AlarmRepository;
  *   <li>Inizializzazione del database Room ({@link AppDatabase})</li>
  *   <li>Inizializzazione del repository per la gestione degli allarmi ({@link AlarmRepository})</li>
  *   <li>Creazione dei canali di notifica per Android 8.0+ (API 26+)</li>
+ *   <li>Pianificazione del job di conservazione dei log SMS ({@link SmsLogRetentionWorker})</li>
  * </ul>
  *
  * <h2>Canali di notifica:</h2>
@@ -73,6 +76,8 @@ public class BHomeAlarmApp extends Application {
      *   <li>Inizializzazione del database Room</li>
      *   <li>Inizializzazione del repository degli allarmi</li>
      *   <li>Creazione dei canali di notifica (solo Android 8.0+)</li>
+     *   <li>Pianificazione della conservazione periodica dei log SMS</li>
+     *   <li>Ripresa della coda dei comandi in uscita rimasti da inviare</li>
      * </ol>
      */
     @Override
@@ -88,6 +93,30 @@ public class BHomeAlarmApp extends Application {
 
         // Creazione dei canali di notifica
         createNotificationChannels();
+
+        // Conservazione periodica dei log SMS
+        SmsLogRetentionWorker.schedule(this);
+
+        // Comandi rimasti in coda (processo chiuso o riavvio del dispositivo)
+        OutboundCommandQueue.getInstance(this).kick();
+    }
+
+    /**
+     * Chiamato dal sistema quando e' opportuno liberare risorse.
+     * <p>
+     * Con {@link #TRIM_MEMORY_UI_HIDDEN} l'app e' appena passata in background:
+     * i log SMS ancora in buffer vengono scritti subito, prima che il processo
+     * possa essere terminato.
+     * </p>
+     *
+     * @param level livello di trim indicato dal sistema
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            AlarmRepository.getInstance(this).flushSmsLogs();
+        }
     }
 
     /**
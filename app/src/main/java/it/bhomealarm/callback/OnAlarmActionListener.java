@@ -1,5 +1,7 @@
 package it.bhomealarm.callback;
 
+import it.bhomealarm.protocol.ZoneMask;
+
 /**
  * Interfaccia callback per le azioni utente sul sistema di allarme.
  * <p>
@@ -42,12 +44,10 @@ public interface OnAlarmActionListener {
      * Permette all'utente di selezionare manualmente quali zone attivare,
      * indipendentemente dagli scenari predefiniti.
      *
-     * @param zoneMask la maschera delle zone da attivare, rappresentata come
-     *                 stringa di 8 caratteri '0' o '1', dove '1' indica zona attiva.
-     *                 Esempio: "11001100" attiva le zone 1, 2, 5 e 6.
+     * @param zones le zone da attivare
      * @see it.bhomealarm.util.Constants#CMD_ARM_CUSTOM
      */
-    void onArmCustomRequested(String zoneMask);
+    void onArmCustomRequested(ZoneMask zones);
 
     /**
      * Chiamato quando l'utente richiede la disattivazione dell'allarme.
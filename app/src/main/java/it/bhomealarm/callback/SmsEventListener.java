@@ -0,0 +1,26 @@
+package it.bhomealarm.callback;
+
+/**
+ * Interfaccia callback per gli eventi SMS pubblicati da
+ * {@link it.bhomealarm.service.SmsEventBus}.
+ * <p>
+ * Ogni sottoscrizione riceve un solo tipo di evento, sull'executor scelto alla
+ * sottoscrizione. Utilizzo tipico:
+ * <pre>{@code
+ * subscription = SmsEventBus.getInstance().subscribe(
+ *         SmsEventBus.SmsReceived.class, SmsEventBus.MAIN_THREAD, this::onSmsReceived);
+ * }</pre>
+ *
+ * @param <E> il tipo di evento ricevuto
+ * @author BHomeAlarm Team
+ * @version 1.0
+ */
+public interface SmsEventListener<E> {
+
+    /**
+     * Chiamato per ogni evento pubblicato del tipo sottoscritto.
+     *
+     * @param event l'evento, immutabile
+     */
+    void onEvent(E event);
+}
@@ -2,8 +2,7 @@ package it.bhomealarm.controller.viewmodel;
 
 import android.app.Application;
 import android.content.SharedPreferences;
-import android.os.Handler;
-import android.os.Looper;
+import android.util.SparseArray;
 
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
@@ -11,14 +10,20 @@ import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import it.bhomealarm.callback.OnConfigProgressListener;
-import it.bhomealarm.callback.OnSmsResultListener;
 import it.bhomealarm.model.entity.Scenario;
 import it.bhomealarm.model.entity.SmsLog;
 import it.bhomealarm.model.entity.User;
 import it.bhomealarm.model.repository.AlarmRepository;
+import it.bhomealarm.model.repository.ConfigSnapshot;
+import it.bhomealarm.protocol.SmsCodec;
+import it.bhomealarm.service.CommandExecutor;
+import it.bhomealarm.service.ResponseTimeEstimator;
+import it.bhomealarm.service.SmsEventBus;
 import it.bhomealarm.service.SmsReceiver;
 import it.bhomealarm.service.SmsService;
 import it.bhomealarm.util.Constants;
@@ -40,19 +45,29 @@ import it.bhomealarm.util.SmsParser;
  * <p>
  * Il ViewModel gestisce automaticamente:
  * <ul>
- *     <li>L'invio sequenziale dei comandi SMS</li>
- *     <li>La ricezione e il parsing delle risposte</li>
- *     <li>I timeout di comunicazione</li>
- *     <li>La persistenza dei dati ricevuti</li>
+ *     <li>L'invio dei comandi SMS in pipeline: fino a {@link Constants#CONFIG_PIPELINE_WINDOW}
+ *         richieste in attesa di risposta contemporaneamente (1 = sequenziale)</li>
+ *     <li>La ricezione ({@link SmsEventBus}) e il parsing delle risposte, assegnate al
+ *         relativo step tramite il tentativo a cui {@link SmsReceiver} le ha attribuite
+ *         e non in base all'ordine di arrivo</li>
+ *     <li>I timeout di comunicazione e la ripetizione automatica delle richieste
+ *         senza risposta ({@link CommandExecutor})</li>
+ *     <li>La ripresa di una configurazione fallita dallo step non completato
+ *         ({@link #resumeConfiguration()})</li>
+ *     <li>La sincronizzazione delle sole sezioni scelte ({@link #startSync(int)}),
+ *         ad es. solo gli utenti dopo una modifica della rubrica sulla centrale</li>
+ *     <li>La persistenza dei dati ricevuti, step per step appena arrivano: il
+ *         repository scrive solo le differenze rispetto ai dati salvati e nulla
+ *         se la sezione non e' cambiata dall'ultima sincronizzazione</li>
  *     <li>L'aggiornamento dello stato della UI</li>
  * </ul>
  *
  * @see it.bhomealarm.view.fragment.ConfigurationFragment
  * @see OnConfigProgressListener
- * @see OnSmsResultListener
+ * @see SmsEventBus
  * @see SmsParser
  */
-public class ConfigurationViewModel extends AndroidViewModel implements OnConfigProgressListener, OnSmsResultListener {
+public class ConfigurationViewModel extends AndroidViewModel implements OnConfigProgressListener {
 
     /**
      * Enumerazione degli stati possibili per un singolo step di configurazione.
@@ -112,16 +127,52 @@ public class ConfigurationViewModel extends AndroidViewModel implements OnConfig
     /** SharedPreferences per la persistenza delle impostazioni */
     private final SharedPreferences prefs;
 
-    /** Handler per la gestione dei timeout sul main thread */
-    private final Handler timeoutHandler;
+    /** Esecutore dei comandi con timeout e ripetizioni */
+    private final CommandExecutor commandExecutor;
 
-    /** Runnable per il timeout corrente */
-    private Runnable timeoutRunnable;
+    /** Comando SMS di ciascuno step (indice = numero dello step) */
+    private static final String[] STEP_COMMANDS = {
+            null,
+            Constants.CMD_CONF1,
+            Constants.CMD_CONF2,
+            Constants.CMD_CONF3,
+            Constants.CMD_CONF4,
+            Constants.CMD_CONF5
+    };
 
-    /** ID del messaggio SMS in attesa di risposta */
-    private String pendingMessageId;
+    /** Tipo di risposta atteso per ciascuno step (indice = numero dello step) */
+    private static final String[] STEP_RESPONSES = {
+            null, "CONF1", "CONF2", "CONF3", "CONF4", "CONF5"
+    };
 
-    /** Stato corrente della macchina a stati di configurazione */
+    /** Numero massimo di richieste in attesa di risposta contemporaneamente */
+    private int pipelineWindow = Constants.CONFIG_PIPELINE_WINDOW;
+
+    /** Prossimo step da inviare (oltre {@link Constants#CONFIG_TOTAL_STEPS}: tutti inviati) */
+    private int nextStepToSend;
+
+    /** Numero di step completati (compresi quelli non richiesti) */
+    private int completedSteps;
+
+    /** Sezioni richieste dall'ultima sincronizzazione (Constants.CONFIG_SECTION_*) */
+    private int syncSections = Constants.CONFIG_SECTIONS_ALL;
+
+    /** Numero di step esclusi dalla sincronizzazione in corso */
+    private int skippedSteps;
+
+    /** Step inviati e in attesa di risposta, con la relativa richiesta */
+    private final SparseArray<CommandExecutor.Request> stepRequests = new SparseArray<>();
+
+    /** Step a cui appartiene ciascun SMS inviato (messageId &rarr; step) */
+    private final Map<String, Integer> stepByMessageId = new HashMap<>();
+
+    /** Sottoscrizioni agli eventi SMS, rimosse in onCleared() */
+    private final List<SmsEventBus.Subscription<?>> subscriptions = new ArrayList<>();
+
+    /**
+     * Stato corrente della macchina a stati di configurazione.
+     * Durante la configurazione indica il primo step non ancora completato.
+     */
     private int currentState = Constants.CONFIG_STATE_IDLE;
 
     // ========== UI State ==========
@@ -151,8 +202,8 @@ public class ConfigurationViewModel extends AndroidViewModel implements OnConfig
      * Costruttore del ViewModel.
      * <p>
      * Inizializza tutti i componenti necessari per la gestione della
-     * configurazione: repository, servizio SMS, preferences e handler
-     * per i timeout.
+     * configurazione: repository, servizio SMS, preferences ed esecutore
+     * dei comandi.
      *
      * @param application Contesto dell'applicazione Android
      */
@@ -161,22 +212,28 @@ public class ConfigurationViewModel extends AndroidViewModel implements OnConfig
         repository = AlarmRepository.getInstance(application);
         smsService = SmsService.getInstance(application);
         prefs = application.getSharedPreferences(Constants.PREF_NAME, 0);
-        timeoutHandler = new Handler(Looper.getMainLooper());
-        initializeSteps();
+        commandExecutor = new CommandExecutor(smsService, ResponseTimeEstimator.getInstance(application));
+        initializeSteps(Constants.CONFIG_SECTIONS_ALL);
+
+        SmsEventBus bus = SmsEventBus.getInstance();
+        subscriptions.add(bus.subscribe(SmsEventBus.SmsSent.class, SmsEventBus.MAIN_THREAD, this::onSmsSent));
+        subscriptions.add(bus.subscribe(SmsEventBus.SmsReceived.class, SmsEventBus.MAIN_THREAD, this::onSmsReceived));
+        subscriptions.add(bus.subscribe(SmsEventBus.SmsPartial.class, SmsEventBus.MAIN_THREAD, this::onSmsPartial));
     }
 
     /**
      * Chiamato quando il ViewModel viene distrutto.
      * <p>
-     * Annulla eventuali timeout pendenti e rimuove il listener SMS
-     * per evitare memory leak.
+     * Annulla eventuali richieste pendenti e rimuove le sottoscrizioni
+     * agli eventi SMS per evitare memory leak.
      */
     @Override
     protected void onCleared() {
         super.onCleared();
-        cancelTimeout();
-        // Rimuovi listener solo se siamo noi
-        SmsReceiver.setListener(null);
+        cancelAllRequests();
+        for (SmsEventBus.Subscription<?> subscription : subscriptions) {
+            subscription.unsubscribe();
+        }
     }
 
     // ========== Getters ==========
@@ -246,6 +303,8 @@ public class ConfigurationViewModel extends AndroidViewModel implements OnConfig
 
     /**
      * Restituisce lo stato corrente della macchina a stati.
+     * <p>
+     * Con piu' richieste in attesa corrisponde al primo step non ancora completato.
      *
      * @return Valore intero rappresentante lo stato corrente (vedi Constants.CONFIG_STATE_*)
      */
@@ -259,28 +318,57 @@ public class ConfigurationViewModel extends AndroidViewModel implements OnConfig
      * Inizializza la lista degli step di configurazione.
      * <p>
      * Crea i 5 step corrispondenti ai comandi CONF1-5 con i relativi
-     * nomi descrittivi.
+     * nomi descrittivi. Gli step non compresi nelle sezioni richieste
+     * risultano gia' completati e non vengono inviati.
+     *
+     * @param sections Sezioni da sincronizzare (Constants.CONFIG_SECTION_*)
+     * @return Numero di step esclusi
      */
-    private void initializeSteps() {
+    private int initializeSteps(int sections) {
         List<ConfigStep> stepList = new ArrayList<>();
         stepList.add(new ConfigStep(1, "CONF1 - Configurazione base"));
         stepList.add(new ConfigStep(2, "CONF2 - Scenari 1-8"));
         stepList.add(new ConfigStep(3, "CONF3 - Scenari 9-16"));
         stepList.add(new ConfigStep(4, "CONF4 - Utenti 1-8"));
         stepList.add(new ConfigStep(5, "CONF5 - Utenti 9-16"));
+        int skipped = 0;
+        for (ConfigStep step : stepList) {
+            if ((sections & (1 << (step.stepNumber - 1))) == 0) {
+                step.status = StepStatus.COMPLETED;
+                step.message = "Non richiesto";
+                skipped++;
+            }
+        }
         steps.setValue(stepList);
+        return skipped;
+    }
+
+    /**
+     * Avvia la procedura di configurazione completa (CONF1-5).
+     * <p>
+     * Equivale a {@link #startSync(int)} con {@link Constants#CONFIG_SECTIONS_ALL}.
+     */
+    public void startConfiguration() {
+        startSync(Constants.CONFIG_SECTIONS_ALL);
     }
 
     /**
-     * Avvia la procedura di configurazione.
+     * Avvia la sincronizzazione delle sole sezioni indicate.
      * <p>
      * Verifica che il numero di allarme sia configurato, inizializza
-     * lo stato e avvia il primo step (CONF1).
+     * lo stato e invia le prime richieste, fino alla finestra configurata
+     * ({@link Constants#PREF_CONFIG_PIPELINE_WINDOW}). Le sezioni non
+     * richieste non costano SMS e i relativi dati salvati restano invariati,
+     * ad es. {@link Constants#CONFIG_SECTIONS_USERS} dopo una modifica degli
+     * utenti sulla centrale.
      * <p>
      * Se la configurazione e' gia' in corso, il metodo non fa nulla.
+     *
+     * @param sections Maschera delle sezioni (Constants.CONFIG_SECTION_*)
      */
-    public void startConfiguration() {
-        if (Boolean.TRUE.equals(isRunning.getValue())) {
+    public void startSync(int sections) {
+        sections &= Constants.CONFIG_SECTIONS_ALL;
+        if (Boolean.TRUE.equals(isRunning.getValue()) || sections == 0) {
             return;
         }
 
@@ -290,62 +378,144 @@ public class ConfigurationViewModel extends AndroidViewModel implements OnConfig
             return;
         }
 
-        // Registra listener
-        SmsReceiver.setListener(this);
-
-        initializeSteps();
-        currentState = Constants.CONFIG_STATE_CONF1;
+        syncSections = sections;
+        skippedSteps = initializeSteps(sections);
+        cancelAllRequests();
+        stepByMessageId.clear();
+        nextStepToSend = 1;
+        completedSteps = skippedSteps;
+        pipelineWindow = readPipelineWindow();
+        currentState = getFirstIncompleteState();
         isRunning.setValue(true);
         isComplete.setValue(false);
         errorMessage.setValue(null);
         progress.setValue(0);
 
-        // Avvia CONF1
-        sendConfigCommand(Constants.CMD_CONF1, 1);
+        if (skippedSteps > 0) {
+            addDebugLog("Sincronizzazione di " + (Constants.CONFIG_TOTAL_STEPS - skippedSteps) + " sezioni");
+        }
+        if (pipelineWindow > 1) {
+            addDebugLog("Richieste in parallelo: " + pipelineWindow);
+        }
+        fillPipeline();
+    }
+
+    /**
+     * Riprende una configurazione fallita dal primo step non completato.
+     * <p>
+     * Gli step gia' completati (e salvati) non vengono richiesti di nuovo:
+     * si risparmiano SMS e tempo rispetto a {@link #startConfiguration()}.
+     * Se non c'e' nulla da riprendere ripete l'ultima sincronizzazione avviata
+     * ({@link #startSync(int)}) con le stesse sezioni.
+     */
+    public void resumeConfiguration() {
+        if (Boolean.TRUE.equals(isRunning.getValue())) {
+            return;
+        }
+        if (currentState != Constants.CONFIG_STATE_ERROR || completedSteps == skippedSteps) {
+            startSync(syncSections);
+            return;
+        }
+
+        if (getAlarmPhoneNumber() == null) {
+            errorMessage.setValue("Numero allarme non configurato");
+            return;
+        }
+
+        List<ConfigStep> currentSteps = steps.getValue();
+        if (currentSteps != null) {
+            for (ConfigStep step : currentSteps) {
+                if (step.status != StepStatus.COMPLETED) {
+                    updateStepStatus(step.stepNumber, StepStatus.PENDING, "In attesa");
+                }
+            }
+        }
+        cancelAllRequests();
+        stepByMessageId.clear();
+        nextStepToSend = 1;
+        pipelineWindow = readPipelineWindow();
+        currentState = getFirstIncompleteState();
+        isRunning.setValue(true);
+        errorMessage.setValue(null);
+
+        addDebugLog("Ripresa dallo step " + getStepNumberFromState(currentState));
+        fillPipeline();
+    }
+
+    /**
+     * Invia i prossimi step non completati finche' le richieste in attesa
+     * non raggiungono la finestra.
+     */
+    private void fillPipeline() {
+        while (Boolean.TRUE.equals(isRunning.getValue())
+                && stepRequests.size() < pipelineWindow) {
+            while (nextStepToSend <= Constants.CONFIG_TOTAL_STEPS && isStepCompleted(nextStepToSend)) {
+                nextStepToSend++;
+            }
+            if (nextStepToSend > Constants.CONFIG_TOTAL_STEPS) {
+                return;
+            }
+            int step = nextStepToSend++;
+            sendConfigCommand(STEP_COMMANDS[step], step);
+        }
     }
 
     /**
      * Invia un comando di configurazione alla centralina.
      * <p>
-     * Aggiorna lo stato dello step, invia il comando SMS e avvia
-     * il timer di timeout per la risposta.
+     * Aggiorna lo stato dello step e affida il comando a {@link CommandExecutor},
+     * che gestisce il timeout per la risposta e le eventuali ripetizioni.
      *
      * @param command Comando SMS da inviare
-     * @param stepNumber Numero dello step corrente (1-5)
+     * @param stepNumber Numero dello step (1-5)
      */
     private void sendConfigCommand(String command, int stepNumber) {
         String phone = getAlarmPhoneNumber();
         if (phone == null) {
-            handleError("Numero allarme non configurato");
+            handleError(stepNumber, "Numero allarme non configurato");
             return;
         }
 
-        addDebugLog("TX: " + command);
         updateStepStatus(stepNumber, StepStatus.IN_PROGRESS, "Invio richiesta...");
-
-        pendingMessageId = smsService.sendCommand(phone, command);
-
-        if (pendingMessageId != null) {
-            startTimeout();
-        } else {
-            handleError("Errore invio comando");
+        CommandExecutor.Request request = commandExecutor.execute(phone, command,
+                new StepCallback(stepNumber));
+        if (request.isActive()) {
+            stepRequests.put(stepNumber, request);
         }
     }
 
     /**
      * Processa una risposta SMS ricevuta dalla centralina.
      * <p>
-     * Annulla il timeout, salva il log nel database e delega il parsing
-     * al metodo appropriato in base allo stato corrente della macchina a stati.
+     * Salva il log nel database, individua lo step dal prefisso della risposta
+     * e delega il parsing al metodo appropriato. Le risposte possono arrivare in
+     * qualsiasi ordine; quelle di step non in attesa (duplicati, risposte tardive)
+     * vengono ignorate.
      *
      * @param response Corpo del messaggio SMS ricevuto
      */
     public void processResponse(String response) {
-        cancelTimeout();
+        processResponse(response, 0);
+    }
+
+    /**
+     * Processa una risposta SMS, eventualmente gia' attribuita a uno step.
+     * <p>
+     * Una risposta di errore attribuita a uno step fa fallire il suo tentativo:
+     * se la centrale e' occupata la richiesta viene ripetuta, altrimenti la
+     * configurazione si ferma con l'errore.
+     *
+     * @param response Corpo del messaggio SMS ricevuto
+     * @param requestStep Step della richiesta a cui {@link SmsReceiver} ha attribuito
+     *                    la risposta, o 0 per ricavarlo dal prefisso della risposta
+     */
+    private void processResponse(String response, int requestStep) {
         addDebugLog("RX: " + response);
 
         // Salva log
         SmsLog log = new SmsLog();
+        long panelId = repository.getActivePanelId();
+        log.setPanelId(panelId != AlarmRepository.NO_PANEL ? panelId : null);
         log.setMessage(response);
         log.setDirection(SmsLog.DIRECTION_INCOMING);
         log.setStatus(SmsLog.STATUS_RECEIVED);
@@ -358,144 +528,176 @@ public class ConfigurationViewModel extends AndroidViewModel implements OnConfig
             return;
         }
 
-        switch (currentState) {
-            case Constants.CONFIG_STATE_CONF1:
-                if ("CONF1".equals(responseType)) {
-                    processConf1(response);
-                }
+        int step = requestStep > 0 ? requestStep : getStepNumberFromResponse(responseType);
+        if (step == 0 || !Boolean.TRUE.equals(isRunning.getValue())) {
+            return;
+        }
+        CommandExecutor.Request request = stepRequests.get(step);
+        if (request == null) {
+            addDebugLog("Risposta " + responseType + " non attesa, ignorata");
+            return;
+        }
+        if ("ERROR".equals(responseType)) {
+            String errorCode = SmsParser.parseResponse(response).errorCode;
+            // Centrale occupata: la richiesta non e' stata eseguita, si ripete
+            request.fail("Errore centrale (" + errorCode + ")",
+                    Constants.ERROR_SYSTEM_BUSY.equals(errorCode));
+            return;
+        }
+        stepRequests.remove(step);
+        int attempt = request.complete();
+        if (attempt > 1) {
+            addDebugLog(responseType + " ricevuta al tentativo " + attempt);
+        }
+
+        boolean processed;
+        switch (step) {
+            case 1:
+                processed = processConf1(response);
                 break;
-            case Constants.CONFIG_STATE_CONF2:
-                if ("CONF2".equals(responseType)) {
-                    processConf2(response);
-                }
+            case 2:
+                processed = processConf2(response);
                 break;
-            case Constants.CONFIG_STATE_CONF3:
-                if ("CONF3".equals(responseType)) {
-                    processConf3(response);
-                }
+            case 3:
+                processed = processConf3(response);
                 break;
-            case Constants.CONFIG_STATE_CONF4:
-                if ("CONF4".equals(responseType)) {
-                    processConf4(response);
-                }
+            case 4:
+                processed = processConf4(response);
                 break;
-            case Constants.CONFIG_STATE_CONF5:
-                if ("CONF5".equals(responseType)) {
-                    processConf5(response);
-                }
+            default:
+                processed = processConf5(response);
                 break;
         }
+        if (processed) {
+            completeStep(step);
+        }
+    }
+
+    /**
+     * Segna uno step come completato e invia i successivi.
+     * <p>
+     * Ogni risposta ricevuta rinnova il timeout delle richieste ancora in attesa:
+     * la centrale risponde in ordine, quindi le ultime richieste di una finestra
+     * ampia possono arrivare ben oltre il timeout calcolato dal loro invio.
+     *
+     * @param step Numero dello step completato (1-5)
+     */
+    private void completeStep(int step) {
+        completedSteps++;
+        updateStepStatus(step, StepStatus.COMPLETED, "Completato");
+        progress.setValue((completedSteps - skippedSteps) * 100
+                / (Constants.CONFIG_TOTAL_STEPS - skippedSteps));
+
+        if (completedSteps == Constants.CONFIG_TOTAL_STEPS) {
+            finishConfiguration();
+            return;
+        }
+
+        currentState = getFirstIncompleteState();
+        for (int i = 0; i < stepRequests.size(); i++) {
+            stepRequests.valueAt(i).touch();
+        }
+        fillPipeline();
+    }
+
+    /**
+     * Conclude con successo la configurazione e salva lo stato nelle preferences.
+     * <p>
+     * Solo una configurazione completa (tutte le sezioni) segna il sistema come
+     * configurato: una sincronizzazione parziale aggiorna dati gia' presenti.
+     */
+    private void finishConfiguration() {
+        currentState = Constants.CONFIG_STATE_COMPLETE;
+        isRunning.setValue(false);
+        isComplete.setValue(true);
+
+        if (skippedSteps > 0) {
+            statusMessage.setValue("Sincronizzazione completata!");
+            addDebugLog("Sincronizzazione completata");
+            return;
+        }
+        statusMessage.setValue("Configurazione completata!");
+
+        // Salva che la configurazione è stata completata
+        prefs.edit().putBoolean(Constants.PREF_CONFIGURED, true).apply();
+
+        addDebugLog("Configurazione completata");
     }
 
     /**
      * Processa la risposta CONF1 (configurazione base).
      * <p>
-     * Estrae e salva la versione firmware e le zone configurate,
-     * poi avanza allo step CONF2.
+     * Estrae e salva la versione firmware e le zone configurate.
      *
      * @param response Risposta SMS CONF1 da parsare
+     * @return true se la risposta e' stata elaborata, false in caso di errore
      */
-    private void processConf1(String response) {
+    private boolean processConf1(String response) {
         SmsParser.Conf1Data data = SmsParser.parseConf1(response);
         if (data == null) {
-            handleError("Errore parsing CONF1");
-            return;
+            handleError(1, "Errore parsing CONF1");
+            return false;
         }
 
-        // Salva dati nel repository
-        repository.saveZones(data.zones);
-        repository.updateConfigVersion(data.version);
-
-        updateStepStatus(1, StepStatus.COMPLETED, "Completato");
-        progress.setValue(20);
-
-        // Avanza a CONF2
-        currentState = Constants.CONFIG_STATE_CONF2;
-        sendConfigCommand(Constants.CMD_CONF2, 2);
+        // Salva dati nel repository (solo le differenze)
+        repository.applyConfigSnapshot(new ConfigSnapshot().conf1(data, SmsCodec.contentHash(response)));
+        return true;
     }
 
     /**
      * Processa la risposta CONF2 (scenari 1-8).
      * <p>
-     * Estrae e salva gli scenari, poi avanza allo step CONF3.
+     * Estrae e salva gli scenari.
      *
      * @param response Risposta SMS CONF2 da parsare
+     * @return true se la risposta e' stata elaborata
      */
-    private void processConf2(String response) {
+    private boolean processConf2(String response) {
         List<Scenario> scenarios = SmsParser.parseScenarios(response);
-        repository.saveScenarios(scenarios);
-
-        updateStepStatus(2, StepStatus.COMPLETED, "Completato");
-        progress.setValue(40);
-
-        // Avanza a CONF3
-        currentState = Constants.CONFIG_STATE_CONF3;
-        sendConfigCommand(Constants.CMD_CONF3, 3);
+        repository.applyConfigSnapshot(new ConfigSnapshot().scenarios(2, scenarios, SmsCodec.contentHash(response)));
+        return true;
     }
 
     /**
      * Processa la risposta CONF3 (scenari 9-16).
      * <p>
-     * Estrae e salva gli scenari, poi avanza allo step CONF4.
+     * Estrae e salva gli scenari.
      *
      * @param response Risposta SMS CONF3 da parsare
+     * @return true se la risposta e' stata elaborata
      */
-    private void processConf3(String response) {
+    private boolean processConf3(String response) {
         List<Scenario> scenarios = SmsParser.parseScenarios(response);
-        repository.saveScenarios(scenarios);
-
-        updateStepStatus(3, StepStatus.COMPLETED, "Completato");
-        progress.setValue(60);
-
-        // Avanza a CONF4
-        currentState = Constants.CONFIG_STATE_CONF4;
-        sendConfigCommand(Constants.CMD_CONF4, 4);
+        repository.applyConfigSnapshot(new ConfigSnapshot().scenarios(3, scenarios, SmsCodec.contentHash(response)));
+        return true;
     }
 
     /**
      * Processa la risposta CONF4 (utenti 1-8).
      * <p>
-     * Estrae e salva gli utenti, poi avanza allo step CONF5.
+     * Estrae e salva gli utenti.
      *
      * @param response Risposta SMS CONF4 da parsare
+     * @return true se la risposta e' stata elaborata
      */
-    private void processConf4(String response) {
+    private boolean processConf4(String response) {
         List<User> users = SmsParser.parseUsers(response);
-        repository.saveUsers(users);
-
-        updateStepStatus(4, StepStatus.COMPLETED, "Completato");
-        progress.setValue(80);
-
-        // Avanza a CONF5
-        currentState = Constants.CONFIG_STATE_CONF5;
-        sendConfigCommand(Constants.CMD_CONF5, 5);
+        repository.applyConfigSnapshot(new ConfigSnapshot().users(4, users, SmsCodec.contentHash(response)));
+        return true;
     }
 
     /**
      * Processa la risposta CONF5 (utenti 9-16).
      * <p>
-     * Estrae e salva gli utenti, completa la configurazione e
-     * salva lo stato nelle preferences.
+     * Estrae e salva gli utenti.
      *
      * @param response Risposta SMS CONF5 da parsare
+     * @return true se la risposta e' stata elaborata
      */
-    private void processConf5(String response) {
+    private boolean processConf5(String response) {
         List<User> users = SmsParser.parseUsers(response);
-        repository.saveUsers(users);
-
-        updateStepStatus(5, StepStatus.COMPLETED, "Completato");
-        progress.setValue(100);
-
-        // Configurazione completata
-        currentState = Constants.CONFIG_STATE_COMPLETE;
-        isRunning.setValue(false);
-        isComplete.setValue(true);
-        statusMessage.setValue("Configurazione completata!");
-
-        // Salva che la configurazione è stata completata
-        prefs.edit().putBoolean(Constants.PREF_CONFIGURED, true).apply();
-
-        addDebugLog("Configurazione completata");
+        repository.applyConfigSnapshot(new ConfigSnapshot().users(5, users, SmsCodec.contentHash(response)));
+        return true;
     }
 
     /**
@@ -509,7 +711,7 @@ public class ConfigurationViewModel extends AndroidViewModel implements OnConfig
             return;
         }
 
-        cancelTimeout();
+        cancelAllRequests();
         currentState = Constants.CONFIG_STATE_IDLE;
         isRunning.setValue(false);
         statusMessage.setValue("Configurazione annullata");
@@ -519,15 +721,27 @@ public class ConfigurationViewModel extends AndroidViewModel implements OnConfig
     /**
      * Gestisce un errore durante la configurazione.
      * <p>
-     * Annulla il timeout, aggiorna lo stato dello step corrente come ERROR
-     * e ferma la macchina a stati.
+     * Annulla i timeout, aggiorna lo stato dello step corrente (il primo non
+     * completato) come ERROR e ferma la macchina a stati.
      *
      * @param error Messaggio di errore da visualizzare
      */
     public void handleError(String error) {
-        cancelTimeout();
+        handleError(getStepNumberFromState(currentState), error);
+    }
+
+    /**
+     * Gestisce un errore relativo a uno step specifico.
+     * <p>
+     * Le richieste ancora in attesa vengono abbandonate: eventuali risposte
+     * successive sono ignorate. Gli step gia' completati restano salvati.
+     *
+     * @param stepNum Numero dello step fallito (1-5), o 0 se non determinabile
+     * @param error Messaggio di errore da visualizzare
+     */
+    private void handleError(int stepNum, String error) {
+        cancelAllRequests();
 
-        int stepNum = getStepNumberFromState(currentState);
         currentState = Constants.CONFIG_STATE_ERROR;
         isRunning.setValue(false);
         errorMessage.setValue(error);
@@ -572,6 +786,38 @@ public class ConfigurationViewModel extends AndroidViewModel implements OnConfig
         }
     }
 
+    /**
+     * Restituisce lo step a cui appartiene un tipo di risposta.
+     *
+     * @param responseType Tipo di risposta ({@link SmsParser#identifyResponse})
+     * @return Numero dello step (1-5) o 0 se non e' una risposta di configurazione
+     */
+    private static int getStepNumberFromResponse(String responseType) {
+        for (int step = 1; step < STEP_RESPONSES.length; step++) {
+            if (STEP_RESPONSES[step].equals(responseType)) {
+                return step;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Restituisce lo stato corrispondente al primo step non ancora completato.
+     *
+     * @return Stato CONFIG_STATE_CONF1-5
+     */
+    private int getFirstIncompleteState() {
+        List<ConfigStep> currentSteps = steps.getValue();
+        if (currentSteps != null) {
+            for (ConfigStep step : currentSteps) {
+                if (step.status != StepStatus.COMPLETED) {
+                    return Constants.CONFIG_STATE_CONF1 + step.stepNumber - 1;
+                }
+            }
+        }
+        return Constants.CONFIG_STATE_CONF5;
+    }
+
     /**
      * Converte lo stato della macchina a stati nel numero dello step corrispondente.
      *
@@ -614,6 +860,16 @@ public class ConfigurationViewModel extends AndroidViewModel implements OnConfig
         debugLog.setValue(new ArrayList<>(log)); // Forza update
     }
 
+    /**
+     * Legge la finestra di richieste parallele dalle preferences.
+     *
+     * @return Numero di richieste in attesa contemporaneamente (1-{@link Constants#CONFIG_TOTAL_STEPS})
+     */
+    private int readPipelineWindow() {
+        int window = prefs.getInt(Constants.PREF_CONFIG_PIPELINE_WINDOW, Constants.CONFIG_PIPELINE_WINDOW);
+        return Math.max(1, Math.min(Constants.CONFIG_TOTAL_STEPS, window));
+    }
+
     /**
      * Recupera il numero telefonico dell'allarme dalle preferences.
      *
@@ -625,96 +881,154 @@ public class ConfigurationViewModel extends AndroidViewModel implements OnConfig
     }
 
     /**
-     * Avvia il timer di timeout per la risposta SMS.
+     * Annulla tutte le richieste in attesa (timeout e ripetizioni).
      * <p>
-     * Il timeout e' impostato a 60 secondi per permettere alla centralina
-     * tempo sufficiente per elaborare e rispondere.
+     * Chiamato in caso di errore o quando si annulla la configurazione.
      */
-    private void startTimeout() {
-        cancelTimeout();
-        timeoutRunnable = () -> {
-            if (Boolean.TRUE.equals(isRunning.getValue())) {
-                handleTimeout();
-            }
-        };
-        // Timeout più lungo per configurazione (60 secondi)
-        timeoutHandler.postDelayed(timeoutRunnable, 60000);
+    private void cancelAllRequests() {
+        for (int i = 0; i < stepRequests.size(); i++) {
+            stepRequests.valueAt(i).cancel();
+        }
+        stepRequests.clear();
     }
 
     /**
-     * Annulla il timer di timeout corrente.
-     * <p>
-     * Chiamato quando si riceve una risposta o si annulla la configurazione.
+     * Verifica se uno step e' gia' stato completato.
+     *
+     * @param stepNumber Numero dello step (1-5)
+     * @return true se lo step e' completato
      */
-    private void cancelTimeout() {
-        if (timeoutRunnable != null) {
-            timeoutHandler.removeCallbacks(timeoutRunnable);
-            timeoutRunnable = null;
-        }
+    private boolean isStepCompleted(int stepNumber) {
+        List<ConfigStep> currentSteps = steps.getValue();
+        return currentSteps != null && stepNumber > 0 && stepNumber <= currentSteps.size()
+                && currentSteps.get(stepNumber - 1).status == StepStatus.COMPLETED;
     }
 
-    // ========== OnSmsResultListener ==========
-
     /**
-     * Callback chiamato quando un SMS e' stato inviato con successo.
-     * <p>
-     * Aggiorna lo stato dello step corrente per indicare che si e' in
-     * attesa della risposta.
-     *
-     * @param messageId ID del messaggio inviato
+     * Eventi di {@link CommandExecutor} per la richiesta di uno step.
      */
-    @Override
-    public void onSmsSent(String messageId) {
-        // SMS inviato, aspettiamo risposta
-        int stepNum = getStepNumberFromState(currentState);
-        if (stepNum > 0) {
-            updateStepStatus(stepNum, StepStatus.IN_PROGRESS, "Attesa risposta...");
+    private class StepCallback implements CommandExecutor.Callback {
+
+        private final int stepNumber;
+
+        StepCallback(int stepNumber) {
+            this.stepNumber = stepNumber;
+        }
+
+        @Override
+        public void onAttemptSent(CommandExecutor.Request request, int attempt, String messageId) {
+            stepByMessageId.put(messageId, stepNumber);
+            addDebugLog(attempt > 1
+                    ? "TX: " + request.getCommand() + " (tentativo " + attempt + ")"
+                    : "TX: " + request.getCommand());
+        }
+
+        @Override
+        public void onRetryScheduled(CommandExecutor.Request request, int nextAttempt, long delayMs, String reason) {
+            addDebugLog(request.getCommand() + ": " + reason + ", nuovo tentativo tra "
+                    + (delayMs / 1000) + " s");
+            updateStepStatus(stepNumber, StepStatus.IN_PROGRESS, "Nuovo tentativo (" + nextAttempt + ")...");
+        }
+
+        @Override
+        public void onFailed(CommandExecutor.Request request, String reason) {
+            stepRequests.remove(stepNumber);
+            if (Boolean.TRUE.equals(isRunning.getValue())) {
+                handleError(stepNumber, reason);
+            }
         }
     }
 
+    // ========== Eventi SMS ==========
+
     /**
-     * Callback chiamato quando un SMS e' stato consegnato al destinatario.
+     * Esito dell'invio di un SMS.
      * <p>
-     * Non richiede azioni specifiche, si continua ad attendere la risposta.
+     * Se l'SMS appartiene a una richiesta in corso, in caso di successo lo step
+     * passa in attesa della risposta e il timeout riparte dall'invio; in caso di
+     * errore la richiesta fallisce (la coda di invio ha gia' ripetuto l'SMS).
      *
-     * @param messageId ID del messaggio consegnato
+     * @param event Esito dell'invio
      */
-    @Override
-    public void onSmsDelivered(String messageId) {
-        // SMS consegnato, continuiamo ad aspettare risposta
+    private void onSmsSent(SmsEventBus.SmsSent event) {
+        Integer stepNum = stepByMessageId.get(event.messageId);
+        CommandExecutor.Request request = stepNum != null ? stepRequests.get(stepNum) : null;
+        if (request == null || !request.ownsMessageId(event.messageId)) {
+            return;
+        }
+        if (event.isSuccess()) {
+            request.sent(event);
+            updateStepStatus(stepNum, StepStatus.IN_PROGRESS, "Attesa risposta...");
+        } else {
+            // La coda di invio ha gia' ripetuto l'invio: l'errore e' definitivo
+            request.fail(event.errorMessage, false);
+        }
     }
 
     /**
-     * Callback chiamato quando si riceve un SMS dalla centralina.
+     * SMS ricevuto da una centrale.
+     * <p>
+     * Vengono elaborate solo le risposte che {@link SmsReceiver} ha attribuito a una
+     * richiesta di questa configurazione; le altre (duplicati, risposte a richieste
+     * gia' concluse o di altre schermate) vengono ignorate.
      * <p>
-     * Delega l'elaborazione al metodo processResponse.
+     * Una risposta incompleta non viene applicata: le righe mancanti verrebbero
+     * eliminate dal database. Il tentativo fallisce e la richiesta viene ripetuta
+     * finche' la politica lo consente, poi lo step fallisce.
      *
-     * @param sender Numero del mittente
-     * @param body Corpo del messaggio ricevuto
+     * @param event Messaggio ricevuto, con il tentativo abbinato
      */
-    @Override
-    public void onSmsReceived(String sender, String body) {
-        // Processa la risposta
-        processResponse(body);
+    private void onSmsReceived(SmsEventBus.SmsReceived event) {
+        Integer step = event.requestMessageId != null ? stepByMessageId.get(event.requestMessageId) : null;
+        if (step == null) {
+            if (Boolean.TRUE.equals(isRunning.getValue())) {
+                addDebugLog("RX: " + event.body + " (non attesa, ignorata)");
+            }
+            return;
+        }
+        if (!event.complete) {
+            addDebugLog("RX incompleta: " + event.body);
+            CommandExecutor.Request request = stepRequests.get(step);
+            if (request != null) {
+                request.fail("Risposta incompleta", true);
+            }
+            return;
+        }
+        processResponse(event.body, step);
     }
 
     /**
-     * Callback chiamato in caso di errore nell'invio SMS.
+     * Parte di una risposta CONF divisa in piu' SMS.
+     * <p>
+     * Mostra nello step i campi ricevuti finora e fa ripartire il timeout della
+     * richiesta: la centrale sta rispondendo. La risposta completa arrivera' con
+     * {@link #onSmsReceived(SmsEventBus.SmsReceived)}.
      *
-     * @param errorCode Codice numerico dell'errore
-     * @param errorMsg Messaggio descrittivo dell'errore
+     * @param event Campi ricevuti finora
      */
-    @Override
-    public void onSmsError(int errorCode, String errorMsg) {
-        handleError(errorMsg);
-    }
-
-    /**
-     * Callback chiamato quando scade il timeout di attesa risposta.
-     */
-    @Override
-    public void onSmsTimeout() {
-        handleTimeout();
+    private void onSmsPartial(SmsEventBus.SmsPartial event) {
+        if (!Boolean.TRUE.equals(isRunning.getValue()) || event.panelId != repository.getActivePanelId()) {
+            return;
+        }
+        String responseType = SmsParser.identifyResponse(event.body);
+        int step = responseType != null ? getStepNumberFromResponse(responseType) : 0;
+        CommandExecutor.Request request = step > 0 ? stepRequests.get(step) : null;
+        if (request == null) {
+            return;
+        }
+        request.touch();
+
+        String received;
+        if (step == 1) {
+            SmsParser.Conf1Data data = SmsParser.parseConf1(event.body);
+            received = (data != null ? data.zones.size() : 0) + " zone";
+        } else if (step <= 3) {
+            received = SmsParser.parseScenarios(event.body).size() + " scenari";
+        } else {
+            received = SmsParser.parseUsers(event.body).size() + " utenti";
+        }
+        updateStepStatus(step, StepStatus.IN_PROGRESS, "Ricevuti " + received + "...");
+        addDebugLog("RX parziale (" + event.fragments + " SMS): " + event.body);
     }
 
     // ========== OnConfigProgressListener ==========
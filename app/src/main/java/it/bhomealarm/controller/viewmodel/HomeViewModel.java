@@ -2,21 +2,24 @@ package it.bhomealarm.controller.viewmodel;
 
 import android.app.Application;
 import android.content.SharedPreferences;
-import android.os.Handler;
-import android.os.Looper;
 
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
+import java.util.ArrayList;
 import java.util.List;
 
-import it.bhomealarm.callback.OnSmsResultListener;
 import it.bhomealarm.model.entity.AlarmConfig;
 import it.bhomealarm.model.entity.Scenario;
 import it.bhomealarm.model.entity.SmsLog;
 import it.bhomealarm.model.repository.AlarmRepository;
+import it.bhomealarm.protocol.SmsCodec;
+import it.bhomealarm.protocol.ZoneMask;
+import it.bhomealarm.service.CommandExecutor;
+import it.bhomealarm.service.ResponseTimeEstimator;
+import it.bhomealarm.service.SmsEventBus;
 import it.bhomealarm.service.SmsReceiver;
 import it.bhomealarm.service.SmsService;
 import it.bhomealarm.util.Constants;
@@ -25,17 +28,26 @@ import it.bhomealarm.util.SmsParser;
 /**
  * ViewModel per HomeFragment.
  * Gestisce lo stato dell'allarme e le azioni principali.
+ * I comandi passano da {@link CommandExecutor}, che li ripete automaticamente
+ * se non arriva risposta o se la centrale e' occupata.
+ * <p>
+ * Una risposta conclude il comando in corso solo se {@link SmsReceiver} l'ha
+ * attribuita a uno dei suoi tentativi; le altre (messaggi spontanei, risposte
+ * tardive a comandi annullati) aggiornano solo lo stato mostrato, se sono
+ * della centrale attiva. Gli eventi SMS arrivano da {@link SmsEventBus}.
  */
-public class HomeViewModel extends AndroidViewModel implements OnSmsResultListener {
+public class HomeViewModel extends AndroidViewModel implements CommandExecutor.Callback {
 
     private final AlarmRepository repository;
     private final SmsService smsService;
     private final SharedPreferences prefs;
-    private final Handler timeoutHandler;
 
-    // Timeout per attesa risposta SMS
-    private Runnable timeoutRunnable;
-    private String pendingMessageId;
+    // Comando in attesa di risposta (timeout e ripetizioni)
+    private final CommandExecutor commandExecutor;
+    private CommandExecutor.Request pendingRequest;
+
+    // Sottoscrizioni agli eventi SMS, rimosse in onCleared()
+    private final List<SmsEventBus.Subscription<?>> subscriptions = new ArrayList<>();
 
     // UI State
     private final MutableLiveData<String> alarmStatus = new MutableLiveData<>(Constants.STATUS_UNKNOWN);
@@ -54,14 +66,15 @@ public class HomeViewModel extends AndroidViewModel implements OnSmsResultListen
         repository = AlarmRepository.getInstance(application);
         smsService = SmsService.getInstance(application);
         prefs = application.getSharedPreferences(Constants.PREF_NAME, 0);
-        timeoutHandler = new Handler(Looper.getMainLooper());
+        commandExecutor = new CommandExecutor(smsService, ResponseTimeEstimator.getInstance(application));
 
         alarmConfig = repository.getAlarmConfig();
         scenarios = repository.getAllScenarios();
 
-        // Registra listener per risposte SMS
-        smsService.setListener(this);
-        SmsReceiver.setListener(this);
+        // Sottoscrive esiti di invio e risposte SMS
+        SmsEventBus bus = SmsEventBus.getInstance();
+        subscriptions.add(bus.subscribe(SmsEventBus.SmsSent.class, SmsEventBus.MAIN_THREAD, this::onSmsSent));
+        subscriptions.add(bus.subscribe(SmsEventBus.SmsReceived.class, SmsEventBus.MAIN_THREAD, this::onSmsReceived));
 
         // Carica stato iniziale
         loadSavedStatus();
@@ -70,9 +83,10 @@ public class HomeViewModel extends AndroidViewModel implements OnSmsResultListen
     @Override
     protected void onCleared() {
         super.onCleared();
-        cancelTimeout();
-        smsService.setListener(null);
-        SmsReceiver.setListener(null);
+        commandExecutor.cancelAll();
+        for (SmsEventBus.Subscription<?> subscription : subscriptions) {
+            subscription.unsubscribe();
+        }
     }
 
     // ========== Getters for LiveData ==========
@@ -123,44 +137,22 @@ public class HomeViewModel extends AndroidViewModel implements OnSmsResultListen
             return;
         }
 
-        isLoading.setValue(true);
-        errorMessage.setValue(null);
-
-        String command = String.format(Constants.CMD_ARM_SCENARIO, scenarioId);
-        pendingMessageId = smsService.sendCommand(phone, command);
-
-        if (pendingMessageId != null) {
-            startTimeout();
-        } else {
-            isLoading.setValue(false);
-            errorMessage.setValue("Errore invio comando");
-        }
+        sendCommand(phone, SmsCodec.encodeArmScenario(scenarioId));
     }
 
     /**
      * Richiede attivazione allarme con zone personalizzate.
      *
-     * @param zoneNumbers Numeri delle zone da attivare (es. "134" per zone 1,3,4)
+     * @param zones Zone da attivare
      */
-    public void armWithCustomZones(String zoneNumbers) {
+    public void armWithCustomZones(ZoneMask zones) {
         String phone = getAlarmPhoneNumber();
         if (phone == null) {
             errorMessage.setValue("Numero allarme non configurato");
             return;
         }
 
-        isLoading.setValue(true);
-        errorMessage.setValue(null);
-
-        String command = String.format(Constants.CMD_ARM_CUSTOM, zoneNumbers);
-        pendingMessageId = smsService.sendCommand(phone, command);
-
-        if (pendingMessageId != null) {
-            startTimeout();
-        } else {
-            isLoading.setValue(false);
-            errorMessage.setValue("Errore invio comando");
-        }
+        sendCommand(phone, SmsCodec.encodeArmCustom(zones));
     }
 
     /**
@@ -173,17 +165,7 @@ public class HomeViewModel extends AndroidViewModel implements OnSmsResultListen
             return;
         }
 
-        isLoading.setValue(true);
-        errorMessage.setValue(null);
-
-        pendingMessageId = smsService.sendCommand(phone, Constants.CMD_DISARM);
-
-        if (pendingMessageId != null) {
-            startTimeout();
-        } else {
-            isLoading.setValue(false);
-            errorMessage.setValue("Errore invio comando");
-        }
+        sendCommand(phone, Constants.CMD_DISARM);
     }
 
     /**
@@ -196,17 +178,7 @@ public class HomeViewModel extends AndroidViewModel implements OnSmsResultListen
             return;
         }
 
-        isLoading.setValue(true);
-        errorMessage.setValue(null);
-
-        pendingMessageId = smsService.sendCommand(phone, Constants.CMD_STATUS);
-
-        if (pendingMessageId != null) {
-            startTimeout();
-        } else {
-            isLoading.setValue(false);
-            errorMessage.setValue("Errore invio comando");
-        }
+        sendCommand(phone, Constants.CMD_STATUS);
     }
 
     /**
@@ -217,6 +189,10 @@ public class HomeViewModel extends AndroidViewModel implements OnSmsResultListen
      */
     public void updateStatus(String status, String scenario) {
         isLoading.setValue(false);
+        showStatus(status, scenario);
+    }
+
+    private void showStatus(String status, String scenario) {
         alarmStatus.setValue(status);
         activeScenario.setValue(scenario);
         lastCheckTime.setValue(getCurrentTimeString());
@@ -240,58 +216,68 @@ public class HomeViewModel extends AndroidViewModel implements OnSmsResultListen
         errorMessage.setValue(null);
     }
 
-    // ========== OnSmsResultListener Implementation ==========
+    // ========== Eventi SMS ==========
 
-    @Override
-    public void onSmsSent(String messageId) {
-        // SMS inviato, aspettiamo la risposta
-    }
-
-    @Override
-    public void onSmsDelivered(String messageId) {
-        // SMS consegnato, aspettiamo la risposta
+    private void onSmsSent(SmsEventBus.SmsSent event) {
+        if (pendingRequest == null || !pendingRequest.ownsMessageId(event.messageId)) {
+            return;
+        }
+        if (event.isSuccess()) {
+            pendingRequest.sent(event);
+        } else {
+            // La coda di invio ha gia' ripetuto l'invio: l'errore e' definitivo
+            pendingRequest.fail(event.errorMessage, false);
+        }
     }
 
-    @Override
-    public void onSmsReceived(String sender, String body) {
-        cancelTimeout();
-
+    private void onSmsReceived(SmsEventBus.SmsReceived event) {
+        if (pendingRequest == null || !pendingRequest.ownsMessageId(event.requestMessageId)) {
+            if (event.panelId == repository.getActivePanelId()) {
+                showUnsolicitedStatus(event.body);
+            }
+            return;
+        }
         // Il salvataggio nel database è già gestito da SmsReceiver
         // Qui processiamo solo per aggiornare l'UI
+        String body = event.body;
 
         // Parsa la risposta
         String responseType = SmsParser.identifyResponse(body);
 
-        if ("OK".equals(responseType) || "STATUS".equals(responseType)) {
+        if ("ERROR".equals(responseType)) {
             SmsParser.ResponseData data = SmsParser.parseResponse(body);
-
-            if (data.success) {
-                String status = data.status != null ? data.status : Constants.STATUS_UNKNOWN;
-                updateStatus(status, data.scenario);
-            } else {
-                handleError(getErrorDescription(data.errorCode));
+            if (Constants.ERROR_SYSTEM_BUSY.equals(data.errorCode) && pendingRequest.isActive()) {
+                // Centrale occupata: il comando non e' stato eseguito, si ripete
+                pendingRequest.fail(getErrorDescription(data.errorCode), true);
+                return;
             }
-        } else if ("ERROR".equals(responseType)) {
-            SmsParser.ResponseData data = SmsParser.parseResponse(body);
+            completePendingRequest();
             handleError(getErrorDescription(data.errorCode));
-        } else {
-            // Risposta non riconosciuta, potrebbe essere una risposta CONF
-            // Non è un errore, ignoriamo silenziosamente
-            isLoading.setValue(false);
+            return;
         }
-    }
 
-    @Override
-    public void onSmsError(int errorCode, String errorMsg) {
-        cancelTimeout();
-        isLoading.setValue(false);
-        errorMessage.setValue(errorMsg);
+        completePendingRequest();
+        SmsParser.ResponseData data = SmsParser.parseResponse(body);
+        if (data.success) {
+            String status = data.status != null ? data.status : Constants.STATUS_UNKNOWN;
+            updateStatus(status, data.scenario);
+        } else {
+            handleError(getErrorDescription(data.errorCode));
+        }
     }
 
-    @Override
-    public void onSmsTimeout() {
-        isLoading.setValue(false);
-        errorMessage.setValue("Timeout: nessuna risposta dal sistema");
+    /**
+     * Risposta non attribuita al comando in corso: aggiorna solo lo stato mostrato,
+     * senza concludere il comando ne' segnalare errori.
+     */
+    private void showUnsolicitedStatus(String body) {
+        String responseType = SmsParser.identifyResponse(body);
+        if ("OK".equals(responseType) || "STATUS".equals(responseType)) {
+            SmsParser.ResponseData data = SmsParser.parseResponse(body);
+            if (data.success && data.status != null) {
+                showStatus(data.status, data.scenario);
+            }
+        }
     }
 
     // ========== Private Helper Methods ==========
@@ -301,23 +287,55 @@ public class HomeViewModel extends AndroidViewModel implements OnSmsResultListen
         return phone.isEmpty() ? null : phone;
     }
 
-    private void startTimeout() {
-        cancelTimeout();
-        timeoutRunnable = () -> {
-            if (Boolean.TRUE.equals(isLoading.getValue())) {
-                onSmsTimeout();
-            }
-        };
-        timeoutHandler.postDelayed(timeoutRunnable, Constants.TIMEOUT_SMS_RESPONSE);
+    /**
+     * Invia un comando tramite {@link CommandExecutor}; un eventuale comando
+     * precedente ancora in attesa viene abbandonato.
+     */
+    private void sendCommand(String phone, String command) {
+        isLoading.setValue(true);
+        errorMessage.setValue(null);
+
+        if (pendingRequest != null) {
+            pendingRequest.cancel();
+        }
+        pendingRequest = commandExecutor.execute(phone, command, this);
+        if (!pendingRequest.isActive()) {
+            // Invio fallito e nessuna ripetizione prevista
+            pendingRequest = null;
+            isLoading.setValue(false);
+            errorMessage.setValue("Errore invio comando");
+        }
     }
 
-    private void cancelTimeout() {
-        if (timeoutRunnable != null) {
-            timeoutHandler.removeCallbacks(timeoutRunnable);
-            timeoutRunnable = null;
+    private void completePendingRequest() {
+        if (pendingRequest != null) {
+            pendingRequest.complete();
+            pendingRequest = null;
         }
     }
 
+    // ========== CommandExecutor.Callback Implementation ==========
+
+    @Override
+    public void onAttemptSent(CommandExecutor.Request request, int attempt, String messageId) {
+        // Tentativo inviato, aspettiamo la risposta
+    }
+
+    @Override
+    public void onRetryScheduled(CommandExecutor.Request request, int nextAttempt, long delayMs, String reason) {
+        // Il caricamento resta attivo fino all'esito dell'ultimo tentativo
+    }
+
+    @Override
+    public void onFailed(CommandExecutor.Request request, String reason) {
+        if (request != pendingRequest) {
+            return;
+        }
+        pendingRequest = null;
+        isLoading.setValue(false);
+        errorMessage.setValue(reason);
+    }
+
     private void loadSavedStatus() {
         String savedStatus = prefs.getString(Constants.PREF_LAST_STATUS, Constants.STATUS_UNKNOWN);
         alarmStatus.setValue(savedStatus);
@@ -338,8 +356,6 @@ public class HomeViewModel extends AndroidViewModel implements OnSmsResultListen
      */
     public void refreshStatus() {
         loadSavedStatus();
-        // Assicura che il listener sia registrato
-        SmsReceiver.setListener(this);
     }
 
     private void saveStatus(String status) {
@@ -11,6 +11,7 @@ import java.util.List;
 
 import it.bhomealarm.model.entity.SmsLog;
 import it.bhomealarm.model.repository.AlarmRepository;
+import it.bhomealarm.model.repository.SmsLogPager;
 
 /**
  * ViewModel per la visualizzazione della cronologia delle comunicazioni SMS.
@@ -24,7 +25,9 @@ import it.bhomealarm.model.repository.AlarmRepository;
  *     <li>Cancellare la cronologia</li>
  * </ul>
  * <p>
- * I log sono ordinati cronologicamente con i piu' recenti in cima alla lista.
+ * I log sono ordinati cronologicamente con i piu' recenti in cima alla lista e
+ * vengono caricati a pagine tramite {@link SmsLogPager}: la prima pagina all'apertura,
+ * le successive durante lo scorrimento ({@link #loadMore()}).
  *
  * @see it.bhomealarm.view.fragment.LogFragment
  * @see SmsLog
@@ -32,37 +35,45 @@ import it.bhomealarm.model.repository.AlarmRepository;
  */
 public class LogViewModel extends AndroidViewModel {
 
-    /** Numero massimo di log da caricare per default */
-    private static final int DEFAULT_LOG_LIMIT = 50;
-
     /** Repository per l'accesso ai dati dell'allarme */
     private final AlarmRepository repository;
 
     // ========== Data ==========
 
-    /** Lista dei log SMS recenti dal database */
+    /** Pager della cronologia SMS */
+    private final SmsLogPager pager;
+
+    /** Lista dei log SMS caricati finora dal database */
     private final LiveData<List<SmsLog>> smsLogs;
 
     // ========== UI State ==========
 
-    /** Flag che indica se e' in corso un'operazione asincrona */
-    private final MutableLiveData<Boolean> isLoading = new MutableLiveData<>(false);
-
     /** Log attualmente selezionato per visualizzazione dettagli */
     private final MutableLiveData<SmsLog> selectedLog = new MutableLiveData<>();
 
     /**
      * Costruttore del ViewModel.
      * <p>
-     * Inizializza il repository e carica i log SMS recenti dal database
-     * con il limite predefinito di {@value #DEFAULT_LOG_LIMIT} elementi.
+     * Inizializza il repository e avvia il caricamento della prima pagina
+     * di {@value SmsLogPager#PAGE_SIZE} log SMS.
      *
      * @param application Contesto dell'applicazione Android
      */
     public LogViewModel(@NonNull Application application) {
         super(application);
         repository = AlarmRepository.getInstance(application);
-        smsLogs = repository.getRecentLogs(DEFAULT_LOG_LIMIT);
+        pager = repository.createSmsLogPager();
+        smsLogs = pager.getLogs();
+    }
+
+    /**
+     * Chiamato quando il ViewModel viene distrutto.
+     * Rimuove l'osservatore del database usato dal pager.
+     */
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        pager.close();
     }
 
     // ========== Getters ==========
@@ -79,10 +90,10 @@ public class LogViewModel extends AndroidViewModel {
     /**
      * Restituisce il LiveData che indica lo stato di caricamento.
      *
-     * @return LiveData con true se e' in corso un'operazione, false altrimenti
+     * @return LiveData con true mentre il pager carica la prima pagina o una successiva
      */
     public LiveData<Boolean> getIsLoading() {
-        return isLoading;
+        return pager.isLoading();
     }
 
     /**
@@ -96,6 +107,16 @@ public class LogViewModel extends AndroidViewModel {
 
     // ========== Actions ==========
 
+    /**
+     * Carica la pagina successiva della cronologia.
+     * <p>
+     * Chiamato dalla UI quando lo scorrimento si avvicina alla fine della lista;
+     * non ha effetto se un caricamento e' gia' in corso o se non ci sono altri log.
+     */
+    public void loadMore() {
+        pager.loadMore();
+    }
+
     /**
      * Seleziona un log per visualizzarne i dettagli.
      * <p>
@@ -125,23 +146,17 @@ public class LogViewModel extends AndroidViewModel {
      * permanentemente tutta la cronologia delle comunicazioni SMS.
      */
     public void clearAllLogs() {
-        isLoading.setValue(true);
         repository.clearAllLogs();
-        isLoading.setValue(false);
     }
 
     /**
      * Ricarica i log dal database.
      * <p>
-     * Poiche' i dati sono esposti tramite LiveData, l'aggiornamento
-     * avviene automaticamente quando il database cambia. Questo metodo
-     * puo' essere usato per forzare un refresh manuale dell'indicatore
-     * di caricamento nella UI.
+     * I nuovi log compaiono automaticamente in testa alla lista; questo metodo
+     * scarta le pagine caricate e riparte dalla prima.
      */
     public void refresh() {
-        isLoading.setValue(true);
-        // LiveData si aggiorna automaticamente
-        isLoading.setValue(false);
+        pager.refresh();
     }
 
     /**
@@ -142,8 +142,8 @@ public class SettingsViewModel extends AndroidViewModel {
     /**
      * Salva il numero telefonico della centralina di allarme.
      * <p>
-     * Il numero viene salvato nelle SharedPreferences e il LiveData viene
-     * aggiornato per notificare gli observer.
+     * Il numero viene salvato nelle SharedPreferences e nella centrale attiva,
+     * e il LiveData viene aggiornato per notificare gli observer.
      *
      * @param phoneNumber Numero telefonico da salvare (formato internazionale consigliato)
      */
@@ -151,6 +151,7 @@ public class SettingsViewModel extends AndroidViewModel {
         prefs.edit()
                 .putString(Constants.PREF_ALARM_PHONE, phoneNumber)
                 .apply();
+        repository.saveActivePanelPhone(phoneNumber);
         alarmPhoneNumber.setValue(phoneNumber);
     }
 
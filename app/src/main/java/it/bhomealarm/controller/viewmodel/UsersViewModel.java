@@ -1,16 +1,20 @@
 package it.bhomealarm.controller.viewmodel;
 
 import android.app.Application;
+import android.content.SharedPreferences;
 
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import it.bhomealarm.model.entity.User;
 import it.bhomealarm.model.repository.AlarmRepository;
+import it.bhomealarm.protocol.SmsCodec;
+import it.bhomealarm.service.SmsService;
 import it.bhomealarm.util.Constants;
 
 /**
@@ -27,7 +31,9 @@ import it.bhomealarm.util.Constants;
  * </ul>
  * <p>
  * Gli utenti sono organizzati in slot numerati (1-16) e i loro dati
- * vengono sincronizzati con la centralina tramite comandi SMS.
+ * vengono sincronizzati con la centralina tramite comandi SMS ({@code SET:Unn}),
+ * accodati in {@link it.bhomealarm.service.OutboundCommandQueue}: anche una
+ * modifica a tutti gli utenti viene inviata rispettando il budget SMS della SIM.
  *
  * @see it.bhomealarm.view.fragment.UsersFragment
  * @see User
@@ -38,6 +44,12 @@ public class UsersViewModel extends AndroidViewModel {
     /** Repository per l'accesso ai dati dell'allarme */
     private final AlarmRepository repository;
 
+    /** Servizio per l'invio dei comandi alla centrale */
+    private final SmsService smsService;
+
+    /** Preferenze con il numero della centrale attiva */
+    private final SharedPreferences prefs;
+
     // ========== Data ==========
 
     /** Lista di tutti gli utenti configurati nel sistema */
@@ -64,6 +76,8 @@ public class UsersViewModel extends AndroidViewModel {
     public UsersViewModel(@NonNull Application application) {
         super(application);
         repository = AlarmRepository.getInstance(application);
+        smsService = SmsService.getInstance(application);
+        prefs = application.getSharedPreferences(Constants.PREF_NAME, 0);
         users = repository.getAllUsers();
     }
 
@@ -135,16 +149,15 @@ public class UsersViewModel extends AndroidViewModel {
         isLoading.setValue(true);
         errorMessage.setValue(null);
 
-        // Aggiorna localmente
-        user.setPermissions(permissions);
-        repository.updateUser(user);
+        // Aggiorna localmente una copia: l'istanza e' condivisa dalla cache del modello
+        User updated = user.copy();
+        updated.setPermissions(permissions);
+        repository.updateUser(updated);
 
         // Invia comando SMS per aggiornare allarme
-        String permString = String.format("%04d", Integer.parseInt(Integer.toBinaryString(permissions)));
-        String command = String.format(Constants.CMD_SET_USER, user.getSlot(), permString);
-
-        // TODO: Inviare SMS tramite SmsService
-        // smsService.sendCommand(command, callback);
+        List<String> commands = new ArrayList<>();
+        commands.add(SmsCodec.encodeSetUser(user.getSlot(), permissions));
+        sendCommands(commands);
 
         isLoading.setValue(false);
     }
@@ -154,6 +167,9 @@ public class UsersViewModel extends AndroidViewModel {
      * <p>
      * Questa operazione e' utile per configurare rapidamente tutti gli utenti
      * con le stesse autorizzazioni. Gli utenti disabilitati vengono ignorati.
+     * <p>
+     * Viene accodato un comando {@code SET:Unn} per ogni utente; la coda di invio
+     * li distribuisce nel tempo secondo il budget SMS della SIM.
      *
      * @param permissions Permessi da applicare a tutti gli utenti abilitati
      */
@@ -161,20 +177,44 @@ public class UsersViewModel extends AndroidViewModel {
         isLoading.setValue(true);
 
         List<User> allUsers = users.getValue();
+        List<String> commands = new ArrayList<>();
         if (allUsers != null) {
             for (User user : allUsers) {
                 if (user.isEnabled()) {
-                    user.setPermissions(permissions);
-                    repository.updateUser(user);
+                    User updated = user.copy();
+                    updated.setPermissions(permissions);
+                    repository.updateUser(updated);
+                    commands.add(SmsCodec.encodeSetUser(user.getSlot(), permissions));
                 }
             }
         }
-
-        // TODO: Inviare comandi SMS per ogni utente
+        sendCommands(commands);
 
         isLoading.setValue(false);
     }
 
+    /**
+     * Accoda i comandi per la centrale attiva.
+     *
+     * @param commands Comandi da inviare, nell'ordine
+     */
+    private void sendCommands(List<String> commands) {
+        if (commands.isEmpty()) {
+            return;
+        }
+        String phone = prefs.getString(Constants.PREF_ALARM_PHONE, "");
+        if (phone.isEmpty()) {
+            errorMessage.setValue("Numero allarme non configurato");
+            return;
+        }
+        for (String command : commands) {
+            if (smsService.sendCommand(phone, command) == null) {
+                errorMessage.setValue("Errore invio comando");
+                return;
+            }
+        }
+    }
+
     /**
      * Deseleziona l'utente corrente.
      * <p>
@@ -7,21 +7,19 @@ import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import it.bhomealarm.model.entity.Zone;
 import it.bhomealarm.model.repository.AlarmRepository;
-import it.bhomealarm.util.Constants;
+import it.bhomealarm.protocol.ZoneMask;
 
 /**
  * ViewModel per la gestione delle zone nell'app BHomeAlarm.
  * <p>
  * Questa classe gestisce:
  * <ul>
- *     <li>La selezione delle zone per scenari personalizzati</li>
- *     <li>La generazione della stringa di numeri zone per il comando CUST:</li>
+ *     <li>La selezione delle zone per scenari personalizzati, come {@link ZoneMask}</li>
+ *     <li>La stringa di numeri zone per il comando CUST: ({@link ZoneMask#toDigits()})</li>
  *     <li>Il salvataggio di scenari personalizzati nel database</li>
  * </ul>
  * <p>
@@ -39,14 +37,8 @@ public class ZonesViewModel extends AndroidViewModel {
     /** Lista delle zone disponibili dal database */
     private final LiveData<List<Zone>> zones;
 
-    /** Set delle zone attualmente selezionate (numeri zona 1-8) */
-    private final MutableLiveData<Set<Integer>> selectedZones = new MutableLiveData<>(new HashSet<>());
-
-    /** Stringa con i numeri delle zone selezionate per il comando CUST: (es. "134") */
-    private final MutableLiveData<String> zoneNumbers = new MutableLiveData<>("");
-
-    /** Conteggio delle zone selezionate */
-    private final MutableLiveData<Integer> selectedCount = new MutableLiveData<>(0);
+    /** Zone attualmente selezionate (istanze condivise: cambiare selezione non alloca) */
+    private final MutableLiveData<ZoneMask> selectedZones = new MutableLiveData<>(ZoneMask.EMPTY);
 
     /** Nome dello scenario personalizzato inserito dall'utente */
     private final MutableLiveData<String> scenarioName = new MutableLiveData<>("");
@@ -78,33 +70,16 @@ public class ZonesViewModel extends AndroidViewModel {
     }
 
     /**
-     * Restituisce il set delle zone selezionate.
+     * Restituisce le zone selezionate.
+     * Il numero di zone e' {@link ZoneMask#count()}, la stringa per il comando
+     * CUST: e' {@link ZoneMask#toDigits()}.
      *
-     * @return LiveData con i numeri delle zone selezionate (1-8)
+     * @return LiveData con la maschera delle zone selezionate
      */
-    public LiveData<Set<Integer>> getSelectedZones() {
+    public LiveData<ZoneMask> getSelectedZones() {
         return selectedZones;
     }
 
-    /**
-     * Restituisce la stringa dei numeri zone per il comando CUST.
-     * Esempio: "134" se sono selezionate le zone 1, 3 e 4.
-     *
-     * @return LiveData con la stringa dei numeri zone concatenati
-     */
-    public LiveData<String> getZoneNumbers() {
-        return zoneNumbers;
-    }
-
-    /**
-     * Restituisce il conteggio delle zone selezionate.
-     *
-     * @return LiveData con il numero di zone selezionate
-     */
-    public LiveData<Integer> getSelectedCount() {
-        return selectedCount;
-    }
-
     /**
      * Restituisce il nome dello scenario personalizzato.
      *
@@ -141,24 +116,7 @@ public class ZonesViewModel extends AndroidViewModel {
      * @param zoneNumber Numero zona (1-8)
      */
     public void toggleZone(int zoneNumber) {
-        if (zoneNumber < 1 || zoneNumber > Constants.ZONE_COUNT) {
-            return;
-        }
-
-        Set<Integer> current = selectedZones.getValue();
-        if (current == null) {
-            current = new HashSet<>();
-        }
-
-        Set<Integer> updated = new HashSet<>(current);
-        if (updated.contains(zoneNumber)) {
-            updated.remove(zoneNumber);
-        } else {
-            updated.add(zoneNumber);
-        }
-
-        selectedZones.setValue(updated);
-        updateMask(updated);
+        setSelection(getSelection().toggle(zoneNumber));
     }
 
     /**
@@ -168,24 +126,7 @@ public class ZonesViewModel extends AndroidViewModel {
      * @param selected true per selezionare
      */
     public void setZoneSelected(int zoneNumber, boolean selected) {
-        if (zoneNumber < 1 || zoneNumber > Constants.ZONE_COUNT) {
-            return;
-        }
-
-        Set<Integer> current = selectedZones.getValue();
-        if (current == null) {
-            current = new HashSet<>();
-        }
-
-        Set<Integer> updated = new HashSet<>(current);
-        if (selected) {
-            updated.add(zoneNumber);
-        } else {
-            updated.remove(zoneNumber);
-        }
-
-        selectedZones.setValue(updated);
-        updateMask(updated);
+        setSelection(getSelection().with(zoneNumber, selected));
     }
 
     /**
@@ -195,8 +136,7 @@ public class ZonesViewModel extends AndroidViewModel {
      * @return true se selezionata
      */
     public boolean isZoneSelected(int zoneNumber) {
-        Set<Integer> current = selectedZones.getValue();
-        return current != null && current.contains(zoneNumber);
+        return getSelection().contains(zoneNumber);
     }
 
     /**
@@ -206,38 +146,33 @@ public class ZonesViewModel extends AndroidViewModel {
         List<Zone> allZones = zones.getValue();
         if (allZones == null) return;
 
-        Set<Integer> updated = new HashSet<>();
+        ZoneMask updated = ZoneMask.EMPTY;
         for (Zone zone : allZones) {
             if (zone.isEnabled()) {
-                updated.add(zone.getSlot());
+                updated = updated.with(zone.getSlot(), true);
             }
         }
-
-        selectedZones.setValue(updated);
-        updateMask(updated);
+        setSelection(updated);
     }
 
     /**
      * Deseleziona tutte le zone.
      */
     public void clearSelection() {
-        selectedZones.setValue(new HashSet<>());
-        updateMask(new HashSet<>());
+        setSelection(ZoneMask.EMPTY);
     }
 
     /**
-     * Restituisce i numeri delle zone selezionate come stringa.
-     * <p>
-     * Questa stringa viene utilizzata per comporre il comando SMS CUST:
-     * che attiva le zone specificate sull'allarme.
+     * Restituisce le zone selezionate.
      * <p>
-     * Esempio: se sono selezionate le zone 1, 3 e 4, restituisce "134".
+     * La maschera viene salvata nello scenario ({@code zone_mask}) e codificata
+     * nel comando SMS CUST: ({@link ZoneMask#toDigits()}: zone 1, 3 e 4 = "134").
      *
-     * @return Stringa con i numeri delle zone concatenati, vuota se nessuna selezione
+     * @return Maschera delle zone selezionate, mai null
      */
-    public String getZoneNumbersString() {
-        String numbers = zoneNumbers.getValue();
-        return numbers != null ? numbers : "";
+    public ZoneMask getSelection() {
+        ZoneMask current = selectedZones.getValue();
+        return current != null ? current : ZoneMask.EMPTY;
     }
 
     /**
@@ -247,35 +182,7 @@ public class ZonesViewModel extends AndroidViewModel {
      * @return true se almeno una zona è selezionata, false altrimenti
      */
     public boolean hasSelection() {
-        Integer count = selectedCount.getValue();
-        return count != null && count > 0;
-    }
-
-    /**
-     * Calcola il bitmask delle zone selezionate.
-     * <p>
-     * Il bitmask viene utilizzato per salvare la configurazione dello scenario
-     * nel database. Ogni bit rappresenta una zona:
-     * <ul>
-     *     <li>Bit 0 (valore 1) = Zona 1</li>
-     *     <li>Bit 1 (valore 2) = Zona 2</li>
-     *     <li>Bit 7 (valore 128) = Zona 8</li>
-     * </ul>
-     * <p>
-     * Esempio: zone 1, 3 e 4 selezionate = 0b00001101 = 13
-     *
-     * @return Intero bitmask con le zone selezionate
-     */
-    public int getZoneMaskInt() {
-        Set<Integer> selected = selectedZones.getValue();
-        if (selected == null || selected.isEmpty()) {
-            return 0;
-        }
-        int mask = 0;
-        for (int zone : selected) {
-            mask |= (1 << (zone - 1));
-        }
-        return mask;
+        return !getSelection().isEmpty();
     }
 
     /**
@@ -304,9 +211,8 @@ public class ZonesViewModel extends AndroidViewModel {
         }
 
         isSaving.setValue(true);
-        int zoneMask = getZoneMaskInt();
 
-        repository.saveCustomScenario(name.trim(), zoneMask, scenario -> {
+        repository.saveCustomScenario(name.trim(), getSelection(), scenario -> {
             isSaving.postValue(false);
             if (callback != null) {
                 callback.onSaved(scenario);
@@ -327,24 +233,14 @@ public class ZonesViewModel extends AndroidViewModel {
     }
 
     /**
-     * Aggiorna la stringa dei numeri zone e il conteggio.
-     * <p>
-     * Genera una stringa con i numeri delle zone selezionate in ordine crescente.
-     * Questa stringa viene poi utilizzata per il comando CUST: dell'allarme.
-     * <p>
-     * Esempio: se selected contiene {1, 3, 4}, genera "134".
+     * Pubblica la nuova selezione, solo se diversa dalla corrente: le maschere
+     * sono istanze condivise e si confrontano per identita'.
      *
-     * @param selected Set dei numeri delle zone selezionate
+     * @param updated Nuova maschera delle zone selezionate
      */
-    private void updateMask(Set<Integer> selected) {
-        StringBuilder numbers = new StringBuilder();
-        for (int i = 1; i <= Constants.ZONE_COUNT; i++) {
-            if (selected.contains(i)) {
-                numbers.append(i);
-            }
+    private void setSelection(ZoneMask updated) {
+        if (updated != selectedZones.getValue()) {
+            selectedZones.setValue(updated);
         }
-
-        zoneNumbers.setValue(numbers.toString());
-        selectedCount.setValue(selected.size());
     }
 }
@@ -8,6 +8,8 @@ import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
 import androidx.room.Update;
 
+import java.util.List;
+
 import it.bhomealarm.model.entity.AlarmConfig;
 
 /**
@@ -18,6 +20,11 @@ import it.bhomealarm.model.entity.AlarmConfig;
  * La configurazione include informazioni come lo stato dell'allarme,
  * l'ultimo controllo effettuato e lo stato di completamento della configurazione.
  * </p>
+ * <p>
+ * Ogni riga di {@code alarm_config} rappresenta una centrale: i metodi che
+ * ricevono un {@code id} operano sulla singola centrale, mentre
+ * {@link #getAllPanels()} e {@link #getAllPanelsSync()} le elencano tutte.
+ * </p>
  *
  * @see AlarmConfig
  * @see androidx.room.Dao
@@ -50,6 +57,49 @@ public interface AlarmConfigDao {
     @Query("SELECT * FROM alarm_config LIMIT 1")
     AlarmConfig getConfigSync();
 
+    /**
+     * Recupera la configurazione di una specifica centrale come LiveData.
+     *
+     * @param id l'ID della centrale
+     * @return {@link LiveData} contenente la configurazione della centrale,
+     *         o null se non esiste
+     */
+    @Query("SELECT * FROM alarm_config WHERE id = :id")
+    LiveData<AlarmConfig> getConfigById(long id);
+
+    /**
+     * Recupera la configurazione di una specifica centrale in modo sincrono.
+     * <p>
+     * Questo metodo blocca il thread chiamante fino al completamento della query.
+     * Non deve essere chiamato dal thread principale dell'UI.
+     * </p>
+     *
+     * @param id l'ID della centrale
+     * @return la configurazione della centrale, o null se non esiste
+     */
+    @Query("SELECT * FROM alarm_config WHERE id = :id")
+    AlarmConfig getConfigByIdSync(long id);
+
+    /**
+     * Recupera tutte le centrali configurate come LiveData, in ordine di creazione.
+     *
+     * @return {@link LiveData} contenente la lista delle centrali
+     */
+    @Query("SELECT * FROM alarm_config ORDER BY id ASC")
+    LiveData<List<AlarmConfig>> getAllPanels();
+
+    /**
+     * Recupera tutte le centrali configurate in modo sincrono, in ordine di creazione.
+     * <p>
+     * Usato per costruire l'indice mittente &rarr; centrale.
+     * Non deve essere chiamato dal thread principale dell'UI.
+     * </p>
+     *
+     * @return la lista delle centrali
+     */
+    @Query("SELECT * FROM alarm_config ORDER BY id ASC")
+    List<AlarmConfig> getAllPanelsSync();
+
     /**
      * Inserisce una nuova configurazione dell'allarme nel database.
      * <p>
@@ -114,4 +164,58 @@ public interface AlarmConfigDao {
      */
     @Query("UPDATE alarm_config SET config_complete = :complete, updated_at = :timestamp WHERE id = :id")
     void updateConfigComplete(long id, boolean complete, long timestamp);
+
+    /**
+     * Aggiorna la versione firmware di una centrale.
+     *
+     * @param id l'ID della centrale da aggiornare
+     * @param version la versione firmware ricevuta da CONF1
+     * @param timestamp il timestamp dell'aggiornamento in millisecondi
+     */
+    @Query("UPDATE alarm_config SET version = :version, updated_at = :timestamp WHERE id = :id")
+    void updateVersion(long id, String version, long timestamp);
+
+    /**
+     * Aggiorna il numero di telefono di una centrale.
+     *
+     * @param id l'ID della centrale da aggiornare
+     * @param phoneNumber il nuovo numero della SIM della centrale
+     * @param timestamp il timestamp dell'aggiornamento in millisecondi
+     */
+    @Query("UPDATE alarm_config SET phone_number = :phoneNumber, updated_at = :timestamp WHERE id = :id")
+    void updatePhoneNumber(long id, String phoneNumber, long timestamp);
+
+    /**
+     * Azzera le impronte delle risposte CONF1-5 di tutte le centrali.
+     * <p>
+     * Da chiamare quando zone, scenari o utenti di tutte le centrali vengono
+     * cancellati: la sincronizzazione successiva deve riscriverli anche se la
+     * centrale risponde come l'ultima volta.
+     */
+    @Query("UPDATE alarm_config SET conf1_hash = 0, conf2_hash = 0, conf3_hash = 0, conf4_hash = 0, conf5_hash = 0")
+    void clearSectionHashes();
+
+    /**
+     * Azzera l'impronta della risposta CONF1 (zone) di una centrale.
+     *
+     * @param id l'ID della centrale
+     */
+    @Query("UPDATE alarm_config SET conf1_hash = 0 WHERE id = :id")
+    void clearZoneSectionHash(long id);
+
+    /**
+     * Azzera le impronte delle risposte CONF2-3 (scenari) di una centrale.
+     *
+     * @param id l'ID della centrale
+     */
+    @Query("UPDATE alarm_config SET conf2_hash = 0, conf3_hash = 0 WHERE id = :id")
+    void clearScenarioSectionHashes(long id);
+
+    /**
+     * Azzera le impronte delle risposte CONF4-5 (utenti) di una centrale.
+     *
+     * @param id l'ID della centrale
+     */
+    @Query("UPDATE alarm_config SET conf4_hash = 0, conf5_hash = 0 WHERE id = :id")
+    void clearUserSectionHashes(long id);
 }
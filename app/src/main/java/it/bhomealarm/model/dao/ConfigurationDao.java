@@ -0,0 +1,225 @@
+package it.bhomealarm.model.dao;
+
+import androidx.room.Dao;
+import androidx.room.RoomDatabase;
+import androidx.room.Transaction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import it.bhomealarm.model.database.AppDatabase;
+import it.bhomealarm.model.entity.AlarmConfig;
+import it.bhomealarm.model.entity.Scenario;
+import it.bhomealarm.model.entity.User;
+import it.bhomealarm.model.entity.Zone;
+import it.bhomealarm.model.repository.ConfigSnapshot;
+import it.bhomealarm.util.Constants;
+
+/**
+ * Data Access Object (DAO) per l'applicazione delle risposte CONF1-5 al database Room.
+ * <p>
+ * {@link #applyConfigSnapshot(long, ConfigSnapshot)} applica tutte le sezioni di
+ * un {@link ConfigSnapshot} in un'unica transazione: chi legge vede la
+ * configurazione precedente o quella nuova, mai una tabella a meta'
+ * aggiornamento, e SQLite esegue un solo commit invece di uno per istruzione.
+ * <p>
+ * Per ogni sezione:
+ * <ul>
+ *     <li>se l'impronta ricevuta coincide con quella salvata in {@code alarm_config}
+ *         la sezione e' gia' allineata e non viene scritto nulla;</li>
+ *     <li>altrimenti le righe ricevute vengono confrontate per slot con quelle
+ *         salvate: si inseriscono le nuove, si aggiornano solo quelle con nome o
+ *         stato diversi (descrizione delle zone, maschera zone degli scenari e
+ *         permessi degli utenti restano) e si eliminano quelle non piu' presenti
+ *         nell'intervallo di slot della sezione. Ogni tipo di modifica e' una
+ *         sola istruzione batch.</li>
+ * </ul>
+ * Gli scenari personalizzati (slot &gt; 100) non vengono mai toccati; il Joker
+ * viene inserito o aggiornato ma non eliminato, perche' puo' arrivare in CONF4 o CONF5.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see ConfigSnapshot
+ * @see it.bhomealarm.model.repository.AlarmRepository#applyConfigSnapshot(ConfigSnapshot)
+ */
+@Dao
+public abstract class ConfigurationDao {
+
+    private final AlarmConfigDao alarmConfigDao;
+    private final ZoneDao zoneDao;
+    private final ScenarioDao scenarioDao;
+    private final UserDao userDao;
+
+    /**
+     * @param database Database di cui usare i DAO delle singole tabelle
+     */
+    public ConfigurationDao(RoomDatabase database) {
+        AppDatabase db = (AppDatabase) database;
+        alarmConfigDao = db.alarmConfigDao();
+        zoneDao = db.zoneDao();
+        scenarioDao = db.scenarioDao();
+        userDao = db.userDao();
+    }
+
+    /**
+     * Applica le sezioni di uno snapshot a una centrale, in un'unica transazione.
+     *
+     * @param panelId ID della centrale
+     * @param snapshot Sezioni ricevute
+     * @return numero di righe inserite, aggiornate o eliminate (0 se tutte le sezioni erano invariate)
+     */
+    @Transaction
+    public int applyConfigSnapshot(long panelId, ConfigSnapshot snapshot) {
+        AlarmConfig panel = alarmConfigDao.getConfigByIdSync(panelId);
+        long now = System.currentTimeMillis();
+        int written = 0;
+        boolean panelChanged = false;
+
+        for (int section = 1; section <= Constants.CONFIG_TOTAL_STEPS; section++) {
+            if (!snapshot.hasSection(section)) {
+                continue;
+            }
+            long hash = snapshot.getHash(section);
+            if (panel != null && hash != 0L && panel.getSectionHash(section) == hash) {
+                continue; // Sezione invariata dall'ultima sincronizzazione
+            }
+            if (section == 1) {
+                written += applyZones(panelId, snapshot.getConf1().zones, now);
+                if (panel != null) {
+                    panel.setVersion(snapshot.getConf1().version);
+                }
+            } else if (section <= 3) {
+                written += applyScenarios(panelId, section, snapshot.getScenarios(section), now);
+            } else {
+                written += applyUsers(panelId, section, snapshot.getUsers(section), now);
+            }
+            if (panel != null) {
+                panel.setSectionHash(section, hash);
+                panelChanged = true;
+            }
+        }
+
+        if (panelChanged) {
+            panel.setUpdatedAt(now);
+            alarmConfigDao.update(panel);
+        }
+        return written;
+    }
+
+    private int applyZones(long panelId, List<Zone> zones, long now) {
+        Map<Integer, Zone> stored = new HashMap<>();
+        for (Zone z : zoneDao.getAllZonesSync(panelId)) {
+            stored.put(z.getSlot(), z);
+        }
+        List<Zone> inserted = new ArrayList<>();
+        List<Zone> updated = new ArrayList<>();
+        for (Zone z : zones) {
+            Zone current = stored.remove(z.getSlot());
+            if (current == null) {
+                z.setPanelId(panelId);
+                z.setUpdatedAt(now);
+                inserted.add(z);
+            } else if (!current.getName().equals(z.getName()) || current.isEnabled() != z.isEnabled()) {
+                current.setName(z.getName());
+                current.setEnabled(z.isEnabled());
+                current.setUpdatedAt(now);
+                updated.add(current);
+            }
+        }
+        List<Zone> deleted = new ArrayList<>(stored.values());
+
+        if (!deleted.isEmpty()) {
+            zoneDao.delete(deleted);
+        }
+        if (!updated.isEmpty()) {
+            zoneDao.updateAll(updated);
+        }
+        if (!inserted.isEmpty()) {
+            zoneDao.insertAll(inserted);
+        }
+        return inserted.size() + updated.size() + deleted.size();
+    }
+
+    private int applyScenarios(long panelId, int section, List<Scenario> scenarios, long now) {
+        int first = (section - 2) * Constants.CONFIG_SECTION_SLOTS + 1;
+        int last = first + Constants.CONFIG_SECTION_SLOTS - 1;
+        Map<Integer, Scenario> stored = new HashMap<>();
+        for (Scenario s : scenarioDao.getAllScenariosSync(panelId)) {
+            if (!s.isCustom() && s.getSlot() >= first && s.getSlot() <= last) {
+                stored.put(s.getSlot(), s);
+            }
+        }
+        List<Scenario> inserted = new ArrayList<>();
+        List<Scenario> updated = new ArrayList<>();
+        for (Scenario s : scenarios) {
+            Scenario current = stored.remove(s.getSlot());
+            if (current == null) {
+                s.setPanelId(panelId);
+                s.setUpdatedAt(now);
+                inserted.add(s);
+            } else if (!current.getName().equals(s.getName()) || current.isEnabled() != s.isEnabled()) {
+                current.setName(s.getName());
+                current.setEnabled(s.isEnabled());
+                current.setUpdatedAt(now);
+                updated.add(current);
+            }
+        }
+        List<Scenario> deleted = new ArrayList<>(stored.values());
+
+        if (!deleted.isEmpty()) {
+            scenarioDao.delete(deleted);
+        }
+        if (!updated.isEmpty()) {
+            scenarioDao.updateAll(updated);
+        }
+        if (!inserted.isEmpty()) {
+            scenarioDao.insertAll(inserted);
+        }
+        return inserted.size() + updated.size() + deleted.size();
+    }
+
+    private int applyUsers(long panelId, int section, List<User> users, long now) {
+        int first = (section - 4) * Constants.CONFIG_SECTION_SLOTS + 1;
+        int last = first + Constants.CONFIG_SECTION_SLOTS - 1;
+        Map<Integer, User> stored = new HashMap<>();
+        for (User u : userDao.getAllUsersSync(panelId)) {
+            stored.put(u.getSlot(), u);
+        }
+        List<User> inserted = new ArrayList<>();
+        List<User> updated = new ArrayList<>();
+        for (User u : users) {
+            User current = stored.remove(u.getSlot());
+            if (current == null) {
+                u.setPanelId(panelId);
+                u.setUpdatedAt(now);
+                inserted.add(u);
+            } else if (!current.getName().equals(u.getName()) || current.isEnabled() != u.isEnabled()
+                    || current.isJoker() != u.isJoker()) {
+                current.setName(u.getName());
+                current.setEnabled(u.isEnabled());
+                current.setJoker(u.isJoker());
+                current.setUpdatedAt(now);
+                updated.add(current);
+            }
+        }
+        List<User> deleted = new ArrayList<>();
+        for (User u : stored.values()) {
+            if (!u.isJoker() && u.getSlot() >= first && u.getSlot() <= last) {
+                deleted.add(u);
+            }
+        }
+
+        if (!deleted.isEmpty()) {
+            userDao.delete(deleted);
+        }
+        if (!updated.isEmpty()) {
+            userDao.updateAll(updated);
+        }
+        if (!inserted.isEmpty()) {
+            userDao.insertAll(inserted);
+        }
+        return inserted.size() + updated.size() + deleted.size();
+    }
+}
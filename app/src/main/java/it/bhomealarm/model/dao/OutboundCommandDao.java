@@ -0,0 +1,57 @@
+package it.bhomealarm.model.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+import androidx.room.Update;
+
+import java.util.List;
+
+import it.bhomealarm.model.entity.OutboundCommand;
+
+/**
+ * Data Access Object (DAO) per la coda persistente dei comandi in uscita.
+ * <p>
+ * La coda e' gestita da {@code OutboundCommandQueue}; le righe vengono lette
+ * nell'ordine di accodamento (id crescente).
+ * </p>
+ *
+ * @see OutboundCommand
+ */
+@Dao
+public interface OutboundCommandDao {
+
+    /**
+     * Accoda un comando.
+     *
+     * @param command il comando da accodare
+     * @return l'ID della riga inserita
+     */
+    @Insert
+    long insert(OutboundCommand command);
+
+    /**
+     * Aggiorna stato, tentativi e pianificazione di un comando.
+     *
+     * @param command il comando da aggiornare
+     */
+    @Update
+    void update(OutboundCommand command);
+
+    /**
+     * Recupera tutti i comandi in coda, nell'ordine di accodamento.
+     *
+     * @return la lista dei comandi in coda
+     */
+    @Query("SELECT * FROM outbound_commands ORDER BY id ASC")
+    List<OutboundCommand> getAllSync();
+
+    /**
+     * Elimina i comandi con gli ID indicati.
+     *
+     * @param ids gli ID delle righe
+     * @return il numero di righe eliminate
+     */
+    @Query("DELETE FROM outbound_commands WHERE id IN (:ids)")
+    int deleteByIds(List<Long> ids);
+}
@@ -0,0 +1,59 @@
+package it.bhomealarm.model.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+import it.bhomealarm.model.entity.PendingCommand;
+
+/**
+ * Data Access Object (DAO) per la tabella dei comandi in attesa di risposta.
+ * <p>
+ * La tabella e' gestita da {@code PendingCommandTable}, che ne tiene una copia
+ * in memoria; le righe lasciate da un processo precedente vengono ricaricate
+ * all'avvio come comandi orfani.
+ * </p>
+ *
+ * @see PendingCommand
+ */
+@Dao
+public interface PendingCommandDao {
+
+    /**
+     * Inserisce un comando in attesa, sostituendo una riga con lo stesso message_id.
+     *
+     * @param command il comando da inserire
+     */
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insert(PendingCommand command);
+
+    /**
+     * Recupera i comandi in attesa non scaduti, dal piu' vecchio.
+     *
+     * @param now il timestamp corrente in millisecondi
+     * @return la lista dei comandi in attesa
+     */
+    @Query("SELECT * FROM pending_commands WHERE expires_at > :now ORDER BY sent_at ASC")
+    List<PendingCommand> getActiveSync(long now);
+
+    /**
+     * Elimina i comandi con i message_id indicati.
+     *
+     * @param messageIds gli ID dei messaggi
+     * @return il numero di righe eliminate
+     */
+    @Query("DELETE FROM pending_commands WHERE message_id IN (:messageIds)")
+    int deleteByIds(List<String> messageIds);
+
+    /**
+     * Elimina i comandi scaduti.
+     *
+     * @param now il timestamp corrente in millisecondi
+     * @return il numero di righe eliminate
+     */
+    @Query("DELETE FROM pending_commands WHERE expires_at <= :now")
+    int deleteExpired(long now);
+}
@@ -34,49 +34,54 @@ public interface ScenarioDao {
      * Recupera tutti gli scenari ordinati per slot.
      * Include sia scenari predefiniti che personalizzati.
      *
+     * @param panelId ID della centrale
      * @return LiveData con la lista di tutti gli scenari
      */
-    @Query("SELECT * FROM scenarios ORDER BY slot ASC")
-    LiveData<List<Scenario>> getAllScenarios();
+    @Query("SELECT * FROM scenarios WHERE panel_id = :panelId ORDER BY slot ASC")
+    LiveData<List<Scenario>> getAllScenarios(long panelId);
 
     /**
      * Recupera tutti gli scenari in modo sincrono (blocca il thread).
      * Da usare solo in background thread.
      *
+     * @param panelId ID della centrale
      * @return Lista di tutti gli scenari
      */
-    @Query("SELECT * FROM scenarios ORDER BY slot ASC")
-    List<Scenario> getAllScenariosSync();
+    @Query("SELECT * FROM scenarios WHERE panel_id = :panelId ORDER BY slot ASC")
+    List<Scenario> getAllScenariosSync(long panelId);
 
     /**
      * Recupera uno scenario specifico per numero slot.
      *
+     * @param panelId ID della centrale
      * @param slot Numero slot dello scenario (1-16 predefiniti, >100 custom)
      * @return LiveData con lo scenario, null se non trovato
      */
-    @Query("SELECT * FROM scenarios WHERE slot = :slot LIMIT 1")
-    LiveData<Scenario> getScenarioBySlot(int slot);
+    @Query("SELECT * FROM scenarios WHERE panel_id = :panelId AND slot = :slot LIMIT 1")
+    LiveData<Scenario> getScenarioBySlot(long panelId, int slot);
 
     /**
      * Recupera uno scenario per slot in modo sincrono.
      *
+     * @param panelId ID della centrale
      * @param slot Numero slot dello scenario
      * @return Lo scenario trovato o null
      */
-    @Query("SELECT * FROM scenarios WHERE slot = :slot LIMIT 1")
-    Scenario getScenarioBySlotSync(int slot);
+    @Query("SELECT * FROM scenarios WHERE panel_id = :panelId AND slot = :slot LIMIT 1")
+    Scenario getScenarioBySlotSync(long panelId, int slot);
 
     /**
      * Recupera solo gli scenari abilitati.
      *
+     * @param panelId ID della centrale
      * @return LiveData con gli scenari che hanno enabled = true
      */
-    @Query("SELECT * FROM scenarios WHERE enabled = 1 ORDER BY slot ASC")
-    LiveData<List<Scenario>> getEnabledScenarios();
+    @Query("SELECT * FROM scenarios WHERE panel_id = :panelId AND enabled = 1 ORDER BY slot ASC")
+    LiveData<List<Scenario>> getEnabledScenarios(long panelId);
 
     /**
      * Inserisce o aggiorna uno scenario.
-     * Se esiste già uno scenario con lo stesso slot, viene sostituito.
+     * Se esiste già uno scenario con lo stesso slot nella stessa centrale, viene sostituito.
      *
      * @param scenario Lo scenario da inserire/aggiornare
      * @return L'ID della riga inserita
@@ -100,6 +105,14 @@ public interface ScenarioDao {
     @Update
     void update(Scenario scenario);
 
+    /**
+     * Aggiorna piu' scenari esistenti in un'unica transazione.
+     *
+     * @param scenarios le righe con i dati aggiornati
+     */
+    @Update
+    void updateAll(List<Scenario> scenarios);
+
     /**
      * Elimina uno scenario.
      *
@@ -108,6 +121,14 @@ public interface ScenarioDao {
     @Delete
     void delete(Scenario scenario);
 
+    /**
+     * Elimina piu' scenari in un'unica transazione.
+     *
+     * @param scenarios le righe da eliminare
+     */
+    @Delete
+    void delete(List<Scenario> scenarios);
+
     /**
      * Elimina tutti gli scenari dal database.
      * Usato durante il reset della configurazione.
@@ -115,26 +136,36 @@ public interface ScenarioDao {
     @Query("DELETE FROM scenarios")
     void deleteAll();
 
+    /**
+     * Elimina tutti gli scenari di una centrale.
+     *
+     * @param panelId ID della centrale
+     */
+    @Query("DELETE FROM scenarios WHERE panel_id = :panelId")
+    void deleteByPanel(long panelId);
+
     /**
      * Aggiorna i campi di uno scenario specifico.
      *
+     * @param panelId ID della centrale
      * @param slot Numero slot dello scenario
      * @param name Nuovo nome
      * @param zoneMask Nuovo bitmask delle zone
      * @param enabled Stato abilitazione
      * @param timestamp Timestamp dell'aggiornamento
      */
-    @Query("UPDATE scenarios SET name = :name, zone_mask = :zoneMask, enabled = :enabled, updated_at = :timestamp WHERE slot = :slot")
-    void updateScenario(int slot, String name, int zoneMask, boolean enabled, long timestamp);
+    @Query("UPDATE scenarios SET name = :name, zone_mask = :zoneMask, enabled = :enabled, updated_at = :timestamp WHERE panel_id = :panelId AND slot = :slot")
+    void updateScenario(long panelId, int slot, String name, int zoneMask, boolean enabled, long timestamp);
 
     /**
      * Recupera solo gli scenari personalizzati (creati dall'utente).
      * Gli scenari custom hanno il flag is_custom = true.
      *
+     * @param panelId ID della centrale
      * @return LiveData con gli scenari personalizzati
      */
-    @Query("SELECT * FROM scenarios WHERE is_custom = 1 ORDER BY slot ASC")
-    LiveData<List<Scenario>> getCustomScenarios();
+    @Query("SELECT * FROM scenarios WHERE panel_id = :panelId AND is_custom = 1 ORDER BY slot ASC")
+    LiveData<List<Scenario>> getCustomScenarios(long panelId);
 
     /**
      * Calcola il prossimo slot disponibile per un nuovo scenario personalizzato.
@@ -150,17 +181,19 @@ public interface ScenarioDao {
      *     <li>Esistono slot 101, 102, 103 → restituisce 104</li>
      * </ul>
      *
+     * @param panelId ID della centrale
      * @return Il prossimo slot libero (minimo 101)
      */
-    @Query("SELECT COALESCE(MAX(slot), 100) + 1 FROM scenarios WHERE slot > 100")
-    int getNextCustomSlot();
+    @Query("SELECT COALESCE(MAX(slot), 100) + 1 FROM scenarios WHERE panel_id = :panelId AND slot > 100")
+    int getNextCustomSlot(long panelId);
 
     /**
      * Elimina uno scenario specifico per numero slot.
      * Usato per eliminare sia scenari predefiniti che personalizzati.
      *
+     * @param panelId ID della centrale
      * @param slot Numero slot dello scenario da eliminare
      */
-    @Query("DELETE FROM scenarios WHERE slot = :slot")
-    void deleteBySlot(int slot);
+    @Query("DELETE FROM scenarios WHERE panel_id = :panelId AND slot = :slot")
+    void deleteBySlot(long panelId, int slot);
 }
@@ -0,0 +1,80 @@
+package it.bhomealarm.model.dao;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import java.util.List;
+
+import it.bhomealarm.model.entity.SmsLogArchive;
+
+/**
+ * Data Access Object (DAO) per l'archivio compresso dei log SMS.
+ * <p>
+ * I blocchi vengono scritti dal job di conservazione dei log
+ * ({@code SmsLogRetention}) e letti solo per esportazione o diagnosi.
+ * </p>
+ *
+ * @see SmsLogArchive
+ */
+@Dao
+public interface SmsLogArchiveDao {
+
+    /**
+     * Inserisce un blocco di log archiviati.
+     *
+     * @param archive il blocco da inserire
+     * @return l'ID della riga inserita
+     */
+    @Insert
+    long insert(SmsLogArchive archive);
+
+    /**
+     * Recupera tutti i blocchi archiviati, dal piu' recente.
+     *
+     * @return la lista dei blocchi archiviati
+     */
+    @Query("SELECT * FROM sms_log_archive ORDER BY last_timestamp DESC")
+    List<SmsLogArchive> getAllSync();
+
+    /**
+     * Conta i log contenuti nell'archivio.
+     *
+     * @return il numero totale di log archiviati
+     */
+    @Query("SELECT IFNULL(SUM(row_count), 0) FROM sms_log_archive")
+    long getArchivedRowCount();
+
+    /**
+     * Restituisce la dimensione compressa di ogni blocco, dal piu' vecchio.
+     *
+     * @return le dimensioni in byte dei payload
+     */
+    @Query("SELECT LENGTH(payload) FROM sms_log_archive ORDER BY last_timestamp ASC, id ASC")
+    List<Long> getPayloadSizesOldestFirst();
+
+    /**
+     * Elimina i blocchi piu' vecchi.
+     *
+     * @param limit numero di blocchi da eliminare
+     * @return il numero di blocchi eliminati
+     */
+    @Query("DELETE FROM sms_log_archive WHERE id IN "
+            + "(SELECT id FROM sms_log_archive ORDER BY last_timestamp ASC, id ASC LIMIT :limit)")
+    int deleteOldest(int limit);
+
+    /**
+     * Elimina i blocchi che contengono solo log precedenti al timestamp indicato.
+     *
+     * @param beforeTimestamp il timestamp in millisecondi
+     * @return il numero di blocchi eliminati
+     */
+    @Query("DELETE FROM sms_log_archive WHERE last_timestamp < :beforeTimestamp")
+    int deleteOlderThan(long beforeTimestamp);
+
+    /**
+     * Elimina tutto l'archivio.
+     */
+    @Query("DELETE FROM sms_log_archive")
+    void deleteAll();
+}
@@ -50,6 +50,59 @@ public interface SmsLogDao {
     @Query("SELECT * FROM sms_log ORDER BY timestamp DESC LIMIT :limit")
     LiveData<List<SmsLog>> getRecentLogs(int limit);
 
+    /**
+     * Recupera i log SMS piu' recenti di una specifica centrale come LiveData.
+     *
+     * @param panelId l'ID della centrale
+     * @param limit il numero massimo di log da recuperare
+     * @return {@link LiveData} contenente i log SMS piu' recenti della centrale
+     */
+    @Query("SELECT * FROM sms_log WHERE panel_id = :panelId ORDER BY timestamp DESC LIMIT :limit")
+    LiveData<List<SmsLog>> getRecentLogsByPanel(long panelId, int limit);
+
+    /**
+     * Recupera la prima pagina dei log SMS (i piu' recenti) in modo sincrono.
+     * <p>
+     * L'ordinamento ({@code timestamp}, {@code id}) e' totale anche con timestamp
+     * uguali ed e' la chiave della paginazione keyset di {@code SmsLogPager}.
+     * </p>
+     *
+     * @param limit dimensione della pagina
+     * @return i log piu' recenti, in ordine decrescente
+     */
+    @Query("SELECT * FROM sms_log ORDER BY timestamp DESC, id DESC LIMIT :limit")
+    List<SmsLog> getFirstPage(int limit);
+
+    /**
+     * Recupera la pagina di log successiva alla chiave indicata (paginazione keyset).
+     * <p>
+     * Restituisce i log strettamente precedenti a ({@code timestamp}, {@code id}),
+     * senza OFFSET: il costo non cresce con il numero di pagine gia' caricate.
+     * </p>
+     *
+     * @param timestamp timestamp dell'ultimo log caricato
+     * @param id id dell'ultimo log caricato
+     * @param limit dimensione della pagina
+     * @return i log successivi, in ordine decrescente
+     */
+    @Query("SELECT * FROM sms_log WHERE timestamp <= :timestamp AND (timestamp < :timestamp OR id < :id) "
+            + "ORDER BY timestamp DESC, id DESC LIMIT :limit")
+    List<SmsLog> getPageBefore(long timestamp, long id, int limit);
+
+    /**
+     * Recupera tutti i log uguali o piu' recenti della chiave indicata.
+     * <p>
+     * Usato per ricaricare solo la testa della lista quando la tabella cambia.
+     * </p>
+     *
+     * @param timestamp timestamp del log di confine
+     * @param id id del log di confine
+     * @return i log dalla chiave indicata in avanti, in ordine decrescente
+     */
+    @Query("SELECT * FROM sms_log WHERE timestamp >= :timestamp AND (timestamp > :timestamp OR id >= :id) "
+            + "ORDER BY timestamp DESC, id DESC")
+    List<SmsLog> getLogsSince(long timestamp, long id);
+
     /**
      * Recupera tutti i log degli SMS in modo sincrono.
      * <p>
@@ -84,6 +137,17 @@ public interface SmsLogDao {
     @Insert
     long insert(SmsLog log);
 
+    /**
+     * Inserisce piu' log SMS con un'unica istruzione preparata.
+     * <p>
+     * Usato da {@code SmsLogWriter} per scrivere in blocco i log accumulati.
+     * </p>
+     *
+     * @param logs i log SMS da inserire
+     */
+    @Insert
+    void insertAll(List<SmsLog> logs);
+
     /**
      * Elimina uno specifico log SMS dal database.
      *
@@ -113,6 +177,70 @@ public interface SmsLogDao {
     @Query("DELETE FROM sms_log WHERE timestamp < :beforeTimestamp")
     void deleteOldLogs(long beforeTimestamp);
 
+    /**
+     * Recupera i log piu' vecchi precedenti a un timestamp, dal piu' vecchio.
+     * <p>
+     * Usato dal job di conservazione per eliminare a blocchi limitati.
+     * </p>
+     *
+     * @param beforeTimestamp il timestamp in millisecondi
+     * @param limit numero massimo di log
+     * @return i log piu' vecchi di {@code beforeTimestamp}, in ordine crescente
+     */
+    @Query("SELECT * FROM sms_log WHERE timestamp < :beforeTimestamp ORDER BY timestamp, id LIMIT :limit")
+    List<SmsLog> getOldestBefore(long beforeTimestamp, int limit);
+
+    /**
+     * Recupera i log piu' vecchi, dal piu' vecchio.
+     *
+     * @param limit numero massimo di log
+     * @return i log piu' vecchi, in ordine crescente
+     */
+    @Query("SELECT * FROM sms_log ORDER BY timestamp, id LIMIT :limit")
+    List<SmsLog> getOldest(int limit);
+
+    /**
+     * Elimina i log con gli ID indicati.
+     *
+     * @param ids gli ID dei log da eliminare
+     * @return il numero di righe eliminate
+     */
+    @Query("DELETE FROM sms_log WHERE id IN (:ids)")
+    int deleteByIds(List<Long> ids);
+
+    /**
+     * Stima lo spazio occupato dai log: lunghezza dei campi di testo piu'
+     * un costo fisso per riga (chiavi, interi e voci degli indici).
+     *
+     * @return la dimensione stimata in byte
+     */
+    @Query("SELECT IFNULL(SUM(LENGTH(message) + IFNULL(LENGTH(error_message), 0) "
+            + "+ IFNULL(LENGTH(message_id), 0) + 64), 0) FROM sms_log")
+    long estimateSizeBytes();
+
+    /**
+     * Recupera i tempi di risposta della centrale dalla cronologia, dal piu' recente.
+     * <p>
+     * Per ogni SMS inviato con successo alla centrale misura il tempo fino al primo
+     * SMS ricevuto dalla stessa centrale prima del successivo invio. Gli invii
+     * senza risposta vengono esclusi.
+     * </p>
+     *
+     * @param panelId l'ID della centrale
+     * @param limit numero massimo di invii da considerare
+     * @return i tempi di risposta in millisecondi
+     */
+    @Query("SELECT rtt FROM (SELECT "
+            + "(SELECT MIN(i.timestamp) FROM sms_log i WHERE i.panel_id = o.panel_id "
+            + "AND i.direction = " + SmsLog.DIRECTION_INCOMING + " "
+            + "AND i.timestamp > o.timestamp AND i.timestamp < IFNULL((SELECT MIN(n.timestamp) FROM sms_log n "
+            + "WHERE n.panel_id = o.panel_id AND n.direction = " + SmsLog.DIRECTION_OUTGOING + " "
+            + "AND n.timestamp > o.timestamp), 9223372036854775807)) - o.timestamp AS rtt, o.timestamp AS sent "
+            + "FROM sms_log o WHERE o.panel_id = :panelId AND o.direction = " + SmsLog.DIRECTION_OUTGOING + " "
+            + "AND o.status != " + SmsLog.STATUS_FAILED + " "
+            + "ORDER BY o.timestamp DESC LIMIT :limit) WHERE rtt IS NOT NULL ORDER BY sent DESC")
+    List<Long> getResponseTimes(long panelId, int limit);
+
     /**
      * Conta il numero totale di log SMS nel database.
      *
@@ -146,6 +274,19 @@ public interface SmsLogDao {
     @Query("UPDATE sms_log SET status = :status WHERE message_id = :messageId")
     void updateStatus(String messageId, int status);
 
+    /**
+     * Aggiorna lo stato di piu' log SMS con un'unica istruzione.
+     * <p>
+     * Usato da {@code SmsLogWriter} per applicare in blocco le transizioni
+     * di stato (inviato, consegnato) accumulate.
+     * </p>
+     *
+     * @param messageIds gli identificatori dei messaggi da aggiornare
+     * @param status il nuovo codice di stato
+     */
+    @Query("UPDATE sms_log SET status = :status WHERE message_id IN (:messageIds)")
+    void updateStatusBatch(List<String> messageIds, int status);
+
     /**
      * Aggiorna lo stato di un log SMS con un messaggio di errore.
      * <p>
@@ -34,10 +34,11 @@ public interface UserDao {
      * permettendo all'UI di aggiornarsi automaticamente quando i dati cambiano.
      * </p>
      *
+     * @param panelId l'ID della centrale
      * @return {@link LiveData} contenente la lista di tutti gli utenti ordinati per slot
      */
-    @Query("SELECT * FROM users ORDER BY slot ASC")
-    LiveData<List<User>> getAllUsers();
+    @Query("SELECT * FROM users WHERE panel_id = :panelId ORDER BY slot ASC")
+    LiveData<List<User>> getAllUsers(long panelId);
 
     /**
      * Recupera tutti gli utenti in modo sincrono ordinati per slot.
@@ -46,20 +47,22 @@ public interface UserDao {
      * Non deve essere chiamato dal thread principale dell'UI.
      * </p>
      *
+     * @param panelId l'ID della centrale
      * @return la lista di tutti gli utenti ordinati per slot
      */
-    @Query("SELECT * FROM users ORDER BY slot ASC")
-    List<User> getAllUsersSync();
+    @Query("SELECT * FROM users WHERE panel_id = :panelId ORDER BY slot ASC")
+    List<User> getAllUsersSync(long panelId);
 
     /**
      * Recupera un utente specifico tramite il suo slot come LiveData.
      *
+     * @param panelId l'ID della centrale
      * @param slot il numero dello slot dell'utente da cercare
      * @return {@link LiveData} contenente l'utente corrispondente allo slot,
      *         o null se non trovato
      */
-    @Query("SELECT * FROM users WHERE slot = :slot LIMIT 1")
-    LiveData<User> getUserBySlot(int slot);
+    @Query("SELECT * FROM users WHERE panel_id = :panelId AND slot = :slot LIMIT 1")
+    LiveData<User> getUserBySlot(long panelId, int slot);
 
     /**
      * Recupera un utente specifico tramite il suo slot in modo sincrono.
@@ -68,11 +71,12 @@ public interface UserDao {
      * Non deve essere chiamato dal thread principale dell'UI.
      * </p>
      *
+     * @param panelId l'ID della centrale
      * @param slot il numero dello slot dell'utente da cercare
      * @return l'utente corrispondente allo slot, o null se non trovato
      */
-    @Query("SELECT * FROM users WHERE slot = :slot LIMIT 1")
-    User getUserBySlotSync(int slot);
+    @Query("SELECT * FROM users WHERE panel_id = :panelId AND slot = :slot LIMIT 1")
+    User getUserBySlotSync(long panelId, int slot);
 
     /**
      * Recupera l'utente joker come LiveData.
@@ -81,10 +85,11 @@ public interface UserDao {
      * nel sistema di allarme.
      * </p>
      *
+     * @param panelId l'ID della centrale
      * @return {@link LiveData} contenente l'utente joker, o null se non configurato
      */
-    @Query("SELECT * FROM users WHERE is_joker = 1 LIMIT 1")
-    LiveData<User> getJokerUser();
+    @Query("SELECT * FROM users WHERE panel_id = :panelId AND is_joker = 1 LIMIT 1")
+    LiveData<User> getJokerUser(long panelId);
 
     /**
      * Recupera solo gli utenti abilitati ordinati per slot come LiveData.
@@ -92,15 +97,17 @@ public interface UserDao {
      * Utile per mostrare solo gli utenti attivi nel sistema.
      * </p>
      *
+     * @param panelId l'ID della centrale
      * @return {@link LiveData} contenente la lista degli utenti abilitati
      */
-    @Query("SELECT * FROM users WHERE enabled = 1 ORDER BY slot ASC")
-    LiveData<List<User>> getEnabledUsers();
+    @Query("SELECT * FROM users WHERE panel_id = :panelId AND enabled = 1 ORDER BY slot ASC")
+    LiveData<List<User>> getEnabledUsers(long panelId);
 
     /**
      * Inserisce un nuovo utente nel database.
      * <p>
-     * Se esiste gia' un utente con lo stesso ID, viene sostituito.
+     * Se esiste gia' un utente con lo stesso ID, o con lo stesso slot
+     * nella stessa centrale, viene sostituito.
      * </p>
      *
      * @param user l'utente da inserire
@@ -129,6 +136,14 @@ public interface UserDao {
     @Update
     void update(User user);
 
+    /**
+     * Aggiorna piu' utenti esistenti in un'unica transazione.
+     *
+     * @param users le righe con i dati aggiornati
+     */
+    @Update
+    void updateAll(List<User> users);
+
     /**
      * Elimina uno specifico utente dal database.
      *
@@ -137,6 +152,14 @@ public interface UserDao {
     @Delete
     void delete(User user);
 
+    /**
+     * Elimina piu' utenti in un'unica transazione.
+     *
+     * @param users le righe da eliminare
+     */
+    @Delete
+    void delete(List<User> users);
+
     /**
      * Elimina tutti gli utenti dal database.
      * <p>
@@ -146,6 +169,14 @@ public interface UserDao {
     @Query("DELETE FROM users")
     void deleteAll();
 
+    /**
+     * Elimina tutti gli utenti di una centrale.
+     *
+     * @param panelId l'ID della centrale
+     */
+    @Query("DELETE FROM users WHERE panel_id = :panelId")
+    void deleteByPanel(long panelId);
+
     /**
      * Aggiorna i dati di un utente specifico tramite il suo slot.
      * <p>
@@ -153,12 +184,13 @@ public interface UserDao {
      * senza dover recuperare e modificare l'intera entita'.
      * </p>
      *
+     * @param panelId l'ID della centrale
      * @param slot il numero dello slot dell'utente da aggiornare
      * @param name il nuovo nome dell'utente
      * @param permissions il nuovo valore dei permessi (bitmask)
      * @param enabled true se l'utente deve essere abilitato, false altrimenti
      * @param timestamp il timestamp dell'aggiornamento in millisecondi
      */
-    @Query("UPDATE users SET name = :name, permissions = :permissions, enabled = :enabled, updated_at = :timestamp WHERE slot = :slot")
-    void updateUser(int slot, String name, int permissions, boolean enabled, long timestamp);
+    @Query("UPDATE users SET name = :name, permissions = :permissions, enabled = :enabled, updated_at = :timestamp WHERE panel_id = :panelId AND slot = :slot")
+    void updateUser(long panelId, int slot, String name, int permissions, boolean enabled, long timestamp);
 }
@@ -34,10 +34,11 @@ public interface ZoneDao {
      * permettendo all'UI di aggiornarsi automaticamente quando i dati cambiano.
      * </p>
      *
+     * @param panelId l'ID della centrale
      * @return {@link LiveData} contenente la lista di tutte le zone ordinate per slot
      */
-    @Query("SELECT * FROM zones ORDER BY slot ASC")
-    LiveData<List<Zone>> getAllZones();
+    @Query("SELECT * FROM zones WHERE panel_id = :panelId ORDER BY slot ASC")
+    LiveData<List<Zone>> getAllZones(long panelId);
 
     /**
      * Recupera tutte le zone in modo sincrono ordinate per slot.
@@ -46,20 +47,22 @@ public interface ZoneDao {
      * Non deve essere chiamato dal thread principale dell'UI.
      * </p>
      *
+     * @param panelId l'ID della centrale
      * @return la lista di tutte le zone ordinate per slot
      */
-    @Query("SELECT * FROM zones ORDER BY slot ASC")
-    List<Zone> getAllZonesSync();
+    @Query("SELECT * FROM zones WHERE panel_id = :panelId ORDER BY slot ASC")
+    List<Zone> getAllZonesSync(long panelId);
 
     /**
      * Recupera una zona specifica tramite il suo slot come LiveData.
      *
+     * @param panelId l'ID della centrale
      * @param slot il numero dello slot della zona da cercare
      * @return {@link LiveData} contenente la zona corrispondente allo slot,
      *         o null se non trovata
      */
-    @Query("SELECT * FROM zones WHERE slot = :slot LIMIT 1")
-    LiveData<Zone> getZoneBySlot(int slot);
+    @Query("SELECT * FROM zones WHERE panel_id = :panelId AND slot = :slot LIMIT 1")
+    LiveData<Zone> getZoneBySlot(long panelId, int slot);
 
     /**
      * Recupera una zona specifica tramite il suo slot in modo sincrono.
@@ -68,11 +71,12 @@ public interface ZoneDao {
      * Non deve essere chiamato dal thread principale dell'UI.
      * </p>
      *
+     * @param panelId l'ID della centrale
      * @param slot il numero dello slot della zona da cercare
      * @return la zona corrispondente allo slot, o null se non trovata
      */
-    @Query("SELECT * FROM zones WHERE slot = :slot LIMIT 1")
-    Zone getZoneBySlotSync(int slot);
+    @Query("SELECT * FROM zones WHERE panel_id = :panelId AND slot = :slot LIMIT 1")
+    Zone getZoneBySlotSync(long panelId, int slot);
 
     /**
      * Recupera solo le zone abilitate ordinate per slot come LiveData.
@@ -80,15 +84,17 @@ public interface ZoneDao {
      * Utile per mostrare solo le zone attive nel monitoraggio dell'allarme.
      * </p>
      *
+     * @param panelId l'ID della centrale
      * @return {@link LiveData} contenente la lista delle zone abilitate
      */
-    @Query("SELECT * FROM zones WHERE enabled = 1 ORDER BY slot ASC")
-    LiveData<List<Zone>> getEnabledZones();
+    @Query("SELECT * FROM zones WHERE panel_id = :panelId AND enabled = 1 ORDER BY slot ASC")
+    LiveData<List<Zone>> getEnabledZones(long panelId);
 
     /**
      * Inserisce una nuova zona nel database.
      * <p>
-     * Se esiste gia' una zona con lo stesso ID, viene sostituita.
+     * Se esiste gia' una zona con lo stesso ID, o con lo stesso slot
+     * nella stessa centrale, viene sostituita.
      * </p>
      *
      * @param zone la zona da inserire
@@ -117,6 +123,14 @@ public interface ZoneDao {
     @Update
     void update(Zone zone);
 
+    /**
+     * Aggiorna piu' zone esistenti in un'unica transazione.
+     *
+     * @param zones le righe con i dati aggiornati
+     */
+    @Update
+    void updateAll(List<Zone> zones);
+
     /**
      * Elimina una specifica zona dal database.
      *
@@ -125,6 +139,14 @@ public interface ZoneDao {
     @Delete
     void delete(Zone zone);
 
+    /**
+     * Elimina piu' zone in un'unica transazione.
+     *
+     * @param zones le righe da eliminare
+     */
+    @Delete
+    void delete(List<Zone> zones);
+
     /**
      * Elimina tutte le zone dal database.
      * <p>
@@ -134,6 +156,17 @@ public interface ZoneDao {
     @Query("DELETE FROM zones")
     void deleteAll();
 
+    /**
+     * Elimina tutte le zone di una centrale.
+     * <p>
+     * Usato prima di salvare le zone ricevute da una nuova risposta CONF1.
+     * </p>
+     *
+     * @param panelId l'ID della centrale
+     */
+    @Query("DELETE FROM zones WHERE panel_id = :panelId")
+    void deleteByPanel(long panelId);
+
     /**
      * Aggiorna i dati di una zona specifica tramite il suo slot.
      * <p>
@@ -141,11 +174,12 @@ public interface ZoneDao {
      * senza dover recuperare e modificare l'intera entita'.
      * </p>
      *
+     * @param panelId l'ID della centrale
      * @param slot il numero dello slot della zona da aggiornare
      * @param name il nuovo nome della zona
      * @param enabled true se la zona deve essere abilitata, false altrimenti
      * @param timestamp il timestamp dell'aggiornamento in millisecondi
      */
-    @Query("UPDATE zones SET name = :name, enabled = :enabled, updated_at = :timestamp WHERE slot = :slot")
-    void updateZone(int slot, String name, boolean enabled, long timestamp);
+    @Query("UPDATE zones SET name = :name, enabled = :enabled, updated_at = :timestamp WHERE panel_id = :panelId AND slot = :slot")
+    void updateZone(long panelId, int slot, String name, boolean enabled, long timestamp);
 }
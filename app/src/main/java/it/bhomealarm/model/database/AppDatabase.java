@@ -8,14 +8,21 @@ import androidx.room.RoomDatabase;
 
 import it.bhomealarm.model.dao.AlarmConfigDao;
 import it.bhomealarm.model.dao.AppSettingsDao;
+import it.bhomealarm.model.dao.ConfigurationDao;
+import it.bhomealarm.model.dao.OutboundCommandDao;
+import it.bhomealarm.model.dao.PendingCommandDao;
 import it.bhomealarm.model.dao.ScenarioDao;
+import it.bhomealarm.model.dao.SmsLogArchiveDao;
 import it.bhomealarm.model.dao.SmsLogDao;
 import it.bhomealarm.model.dao.UserDao;
 import it.bhomealarm.model.dao.ZoneDao;
 import it.bhomealarm.model.entity.AlarmConfig;
 import it.bhomealarm.model.entity.AppSettings;
+import it.bhomealarm.model.entity.OutboundCommand;
+import it.bhomealarm.model.entity.PendingCommand;
 import it.bhomealarm.model.entity.Scenario;
 import it.bhomealarm.model.entity.SmsLog;
+import it.bhomealarm.model.entity.SmsLogArchive;
 import it.bhomealarm.model.entity.User;
 import it.bhomealarm.model.entity.Zone;
 
@@ -35,6 +42,9 @@ import it.bhomealarm.model.entity.Zone;
  *   <li>{@link Scenario} - Scenari di attivazione/disattivazione dell'allarme</li>
  *   <li>{@link User} - Utenti autorizzati a gestire la centrale</li>
  *   <li>{@link SmsLog} - Log dei messaggi SMS scambiati con la centrale</li>
+ *   <li>{@link SmsLogArchive} - Blocchi compressi dei log SMS rimossi dalla conservazione</li>
+ *   <li>{@link PendingCommand} - Comandi inviati in attesa di risposta</li>
+ *   <li>{@link OutboundCommand} - Coda persistente dei comandi in uscita</li>
  *   <li>{@link AppSettings} - Impostazioni generali dell'applicazione</li>
  * </ul>
  *
@@ -46,9 +56,22 @@ import it.bhomealarm.model.entity.Zone;
  *   <li>{@link ScenarioDao} - Operazioni sugli scenari</li>
  *   <li>{@link UserDao} - Operazioni sugli utenti</li>
  *   <li>{@link SmsLogDao} - Operazioni sul log SMS</li>
+ *   <li>{@link SmsLogArchiveDao} - Operazioni sull'archivio dei log SMS</li>
+ *   <li>{@link PendingCommandDao} - Operazioni sui comandi in attesa di risposta</li>
+ *   <li>{@link OutboundCommandDao} - Operazioni sulla coda dei comandi in uscita</li>
+ *   <li>{@link ConfigurationDao} - Applicazione transazionale delle risposte CONF1-5</li>
  *   <li>{@link AppSettingsDao} - Operazioni sulle impostazioni</li>
  * </ul>
  *
+ * <h2>Centrali multiple:</h2>
+ * <p>
+ * Ogni riga di {@link AlarmConfig} rappresenta una centrale. Le tabelle {@code zones},
+ * {@code scenarios}, {@code users}, {@code sms_log}, {@code pending_commands} e {@code outbound_commands}
+ * hanno una colonna {@code panel_id}
+ * con chiave esterna verso {@code alarm_config(id)} ({@code ON DELETE CASCADE});
+ * zone, scenari e utenti hanno un indice univoco su ({@code panel_id}, {@code slot}).
+ * </p>
+ *
  * <h2>Pattern Singleton:</h2>
  * <p>
  * La classe implementa il pattern Singleton thread-safe con double-checked locking
@@ -57,9 +80,18 @@ import it.bhomealarm.model.entity.Zone;
  *
  * <h2>Strategia di migrazione:</h2>
  * <p>
- * Il database utilizza {@code fallbackToDestructiveMigration()} che ricrea il database
- * da zero in caso di cambiamento di versione. Questo approccio e adatto durante lo
- * sviluppo ma potrebbe richiedere migrazioni esplicite in produzione.
+ * Gli aggiornamenti di versione usano le migrazioni esplicite di
+ * {@link DatabaseMigrations}, che conservano centrali, configurazione e log SMS.
+ * Solo il downgrade (installazione di una versione precedente) ricrea il database
+ * da zero; in quel caso la centrale viene ricreata dal numero salvato nelle
+ * preferenze (vedi {@code AlarmRepository}).
+ * </p>
+ *
+ * <h2>Compattazione:</h2>
+ * <p>
+ * Il database viene creato in modalita' {@code auto_vacuum = INCREMENTAL}
+ * ({@link IncrementalVacuumOpenHelperFactory}), cosi' lo spazio liberato dalla
+ * conservazione dei log puo' essere restituito al filesystem senza riscrivere il file.
  * </p>
  *
  * @author BHomeAlarm Team
@@ -74,9 +106,12 @@ import it.bhomealarm.model.entity.Zone;
         Scenario.class,
         User.class,
         SmsLog.class,
+        SmsLogArchive.class,
+        PendingCommand.class,
+        OutboundCommand.class,
         AppSettings.class
     },
-    version = 1,
+    version = 7,
     exportSchema = false
 )
 public abstract class AppDatabase extends RoomDatabase {
@@ -122,6 +157,34 @@ public abstract class AppDatabase extends RoomDatabase {
      */
     public abstract SmsLogDao smsLogDao();
 
+    /**
+     * Restituisce il DAO per l'archivio compresso dei log SMS.
+     *
+     * @return istanza di {@link SmsLogArchiveDao} per operazioni su {@link SmsLogArchive}
+     */
+    public abstract SmsLogArchiveDao smsLogArchiveDao();
+
+    /**
+     * Restituisce il DAO per i comandi in attesa di risposta.
+     *
+     * @return istanza di {@link PendingCommandDao} per operazioni su {@link PendingCommand}
+     */
+    public abstract PendingCommandDao pendingCommandDao();
+
+    /**
+     * Restituisce il DAO per la coda dei comandi in uscita.
+     *
+     * @return istanza di {@link OutboundCommandDao} per operazioni su {@link OutboundCommand}
+     */
+    public abstract OutboundCommandDao outboundCommandDao();
+
+    /**
+     * Restituisce il DAO per l'applicazione transazionale delle risposte CONF1-5.
+     *
+     * @return istanza di {@link ConfigurationDao}
+     */
+    public abstract ConfigurationDao configurationDao();
+
     /**
      * Restituisce il DAO per le operazioni sulle impostazioni dell'app.
      *
@@ -150,7 +213,9 @@ public abstract class AppDatabase extends RoomDatabase {
                             AppDatabase.class,
                             DATABASE_NAME
                     )
-                    .fallbackToDestructiveMigration()
+                    .openHelperFactory(new IncrementalVacuumOpenHelperFactory())
+                    .addMigrations(DatabaseMigrations.ALL)
+                    .fallbackToDestructiveMigrationOnDowngrade()
                     .build();
                 }
             }
@@ -0,0 +1,242 @@
+package it.bhomealarm.model.database;
+
+import androidx.annotation.NonNull;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+/**
+ * Migrazioni esplicite dello schema di {@link AppDatabase}.
+ * <p>
+ * Sostituiscono {@code fallbackToDestructiveMigration()}: un aggiornamento
+ * dell'app non cancella piu' centrali, configurazione e cronologia SMS.
+ * <p>
+ * Le istruzioni {@code CREATE} riproducono esattamente lo schema generato da
+ * Room per le entity della versione di destinazione (colonne, chiavi esterne
+ * e nomi degli indici), altrimenti la validazione all'apertura fallisce.
+ *
+ * <h2>Versioni:</h2>
+ * <ul>
+ *   <li><b>1 &rarr; 2</b>: centrali multiple. {@code alarm_config} riceve la colonna
+ *       {@code name}; {@code zones}, {@code scenarios}, {@code users} e {@code sms_log}
+ *       vengono ricostruite con {@code panel_id} e chiave esterna verso
+ *       {@code alarm_config(id)}. Le righe esistenti vengono associate alla prima
+ *       centrale; se non ne esiste nessuna, zone, scenari e utenti vengono scartati
+ *       (si riottengono con la configurazione) mentre i log restano senza centrale.</li>
+ *   <li><b>2 &rarr; 3</b>: indici su {@code sms_log} per timestamp, message_id (univoco)
+ *       e direzione + timestamp.</li>
+ *   <li><b>3 &rarr; 4</b>: tabella {@code sms_log_archive} per i log compressi dal job
+ *       di conservazione.</li>
+ *   <li><b>4 &rarr; 5</b>: tabella {@code pending_commands} per la correlazione tra
+ *       comandi inviati e risposte.</li>
+ *   <li><b>5 &rarr; 6</b>: tabella {@code outbound_commands} per la coda persistente
+ *       dei comandi in uscita.</li>
+ *   <li><b>6 &rarr; 7</b>: colonne {@code conf1_hash}-{@code conf5_hash} in
+ *       {@code alarm_config} (0 = impronta sconosciuta: la prima sincronizzazione
+ *       riscrive tutte le sezioni).</li>
+ * </ul>
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see AppDatabase
+ */
+public final class DatabaseMigrations {
+
+    private DatabaseMigrations() {} // No instantiation
+
+    /** ID della prima centrale, a cui vengono associati i dati della versione 1. */
+    private static final String FIRST_PANEL = "(SELECT MIN(id) FROM alarm_config)";
+
+    /** Centrali multiple con {@code panel_id} nelle tabelle figlie. */
+    public static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `alarm_config` ADD COLUMN `name` TEXT");
+
+            // Zone, scenari e utenti: l'indice univoco viene creato prima della copia,
+            // cosi' con OR REPLACE in caso di slot duplicati vince la riga piu' recente.
+            // L'indice segue la tabella quando viene rinominata.
+            db.execSQL("CREATE TABLE IF NOT EXISTS `zones_new` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`panel_id` INTEGER NOT NULL, "
+                    + "`slot` INTEGER NOT NULL, "
+                    + "`name` TEXT NOT NULL, "
+                    + "`enabled` INTEGER NOT NULL, "
+                    + "`description` TEXT, "
+                    + "`updated_at` INTEGER NOT NULL, "
+                    + "FOREIGN KEY(`panel_id`) REFERENCES `alarm_config`(`id`) "
+                    + "ON UPDATE NO ACTION ON DELETE CASCADE )");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_zones_panel_id_slot` "
+                    + "ON `zones_new` (`panel_id`, `slot`)");
+            db.execSQL("INSERT OR REPLACE INTO `zones_new` "
+                    + "(`id`, `panel_id`, `slot`, `name`, `enabled`, `description`, `updated_at`) "
+                    + "SELECT `id`, " + FIRST_PANEL + ", `slot`, `name`, `enabled`, `description`, `updated_at` "
+                    + "FROM `zones` WHERE EXISTS (SELECT 1 FROM `alarm_config`) ORDER BY `id`");
+            replaceTable(db, "zones");
+
+            // Scenari
+            db.execSQL("CREATE TABLE IF NOT EXISTS `scenarios_new` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`panel_id` INTEGER NOT NULL, "
+                    + "`slot` INTEGER NOT NULL, "
+                    + "`name` TEXT NOT NULL, "
+                    + "`zone_mask` INTEGER NOT NULL, "
+                    + "`enabled` INTEGER NOT NULL, "
+                    + "`is_custom` INTEGER NOT NULL, "
+                    + "`updated_at` INTEGER NOT NULL, "
+                    + "FOREIGN KEY(`panel_id`) REFERENCES `alarm_config`(`id`) "
+                    + "ON UPDATE NO ACTION ON DELETE CASCADE )");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_scenarios_panel_id_slot` "
+                    + "ON `scenarios_new` (`panel_id`, `slot`)");
+            db.execSQL("INSERT OR REPLACE INTO `scenarios_new` "
+                    + "(`id`, `panel_id`, `slot`, `name`, `zone_mask`, `enabled`, `is_custom`, `updated_at`) "
+                    + "SELECT `id`, " + FIRST_PANEL + ", `slot`, `name`, `zone_mask`, `enabled`, `is_custom`, `updated_at` "
+                    + "FROM `scenarios` WHERE EXISTS (SELECT 1 FROM `alarm_config`) ORDER BY `id`");
+            replaceTable(db, "scenarios");
+
+            // Utenti
+            db.execSQL("CREATE TABLE IF NOT EXISTS `users_new` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`panel_id` INTEGER NOT NULL, "
+                    + "`slot` INTEGER NOT NULL, "
+                    + "`name` TEXT NOT NULL, "
+                    + "`permissions` INTEGER NOT NULL, "
+                    + "`is_joker` INTEGER NOT NULL, "
+                    + "`enabled` INTEGER NOT NULL, "
+                    + "`updated_at` INTEGER NOT NULL, "
+                    + "FOREIGN KEY(`panel_id`) REFERENCES `alarm_config`(`id`) "
+                    + "ON UPDATE NO ACTION ON DELETE CASCADE )");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_users_panel_id_slot` "
+                    + "ON `users_new` (`panel_id`, `slot`)");
+            db.execSQL("INSERT OR REPLACE INTO `users_new` "
+                    + "(`id`, `panel_id`, `slot`, `name`, `permissions`, `is_joker`, `enabled`, `updated_at`) "
+                    + "SELECT `id`, " + FIRST_PANEL + ", `slot`, `name`, `permissions`, `is_joker`, `enabled`, `updated_at` "
+                    + "FROM `users` WHERE EXISTS (SELECT 1 FROM `alarm_config`) ORDER BY `id`");
+            replaceTable(db, "users");
+
+            // Log SMS (panel_id nullable: i log restano anche senza centrale)
+            db.execSQL("CREATE TABLE IF NOT EXISTS `sms_log_new` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`panel_id` INTEGER, "
+                    + "`direction` INTEGER NOT NULL, "
+                    + "`message` TEXT NOT NULL, "
+                    + "`status` INTEGER NOT NULL, "
+                    + "`error_message` TEXT, "
+                    + "`timestamp` INTEGER NOT NULL, "
+                    + "`message_id` TEXT, "
+                    + "FOREIGN KEY(`panel_id`) REFERENCES `alarm_config`(`id`) "
+                    + "ON UPDATE NO ACTION ON DELETE CASCADE )");
+            db.execSQL("INSERT INTO `sms_log_new` "
+                    + "(`id`, `panel_id`, `direction`, `message`, `status`, `error_message`, `timestamp`, `message_id`) "
+                    + "SELECT `id`, " + FIRST_PANEL + ", `direction`, `message`, `status`, `error_message`, `timestamp`, `message_id` "
+                    + "FROM `sms_log`");
+            replaceTable(db, "sms_log");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_sms_log_panel_id` ON `sms_log` (`panel_id`)");
+        }
+    };
+
+    /** Indici su {@code sms_log}. */
+    public static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            // L'indice su message_id e' univoco: elimina eventuali duplicati tenendo il piu' recente
+            db.execSQL("DELETE FROM `sms_log` WHERE `message_id` IS NOT NULL AND `id` NOT IN "
+                    + "(SELECT MAX(`id`) FROM `sms_log` WHERE `message_id` IS NOT NULL GROUP BY `message_id`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_sms_log_timestamp` ON `sms_log` (`timestamp`)");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_sms_log_message_id` ON `sms_log` (`message_id`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_sms_log_direction_timestamp` "
+                    + "ON `sms_log` (`direction`, `timestamp`)");
+        }
+    };
+
+    /** Archivio compresso dei log SMS. */
+    public static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `sms_log_archive` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`first_timestamp` INTEGER NOT NULL, "
+                    + "`last_timestamp` INTEGER NOT NULL, "
+                    + "`row_count` INTEGER NOT NULL, "
+                    + "`format` INTEGER NOT NULL, "
+                    + "`payload` BLOB NOT NULL, "
+                    + "`created_at` INTEGER NOT NULL)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_sms_log_archive_last_timestamp` "
+                    + "ON `sms_log_archive` (`last_timestamp`)");
+        }
+    };
+
+    /** Comandi in attesa di risposta. */
+    public static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `pending_commands` ("
+                    + "`message_id` TEXT NOT NULL, "
+                    + "`panel_id` INTEGER NOT NULL, "
+                    + "`command` TEXT NOT NULL, "
+                    + "`expected_responses` TEXT NOT NULL, "
+                    + "`sent_at` INTEGER NOT NULL, "
+                    + "`expires_at` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`message_id`), "
+                    + "FOREIGN KEY(`panel_id`) REFERENCES `alarm_config`(`id`) "
+                    + "ON UPDATE NO ACTION ON DELETE CASCADE )");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_pending_commands_panel_id` "
+                    + "ON `pending_commands` (`panel_id`)");
+        }
+    };
+
+    /** Coda persistente dei comandi in uscita. */
+    public static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `outbound_commands` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`message_id` TEXT NOT NULL, "
+                    + "`panel_id` INTEGER, "
+                    + "`phone_number` TEXT NOT NULL, "
+                    + "`command` TEXT NOT NULL, "
+                    + "`sim_slot` INTEGER NOT NULL, "
+                    + "`status` INTEGER NOT NULL, "
+                    + "`attempts` INTEGER NOT NULL, "
+                    + "`created_at` INTEGER NOT NULL, "
+                    + "`next_attempt_at` INTEGER NOT NULL, "
+                    + "`dispatched_at` INTEGER NOT NULL, "
+                    + "`last_error` TEXT, "
+                    + "FOREIGN KEY(`panel_id`) REFERENCES `alarm_config`(`id`) "
+                    + "ON UPDATE NO ACTION ON DELETE CASCADE )");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_outbound_commands_panel_id` "
+                    + "ON `outbound_commands` (`panel_id`)");
+            db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_outbound_commands_message_id` "
+                    + "ON `outbound_commands` (`message_id`)");
+        }
+    };
+
+    /** Impronte delle risposte CONF1-5 per la sincronizzazione differenziale. */
+    public static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            for (int section = 1; section <= 5; section++) {
+                db.execSQL("ALTER TABLE `alarm_config` ADD COLUMN `conf" + section
+                        + "_hash` INTEGER NOT NULL DEFAULT 0");
+            }
+        }
+    };
+
+    /** Tutte le migrazioni, in ordine di versione. */
+    public static final Migration[] ALL = {
+        MIGRATION_1_2,
+        MIGRATION_2_3,
+        MIGRATION_3_4,
+        MIGRATION_4_5,
+        MIGRATION_5_6,
+        MIGRATION_6_7
+    };
+
+    /**
+     * Sostituisce una tabella con la sua copia ricostruita {@code <table>_new}.
+     * Gli indici creati sulla copia la seguono nella rinomina.
+     */
+    private static void replaceTable(SupportSQLiteDatabase db, String table) {
+        db.execSQL("DROP TABLE `" + table + "`");
+        db.execSQL("ALTER TABLE `" + table + "_new` RENAME TO `" + table + "`");
+    }
+}
@@ -0,0 +1,82 @@
+package it.bhomealarm.model.database;
+
+import androidx.annotation.NonNull;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteOpenHelper;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+
+/**
+ * Factory dell'open helper di Room che crea il database in modalita'
+ * {@code auto_vacuum = INCREMENTAL}.
+ * <p>
+ * La modalita' si puo' scegliere solo prima che esista una tabella: va quindi
+ * impostata in {@code onConfigure}, che SQLite esegue prima di {@code onCreate}.
+ * Sui database gia' esistenti il pragma viene registrato ma non ha effetto fino
+ * a un VACUUM completo, che esegue una sola volta la conservazione dei log
+ * (vedi {@code SmsLogRetention}). Tutti gli altri eventi vengono inoltrati al
+ * callback di Room.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see AppDatabase
+ */
+final class IncrementalVacuumOpenHelperFactory implements SupportSQLiteOpenHelper.Factory {
+
+    private final SupportSQLiteOpenHelper.Factory delegate = new FrameworkSQLiteOpenHelperFactory();
+
+    @NonNull
+    @Override
+    public SupportSQLiteOpenHelper create(@NonNull SupportSQLiteOpenHelper.Configuration configuration) {
+        return delegate.create(SupportSQLiteOpenHelper.Configuration.builder(configuration.context)
+                .name(configuration.name)
+                .callback(new Callback(configuration.callback))
+                .noBackupDirectory(configuration.useNoBackupDirectory)
+                .allowDataLossOnRecovery(configuration.allowDataLossOnRecovery)
+                .build());
+    }
+
+    /**
+     * Callback che imposta la modalita' di auto_vacuum e delega a quello di Room.
+     */
+    private static final class Callback extends SupportSQLiteOpenHelper.Callback {
+
+        private final SupportSQLiteOpenHelper.Callback room;
+
+        Callback(SupportSQLiteOpenHelper.Callback room) {
+            super(room.version);
+            this.room = room;
+        }
+
+        @Override
+        public void onConfigure(@NonNull SupportSQLiteDatabase db) {
+            // Fuori da transazioni e prima della creazione delle tabelle
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            room.onConfigure(db);
+        }
+
+        @Override
+        public void onCreate(@NonNull SupportSQLiteDatabase db) {
+            room.onCreate(db);
+        }
+
+        @Override
+        public void onUpgrade(@NonNull SupportSQLiteDatabase db, int oldVersion, int newVersion) {
+            room.onUpgrade(db, oldVersion, newVersion);
+        }
+
+        @Override
+        public void onDowngrade(@NonNull SupportSQLiteDatabase db, int oldVersion, int newVersion) {
+            room.onDowngrade(db, oldVersion, newVersion);
+        }
+
+        @Override
+        public void onOpen(@NonNull SupportSQLiteDatabase db) {
+            room.onOpen(db);
+        }
+
+        @Override
+        public void onCorruption(@NonNull SupportSQLiteDatabase db) {
+            room.onCorruption(db);
+        }
+    }
+}
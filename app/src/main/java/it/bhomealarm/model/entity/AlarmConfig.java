@@ -15,10 +15,16 @@ import androidx.room.PrimaryKey;
  *     <li>Flag di configurazione principale</li>
  *     <li>Ultimo stato conosciuto del sistema</li>
  *     <li>Preferenze SIM per dispositivi dual-SIM</li>
+ *     <li>Impronta di ciascuna risposta CONF1-5 applicata, per la sincronizzazione differenziale</li>
  * </ul>
  * <p>
  * I flag di configurazione sono ricevuti dalla risposta CONF1 dell'allarme
  * e indicano quali funzionalità sono abilitate per l'utente corrente.
+ * <p>
+ * Ogni riga rappresenta una centrale (panel): l'app puo' gestire piu' centrali,
+ * e zone, scenari, utenti e log SMS vi fanno riferimento tramite {@code panel_id}.
+ * La centrale attiva e' memorizzata nelle preferenze
+ * ({@link it.bhomealarm.util.Constants#PREF_ACTIVE_PANEL_ID}).
  *
  * @see it.bhomealarm.model.dao.AlarmConfigDao
  */
@@ -65,6 +71,10 @@ public class AlarmConfig {
     @NonNull
     private String phoneNumber = "";
 
+    /** Nome descrittivo della centrale (es. "Casa", "Ufficio") */
+    @ColumnInfo(name = "name")
+    private String name;
+
     /** Versione firmware dell'allarme (es. "3.2.1") */
     @ColumnInfo(name = "version")
     private String version;
@@ -93,6 +103,26 @@ public class AlarmConfig {
     @ColumnInfo(name = "preferred_sim")
     private int preferredSim;
 
+    /** Impronta della risposta CONF1 all'ultima sincronizzazione (0 = sconosciuta) */
+    @ColumnInfo(name = "conf1_hash", defaultValue = "0")
+    private long conf1Hash;
+
+    /** Impronta della risposta CONF2 all'ultima sincronizzazione (0 = sconosciuta) */
+    @ColumnInfo(name = "conf2_hash", defaultValue = "0")
+    private long conf2Hash;
+
+    /** Impronta della risposta CONF3 all'ultima sincronizzazione (0 = sconosciuta) */
+    @ColumnInfo(name = "conf3_hash", defaultValue = "0")
+    private long conf3Hash;
+
+    /** Impronta della risposta CONF4 all'ultima sincronizzazione (0 = sconosciuta) */
+    @ColumnInfo(name = "conf4_hash", defaultValue = "0")
+    private long conf4Hash;
+
+    /** Impronta della risposta CONF5 all'ultima sincronizzazione (0 = sconosciuta) */
+    @ColumnInfo(name = "conf5_hash", defaultValue = "0")
+    private long conf5Hash;
+
     /** Timestamp di creazione del record */
     @ColumnInfo(name = "created_at")
     private long createdAt;
@@ -109,6 +139,9 @@ public class AlarmConfig {
     public String getPhoneNumber() { return phoneNumber; }
     public void setPhoneNumber(@NonNull String phoneNumber) { this.phoneNumber = phoneNumber; }
 
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
     public String getVersion() { return version; }
     public void setVersion(String version) { this.version = version; }
 
@@ -130,6 +163,21 @@ public class AlarmConfig {
     public int getPreferredSim() { return preferredSim; }
     public void setPreferredSim(int preferredSim) { this.preferredSim = preferredSim; }
 
+    public long getConf1Hash() { return conf1Hash; }
+    public void setConf1Hash(long conf1Hash) { this.conf1Hash = conf1Hash; }
+
+    public long getConf2Hash() { return conf2Hash; }
+    public void setConf2Hash(long conf2Hash) { this.conf2Hash = conf2Hash; }
+
+    public long getConf3Hash() { return conf3Hash; }
+    public void setConf3Hash(long conf3Hash) { this.conf3Hash = conf3Hash; }
+
+    public long getConf4Hash() { return conf4Hash; }
+    public void setConf4Hash(long conf4Hash) { this.conf4Hash = conf4Hash; }
+
+    public long getConf5Hash() { return conf5Hash; }
+    public void setConf5Hash(long conf5Hash) { this.conf5Hash = conf5Hash; }
+
     public long getCreatedAt() { return createdAt; }
     public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
 
@@ -138,6 +186,40 @@ public class AlarmConfig {
 
     // ========== Metodi Helper ==========
 
+    /**
+     * Restituisce l'impronta salvata di una sezione di configurazione.
+     *
+     * @param section Numero della sezione (1-5, CONF1-CONF5)
+     * @return impronta dell'ultima risposta applicata, 0 se sconosciuta
+     */
+    public long getSectionHash(int section) {
+        switch (section) {
+            case 1: return conf1Hash;
+            case 2: return conf2Hash;
+            case 3: return conf3Hash;
+            case 4: return conf4Hash;
+            case 5: return conf5Hash;
+            default: return 0L;
+        }
+    }
+
+    /**
+     * Imposta l'impronta di una sezione di configurazione.
+     *
+     * @param section Numero della sezione (1-5, CONF1-CONF5)
+     * @param hash Impronta della risposta applicata (0 = sconosciuta)
+     */
+    public void setSectionHash(int section, long hash) {
+        switch (section) {
+            case 1: conf1Hash = hash; break;
+            case 2: conf2Hash = hash; break;
+            case 3: conf3Hash = hash; break;
+            case 4: conf4Hash = hash; break;
+            case 5: conf5Hash = hash; break;
+            default: break;
+        }
+    }
+
     /**
      * Verifica se un permesso specifico è abilitato.
      *
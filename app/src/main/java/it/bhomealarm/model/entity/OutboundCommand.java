@@ -0,0 +1,177 @@
+package it.bhomealarm.model.entity;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Ignore;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Entità Room che rappresenta un comando nella coda di invio persistente.
+ * <p>
+ * I comandi vengono accodati da {@code SmsService.sendCommand()} e inviati da
+ * {@code OutboundCommandQueue}, uno alla volta per numero di destinazione e
+ * nell'ordine di accodamento. La riga resta in tabella finche' l'invio non e'
+ * confermato dalla rete o non fallisce definitivamente: un comando accodato
+ * sopravvive alla chiusura del processo e al riavvio del dispositivo.
+ * <p>
+ * Il {@code message_id} e' assegnato all'accodamento ed e' lo stesso per tutti
+ * i tentativi di invio della riga.
+ *
+ * @see it.bhomealarm.model.dao.OutboundCommandDao
+ */
+@Entity(
+    tableName = "outbound_commands",
+    foreignKeys = @ForeignKey(
+        entity = AlarmConfig.class,
+        parentColumns = "id",
+        childColumns = "panel_id",
+        onDelete = ForeignKey.CASCADE
+    ),
+    indices = {
+        @Index("panel_id"),
+        @Index(value = "message_id", unique = true)
+    }
+)
+public class OutboundCommand {
+
+    // ========== Costanti Stato ==========
+
+    /** Comando in coda, in attesa di invio */
+    public static final int STATUS_QUEUED = 0;
+
+    /** SMS consegnato a SmsManager, in attesa dell'esito di invio */
+    public static final int STATUS_SENDING = 1;
+
+    // ========== Campi Database ==========
+
+    /** ID univoco nel database (auto-generato); definisce l'ordine della coda */
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+
+    /** ID del messaggio SMS (UUID) */
+    @ColumnInfo(name = "message_id")
+    @NonNull
+    private String messageId = "";
+
+    /** Centrale destinataria (null se il numero non corrisponde a una centrale) */
+    @ColumnInfo(name = "panel_id")
+    private Long panelId;
+
+    /** Numero di telefono del destinatario */
+    @ColumnInfo(name = "phone_number")
+    @NonNull
+    private String phoneNumber = "";
+
+    /** Comando da inviare */
+    @ColumnInfo(name = "command")
+    @NonNull
+    private String command = "";
+
+    /** Slot SIM dell'ultimo invio, o richiesto se mai inviato (-1 = SIM predefinita) */
+    @ColumnInfo(name = "sim_slot")
+    private int simSlot = -1;
+
+    /** Stato della riga: QUEUED o SENDING */
+    @ColumnInfo(name = "status")
+    private int status = STATUS_QUEUED;
+
+    /** Tentativi di invio effettuati */
+    @ColumnInfo(name = "attempts")
+    private int attempts;
+
+    /** Timestamp di accodamento (millisecondi) */
+    @ColumnInfo(name = "created_at")
+    private long createdAt;
+
+    /** Timestamp prima del quale la riga non va inviata (millisecondi) */
+    @ColumnInfo(name = "next_attempt_at")
+    private long nextAttemptAt;
+
+    /** Timestamp dell'ultimo tentativo di invio (millisecondi, 0 = mai inviato) */
+    @ColumnInfo(name = "dispatched_at")
+    private long dispatchedAt;
+
+    /** Errore dell'ultimo tentativo fallito */
+    @ColumnInfo(name = "last_error")
+    private String lastError;
+
+    /**
+     * Costruttore vuoto richiesto da Room.
+     */
+    public OutboundCommand() {
+    }
+
+    /**
+     * Crea un comando da accodare.
+     *
+     * @param messageId ID del messaggio SMS
+     * @param panelId Centrale destinataria, o null
+     * @param phoneNumber Numero del destinatario
+     * @param command Comando da inviare
+     * @param simSlot Slot SIM (-1 = predefinita)
+     * @param createdAt Timestamp di accodamento
+     */
+    @Ignore
+    public OutboundCommand(@NonNull String messageId, Long panelId, @NonNull String phoneNumber,
+                           @NonNull String command, int simSlot, long createdAt) {
+        this.messageId = messageId;
+        this.panelId = panelId;
+        this.phoneNumber = phoneNumber;
+        this.command = command;
+        this.simSlot = simSlot;
+        this.createdAt = createdAt;
+        this.nextAttemptAt = createdAt;
+    }
+
+    /**
+     * Verifica se il comando non e' ancora mai stato inviato.
+     *
+     * @return true se la riga e' in coda e senza tentativi
+     */
+    public boolean isUndispatched() {
+        return status == STATUS_QUEUED && attempts == 0;
+    }
+
+    // Getters and Setters
+    public long getId() { return id; }
+    public void setId(long id) { this.id = id; }
+
+    @NonNull
+    public String getMessageId() { return messageId; }
+    public void setMessageId(@NonNull String messageId) { this.messageId = messageId; }
+
+    public Long getPanelId() { return panelId; }
+    public void setPanelId(Long panelId) { this.panelId = panelId; }
+
+    @NonNull
+    public String getPhoneNumber() { return phoneNumber; }
+    public void setPhoneNumber(@NonNull String phoneNumber) { this.phoneNumber = phoneNumber; }
+
+    @NonNull
+    public String getCommand() { return command; }
+    public void setCommand(@NonNull String command) { this.command = command; }
+
+    public int getSimSlot() { return simSlot; }
+    public void setSimSlot(int simSlot) { this.simSlot = simSlot; }
+
+    public int getStatus() { return status; }
+    public void setStatus(int status) { this.status = status; }
+
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+
+    public long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
+
+    public long getNextAttemptAt() { return nextAttemptAt; }
+    public void setNextAttemptAt(long nextAttemptAt) { this.nextAttemptAt = nextAttemptAt; }
+
+    public long getDispatchedAt() { return dispatchedAt; }
+    public void setDispatchedAt(long dispatchedAt) { this.dispatchedAt = dispatchedAt; }
+
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+}
@@ -0,0 +1,164 @@
+package it.bhomealarm.model.entity;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Ignore;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+import java.util.Set;
+
+import it.bhomealarm.protocol.ResponseType;
+
+/**
+ * Entità Room che rappresenta un comando inviato a una centrale e ancora in
+ * attesa di risposta (tabella di correlazione richiesta/risposta).
+ * <p>
+ * Ogni tentativo di invio ha una riga, identificata dal {@code message_id}
+ * dell'SMS. La riga viene rimossa quando arriva una risposta compatibile,
+ * quando il comando si conclude o alla scadenza ({@code expires_at}).
+ * La tabella sopravvive alla chiusura del processo: le righe lasciate da un
+ * processo precedente vengono ricaricate come <b>orfane</b> ({@link #isOrphaned()}).
+ * Le richieste che le attendevano non esistono piu', quindi servono solo ad
+ * attribuire nel log e nello stato le risposte che nessun comando attuale attende.
+ * <p>
+ * {@code expected_responses} contiene i nomi dei {@link ResponseType} attesi,
+ * separati da virgola (es. {@code "OK,STATUS,ERROR"}).
+ *
+ * @see it.bhomealarm.model.dao.PendingCommandDao
+ * @see it.bhomealarm.protocol.SmsCodec#expectedResponses(String)
+ */
+@Entity(
+    tableName = "pending_commands",
+    foreignKeys = @ForeignKey(
+        entity = AlarmConfig.class,
+        parentColumns = "id",
+        childColumns = "panel_id",
+        onDelete = ForeignKey.CASCADE
+    ),
+    indices = @Index("panel_id")
+)
+public class PendingCommand {
+
+    /** ID del messaggio SMS inviato (UUID generato da SmsService) */
+    @PrimaryKey
+    @ColumnInfo(name = "message_id")
+    @NonNull
+    private String messageId = "";
+
+    /** Centrale destinataria */
+    @ColumnInfo(name = "panel_id")
+    private long panelId;
+
+    /** Comando inviato (es. "SYS?") */
+    @ColumnInfo(name = "command")
+    @NonNull
+    private String command = "";
+
+    /** Tipi di risposta attesi, separati da virgola */
+    @ColumnInfo(name = "expected_responses")
+    @NonNull
+    private String expectedResponses = "";
+
+    /** Timestamp di invio (millisecondi) */
+    @ColumnInfo(name = "sent_at")
+    private long sentAt;
+
+    /** Timestamp oltre il quale la riga non viene piu' abbinata (millisecondi) */
+    @ColumnInfo(name = "expires_at")
+    private long expiresAt;
+
+    /** Riga ricaricata da un processo precedente (non salvato) */
+    @Ignore
+    private boolean orphaned;
+
+    /**
+     * Costruttore vuoto richiesto da Room.
+     */
+    public PendingCommand() {
+    }
+
+    /**
+     * Crea la riga per un tentativo appena inviato.
+     *
+     * @param messageId ID del messaggio SMS
+     * @param panelId Centrale destinataria
+     * @param command Comando inviato
+     * @param expected Tipi di risposta attesi
+     * @param sentAt Timestamp di invio
+     * @param ttlMs Validita' della riga in millisecondi
+     */
+    @Ignore
+    public PendingCommand(@NonNull String messageId, long panelId, @NonNull String command,
+                          Set<ResponseType> expected, long sentAt, long ttlMs) {
+        this.messageId = messageId;
+        this.panelId = panelId;
+        this.command = command;
+        this.expectedResponses = joinTypes(expected);
+        this.sentAt = sentAt;
+        this.expiresAt = sentAt + ttlMs;
+    }
+
+    /**
+     * Verifica se il comando attende un tipo di risposta.
+     *
+     * @param type Tipo della risposta ricevuta
+     * @return true se il tipo e' tra quelli attesi
+     */
+    public boolean expects(ResponseType type) {
+        if (type == null) {
+            return false;
+        }
+        return ("," + expectedResponses + ",").contains("," + type.name() + ",");
+    }
+
+    /**
+     * Verifica se la riga e' scaduta.
+     *
+     * @param now Timestamp corrente
+     * @return true se non va piu' abbinata
+     */
+    public boolean isExpired(long now) {
+        return now >= expiresAt;
+    }
+
+    private static String joinTypes(Set<ResponseType> types) {
+        StringBuilder sb = new StringBuilder();
+        if (types != null) {
+            for (ResponseType type : types) {
+                if (sb.length() > 0) {
+                    sb.append(',');
+                }
+                sb.append(type.name());
+            }
+        }
+        return sb.toString();
+    }
+
+    // Getters and Setters
+    @NonNull
+    public String getMessageId() { return messageId; }
+    public void setMessageId(@NonNull String messageId) { this.messageId = messageId; }
+
+    public long getPanelId() { return panelId; }
+    public void setPanelId(long panelId) { this.panelId = panelId; }
+
+    @NonNull
+    public String getCommand() { return command; }
+    public void setCommand(@NonNull String command) { this.command = command; }
+
+    @NonNull
+    public String getExpectedResponses() { return expectedResponses; }
+    public void setExpectedResponses(@NonNull String expectedResponses) { this.expectedResponses = expectedResponses; }
+
+    public long getSentAt() { return sentAt; }
+    public void setSentAt(long sentAt) { this.sentAt = sentAt; }
+
+    public long getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(long expiresAt) { this.expiresAt = expiresAt; }
+
+    public boolean isOrphaned() { return orphaned; }
+    public void setOrphaned(boolean orphaned) { this.orphaned = orphaned; }
+}
@@ -3,10 +3,11 @@ package it.bhomealarm.model.entity;
 import androidx.annotation.NonNull;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
-import java.util.ArrayList;
-import java.util.List;
+import it.bhomealarm.protocol.ZoneMask;
 
 /**
  * Entità Room che rappresenta uno scenario di attivazione dell'allarme.
@@ -23,16 +24,32 @@ import java.util.List;
  * <p>
  * Il comando SMS per attivare uno scenario predefinito è {@code SCE:XX},
  * mentre per uno personalizzato è {@code CUST:NNN} dove NNN sono i numeri delle zone.
+ * <p>
+ * Gli scenari sono relativi a una centrale ({@code panel_id}); lo slot e'
+ * univoco all'interno della stessa centrale.
  *
  * @see it.bhomealarm.model.dao.ScenarioDao
  */
-@Entity(tableName = "scenarios")
+@Entity(
+    tableName = "scenarios",
+    foreignKeys = @ForeignKey(
+        entity = AlarmConfig.class,
+        parentColumns = "id",
+        childColumns = "panel_id",
+        onDelete = ForeignKey.CASCADE
+    ),
+    indices = @Index(value = {"panel_id", "slot"}, unique = true)
+)
 public class Scenario {
 
     /** ID univoco nel database (auto-generato) */
     @PrimaryKey(autoGenerate = true)
     private long id;
 
+    /** ID della centrale a cui appartiene lo scenario (FK su {@link AlarmConfig}) */
+    @ColumnInfo(name = "panel_id")
+    private long panelId;
+
     /**
      * Numero slot dello scenario.
      * <ul>
@@ -77,6 +94,9 @@ public class Scenario {
     public long getId() { return id; }
     public void setId(long id) { this.id = id; }
 
+    public long getPanelId() { return panelId; }
+    public void setPanelId(long panelId) { this.panelId = panelId; }
+
     public int getSlot() { return slot; }
     public void setSlot(int slot) { this.slot = slot; }
 
@@ -87,6 +107,10 @@ public class Scenario {
     public int getZoneMask() { return zoneMask; }
     public void setZoneMask(int zoneMask) { this.zoneMask = zoneMask; }
 
+    /** @return zone incluse, come {@link ZoneMask} */
+    public ZoneMask getZones() { return ZoneMask.of(zoneMask); }
+    public void setZones(@NonNull ZoneMask zones) { this.zoneMask = zones.getBits(); }
+
     public boolean isEnabled() { return enabled; }
     public void setEnabled(boolean enabled) { this.enabled = enabled; }
 
@@ -105,7 +129,7 @@ public class Scenario {
      * @return true se la zona è inclusa nel bitmask
      */
     public boolean includesZone(int zoneSlot) {
-        return (zoneMask & (1 << (zoneSlot - 1))) != 0;
+        return getZones().contains(zoneSlot);
     }
 
     /**
@@ -115,25 +139,6 @@ public class Scenario {
      * @param included true per includere, false per escludere
      */
     public void setZoneIncluded(int zoneSlot, boolean included) {
-        if (included) {
-            zoneMask |= (1 << (zoneSlot - 1));
-        } else {
-            zoneMask &= ~(1 << (zoneSlot - 1));
-        }
-    }
-
-    /**
-     * Restituisce la lista delle zone incluse nello scenario.
-     *
-     * @return Lista dei numeri delle zone (1-8) incluse
-     */
-    public List<Integer> getIncludedZones() {
-        List<Integer> zones = new ArrayList<>();
-        for (int i = 1; i <= 8; i++) {
-            if (includesZone(i)) {
-                zones.add(i);
-            }
-        }
-        return zones;
+        setZones(getZones().with(zoneSlot, included));
     }
 }
@@ -3,6 +3,8 @@ package it.bhomealarm.model.entity;
 import androidx.annotation.NonNull;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 /**
@@ -18,11 +20,31 @@ import androidx.room.PrimaryKey;
  *     <li>Stato dell'invio/ricezione</li>
  *     <li>Eventuale messaggio di errore</li>
  *     <li>Timestamp</li>
+ *     <li>Centrale di riferimento ({@code panel_id})</li>
  * </ul>
+ * <p>
+ * Indici: {@code timestamp} (ordinamento e pulizia dei log vecchi),
+ * {@code message_id} univoco (aggiornamenti di invio/consegna) e
+ * ({@code direction}, {@code timestamp}) per il filtro per direzione.
+ * I log in entrata hanno {@code message_id} null, ammesso piu' volte dall'indice univoco.
  *
  * @see it.bhomealarm.model.dao.SmsLogDao
  */
-@Entity(tableName = "sms_log")
+@Entity(
+    tableName = "sms_log",
+    foreignKeys = @ForeignKey(
+        entity = AlarmConfig.class,
+        parentColumns = "id",
+        childColumns = "panel_id",
+        onDelete = ForeignKey.CASCADE
+    ),
+    indices = {
+        @Index("panel_id"),
+        @Index("timestamp"),
+        @Index(value = "message_id", unique = true),
+        @Index({"direction", "timestamp"})
+    }
+)
 public class SmsLog {
 
     // ========== Costanti Direzione ==========
@@ -56,6 +78,13 @@ public class SmsLog {
     @PrimaryKey(autoGenerate = true)
     private long id;
 
+    /**
+     * ID della centrale mittente/destinataria (FK su {@link AlarmConfig}),
+     * null se il messaggio non e' associabile a una centrale configurata.
+     */
+    @ColumnInfo(name = "panel_id")
+    private Long panelId;
+
     /** Direzione del messaggio (usa costanti DIRECTION_*) */
     @ColumnInfo(name = "direction")
     private int direction;
@@ -85,6 +114,9 @@ public class SmsLog {
     public long getId() { return id; }
     public void setId(long id) { this.id = id; }
 
+    public Long getPanelId() { return panelId; }
+    public void setPanelId(Long panelId) { this.panelId = panelId; }
+
     public int getDirection() { return direction; }
     public void setDirection(int direction) { this.direction = direction; }
 
@@ -0,0 +1,82 @@
+package it.bhomealarm.model.entity;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * Entità Room che rappresenta un blocco di log SMS archiviati.
+ * <p>
+ * Quando la politica di conservazione lo prevede, i log rimossi da
+ * {@code sms_log} non vengono persi ma raggruppati a blocchi (uno per ogni
+ * eliminazione) e salvati compressi con GZIP in questa tabella.
+ * <p>
+ * Il contenuto di {@code payload} e' testo UTF-8 con una riga per log e i campi
+ * separati da tabulazione, nel formato indicato da {@code format}
+ * (vedi {@code SmsLogRetention}).
+ *
+ * @see it.bhomealarm.model.dao.SmsLogArchiveDao
+ */
+@Entity(
+    tableName = "sms_log_archive",
+    indices = @Index("last_timestamp")
+)
+public class SmsLogArchive {
+
+    /** Formato del payload: righe separate da tabulazione, compresse GZIP */
+    public static final int FORMAT_TSV_GZIP = 1;
+
+    /** ID univoco nel database (auto-generato) */
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+
+    /** Timestamp del log piu' vecchio del blocco (millisecondi) */
+    @ColumnInfo(name = "first_timestamp")
+    private long firstTimestamp;
+
+    /** Timestamp del log piu' recente del blocco (millisecondi) */
+    @ColumnInfo(name = "last_timestamp")
+    private long lastTimestamp;
+
+    /** Numero di log contenuti nel blocco */
+    @ColumnInfo(name = "row_count")
+    private int rowCount;
+
+    /** Formato del payload (usa costanti FORMAT_*) */
+    @ColumnInfo(name = "format")
+    private int format = FORMAT_TSV_GZIP;
+
+    /** Log del blocco, compressi */
+    @ColumnInfo(name = "payload", typeAffinity = ColumnInfo.BLOB)
+    @NonNull
+    private byte[] payload = new byte[0];
+
+    /** Timestamp di creazione del blocco (millisecondi) */
+    @ColumnInfo(name = "created_at")
+    private long createdAt;
+
+    // Getters and Setters
+    public long getId() { return id; }
+    public void setId(long id) { this.id = id; }
+
+    public long getFirstTimestamp() { return firstTimestamp; }
+    public void setFirstTimestamp(long firstTimestamp) { this.firstTimestamp = firstTimestamp; }
+
+    public long getLastTimestamp() { return lastTimestamp; }
+    public void setLastTimestamp(long lastTimestamp) { this.lastTimestamp = lastTimestamp; }
+
+    public int getRowCount() { return rowCount; }
+    public void setRowCount(int rowCount) { this.rowCount = rowCount; }
+
+    public int getFormat() { return format; }
+    public void setFormat(int format) { this.format = format; }
+
+    @NonNull
+    public byte[] getPayload() { return payload; }
+    public void setPayload(@NonNull byte[] payload) { this.payload = payload; }
+
+    public long getCreatedAt() { return createdAt; }
+    public void setCreatedAt(long createdAt) { this.createdAt = createdAt; }
+}
@@ -3,6 +3,8 @@ package it.bhomealarm.model.entity;
 import androidx.annotation.NonNull;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 /**
@@ -17,11 +19,21 @@ import androidx.room.PrimaryKey;
  *     <li><b>CMD</b>: può attivare/disattivare l'allarme</li>
  * </ul>
  * <p>
- * I dati degli utenti vengono scaricati dall'allarme tramite CONF4 e CONF5.
+ * I dati degli utenti vengono scaricati dall'allarme tramite CONF4 e CONF5
+ * e sono relativi alla centrale indicata da {@code panel_id} (slot univoco per centrale).
  *
  * @see it.bhomealarm.model.dao.UserDao
  */
-@Entity(tableName = "users")
+@Entity(
+    tableName = "users",
+    foreignKeys = @ForeignKey(
+        entity = AlarmConfig.class,
+        parentColumns = "id",
+        childColumns = "panel_id",
+        onDelete = ForeignKey.CASCADE
+    ),
+    indices = @Index(value = {"panel_id", "slot"}, unique = true)
+)
 public class User {
 
     // ========== Costanti Permessi ==========
@@ -44,6 +56,10 @@ public class User {
     @PrimaryKey(autoGenerate = true)
     private long id;
 
+    /** ID della centrale a cui appartiene l'utente (FK su {@link AlarmConfig}) */
+    @ColumnInfo(name = "panel_id")
+    private long panelId;
+
     /** Numero slot dell'utente (1-16 per utenti normali, 0 per Joker) */
     @ColumnInfo(name = "slot")
     private int slot;
@@ -73,6 +89,9 @@ public class User {
     public long getId() { return id; }
     public void setId(long id) { this.id = id; }
 
+    public long getPanelId() { return panelId; }
+    public void setPanelId(long panelId) { this.panelId = panelId; }
+
     public int getSlot() { return slot; }
     public void setSlot(int slot) { this.slot = slot; }
 
@@ -94,6 +113,25 @@ public class User {
 
     // ========== Metodi Helper ==========
 
+    /**
+     * Crea una copia dell'utente con lo stesso id, da modificare e salvare al
+     * posto delle istanze condivise dalla cache del modello.
+     *
+     * @return una nuova istanza con gli stessi valori
+     */
+    public User copy() {
+        User copy = new User();
+        copy.id = id;
+        copy.panelId = panelId;
+        copy.slot = slot;
+        copy.name = name;
+        copy.permissions = permissions;
+        copy.isJoker = isJoker;
+        copy.enabled = enabled;
+        copy.updatedAt = updatedAt;
+        return copy;
+    }
+
     /**
      * Verifica se l'utente ha un permesso specifico.
      *
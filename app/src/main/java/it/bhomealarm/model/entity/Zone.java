@@ -3,6 +3,8 @@ package it.bhomealarm.model.entity;
 import androidx.annotation.NonNull;
 import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 /**
@@ -19,16 +21,32 @@ import androidx.room.PrimaryKey;
  *     <li>Zona 3: Camera da letto</li>
  *     <li>Zona 4: Garage</li>
  * </ul>
+ * <p>
+ * Ogni zona appartiene a una centrale ({@code panel_id}): la coppia
+ * (centrale, slot) e' univoca, quindi il reinserimento di una zona la sostituisce.
  *
  * @see it.bhomealarm.model.dao.ZoneDao
  */
-@Entity(tableName = "zones")
+@Entity(
+    tableName = "zones",
+    foreignKeys = @ForeignKey(
+        entity = AlarmConfig.class,
+        parentColumns = "id",
+        childColumns = "panel_id",
+        onDelete = ForeignKey.CASCADE
+    ),
+    indices = @Index(value = {"panel_id", "slot"}, unique = true)
+)
 public class Zone {
 
     /** ID univoco nel database (auto-generato) */
     @PrimaryKey(autoGenerate = true)
     private long id;
 
+    /** ID della centrale a cui appartiene la zona (FK su {@link AlarmConfig}) */
+    @ColumnInfo(name = "panel_id")
+    private long panelId;
+
     /** Numero slot della zona (1-8) */
     @ColumnInfo(name = "slot")
     private int slot;
@@ -54,6 +72,9 @@ public class Zone {
     public long getId() { return id; }
     public void setId(long id) { this.id = id; }
 
+    public long getPanelId() { return panelId; }
+    public void setPanelId(long panelId) { this.panelId = panelId; }
+
     public int getSlot() { return slot; }
     public void setSlot(int slot) { this.slot = slot; }
 
@@ -0,0 +1,222 @@
+package it.bhomealarm.model.repository;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import it.bhomealarm.model.dao.ScenarioDao;
+import it.bhomealarm.model.dao.UserDao;
+import it.bhomealarm.model.dao.ZoneDao;
+import it.bhomealarm.model.entity.Scenario;
+import it.bhomealarm.model.entity.User;
+import it.bhomealarm.model.entity.Zone;
+
+/**
+ * Cache in memoria di zone, scenari e utenti della centrale attiva.
+ * <p>
+ * Le tre tabelle contengono poche decine di righe (8 zone, 16 scenari piu' i
+ * personalizzati, 16 utenti e il Joker) e cambiano quasi solo durante la
+ * configurazione. Invece di aprire una query Room osservabile per ogni schermata,
+ * il modello viene letto una volta in un {@link Snapshot} immutabile, pubblicato
+ * tramite un campo volatile e un LiveData: cambiare schermata non costa accessi
+ * al disco ne' cursori.
+ * <p>
+ * La cache viene ricaricata solo da {@link AlarmRepository}, dopo le scritture
+ * che toccano queste tabelle ({@link #reload(long, int)}) e al cambio di
+ * centrale; ogni ricarica rilegge solo le tabelle indicate e riusa le liste
+ * delle altre. Le ricariche vanno eseguite sulla corsia di scrittura di
+ * {@link RepositoryExecutor}, dopo la scrittura: l'ordine delle istantanee
+ * pubblicate segue quello delle scritture.
+ * <p>
+ * Le entity delle istantanee sono condivise tra le schermate: una modifica va
+ * salvata tramite il repository, che ricarica la cache con nuove istanze.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see AlarmRepository
+ */
+public final class AlarmModelCache {
+
+    /** Tabella {@code zones}. */
+    static final int ZONES = 1;
+
+    /** Tabella {@code scenarios}. */
+    static final int SCENARIOS = 1 << 1;
+
+    /** Tabella {@code users}. */
+    static final int USERS = 1 << 2;
+
+    /** Tutte le tabelle. */
+    static final int ALL = ZONES | SCENARIOS | USERS;
+
+    private final ZoneDao zoneDao;
+    private final ScenarioDao scenarioDao;
+    private final UserDao userDao;
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    private final MutableLiveData<Snapshot> live = new MutableLiveData<>(Snapshot.EMPTY);
+
+    AlarmModelCache(ZoneDao zoneDao, ScenarioDao scenarioDao, UserDao userDao) {
+        this.zoneDao = zoneDao;
+        this.scenarioDao = scenarioDao;
+        this.userDao = userDao;
+    }
+
+    /**
+     * @return istantanea corrente, mai null ({@link Snapshot#EMPTY} prima del primo caricamento)
+     */
+    public Snapshot get() {
+        return snapshot;
+    }
+
+    /**
+     * @return LiveData con l'istantanea corrente, aggiornato a ogni ricarica
+     */
+    public LiveData<Snapshot> getLive() {
+        return live;
+    }
+
+    /**
+     * Rilegge dal database le tabelle indicate e pubblica una nuova istantanea.
+     * Se la centrale e' cambiata rilegge tutte le tabelle. Da chiamare sulla
+     * corsia di scrittura.
+     *
+     * @param panelId ID della centrale attiva ({@link AlarmRepository#NO_PANEL} per svuotare la cache)
+     * @param tables tabelle modificate ({@link #ZONES}, {@link #SCENARIOS}, {@link #USERS})
+     */
+    void reload(long panelId, int tables) {
+        Snapshot current = snapshot;
+        Snapshot next;
+        if (panelId == AlarmRepository.NO_PANEL) {
+            next = Snapshot.EMPTY;
+        } else {
+            if (panelId != current.panelId) {
+                tables = ALL;
+            }
+            List<Scenario> scenarios = current.scenarios;
+            List<Scenario> customScenarios = current.customScenarios;
+            if ((tables & SCENARIOS) != 0) {
+                scenarios = freeze(scenarioDao.getAllScenariosSync(panelId));
+                customScenarios = customOf(scenarios);
+            }
+            next = new Snapshot(panelId,
+                    (tables & ZONES) != 0 ? freeze(zoneDao.getAllZonesSync(panelId)) : current.zones,
+                    scenarios, customScenarios,
+                    (tables & USERS) != 0 ? freeze(userDao.getAllUsersSync(panelId)) : current.users);
+        }
+        snapshot = next;
+        live.postValue(next);
+    }
+
+    private static <T> List<T> freeze(List<T> rows) {
+        return rows == null || rows.isEmpty()
+                ? Collections.<T>emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(rows));
+    }
+
+    private static List<Scenario> customOf(List<Scenario> scenarios) {
+        List<Scenario> custom = new ArrayList<>();
+        for (Scenario s : scenarios) {
+            if (s.isCustom()) {
+                custom.add(s);
+            }
+        }
+        return freeze(custom);
+    }
+
+    /**
+     * Istantanea immutabile del modello di una centrale. Le liste sono ordinate
+     * per slot e non modificabili; una lista non ricaricata e' la stessa istanza
+     * dell'istantanea precedente.
+     */
+    public static final class Snapshot {
+
+        /** Istantanea senza centrale. */
+        public static final Snapshot EMPTY = new Snapshot(AlarmRepository.NO_PANEL,
+                Collections.<Zone>emptyList(), Collections.<Scenario>emptyList(),
+                Collections.<Scenario>emptyList(), Collections.<User>emptyList());
+
+        private final long panelId;
+        private final List<Zone> zones;
+        private final List<Scenario> scenarios;
+        private final List<Scenario> customScenarios;
+        private final List<User> users;
+
+        Snapshot(long panelId, List<Zone> zones, List<Scenario> scenarios,
+                 List<Scenario> customScenarios, List<User> users) {
+            this.panelId = panelId;
+            this.zones = zones;
+            this.scenarios = scenarios;
+            this.customScenarios = customScenarios;
+            this.users = users;
+        }
+
+        /** @return ID della centrale, o {@link AlarmRepository#NO_PANEL} */
+        public long getPanelId() { return panelId; }
+
+        /** @return zone della centrale */
+        public List<Zone> getZones() { return zones; }
+
+        /** @return scenari predefiniti e personalizzati */
+        public List<Scenario> getScenarios() { return scenarios; }
+
+        /** @return soli scenari personalizzati (slot &gt; 100) */
+        public List<Scenario> getCustomScenarios() { return customScenarios; }
+
+        /** @return utenti della rubrica, Joker compreso */
+        public List<User> getUsers() { return users; }
+
+        /**
+         * @param slot Numero della zona
+         * @return la zona, o null se non presente
+         */
+        public Zone getZone(int slot) {
+            for (Zone z : zones) {
+                if (z.getSlot() == slot) {
+                    return z;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @param slot Numero dello scenario (1-16 predefiniti, &gt;100 personalizzati)
+         * @return lo scenario, o null se non presente
+         */
+        public Scenario getScenario(int slot) {
+            for (Scenario s : scenarios) {
+                if (s.getSlot() == slot) {
+                    return s;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @param slot Numero dell'utente
+         * @return l'utente, o null se non presente
+         */
+        public User getUser(int slot) {
+            for (User u : users) {
+                if (u.getSlot() == slot) {
+                    return u;
+                }
+            }
+            return null;
+        }
+
+        /** @return l'utente Joker, o null se non presente */
+        public User getJoker() {
+            for (User u : users) {
+                if (u.isJoker()) {
+                    return u;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -1,15 +1,24 @@
 package it.bhomealarm.model.repository;
 
 import android.app.Application;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
 
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Transformations;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 
+import it.bhomealarm.callback.RepositoryCallback;
 import it.bhomealarm.model.dao.AlarmConfigDao;
 import it.bhomealarm.model.dao.AppSettingsDao;
+import it.bhomealarm.model.dao.ConfigurationDao;
+import it.bhomealarm.model.dao.OutboundCommandDao;
 import it.bhomealarm.model.dao.ScenarioDao;
 import it.bhomealarm.model.dao.SmsLogDao;
 import it.bhomealarm.model.dao.UserDao;
@@ -17,37 +26,115 @@ import it.bhomealarm.model.dao.ZoneDao;
 import it.bhomealarm.model.database.AppDatabase;
 import it.bhomealarm.model.entity.AlarmConfig;
 import it.bhomealarm.model.entity.AppSettings;
+import it.bhomealarm.model.entity.OutboundCommand;
+import it.bhomealarm.model.entity.PendingCommand;
 import it.bhomealarm.model.entity.Scenario;
 import it.bhomealarm.model.entity.SmsLog;
 import it.bhomealarm.model.entity.User;
 import it.bhomealarm.model.entity.Zone;
+import it.bhomealarm.protocol.ResponseType;
+import it.bhomealarm.protocol.SmsCodec;
+import it.bhomealarm.protocol.ZoneMask;
+import it.bhomealarm.util.Constants;
 
 /**
  * Repository principale per l'accesso ai dati.
  * Fornisce un'API pulita per il layer Controller.
+ * <p>
+ * Gestione multi-centrale: ogni riga di {@code alarm_config} e' una centrale e
+ * zone, scenari e utenti sono relativi alla centrale <b>attiva</b>
+ * ({@link Constants#PREF_ACTIVE_PANEL_ID}). I metodi che restituiscono LiveData
+ * seguono automaticamente il cambio di centrale attiva, e i salvataggi associano
+ * i dati alla centrale attiva (vengono scartati se nessuna centrale e' configurata).
+ * <p>
+ * Per lo smistamento degli SMS in arrivo il repository mantiene un
+ * {@link PanelIndex} (mittente &rarr; centrale) ricostruito a ogni modifica
+ * delle centrali: vedi {@link #findPanelIdByPhone(String)}. Per attribuire le
+ * risposte ai comandi che le hanno richieste mantiene una tabella dei comandi in
+ * attesa ({@link PendingCommandTable}), persistente tra i riavvii; i comandi
+ * da inviare restano nella coda {@code outbound_commands} finche' la rete non
+ * ne conferma l'invio.
+ * <p>
+ * Tutte le operazioni che modificano il database passano dalla corsia di
+ * scrittura seriale di {@link RepositoryExecutor}: vengono eseguite una alla
+ * volta, nell'ordine in cui sono state richieste. Le metriche dell'executor
+ * sono disponibili tramite {@link #getRepositoryStats()}.
+ * <p>
+ * Inserimenti e cambi di stato del log SMS passano da {@link SmsLogWriter}, che
+ * li raggruppa per pochi millisecondi e li scrive in un'unica transazione.
  */
 public class AlarmRepository {
 
+    private static final String TAG = "AlarmRepository";
+
+    /** Valore che indica "nessuna centrale". */
+    public static final long NO_PANEL = -1L;
+
     private static volatile AlarmRepository INSTANCE;
 
+    private final AppDatabase database;
     private final AlarmConfigDao alarmConfigDao;
     private final ZoneDao zoneDao;
     private final ScenarioDao scenarioDao;
     private final UserDao userDao;
     private final SmsLogDao smsLogDao;
     private final AppSettingsDao appSettingsDao;
+    private final OutboundCommandDao outboundCommandDao;
+    private final ConfigurationDao configurationDao;
+
+    private final RepositoryExecutor executor;
+
+    /** Raggruppa inserimenti e cambi di stato di {@code sms_log}. */
+    private final SmsLogWriter smsLogWriter;
+
+    /** Conservazione e compattazione di {@code sms_log}. */
+    private final SmsLogRetention smsLogRetention;
+
+    /** Comandi inviati in attesa di risposta. */
+    private final PendingCommandTable pendingCommands;
+
+    /** Zone, scenari e utenti della centrale attiva, in memoria. */
+    private final AlarmModelCache modelCache;
+
+    /** Esito dell'ultima conservazione dei log SMS. */
+    private final MutableLiveData<SmsLogRetentionReport> smsLogRetentionReport =
+            new MutableLiveData<>(SmsLogRetentionReport.EMPTY);
 
-    private final ExecutorService executorService;
+    private final SharedPreferences prefs;
+
+    /** ID della centrale attiva, letto dai thread in background. */
+    private volatile long activePanel;
+
+    /** ID della centrale attiva, osservabile dalla UI. */
+    private final MutableLiveData<Long> activePanelId;
+
+    /** Indice mittente &rarr; centrale; null finche' non e' stato caricato. */
+    private volatile PanelIndex panelIndex;
 
     private AlarmRepository(Application application) {
-        AppDatabase database = AppDatabase.getInstance(application);
+        database = AppDatabase.getInstance(application);
         alarmConfigDao = database.alarmConfigDao();
         zoneDao = database.zoneDao();
         scenarioDao = database.scenarioDao();
         userDao = database.userDao();
         smsLogDao = database.smsLogDao();
         appSettingsDao = database.appSettingsDao();
-        executorService = Executors.newFixedThreadPool(4);
+        outboundCommandDao = database.outboundCommandDao();
+        configurationDao = database.configurationDao();
+        executor = new RepositoryExecutor();
+        smsLogWriter = new SmsLogWriter(database, executor);
+        smsLogRetention = new SmsLogRetention(database, executor);
+        pendingCommands = new PendingCommandTable(database.pendingCommandDao(), executor);
+        modelCache = new AlarmModelCache(zoneDao, scenarioDao, userDao);
+
+        prefs = application.getSharedPreferences(Constants.PREF_NAME, Context.MODE_PRIVATE);
+        activePanel = prefs.getLong(Constants.PREF_ACTIVE_PANEL_ID, NO_PANEL);
+        activePanelId = new MutableLiveData<>(activePanel);
+
+        // Precarica l'indice delle centrali e i comandi in attesa prima del primo SMS
+        executor.write("reloadPanelIndex", this::reloadPanelIndex);
+        executor.write("loadModelCache", () -> reloadModel(AlarmModelCache.ALL));
+        executor.write("loadPendingCommands", pendingCommands::loadOrphans);
     }
 
     public static AlarmRepository getInstance(Application application) {
@@ -61,22 +148,310 @@ public class AlarmRepository {
         return INSTANCE;
     }
 
+    /**
+     * Restituisce le metriche dell'executor del repository (profondita' delle code,
+     * tempo in coda e di esecuzione per operazione).
+     *
+     * @return LiveData aggiornato al piu' una volta al secondo
+     */
+    public LiveData<RepositoryStats> getRepositoryStats() {
+        return executor.getStats();
+    }
+
+    // ========== Centrali ==========
+
+    /**
+     * Restituisce l'ID della centrale attiva.
+     *
+     * @return l'ID della centrale attiva, o {@link #NO_PANEL} se non configurata
+     */
+    public long getActivePanelId() {
+        return activePanel;
+    }
+
+    /**
+     * Restituisce l'ID della centrale attiva come LiveData.
+     *
+     * @return LiveData con l'ID della centrale attiva ({@link #NO_PANEL} se assente)
+     */
+    public LiveData<Long> getActivePanelIdLive() {
+        return activePanelId;
+    }
+
+    /**
+     * Recupera tutte le centrali configurate.
+     *
+     * @return LiveData con la lista delle centrali
+     */
+    public LiveData<List<AlarmConfig>> getAllPanels() {
+        return alarmConfigDao.getAllPanels();
+    }
+
+    /**
+     * Imposta la centrale attiva.
+     * <p>
+     * Allinea anche {@link Constants#PREF_ALARM_PHONE} al numero della centrale,
+     * usato dai componenti che inviano comandi.
+     *
+     * @param panelId ID della centrale da rendere attiva
+     */
+    public void setActivePanel(long panelId) {
+        executor.write("setActivePanel", () -> {
+            AlarmConfig panel = alarmConfigDao.getConfigByIdSync(panelId);
+            if (panel != null) {
+                activatePanel(panel);
+            }
+        });
+    }
+
+    /**
+     * Aggiunge una nuova centrale.
+     * <p>
+     * Se non esiste ancora una centrale attiva, quella nuova diventa attiva.
+     *
+     * @param name Nome descrittivo della centrale (opzionale)
+     * @param phoneNumber Numero della SIM della centrale
+     * @param callback Callback con l'ID della centrale creata (opzionale)
+     */
+    public void addPanel(String name, String phoneNumber, RepositoryCallback<Long> callback) {
+        executor.write("addPanel", () -> {
+            try {
+                AlarmConfig panel = insertPanel(name, phoneNumber);
+                if (activePanel == NO_PANEL) {
+                    activatePanel(panel);
+                }
+                reloadPanelIndex();
+                if (callback != null) {
+                    callback.onSuccess(panel.getId());
+                }
+            } catch (Exception e) {
+                if (callback != null) {
+                    callback.onError(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Salva il numero di telefono della centrale attiva.
+     * <p>
+     * Se non esiste una centrale attiva ne crea una con il numero indicato.
+     * Usato dal setup iniziale e dalle impostazioni.
+     *
+     * @param phoneNumber Numero normalizzato della SIM della centrale
+     */
+    public void saveActivePanelPhone(String phoneNumber) {
+        executor.write("saveActivePanelPhone", () -> {
+            AlarmConfig panel = activePanel != NO_PANEL
+                    ? alarmConfigDao.getConfigByIdSync(activePanel) : null;
+            if (panel == null) {
+                panel = insertPanel(null, phoneNumber);
+            } else {
+                alarmConfigDao.updatePhoneNumber(panel.getId(), phoneNumber, System.currentTimeMillis());
+                panel.setPhoneNumber(phoneNumber);
+            }
+            activatePanel(panel);
+            reloadPanelIndex();
+        });
+    }
+
+    /**
+     * Elimina una centrale con zone, scenari, utenti e log associati (CASCADE).
+     * <p>
+     * Se era la centrale attiva, diventa attiva la prima centrale rimasta.
+     *
+     * @param panelId ID della centrale da eliminare
+     */
+    public void deletePanel(long panelId) {
+        executor.write("deletePanel", () -> {
+            AlarmConfig panel = alarmConfigDao.getConfigByIdSync(panelId);
+            if (panel == null) {
+                return;
+            }
+            alarmConfigDao.delete(panel);
+
+            if (activePanel == panelId) {
+                List<AlarmConfig> remaining = alarmConfigDao.getAllPanelsSync();
+                if (remaining.isEmpty()) {
+                    clearActivePanel();
+                } else {
+                    activatePanel(remaining.get(0));
+                }
+            }
+            reloadPanelIndex();
+        });
+    }
+
+    /**
+     * Individua la centrale a cui appartiene un numero di telefono
+     * (mittente di un SMS in arrivo o destinatario di uno in uscita).
+     * <p>
+     * La ricerca usa il {@link PanelIndex} in memoria: costo costante rispetto al
+     * numero di centrali, nessun accesso al database e nessuna attesa, quindi e'
+     * sicura sul main thread. Finche' il caricamento avviato dal costruttore non
+     * e' terminato si riconosce solo la centrale attiva, con il numero salvato
+     * nelle preferenze; la centrale iniziale creata dalla migrazione a centrali
+     * multiple non e' ancora nota e il numero risulta {@link #NO_PANEL}.
+     *
+     * @param phoneNumber Numero o indirizzo del mittente, in qualsiasi formato
+     * @return l'ID della centrale, o {@link #NO_PANEL} se il numero non e' di una centrale
+     */
+    public long findPanelIdByPhone(String phoneNumber) {
+        PanelIndex index = panelIndex;
+        if (index == null) {
+            index = executor.isWriterThread() ? reloadPanelIndex() : provisionalPanelIndex();
+        }
+        return index.findPanelId(phoneNumber);
+    }
+
+    /**
+     * Indice usato prima del caricamento delle centrali: contiene solo la
+     * centrale attiva, letta dalle preferenze gia' in memoria.
+     */
+    private PanelIndex provisionalPanelIndex() {
+        Log.d(TAG, "Indice centrali non ancora caricato: uso la centrale attiva");
+        return PanelIndex.single(activePanel, prefs.getString(Constants.PREF_ALARM_PHONE, ""));
+    }
+
+    /**
+     * Ricostruisce l'indice mittente &rarr; centrale dal database.
+     * <p>
+     * Alla prima esecuzione dopo l'aggiornamento da una versione a centrale
+     * singola crea la centrale a partire da {@link Constants#PREF_ALARM_PHONE}.
+     * Da chiamare sulla corsia di scrittura.
+     *
+     * @return il nuovo indice, gia' pubblicato
+     */
+    private PanelIndex reloadPanelIndex() {
+        List<AlarmConfig> panels = alarmConfigDao.getAllPanelsSync();
+        if (panels.isEmpty()) {
+            String legacyPhone = prefs.getString(Constants.PREF_ALARM_PHONE, "");
+            if (!legacyPhone.isEmpty()) {
+                AlarmConfig panel = insertPanel(null, legacyPhone);
+                activatePanel(panel);
+                panels = alarmConfigDao.getAllPanelsSync();
+            }
+        } else {
+            adoptLegacyPhone(panels);
+            if (activePanel == NO_PANEL) {
+                activatePanel(panels.get(0));
+            }
+        }
+
+        PanelIndex index = PanelIndex.build(panels);
+        panelIndex = index;
+        Log.d(TAG, "Indice centrali aggiornato: " + index.size() + " numeri");
+        return index;
+    }
+
+    /**
+     * Restituisce la centrale attiva, creandola dal numero salvato nelle
+     * preferenze se non esiste ancora. Da chiamare sulla corsia di scrittura.
+     *
+     * @return l'ID della centrale attiva, o {@link #NO_PANEL} se nessun numero e' configurato
+     */
+    private long requireActivePanel() {
+        long panelId = activePanel;
+        if (panelId == NO_PANEL) {
+            reloadPanelIndex();
+            panelId = activePanel;
+        }
+        if (panelId == NO_PANEL) {
+            Log.w(TAG, "Nessuna centrale configurata");
+        }
+        return panelId;
+    }
+
+    /**
+     * La migrazione dalla versione 1 del database conserva la riga di
+     * {@code alarm_config} creata da {@code updateConfigVersion}, che non aveva
+     * numero: le assegna il numero salvato in {@link Constants#PREF_ALARM_PHONE}.
+     */
+    private void adoptLegacyPhone(List<AlarmConfig> panels) {
+        AlarmConfig first = panels.get(0);
+        String legacyPhone = prefs.getString(Constants.PREF_ALARM_PHONE, "");
+        if (first.getPhoneNumber().isEmpty() && !legacyPhone.isEmpty()) {
+            alarmConfigDao.updatePhoneNumber(first.getId(), legacyPhone, System.currentTimeMillis());
+            first.setPhoneNumber(legacyPhone);
+        }
+    }
+
+    private AlarmConfig insertPanel(String name, String phoneNumber) {
+        long now = System.currentTimeMillis();
+        AlarmConfig panel = new AlarmConfig();
+        panel.setName(name);
+        panel.setPhoneNumber(phoneNumber);
+        panel.setCreatedAt(now);
+        panel.setUpdatedAt(now);
+        panel.setId(alarmConfigDao.insert(panel));
+        return panel;
+    }
+
+    private void activatePanel(AlarmConfig panel) {
+        activePanel = panel.getId();
+        reloadModel(0);
+        prefs.edit()
+                .putLong(Constants.PREF_ACTIVE_PANEL_ID, panel.getId())
+                .putString(Constants.PREF_ALARM_PHONE, panel.getPhoneNumber())
+                .apply();
+        activePanelId.postValue(panel.getId());
+    }
+
+    private void clearActivePanel() {
+        activePanel = NO_PANEL;
+        reloadModel(0);
+        prefs.edit()
+                .remove(Constants.PREF_ACTIVE_PANEL_ID)
+                .remove(Constants.PREF_ALARM_PHONE)
+                .apply();
+        activePanelId.postValue(NO_PANEL);
+    }
+
+    /**
+     * Ricarica nella cache del modello le tabelle indicate della centrale attiva.
+     * Da chiamare sulla corsia di scrittura, dopo la scrittura.
+     *
+     * @param tables Tabelle modificate (AlarmModelCache.ZONES, SCENARIOS, USERS); 0 = solo cambio di centrale
+     */
+    private void reloadModel(int tables) {
+        modelCache.reload(activePanel, tables);
+    }
+
+    /**
+     * @return LiveData con l'istantanea di zone, scenari e utenti della centrale attiva
+     */
+    public LiveData<AlarmModelCache.Snapshot> getModel() {
+        return modelCache.getLive();
+    }
+
+    /**
+     * @return istantanea corrente di zone, scenari e utenti, senza accessi al database
+     */
+    public AlarmModelCache.Snapshot getModelSnapshot() {
+        return modelCache.get();
+    }
+
     // ========== AlarmConfig ==========
 
+    /**
+     * Recupera la configurazione della centrale attiva.
+     *
+     * @return LiveData con la configurazione, aggiornato al cambio di centrale
+     */
     public LiveData<AlarmConfig> getAlarmConfig() {
-        return alarmConfigDao.getConfig();
+        return Transformations.switchMap(activePanelId, alarmConfigDao::getConfigById);
     }
 
     public void insertAlarmConfig(AlarmConfig config) {
-        executorService.execute(() -> alarmConfigDao.insert(config));
+        executor.write("insertAlarmConfig", () -> alarmConfigDao.insert(config));
     }
 
     public void updateAlarmConfig(AlarmConfig config) {
-        executorService.execute(() -> alarmConfigDao.update(config));
+        executor.write("updateAlarmConfig", () -> alarmConfigDao.update(config));
     }
 
     public void updateAlarmStatus(long id, int status, String statusText) {
-        executorService.execute(() ->
+        executor.write("updateAlarmStatus", () ->
             alarmConfigDao.updateStatus(id, status, statusText, System.currentTimeMillis())
         );
     }
@@ -84,27 +459,59 @@ public class AlarmRepository {
     // ========== Zone ==========
 
     public LiveData<List<Zone>> getAllZones() {
-        return zoneDao.getAllZones();
+        return Transformations.distinctUntilChanged(
+                Transformations.map(modelCache.getLive(), AlarmModelCache.Snapshot::getZones));
     }
 
     public LiveData<Zone> getZoneBySlot(int slot) {
-        return zoneDao.getZoneBySlot(slot);
+        return Transformations.distinctUntilChanged(
+                Transformations.map(modelCache.getLive(), model -> model.getZone(slot)));
     }
 
     public void insertZone(Zone zone) {
-        executorService.execute(() -> zoneDao.insert(zone));
+        executor.write("insertZone", () -> {
+            // Associa alla centrale attiva se non indicata
+            if (zone.getPanelId() == 0) {
+                long panelId = requireActivePanel();
+                if (panelId == NO_PANEL) {
+                    return;
+                }
+                zone.setPanelId(panelId);
+            }
+            zoneDao.insert(zone);
+            reloadModel(AlarmModelCache.ZONES);
+        });
     }
 
     public void insertAllZones(List<Zone> zones) {
-        executorService.execute(() -> zoneDao.insertAll(zones));
+        executor.write("insertAllZones", () -> {
+            long panelId = requireActivePanel();
+            if (panelId == NO_PANEL) {
+                return;
+            }
+            for (Zone item : zones) {
+                if (item.getPanelId() == 0) {
+                    item.setPanelId(panelId);
+                }
+            }
+            zoneDao.insertAll(zones);
+            reloadModel(AlarmModelCache.ZONES);
+        });
     }
 
     public void updateZone(Zone zone) {
-        executorService.execute(() -> zoneDao.update(zone));
+        executor.write("updateZone", () -> {
+            zoneDao.update(zone);
+            reloadModel(AlarmModelCache.ZONES);
+        });
     }
 
     public void deleteAllZones() {
-        executorService.execute(zoneDao::deleteAll);
+        executor.write("deleteAllZones", () -> {
+            zoneDao.deleteByPanel(activePanel);
+            alarmConfigDao.clearZoneSectionHash(activePanel);
+            reloadModel(AlarmModelCache.ZONES);
+        });
     }
 
     // ========== Scenario ==========
@@ -115,7 +522,8 @@ public class AlarmRepository {
      * @return LiveData con la lista di tutti gli scenari
      */
     public LiveData<List<Scenario>> getAllScenarios() {
-        return scenarioDao.getAllScenarios();
+        return Transformations.distinctUntilChanged(
+                Transformations.map(modelCache.getLive(), AlarmModelCache.Snapshot::getScenarios));
     }
 
     /**
@@ -125,7 +533,8 @@ public class AlarmRepository {
      * @return LiveData con lo scenario
      */
     public LiveData<Scenario> getScenarioBySlot(int slot) {
-        return scenarioDao.getScenarioBySlot(slot);
+        return Transformations.distinctUntilChanged(
+                Transformations.map(modelCache.getLive(), model -> model.getScenario(slot)));
     }
 
     /**
@@ -135,7 +544,18 @@ public class AlarmRepository {
      * @param scenario Lo scenario da salvare
      */
     public void insertScenario(Scenario scenario) {
-        executorService.execute(() -> scenarioDao.insert(scenario));
+        executor.write("insertScenario", () -> {
+            // Associa alla centrale attiva se non indicata
+            if (scenario.getPanelId() == 0) {
+                long panelId = requireActivePanel();
+                if (panelId == NO_PANEL) {
+                    return;
+                }
+                scenario.setPanelId(panelId);
+            }
+            scenarioDao.insert(scenario);
+            reloadModel(AlarmModelCache.SCENARIOS);
+        });
     }
 
     /**
@@ -145,7 +565,19 @@ public class AlarmRepository {
      * @param scenarios Lista degli scenari da inserire
      */
     public void insertAllScenarios(List<Scenario> scenarios) {
-        executorService.execute(() -> scenarioDao.insertAll(scenarios));
+        executor.write("insertAllScenarios", () -> {
+            long panelId = requireActivePanel();
+            if (panelId == NO_PANEL) {
+                return;
+            }
+            for (Scenario item : scenarios) {
+                if (item.getPanelId() == 0) {
+                    item.setPanelId(panelId);
+                }
+            }
+            scenarioDao.insertAll(scenarios);
+            reloadModel(AlarmModelCache.SCENARIOS);
+        });
     }
 
     /**
@@ -154,15 +586,22 @@ public class AlarmRepository {
      * @param scenario Lo scenario con i dati aggiornati
      */
     public void updateScenario(Scenario scenario) {
-        executorService.execute(() -> scenarioDao.update(scenario));
+        executor.write("updateScenario", () -> {
+            scenarioDao.update(scenario);
+            reloadModel(AlarmModelCache.SCENARIOS);
+        });
     }
 
     /**
-     * Elimina tutti gli scenari dal database.
+     * Elimina tutti gli scenari della centrale attiva.
      * Usato durante il reset della configurazione.
      */
     public void deleteAllScenarios() {
-        executorService.execute(scenarioDao::deleteAll);
+        executor.write("deleteAllScenarios", () -> {
+            scenarioDao.deleteByPanel(activePanel);
+            alarmConfigDao.clearScenarioSectionHashes(activePanel);
+            reloadModel(AlarmModelCache.SCENARIOS);
+        });
     }
 
     /**
@@ -171,7 +610,8 @@ public class AlarmRepository {
      * @return LiveData con gli scenari custom
      */
     public LiveData<List<Scenario>> getCustomScenarios() {
-        return scenarioDao.getCustomScenarios();
+        return Transformations.distinctUntilChanged(
+                Transformations.map(modelCache.getLive(), AlarmModelCache.Snapshot::getCustomScenarios));
     }
 
     /**
@@ -188,25 +628,32 @@ public class AlarmRepository {
      * del salvataggio con lo scenario creato.
      *
      * @param name Nome dello scenario scelto dall'utente
-     * @param zoneMask Bitmask delle zone da includere (es. 13 = zone 1,3,4)
+     * @param zones Zone da includere
      * @param callback Callback invocato al completamento del salvataggio
      */
-    public void saveCustomScenario(String name, int zoneMask, OnScenarioSavedCallback callback) {
-        executorService.execute(() -> {
+    public void saveCustomScenario(String name, ZoneMask zones, OnScenarioSavedCallback callback) {
+        executor.write("saveCustomScenario", () -> {
+            long panelId = requireActivePanel();
+            if (panelId == NO_PANEL) {
+                return;
+            }
+
             // Calcola il prossimo slot disponibile per scenari custom
-            int slot = scenarioDao.getNextCustomSlot();
+            int slot = scenarioDao.getNextCustomSlot(panelId);
 
             // Crea il nuovo scenario
             Scenario scenario = new Scenario();
+            scenario.setPanelId(panelId);
             scenario.setSlot(slot);
             scenario.setName(name);
-            scenario.setZoneMask(zoneMask);
+            scenario.setZones(zones);
             scenario.setEnabled(true);
             scenario.setCustom(true);
             scenario.setUpdatedAt(System.currentTimeMillis());
 
             // Salva nel database
             scenarioDao.insert(scenario);
+            reloadModel(AlarmModelCache.SCENARIOS);
 
             // Notifica il completamento
             if (callback != null) {
@@ -225,7 +672,10 @@ public class AlarmRepository {
      * @param slot Numero slot dello scenario da eliminare
      */
     public void deleteCustomScenario(int slot) {
-        executorService.execute(() -> scenarioDao.deleteBySlot(slot));
+        executor.write("deleteCustomScenario", () -> {
+            scenarioDao.deleteBySlot(activePanel, slot);
+            reloadModel(AlarmModelCache.SCENARIOS);
+        });
     }
 
     /**
@@ -243,31 +693,64 @@ public class AlarmRepository {
     // ========== User ==========
 
     public LiveData<List<User>> getAllUsers() {
-        return userDao.getAllUsers();
+        return Transformations.distinctUntilChanged(
+                Transformations.map(modelCache.getLive(), AlarmModelCache.Snapshot::getUsers));
     }
 
     public LiveData<User> getUserBySlot(int slot) {
-        return userDao.getUserBySlot(slot);
+        return Transformations.distinctUntilChanged(
+                Transformations.map(modelCache.getLive(), model -> model.getUser(slot)));
     }
 
     public LiveData<User> getJokerUser() {
-        return userDao.getJokerUser();
+        return Transformations.distinctUntilChanged(
+                Transformations.map(modelCache.getLive(), AlarmModelCache.Snapshot::getJoker));
     }
 
     public void insertUser(User user) {
-        executorService.execute(() -> userDao.insert(user));
+        executor.write("insertUser", () -> {
+            // Associa alla centrale attiva se non indicata
+            if (user.getPanelId() == 0) {
+                long panelId = requireActivePanel();
+                if (panelId == NO_PANEL) {
+                    return;
+                }
+                user.setPanelId(panelId);
+            }
+            userDao.insert(user);
+            reloadModel(AlarmModelCache.USERS);
+        });
     }
 
     public void insertAllUsers(List<User> users) {
-        executorService.execute(() -> userDao.insertAll(users));
+        executor.write("insertAllUsers", () -> {
+            long panelId = requireActivePanel();
+            if (panelId == NO_PANEL) {
+                return;
+            }
+            for (User item : users) {
+                if (item.getPanelId() == 0) {
+                    item.setPanelId(panelId);
+                }
+            }
+            userDao.insertAll(users);
+            reloadModel(AlarmModelCache.USERS);
+        });
     }
 
     public void updateUser(User user) {
-        executorService.execute(() -> userDao.update(user));
+        executor.write("updateUser", () -> {
+            userDao.update(user);
+            reloadModel(AlarmModelCache.USERS);
+        });
     }
 
     public void deleteAllUsers() {
-        executorService.execute(userDao::deleteAll);
+        executor.write("deleteAllUsers", () -> {
+            userDao.deleteByPanel(activePanel);
+            alarmConfigDao.clearUserSectionHashes(activePanel);
+            reloadModel(AlarmModelCache.USERS);
+        });
     }
 
     // ========== SmsLog ==========
@@ -280,16 +763,194 @@ public class AlarmRepository {
         return smsLogDao.getRecentLogs(limit);
     }
 
+    /**
+     * Crea un pager per la cronologia SMS (paginazione keyset su timestamp e id).
+     * <p>
+     * Il chiamante deve invocare {@link SmsLogPager#close()} quando non lo usa piu'.
+     *
+     * @return un nuovo pager, che inizia subito a caricare la prima pagina
+     */
+    public SmsLogPager createSmsLogPager() {
+        return new SmsLogPager(database, executor);
+    }
+
+    /**
+     * Accoda l'inserimento di un log SMS.
+     * <p>
+     * La scrittura e' raggruppata con le altre del log SMS e avviene entro
+     * pochi millisecondi (vedi {@link SmsLogWriter}).
+     *
+     * @param log Il log da inserire
+     */
     public void insertSmsLog(SmsLog log) {
-        executorService.execute(() -> smsLogDao.insert(log));
+        smsLogWriter.insert(log);
+    }
+
+    /**
+     * Scrive subito i log SMS ancora in buffer.
+     * Chiamato quando l'app passa in background.
+     */
+    public void flushSmsLogs() {
+        smsLogWriter.flush();
     }
 
     public void deleteAllSmsLogs() {
-        executorService.execute(smsLogDao::deleteAll);
+        executor.write("deleteAllSmsLogs", smsLogDao::deleteAll);
     }
 
     public void deleteOldSmsLogs(long beforeTimestamp) {
-        executorService.execute(() -> smsLogDao.deleteOldLogs(beforeTimestamp));
+        executor.write("deleteOldSmsLogs", () -> smsLogDao.deleteOldLogs(beforeTimestamp));
+    }
+
+    /**
+     * Carica i tempi di risposta di una centrale dalla cronologia SMS.
+     *
+     * @param panelId ID della centrale
+     * @param limit Numero massimo di invii da considerare
+     * @param callback Riceve i tempi in millisecondi, dal piu' recente (thread in background)
+     */
+    public void loadResponseTimes(long panelId, int limit, RepositoryCallback<List<Long>> callback) {
+        executor.read("loadResponseTimes", () -> {
+            try {
+                callback.onSuccess(smsLogDao.getResponseTimes(panelId, limit));
+            } catch (Exception e) {
+                callback.onError(e);
+            }
+        });
+    }
+
+    // ========== Comandi in attesa di risposta ==========
+
+    /**
+     * Registra un comando appena inviato a una centrale come in attesa di risposta.
+     * I tipi di risposta attesi sono ricavati dal comando
+     * ({@link SmsCodec#expectedResponses(String)}).
+     *
+     * @param messageId ID del messaggio SMS inviato
+     * @param panelId Centrale destinataria
+     * @param command Comando inviato
+     */
+    public void trackPendingCommand(String messageId, long panelId, String command) {
+        pendingCommands.track(new PendingCommand(messageId, panelId, command,
+                SmsCodec.expectedResponses(command), System.currentTimeMillis(),
+                Constants.PENDING_COMMAND_TTL));
+    }
+
+    /**
+     * Abbina una risposta ricevuta al comando piu' vecchio in attesa per la stessa
+     * centrale che accetta quel tipo di risposta, e lo rimuove dalla tabella.
+     * <p>
+     * L'abbinamento avviene in memoria e non attende mai il database. I comandi
+     * rimasti dal processo precedente vengono caricati in background e abbinati
+     * solo alle risposte che nessun comando di questo processo attende.
+     *
+     * @param panelId Centrale mittente
+     * @param type Tipo della risposta ({@link SmsCodec#identify(String)})
+     * @return il comando abbinato ({@link PendingCommand#isOrphaned()} se del processo
+     *         precedente), o null se la risposta non e' attesa da nessun comando
+     */
+    public PendingCommand matchPendingCommand(long panelId, ResponseType type) {
+        return pendingCommands.match(panelId, type);
+    }
+
+    /**
+     * Rimuove dalla tabella i tentativi di un comando concluso, cosi' che una
+     * risposta tardiva non venga attribuita a un comando successivo.
+     *
+     * @param messageIds ID dei messaggi inviati per il comando
+     */
+    public void releasePendingCommands(Collection<String> messageIds) {
+        pendingCommands.release(messageIds);
+    }
+
+    // ========== Coda comandi in uscita ==========
+
+    /**
+     * Accoda un comando da inviare.
+     *
+     * @param command Comando da accodare
+     */
+    public void enqueueOutboundCommand(OutboundCommand command) {
+        executor.write("enqueueOutboundCommand", () -> command.setId(outboundCommandDao.insert(command)));
+    }
+
+    /**
+     * Legge la coda dei comandi in uscita, nell'ordine di accodamento.
+     * <p>
+     * La lettura passa dalla corsia di scrittura, quindi vede tutti gli accodamenti
+     * e gli aggiornamenti richiesti prima. Sincrono: da chiamare solo da un thread
+     * in background, mai dal main thread.
+     *
+     * @return i comandi in coda, o null se la lettura e' fallita o e' stata interrotta
+     */
+    public List<OutboundCommand> loadOutboundCommands() {
+        if (executor.isWriterThread()) {
+            return outboundCommandDao.getAllSync();
+        }
+        try {
+            return executor.submitWrite("loadOutboundCommands", outboundCommandDao::getAllSync).get();
+        } catch (ExecutionException | RejectedExecutionException e) {
+            Log.e(TAG, "Errore lettura coda comandi", e);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Aggiorna stato e pianificazione di un comando in coda.
+     *
+     * @param command Comando da aggiornare
+     */
+    public void updateOutboundCommand(OutboundCommand command) {
+        executor.write("updateOutboundCommand", () -> outboundCommandDao.update(command));
+    }
+
+    /**
+     * Rimuove dalla coda i comandi inviati, scaduti o falliti definitivamente.
+     *
+     * @param ids ID delle righe
+     */
+    public void deleteOutboundCommands(List<Long> ids) {
+        if (!ids.isEmpty()) {
+            executor.write("deleteOutboundCommands", () -> outboundCommandDao.deleteByIds(ids));
+        }
+    }
+
+    /**
+     * Applica la politica di conservazione ai log SMS: elimina a blocchi i log
+     * in eccesso (archiviandoli se previsto) e compatta il file del database.
+     * <p>
+     * Sincrono: da chiamare solo da un thread in background (vedi
+     * {@code SmsLogRetentionWorker}), mai dal main thread.
+     *
+     * @param policy Politica di conservazione
+     * @return l'esito, o null se l'esecuzione e' fallita o e' stata interrotta
+     */
+    public SmsLogRetentionReport runSmsLogRetention(SmsLogRetentionPolicy policy) {
+        // I log ancora in buffer devono essere contati come gli altri
+        smsLogWriter.flush();
+        try {
+            SmsLogRetentionReport report = smsLogRetention.run(policy);
+            smsLogRetentionReport.postValue(report);
+            return report;
+        } catch (ExecutionException | RejectedExecutionException e) {
+            Log.e(TAG, "Errore conservazione log SMS", e);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Restituisce l'esito dell'ultima conservazione dei log SMS.
+     *
+     * @return LiveData con l'ultimo esito ({@code getStartedAt() == 0} se non ancora eseguita)
+     */
+    public LiveData<SmsLogRetentionReport> getSmsLogRetentionReport() {
+        return smsLogRetentionReport;
     }
 
     // ========== AppSettings ==========
@@ -299,15 +960,15 @@ public class AlarmRepository {
     }
 
     public void insertAppSettings(AppSettings settings) {
-        executorService.execute(() -> appSettingsDao.insert(settings));
+        executor.write("insertAppSettings", () -> appSettingsDao.insert(settings));
     }
 
     public void updateAppSettings(AppSettings settings) {
-        executorService.execute(() -> appSettingsDao.update(settings));
+        executor.write("updateAppSettings", () -> appSettingsDao.update(settings));
     }
 
     public void markFirstLaunchComplete() {
-        executorService.execute(() ->
+        executor.write("markFirstLaunchComplete", () ->
             appSettingsDao.markFirstLaunchComplete(System.currentTimeMillis())
         );
     }
@@ -315,65 +976,63 @@ public class AlarmRepository {
     // ========== ViewModel Helper Methods ==========
 
     /**
-     * Salva una lista di zone (cancella le esistenti e inserisce le nuove).
+     * Applica risposte CONF ricevute alla centrale attiva, in un'unica transazione.
+     * <p>
+     * Le sezioni invariate dall'ultima sincronizzazione non vengono scritte; per
+     * le altre si scrivono solo le differenze rispetto alle righe salvate
+     * (vedi {@link ConfigurationDao}).
+     *
+     * @param snapshot Sezioni ricevute (CONF1-5)
      */
-    public void saveZones(List<Zone> zones) {
-        executorService.execute(() -> {
-            zoneDao.deleteAll();
-            if (zones != null && !zones.isEmpty()) {
-                zoneDao.insertAll(zones);
+    public void applyConfigSnapshot(ConfigSnapshot snapshot) {
+        executor.write("applyConfigSnapshot", () -> {
+            long panelId = requireActivePanel();
+            if (panelId == NO_PANEL || snapshot.isEmpty()) {
+                return;
             }
-        });
-    }
-
-    /**
-     * Salva una lista di scenari (inserisce o aggiorna).
-     */
-    public void saveScenarios(List<Scenario> scenarios) {
-        executorService.execute(() -> {
-            if (scenarios != null) {
-                for (Scenario s : scenarios) {
-                    scenarioDao.insert(s);
+            int written = configurationDao.applyConfigSnapshot(panelId, snapshot);
+            if (written > 0) {
+                int sections = snapshot.getSections();
+                int tables = 0;
+                if ((sections & Constants.CONFIG_SECTION_CONF1) != 0) {
+                    tables |= AlarmModelCache.ZONES;
                 }
-            }
-        });
-    }
-
-    /**
-     * Salva una lista di utenti (inserisce o aggiorna).
-     */
-    public void saveUsers(List<User> users) {
-        executorService.execute(() -> {
-            if (users != null) {
-                for (User u : users) {
-                    userDao.insert(u);
+                if ((sections & Constants.CONFIG_SECTIONS_SCENARIOS) != 0) {
+                    tables |= AlarmModelCache.SCENARIOS;
+                }
+                if ((sections & Constants.CONFIG_SECTIONS_USERS) != 0) {
+                    tables |= AlarmModelCache.USERS;
                 }
+                reloadModel(tables);
             }
+            Log.d(TAG, "Sezioni CONF 0x" + Integer.toHexString(snapshot.getSections())
+                    + " applicate: " + written + " righe modificate");
         });
     }
 
     /**
-     * Aggiorna la versione firmware nella configurazione.
+     * Aggiorna la versione firmware della centrale attiva.
      */
     public void updateConfigVersion(String version) {
-        executorService.execute(() -> {
-            // Se non esiste, crea una nuova configurazione
-            AlarmConfig config = new AlarmConfig();
-            config.setId(1);
-            config.setVersion(version);
-            alarmConfigDao.insert(config);
+        executor.write("updateConfigVersion", () -> {
+            long panelId = requireActivePanel();
+            if (panelId != NO_PANEL) {
+                alarmConfigDao.updateVersion(panelId, version, System.currentTimeMillis());
+            }
         });
     }
 
     /**
-     * Cancella tutti i dati dal database.
+     * Cancella tutti i dati dal database (le centrali configurate restano).
      */
     public void clearAllData() {
-        executorService.execute(() -> {
+        executor.write("clearAllData", () -> {
             zoneDao.deleteAll();
             scenarioDao.deleteAll();
             userDao.deleteAll();
             smsLogDao.deleteAll();
+            alarmConfigDao.clearSectionHashes();
+            reloadModel(AlarmModelCache.ALL);
         });
     }
 
@@ -388,25 +1047,26 @@ public class AlarmRepository {
      * Cancella tutti i log SMS.
      */
     public void clearAllLogs() {
-        executorService.execute(smsLogDao::deleteAll);
+        executor.write("clearAllLogs", smsLogDao::deleteAll);
     }
 
     /**
      * Aggiorna lo stato di un log SMS tramite messageId.
      */
     public void updateSmsLogStatus(String messageId, int status) {
-        executorService.execute(() -> smsLogDao.updateStatus(messageId, status));
+        smsLogWriter.updateStatus(messageId, status, null);
     }
 
     /**
      * Aggiorna lo stato di un log SMS con messaggio di errore.
      */
     public void updateSmsLogStatusWithError(String messageId, int status, String errorMessage) {
-        executorService.execute(() -> smsLogDao.updateStatusWithError(messageId, status, errorMessage));
+        smsLogWriter.updateStatus(messageId, status, errorMessage);
     }
 
     /**
      * Ottiene un log SMS tramite messageId (sincrono).
+     * Non vede inserimenti e cambi di stato ancora nel buffer di {@link SmsLogWriter}.
      */
     public SmsLog getSmsLogByMessageId(String messageId) {
         return smsLogDao.getByMessageId(messageId);
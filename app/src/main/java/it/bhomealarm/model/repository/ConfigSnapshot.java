@@ -0,0 +1,120 @@
+package it.bhomealarm.model.repository;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import it.bhomealarm.model.entity.Scenario;
+import it.bhomealarm.model.entity.User;
+import it.bhomealarm.util.Constants;
+import it.bhomealarm.util.SmsParser;
+
+/**
+ * Risultato di una o piu' risposte CONF da applicare al database.
+ * <p>
+ * Raccoglie, per sezione, i dati decodificati e l'impronta della risposta
+ * ({@link it.bhomealarm.protocol.SmsCodec#contentHash(String)}):
+ * <ul>
+ *     <li>CONF1: zone e versione firmware ({@link #conf1});</li>
+ *     <li>CONF2/CONF3: scenari 1-8 e 9-16 ({@link #scenarios});</li>
+ *     <li>CONF4/CONF5: utenti 1-8 (con Joker) e 9-16 ({@link #users}).</li>
+ * </ul>
+ * {@link AlarmRepository#applyConfigSnapshot(ConfigSnapshot)} applica tutte le
+ * sezioni presenti in un'unica transazione
+ * ({@link it.bhomealarm.model.dao.ConfigurationDao}).
+ * <p>
+ * Non thread-safe: va costruito da un solo thread e non piu' modificato dopo
+ * essere stato passato al repository.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see it.bhomealarm.model.dao.ConfigurationDao
+ */
+public final class ConfigSnapshot {
+
+    private SmsParser.Conf1Data conf1;
+    private final Map<Integer, List<Scenario>> scenarios = new HashMap<>();
+    private final Map<Integer, List<User>> users = new HashMap<>();
+    private final long[] hashes = new long[Constants.CONFIG_TOTAL_STEPS + 1];
+    private int sections;
+
+    /**
+     * Aggiunge la risposta CONF1.
+     *
+     * @param data Dati decodificati (zone e versione)
+     * @param hash Impronta della risposta, 0 se sconosciuta
+     * @return questo snapshot
+     */
+    public ConfigSnapshot conf1(SmsParser.Conf1Data data, long hash) {
+        if (data == null) {
+            throw new IllegalArgumentException("Dati CONF1 mancanti");
+        }
+        conf1 = data;
+        return put(1, hash);
+    }
+
+    /**
+     * Aggiunge una risposta CONF2 o CONF3.
+     *
+     * @param section Sezione (2 = scenari 1-8, 3 = scenari 9-16)
+     * @param list Scenari decodificati
+     * @param hash Impronta della risposta, 0 se sconosciuta
+     * @return questo snapshot
+     */
+    public ConfigSnapshot scenarios(int section, List<Scenario> list, long hash) {
+        if (section != 2 && section != 3) {
+            throw new IllegalArgumentException("Sezione scenari non valida: " + section);
+        }
+        scenarios.put(section, list != null ? list : Collections.<Scenario>emptyList());
+        return put(section, hash);
+    }
+
+    /**
+     * Aggiunge una risposta CONF4 o CONF5.
+     *
+     * @param section Sezione (4 = utenti 1-8 e Joker, 5 = utenti 9-16)
+     * @param list Utenti decodificati
+     * @param hash Impronta della risposta, 0 se sconosciuta
+     * @return questo snapshot
+     */
+    public ConfigSnapshot users(int section, List<User> list, long hash) {
+        if (section != 4 && section != 5) {
+            throw new IllegalArgumentException("Sezione utenti non valida: " + section);
+        }
+        users.put(section, list != null ? list : Collections.<User>emptyList());
+        return put(section, hash);
+    }
+
+    private ConfigSnapshot put(int section, long hash) {
+        hashes[section] = hash;
+        sections |= 1 << (section - 1);
+        return this;
+    }
+
+    /** @return true se lo snapshot contiene la sezione (1-5) */
+    public boolean hasSection(int section) {
+        return section >= 1 && section <= Constants.CONFIG_TOTAL_STEPS
+                && (sections & (1 << (section - 1))) != 0;
+    }
+
+    /** @return maschera delle sezioni presenti (Constants.CONFIG_SECTION_*) */
+    public int getSections() { return sections; }
+
+    /** @return true se non contiene nessuna sezione */
+    public boolean isEmpty() { return sections == 0; }
+
+    /** @return dati CONF1, o null se assenti */
+    public SmsParser.Conf1Data getConf1() { return conf1; }
+
+    /** @return scenari della sezione, o null se assente */
+    public List<Scenario> getScenarios(int section) { return scenarios.get(section); }
+
+    /** @return utenti della sezione, o null se assente */
+    public List<User> getUsers(int section) { return users.get(section); }
+
+    /** @return impronta della risposta della sezione, 0 se sconosciuta o assente */
+    public long getHash(int section) {
+        return hasSection(section) ? hashes[section] : 0L;
+    }
+}
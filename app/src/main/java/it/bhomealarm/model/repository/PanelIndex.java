@@ -0,0 +1,97 @@
+package it.bhomealarm.model.repository;
+
+import java.util.List;
+
+import it.bhomealarm.model.entity.AlarmConfig;
+import it.bhomealarm.protocol.CompiledPhoneMatcher;
+
+/**
+ * Indice immutabile mittente SMS &rarr; centrale.
+ * <p>
+ * Compila i numeri di tutte le centrali in un unico {@link CompiledPhoneMatcher}
+ * e conserva, in un array parallelo, l'ID della centrale corrispondente a ogni
+ * numero. La ricerca di un mittente costa quindi una scansione del numero piu'
+ * un accesso alla tabella hash del matcher, indipendentemente dal numero di
+ * centrali configurate.
+ * <p>
+ * Le istanze sono immutabili e thread-safe: {@link AlarmRepository} ne costruisce
+ * una nuova a ogni modifica delle centrali e la pubblica tramite un campo volatile.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see AlarmRepository#findPanelIdByPhone(String)
+ */
+final class PanelIndex {
+
+    /** Indice senza centrali. */
+    static final PanelIndex EMPTY = new PanelIndex(CompiledPhoneMatcher.empty(), new long[0]);
+
+    /** Matcher compilato sui numeri delle centrali, nello stesso ordine di {@link #panelIds}. */
+    private final CompiledPhoneMatcher matcher;
+
+    /** ID delle centrali, indicizzati come i numeri passati al matcher. */
+    private final long[] panelIds;
+
+    private PanelIndex(CompiledPhoneMatcher matcher, long[] panelIds) {
+        this.matcher = matcher;
+        this.panelIds = panelIds;
+    }
+
+    /**
+     * Costruisce l'indice a partire dalle centrali configurate.
+     * <p>
+     * Se due centrali hanno lo stesso numero vale la prima della lista.
+     *
+     * @param panels centrali lette da {@code alarm_config}
+     * @return l'indice compilato
+     */
+    static PanelIndex build(List<AlarmConfig> panels) {
+        if (panels == null || panels.isEmpty()) {
+            return EMPTY;
+        }
+
+        String[] numbers = new String[panels.size()];
+        long[] ids = new long[panels.size()];
+        for (int i = 0; i < numbers.length; i++) {
+            AlarmConfig panel = panels.get(i);
+            numbers[i] = panel.getPhoneNumber();
+            ids[i] = panel.getId();
+        }
+        return new PanelIndex(CompiledPhoneMatcher.compile(numbers), ids);
+    }
+
+    /**
+     * Costruisce un indice con una sola centrale, senza leggere il database.
+     *
+     * @param panelId ID della centrale
+     * @param phoneNumber numero della centrale; vuoto = indice senza centrali
+     * @return l'indice compilato
+     */
+    static PanelIndex single(long panelId, String phoneNumber) {
+        if (panelId == AlarmRepository.NO_PANEL || phoneNumber == null || phoneNumber.isEmpty()) {
+            return EMPTY;
+        }
+        return new PanelIndex(CompiledPhoneMatcher.compile(new String[] {phoneNumber}),
+                new long[] {panelId});
+    }
+
+    /**
+     * Restituisce la centrale che corrisponde al mittente.
+     *
+     * @param sender indirizzo del mittente
+     * @return l'ID della centrale, oppure {@link AlarmRepository#NO_PANEL}
+     */
+    long findPanelId(CharSequence sender) {
+        int index = matcher.indexOf(sender);
+        return index >= 0 ? panelIds[index] : AlarmRepository.NO_PANEL;
+    }
+
+    /**
+     * Numero di centrali indicizzate.
+     *
+     * @return numero di centrali con un numero di telefono valido
+     */
+    int size() {
+        return matcher.size();
+    }
+}
@@ -0,0 +1,170 @@
+package it.bhomealarm.model.repository;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import it.bhomealarm.model.dao.PendingCommandDao;
+import it.bhomealarm.model.entity.PendingCommand;
+import it.bhomealarm.protocol.ResponseType;
+
+/**
+ * Tabella di correlazione tra comandi inviati e risposte delle centrali.
+ * <p>
+ * Ogni tentativo di invio viene registrato con il suo {@code message_id} e i tipi
+ * di risposta attesi. Una risposta viene attribuita al comando <b>piu' vecchio</b>
+ * ancora in attesa per la stessa centrale che accetta quel tipo di risposta: la
+ * centrale risponde nell'ordine in cui riceve i comandi, quindi piu' comandi
+ * possono essere in volo contemporaneamente (anche verso centrali diverse) senza
+ * che le risposte si confondano.
+ * <p>
+ * La tabella e' tenuta in memoria, cosi' che registrare un invio o abbinare un
+ * SMS in arrivo non acceda al database e non attenda mai la corsia di scrittura
+ * (i chiamanti sono sul main thread); ogni modifica viene replicata su
+ * {@code pending_commands} tramite la corsia di scrittura, nello stesso ordine.
+ * Le righe scadute ({@code expires_at}) vengono ignorate e rimosse.
+ * <p>
+ * All'avvio del processo le righe salvate dal processo precedente vengono
+ * ricaricate in background come comandi <b>orfani</b>: le richieste che le avevano
+ * registrate non esistono piu'. Un orfano viene abbinato solo a una risposta che
+ * nessun comando di questo processo accetta, cosi' non assorbe mai le risposte
+ * ai nuovi comandi; serve ad attribuire nel log e nello stato una risposta
+ * arrivata dopo un riavvio. Finche' il caricamento non e' concluso gli orfani
+ * semplicemente non ci sono: nessuna chiamata lo attende.
+ * <p>
+ * Thread-safe.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see AlarmRepository#matchPendingCommand(long, ResponseType)
+ */
+final class PendingCommandTable {
+
+    private static final String TAG = "PendingCommandTable";
+
+    private final PendingCommandDao dao;
+    private final RepositoryExecutor executor;
+
+    /** Comandi in attesa, in ordine di invio. Accesso sotto il lock su {@code this}. */
+    private final List<PendingCommand> entries = new ArrayList<>();
+
+    /** Comandi del processo precedente, in ordine di invio. Accesso sotto il lock su {@code this}. */
+    private final List<PendingCommand> orphans = new ArrayList<>();
+
+    PendingCommandTable(PendingCommandDao dao, RepositoryExecutor executor) {
+        this.dao = dao;
+        this.executor = executor;
+    }
+
+    /**
+     * Carica come orfani i comandi salvati dal processo precedente, eliminando
+     * quelli scaduti. Da chiamare sulla corsia di scrittura, prima di qualsiasi
+     * {@link #track}: le righe inserite dopo, nello stesso ordine, non vengono lette.
+     */
+    void loadOrphans() {
+        long now = System.currentTimeMillis();
+        dao.deleteExpired(now);
+        List<PendingCommand> stored = dao.getActiveSync(now);
+        if (stored.isEmpty()) {
+            return;
+        }
+        for (PendingCommand command : stored) {
+            command.setOrphaned(true);
+        }
+        synchronized (this) {
+            orphans.addAll(stored);
+        }
+        Log.d(TAG, stored.size() + " comandi del processo precedente ancora in attesa di risposta");
+    }
+
+    /**
+     * Registra un tentativo appena inviato.
+     *
+     * @param command Comando in attesa
+     */
+    void track(PendingCommand command) {
+        synchronized (this) {
+            entries.add(command);
+        }
+        executor.write("trackCommand", () -> dao.insert(command));
+    }
+
+    /**
+     * Abbina una risposta al comando piu' vecchio in attesa che la accetta e lo rimuove.
+     * Gli orfani vengono considerati solo se nessun comando di questo processo la accetta.
+     *
+     * @param panelId Centrale mittente
+     * @param type Tipo della risposta
+     * @return il comando abbinato ({@link PendingCommand#isOrphaned()} se del processo
+     *         precedente), o null se nessun comando attende questa risposta
+     */
+    PendingCommand match(long panelId, ResponseType type) {
+        long now = System.currentTimeMillis();
+        PendingCommand matched;
+        List<String> removed = new ArrayList<>();
+        synchronized (this) {
+            matched = take(entries, panelId, type, now, removed);
+            if (matched == null && !orphans.isEmpty()) {
+                matched = take(orphans, panelId, type, now, removed);
+            }
+        }
+        delete(removed);
+        return matched;
+    }
+
+    /**
+     * Rimuove da una lista il comando piu' vecchio che accetta la risposta,
+     * insieme ai comandi scaduti incontrati prima.
+     *
+     * @param removed riceve i message_id rimossi
+     * @return il comando abbinato, o null
+     */
+    private static PendingCommand take(List<PendingCommand> list, long panelId, ResponseType type,
+                                       long now, List<String> removed) {
+        Iterator<PendingCommand> it = list.iterator();
+        while (it.hasNext()) {
+            PendingCommand entry = it.next();
+            if (entry.isExpired(now)) {
+                it.remove();
+                removed.add(entry.getMessageId());
+            } else if (entry.getPanelId() == panelId && entry.expects(type)) {
+                it.remove();
+                removed.add(entry.getMessageId());
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Rimuove i tentativi di un comando concluso (risposto, fallito o annullato).
+     *
+     * @param messageIds ID dei messaggi; quelli gia' rimossi vengono ignorati
+     */
+    void release(Collection<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return;
+        }
+        List<String> removed = new ArrayList<>();
+        synchronized (this) {
+            Iterator<PendingCommand> it = entries.iterator();
+            while (it.hasNext()) {
+                PendingCommand entry = it.next();
+                if (messageIds.contains(entry.getMessageId())) {
+                    it.remove();
+                    removed.add(entry.getMessageId());
+                }
+            }
+        }
+        delete(removed);
+    }
+
+    private void delete(List<String> messageIds) {
+        if (!messageIds.isEmpty()) {
+            executor.write("releaseCommands", () -> dao.deleteByIds(messageIds));
+        }
+    }
+}
@@ -0,0 +1,434 @@
+package it.bhomealarm.model.repository;
+
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor dedicato alle operazioni su database di {@link AlarmRepository}.
+ * <p>
+ * Sostituisce il pool fisso con coda illimitata usato in precedenza e offre:
+ * <ul>
+ *     <li><b>Corsia di scrittura seriale</b>: un solo thread esegue tutte le
+ *         operazioni che modificano il database, nell'ordine di invio. Ad esempio
+ *         il confronto e le scritture di {@code applyConfigSnapshot} non possono sovrapporsi a un altro
+ *         inserimento di zone.</li>
+ *     <li><b>Corsia di lettura parallela</b>: le sole letture girano su
+ *         {@value #READ_THREADS} thread e non attendono le scritture in coda.</li>
+ *     <li><b>Code limitate</b>: quando una coda e' piena il chiamante attende fino a
+ *         {@value #OFFER_TIMEOUT_MS} ms (contropressione); se la coda resta piena
+ *         il task viene annullato (il suo Future non resta mai in sospeso), conteggiato
+ *         e il chiamante riceve {@link RejectedExecutionException}. Il main thread
+ *         non attende mai: il task viene affidato al timer, che attende al suo
+ *         posto, e i task successivi del main thread lo seguono nello stesso ordine;
+ *         se la coda resta piena il task viene annullato e registrato nel log.</li>
+ *     <li><b>Scritture differite</b>: {@link #writeDelayed} accoda un'operazione
+ *         sulla corsia di scrittura dopo un breve ritardo (usato per raggruppare
+ *         piu' scritture in una sola transazione).</li>
+ *     <li><b>Thread con nome</b> ({@code bhome-repo-write}, {@code bhome-repo-read-N},
+ *         {@code bhome-repo-timer}), riconoscibili in trace e dump.</li>
+ *     <li><b>Metriche</b>: per ogni operazione vengono misurati il tempo in coda
+ *         e il tempo di esecuzione; le istantanee {@link RepositoryStats} sono
+ *         pubblicate come LiveData al piu' ogni {@value #PUBLISH_INTERVAL_MS} ms,
+ *         e comunque quando le code si svuotano.</li>
+ * </ul>
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see RepositoryStats
+ */
+public final class RepositoryExecutor {
+
+    private static final String TAG = "RepositoryExecutor";
+
+    /** Capacita' della coda di scrittura. */
+    private static final int WRITE_QUEUE_CAPACITY = 256;
+
+    /** Numero di thread della corsia di lettura. */
+    private static final int READ_THREADS = 2;
+
+    /** Capacita' della coda di lettura. */
+    private static final int READ_QUEUE_CAPACITY = 64;
+
+    /** Attesa massima del chiamante quando una coda e' piena. */
+    private static final long OFFER_TIMEOUT_MS = 2_000;
+
+    /** Intervallo minimo tra due pubblicazioni delle metriche. */
+    private static final long PUBLISH_INTERVAL_MS = 1_000;
+
+    private final ThreadPoolExecutor writeLane;
+    private final ThreadPoolExecutor readLane;
+
+    /** Timer che accoda le scritture differite sulla corsia di scrittura. */
+    private final ScheduledThreadPoolExecutor timer;
+
+    private final AtomicLong writeRejected = new AtomicLong();
+    private final AtomicLong readRejected = new AtomicLong();
+
+    /** Metriche cumulative per nome operazione. */
+    private final Map<String, OperationCounter> counters = new ConcurrentHashMap<>();
+
+    private final MutableLiveData<RepositoryStats> stats = new MutableLiveData<>(RepositoryStats.EMPTY);
+    private final AtomicLong lastPublishNanos = new AtomicLong();
+
+    /** Thread della corsia di scrittura (uno solo per tutta la vita dell'executor). */
+    private volatile Thread writerThread;
+
+    RepositoryExecutor() {
+        timer = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("bhome-repo-timer", false, false));
+        writeLane = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(WRITE_QUEUE_CAPACITY),
+                new NamedThreadFactory("bhome-repo-write", true, false),
+                new BlockingRejectionHandler("write", writeRejected));
+        readLane = new ThreadPoolExecutor(READ_THREADS, READ_THREADS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(READ_QUEUE_CAPACITY),
+                new NamedThreadFactory("bhome-repo-read", false, true),
+                new BlockingRejectionHandler("read", readRejected));
+    }
+
+    /**
+     * Accoda un'operazione che modifica il database sulla corsia seriale.
+     *
+     * @param operation Nome dell'operazione (usato per le metriche)
+     * @param task Operazione da eseguire
+     * @throws RejectedExecutionException se la coda resta piena (mai dal main thread)
+     */
+    public void write(String operation, Runnable task) {
+        execute(writeLane, new TimedTask<Void>(operation, task, null));
+    }
+
+    /**
+     * Accoda un'operazione di scrittura e restituisce il suo risultato futuro.
+     *
+     * @param operation Nome dell'operazione (usato per le metriche)
+     * @param task Operazione da eseguire
+     * @param <T> Tipo del risultato
+     * @return Future completato al termine dell'operazione
+     * @throws RejectedExecutionException se la coda resta piena (mai dal main thread)
+     */
+    public <T> Future<T> submitWrite(String operation, Callable<T> task) {
+        TimedTask<T> timed = new TimedTask<>(operation, task);
+        execute(writeLane, timed);
+        return timed;
+    }
+
+    /**
+     * Accoda un'operazione sulla corsia di scrittura dopo il ritardo indicato.
+     * <p>
+     * Il tempo in coda misurato per l'operazione parte dall'accodamento effettivo,
+     * non dalla chiamata. Se allo scadere la coda resta piena l'operazione viene
+     * scartata e registrata come errore nel log.
+     *
+     * @param operation Nome dell'operazione (usato per le metriche)
+     * @param task Operazione da eseguire
+     * @param delayMs Ritardo in millisecondi
+     */
+    public void writeDelayed(String operation, Runnable task, long delayMs) {
+        writeDelayed(operation, task, delayMs, null);
+    }
+
+    /**
+     * Come {@link #writeDelayed(String, Runnable, long)}, con un'azione eseguita
+     * sul thread del timer se allo scadere l'operazione viene scartata.
+     *
+     * @param operation Nome dell'operazione (usato per le metriche)
+     * @param task Operazione da eseguire
+     * @param delayMs Ritardo in millisecondi
+     * @param onRejected Azione da eseguire se l'operazione viene scartata, o null
+     */
+    public void writeDelayed(String operation, Runnable task, long delayMs, Runnable onRejected) {
+        timer.schedule(() -> {
+            try {
+                write(operation, task);
+            } catch (RejectedExecutionException e) {
+                Log.e(TAG, "Operazione differita " + operation + " non eseguita", e);
+                if (onRejected != null) {
+                    onRejected.run();
+                }
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Accoda un'operazione di sola lettura sulla corsia parallela.
+     *
+     * @param operation Nome dell'operazione (usato per le metriche)
+     * @param task Operazione da eseguire
+     * @throws RejectedExecutionException se la coda resta piena (mai dal main thread)
+     */
+    public void read(String operation, Runnable task) {
+        execute(readLane, new TimedTask<Void>(operation, task, null));
+    }
+
+    /**
+     * Accoda un'operazione di sola lettura e restituisce il suo risultato futuro.
+     *
+     * @param operation Nome dell'operazione (usato per le metriche)
+     * @param task Operazione da eseguire
+     * @param <T> Tipo del risultato
+     * @return Future completato al termine dell'operazione
+     * @throws RejectedExecutionException se la coda resta piena (mai dal main thread)
+     */
+    public <T> Future<T> submitRead(String operation, Callable<T> task) {
+        TimedTask<T> timed = new TimedTask<>(operation, task);
+        execute(readLane, timed);
+        return timed;
+    }
+
+    /**
+     * Accoda un task su una corsia. Dal main thread, se task precedenti sono
+     * ancora affidati al timer perche' la coda era piena, il task li segue:
+     * le operazioni del main thread restano nell'ordine di invio.
+     */
+    private void execute(ThreadPoolExecutor lane, Runnable task) {
+        BlockingRejectionHandler handler = (BlockingRejectionHandler) lane.getRejectedExecutionHandler();
+        if (handler.hasHandedOff() && isMainThread()) {
+            handler.handOff(task, lane);
+        } else {
+            lane.execute(task);
+        }
+    }
+
+    private static boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    /**
+     * Indica se il thread corrente e' quello della corsia di scrittura.
+     * <p>
+     * Serve a evitare che un'operazione di scrittura attenda un'altra
+     * operazione accodata dietro di se' (deadlock).
+     *
+     * @return true se chiamato dalla corsia di scrittura
+     */
+    public boolean isWriterThread() {
+        return Thread.currentThread() == writerThread;
+    }
+
+    /**
+     * Restituisce le metriche dell'executor come LiveData.
+     *
+     * @return LiveData con l'ultima istantanea pubblicata
+     */
+    public LiveData<RepositoryStats> getStats() {
+        return stats;
+    }
+
+    /**
+     * Calcola un'istantanea delle metriche correnti.
+     *
+     * @return le metriche al momento della chiamata
+     */
+    public RepositoryStats snapshot() {
+        Map<String, RepositoryStats.OperationStats> operations = new TreeMap<>();
+        for (Map.Entry<String, OperationCounter> entry : counters.entrySet()) {
+            operations.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return new RepositoryStats(laneStats(writeLane, writeRejected),
+                laneStats(readLane, readRejected), operations);
+    }
+
+    private static RepositoryStats.LaneStats laneStats(ThreadPoolExecutor lane, AtomicLong rejected) {
+        return new RepositoryStats.LaneStats(lane.getQueue().size(), lane.getActiveCount(),
+                lane.getCompletedTaskCount(), rejected.get());
+    }
+
+    /**
+     * Pubblica le metriche se e' trascorso l'intervallo minimo o se le code sono vuote.
+     */
+    private void maybePublish() {
+        long now = System.nanoTime();
+        long last = lastPublishNanos.get();
+        boolean idle = writeLane.getQueue().isEmpty() && readLane.getQueue().isEmpty();
+        if ((idle || now - last >= TimeUnit.MILLISECONDS.toNanos(PUBLISH_INTERVAL_MS))
+                && lastPublishNanos.compareAndSet(last, now)) {
+            stats.postValue(snapshot());
+        }
+    }
+
+    /**
+     * Task che misura il tempo trascorso in coda e quello di esecuzione.
+     */
+    private final class TimedTask<T> extends FutureTask<T> {
+
+        private final String operation;
+        private final long enqueuedNanos = System.nanoTime();
+
+        TimedTask(String operation, Callable<T> callable) {
+            super(callable);
+            this.operation = operation;
+        }
+
+        TimedTask(String operation, Runnable runnable, T result) {
+            super(runnable, result);
+            this.operation = operation;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                super.run();
+            } finally {
+                long end = System.nanoTime();
+                counters.computeIfAbsent(operation, k -> new OperationCounter())
+                        .record(start - enqueuedNanos, end - start);
+                maybePublish();
+            }
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            // execute() non riporterebbe l'eccezione: la registriamo qui
+            Log.e(TAG, "Errore nell'operazione " + operation, t);
+            super.setException(t);
+        }
+    }
+
+    /**
+     * Contatori cumulativi di una singola operazione.
+     */
+    private static final class OperationCounter {
+
+        private long count;
+        private long totalQueue;
+        private long maxQueue;
+        private long totalRun;
+        private long maxRun;
+
+        synchronized void record(long queueNanos, long runNanos) {
+            count++;
+            totalQueue += queueNanos;
+            totalRun += runNanos;
+            maxQueue = Math.max(maxQueue, queueNanos);
+            maxRun = Math.max(maxRun, runNanos);
+        }
+
+        synchronized RepositoryStats.OperationStats snapshot() {
+            return new RepositoryStats.OperationStats(count, totalQueue, maxQueue, totalRun, maxRun);
+        }
+    }
+
+    /**
+     * Politica di rifiuto con contropressione: il chiamante attende che si liberi
+     * un posto in coda per al massimo {@link #OFFER_TIMEOUT_MS} ms. Se non si
+     * libera, il task viene annullato (chi attende il suo Future riceve
+     * {@link java.util.concurrent.CancellationException}) e il chiamante
+     * {@link RejectedExecutionException}.
+     * <p>
+     * Il main thread non attende: il task viene affidato al timer, che attende
+     * al suo posto e, se la coda resta piena, lo annulla e lo registra nel log.
+     */
+    private final class BlockingRejectionHandler implements RejectedExecutionHandler {
+
+        private final String lane;
+        private final AtomicLong rejected;
+
+        /** Task affidati al timer e non ancora accodati o rifiutati. */
+        private final AtomicInteger handedOff = new AtomicInteger();
+
+        BlockingRejectionHandler(String lane, AtomicLong rejected) {
+            this.lane = lane;
+            this.rejected = rejected;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+            if (!executor.isShutdown() && isMainThread()) {
+                handOff(task, executor);
+                return;
+            }
+            if (!executor.isShutdown() && offer(task, executor)) {
+                return;
+            }
+            reject(task);
+            throw new RejectedExecutionException("Coda " + lane + " piena");
+        }
+
+        boolean hasHandedOff() {
+            return handedOff.get() > 0;
+        }
+
+        /**
+         * Affida il task al timer, che lo accoda appena possibile. Il timer ha un
+         * solo thread: i task affidati vengono accodati nell'ordine di invio.
+         */
+        void handOff(Runnable task, ThreadPoolExecutor executor) {
+            handedOff.incrementAndGet();
+            timer.execute(() -> {
+                try {
+                    if (executor.isShutdown() || !offer(task, executor)) {
+                        reject(task);
+                    }
+                } finally {
+                    handedOff.decrementAndGet();
+                }
+            });
+        }
+
+        private boolean offer(Runnable task, ThreadPoolExecutor executor) {
+            try {
+                return executor.getQueue().offer(task, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        private void reject(Runnable task) {
+            rejected.incrementAndGet();
+            if (task instanceof Future) {
+                ((Future<?>) task).cancel(false);
+            }
+            Log.e(TAG, "Coda " + lane + " piena: operazione rifiutata");
+        }
+    }
+
+    /**
+     * Factory di thread con nome e priorita' di background.
+     */
+    private final class NamedThreadFactory implements ThreadFactory {
+
+        private final String prefix;
+        private final boolean writer;
+        private final boolean numbered;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        NamedThreadFactory(String prefix, boolean writer, boolean numbered) {
+            this.prefix = prefix;
+            this.writer = writer;
+            this.numbered = numbered;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            String name = numbered ? prefix + "-" + counter.incrementAndGet() : prefix;
+            Thread thread = new Thread(() -> {
+                android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, name);
+            if (writer) {
+                writerThread = thread;
+            }
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package it.bhomealarm.model.repository;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Istantanea immutabile delle metriche di {@link RepositoryExecutor}.
+ * <p>
+ * Contiene:
+ * <ul>
+ *     <li>lo stato delle due corsie (scrittura seriale e lettura parallela):
+ *         profondita' della coda, task in esecuzione, completati e rifiutati</li>
+ *     <li>per ogni operazione del repository (es. {@code applyConfigSnapshot}) il numero di
+ *         esecuzioni, il tempo medio e massimo trascorso in coda e il tempo medio
+ *         e massimo di esecuzione</li>
+ * </ul>
+ * <p>
+ * Le istanze vengono pubblicate tramite {@link AlarmRepository#getRepositoryStats()}.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see RepositoryExecutor
+ */
+public final class RepositoryStats {
+
+    /** Statistiche vuote (nessuna operazione eseguita). */
+    static final RepositoryStats EMPTY = new RepositoryStats(
+            new LaneStats(0, 0, 0, 0), new LaneStats(0, 0, 0, 0), Collections.emptyMap());
+
+    private final LaneStats writeLane;
+    private final LaneStats readLane;
+    private final Map<String, OperationStats> operations;
+
+    RepositoryStats(LaneStats writeLane, LaneStats readLane, Map<String, OperationStats> operations) {
+        this.writeLane = writeLane;
+        this.readLane = readLane;
+        this.operations = Collections.unmodifiableMap(operations);
+    }
+
+    /** @return stato della corsia di scrittura (un solo thread, ordine FIFO) */
+    public LaneStats getWriteLane() { return writeLane; }
+
+    /** @return stato della corsia di lettura (thread paralleli) */
+    public LaneStats getReadLane() { return readLane; }
+
+    /** @return metriche per nome operazione, in ordine alfabetico */
+    public Map<String, OperationStats> getOperations() { return operations; }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "RepositoryStats{write=" + writeLane + ", read=" + readLane
+                + ", operations=" + operations.size() + '}';
+    }
+
+    /**
+     * Stato di una corsia dell'executor al momento dell'istantanea.
+     */
+    public static final class LaneStats {
+
+        private final int queueDepth;
+        private final int active;
+        private final long completed;
+        private final long rejected;
+
+        LaneStats(int queueDepth, int active, long completed, long rejected) {
+            this.queueDepth = queueDepth;
+            this.active = active;
+            this.completed = completed;
+            this.rejected = rejected;
+        }
+
+        /** @return task in attesa nella coda */
+        public int getQueueDepth() { return queueDepth; }
+
+        /** @return task in esecuzione */
+        public int getActive() { return active; }
+
+        /** @return task completati dall'avvio */
+        public long getCompleted() { return completed; }
+
+        /** @return task scartati perche' la coda e' rimasta piena */
+        public long getRejected() { return rejected; }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "{queue=" + queueDepth + ", active=" + active
+                    + ", completed=" + completed + ", rejected=" + rejected + '}';
+        }
+    }
+
+    /**
+     * Metriche cumulative di una singola operazione del repository.
+     */
+    public static final class OperationStats {
+
+        private final long count;
+        private final long totalQueueNanos;
+        private final long maxQueueNanos;
+        private final long totalRunNanos;
+        private final long maxRunNanos;
+
+        OperationStats(long count, long totalQueueNanos, long maxQueueNanos,
+                       long totalRunNanos, long maxRunNanos) {
+            this.count = count;
+            this.totalQueueNanos = totalQueueNanos;
+            this.maxQueueNanos = maxQueueNanos;
+            this.totalRunNanos = totalRunNanos;
+            this.maxRunNanos = maxRunNanos;
+        }
+
+        /** @return numero di esecuzioni completate */
+        public long getCount() { return count; }
+
+        /** @return tempo medio di attesa in coda, in millisecondi */
+        public double getAvgQueueMillis() { return average(totalQueueNanos); }
+
+        /** @return tempo massimo di attesa in coda, in millisecondi */
+        public double getMaxQueueMillis() { return maxQueueNanos / 1_000_000.0; }
+
+        /** @return tempo medio di esecuzione, in millisecondi */
+        public double getAvgRunMillis() { return average(totalRunNanos); }
+
+        /** @return tempo massimo di esecuzione, in millisecondi */
+        public double getMaxRunMillis() { return maxRunNanos / 1_000_000.0; }
+
+        private double average(long totalNanos) {
+            return count == 0 ? 0 : totalNanos / (count * 1_000_000.0);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(java.util.Locale.ROOT,
+                    "{count=%d, queue avg/max=%.2f/%.2f ms, run avg/max=%.2f/%.2f ms}",
+                    count, getAvgQueueMillis(), getMaxQueueMillis(),
+                    getAvgRunMillis(), getMaxRunMillis());
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package it.bhomealarm.model.repository;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.room.InvalidationTracker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import it.bhomealarm.model.dao.SmsLogDao;
+import it.bhomealarm.model.database.AppDatabase;
+import it.bhomealarm.model.entity.SmsLog;
+
+/**
+ * Caricamento a pagine della cronologia SMS con paginazione keyset.
+ * <p>
+ * Invece di materializzare l'intera tabella {@code sms_log} (o le ultime N righe)
+ * in un'unica query osservata, il pager:
+ * <ul>
+ *     <li>carica una pagina di {@value #PAGE_SIZE} log alla volta, su richiesta
+ *         della UI durante lo scorrimento ({@link #loadMore()});</li>
+ *     <li>usa come chiave la coppia ({@code timestamp}, {@code id}) dell'ultimo log
+ *         caricato, quindi ogni pagina costa una ricerca sull'indice
+ *         {@code timestamp} senza OFFSET;</li>
+ *     <li>quando la tabella cambia (nuovo SMS, cambio di stato) ricarica solo la
+ *         testa: i log dal confine della prima pagina in avanti. Le pagine gia'
+ *         caricate oltre il confine non vengono rilette.</li>
+ * </ul>
+ * Se il log di confine non esiste piu' (cronologia cancellata o ripulita) la lista
+ * viene ricaricata da capo.
+ * <p>
+ * I log ancora nel buffer di {@link SmsLogWriter} non sono visibili alle query:
+ * compaiono al suo svuotamento (al piu' {@value SmsLogWriter#FLUSH_DELAY_MS} ms
+ * dopo), che notifica l'osservatore e fa ricaricare la testa.
+ * <p>
+ * Le query girano sulla corsia di lettura di {@link RepositoryExecutor}, fuori dal
+ * lock del pager: il lock protegge solo lo stato in memoria, quindi
+ * {@link #loadMore()} e {@link #hasMore()} non attendono mai il database. Il
+ * risultato di una query viene pubblicato in un unico passo sotto il lock, e
+ * scartato (o la query ripetuta) se nel frattempo la lista e' stata sostituita da
+ * una lettura piu' recente. La lista pubblicata e' immutabile. Chiamare
+ * {@link #close()} quando il pager non serve piu' per rimuovere l'osservatore del
+ * database.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see AlarmRepository#createSmsLogPager()
+ */
+public final class SmsLogPager {
+
+    /** Numero di log per pagina. */
+    public static final int PAGE_SIZE = 50;
+
+    private final AppDatabase database;
+    private final SmsLogDao smsLogDao;
+    private final RepositoryExecutor executor;
+
+    private final MutableLiveData<List<SmsLog>> logs = new MutableLiveData<>();
+    private final MutableLiveData<Boolean> loading = new MutableLiveData<>(false);
+
+    /** Caricamenti della prima pagina o delle successive in corso. */
+    private final AtomicInteger runningLoads = new AtomicInteger();
+
+    /** Log caricati, in ordine decrescente. Accesso sotto {@code this}. */
+    private List<SmsLog> loaded = Collections.emptyList();
+
+    /** True quando l'ultima pagina letta era incompleta. Scritto sotto {@code this}. */
+    private volatile boolean endReached;
+
+    /** True mentre una pagina successiva e' in caricamento. Accesso sotto {@code this}. */
+    private boolean loadingMore;
+
+    /**
+     * Numero progressivo delle ricariche avviate e dell'ultima pubblicata: una
+     * ricarica non pubblica se una avviata dopo di lei l'ha gia' fatto.
+     * Accesso sotto {@code this}.
+     */
+    private long startedReloads;
+    private long publishedReload;
+
+    private final InvalidationTracker.Observer observer = new InvalidationTracker.Observer("sms_log") {
+        @Override
+        public void onInvalidated(@NonNull Set<String> tables) {
+            executor.read("smsLogPagerHead", SmsLogPager.this::reloadHead);
+        }
+    };
+
+    SmsLogPager(AppDatabase database, RepositoryExecutor executor) {
+        this.database = database;
+        this.smsLogDao = database.smsLogDao();
+        this.executor = executor;
+        database.getInvalidationTracker().addObserver(observer);
+        executor.read("smsLogPagerFirst", () -> trackLoading(this::reloadAll));
+    }
+
+    /**
+     * Restituisce i log caricati finora, dal piu' recente.
+     *
+     * @return LiveData con la lista immutabile dei log caricati
+     */
+    public LiveData<List<SmsLog>> getLogs() {
+        return logs;
+    }
+
+    /**
+     * Indica se e' in corso il caricamento della prima pagina o di una successiva.
+     * Gli aggiornamenti della testa dopo un nuovo SMS non vengono segnalati.
+     *
+     * @return LiveData con true durante il caricamento
+     */
+    public LiveData<Boolean> isLoading() {
+        return loading;
+    }
+
+    /**
+     * Indica se ci sono altre pagine da caricare.
+     *
+     * @return false se l'ultima pagina e' gia' stata caricata
+     */
+    public boolean hasMore() {
+        return !endReached;
+    }
+
+    /**
+     * Richiede la pagina successiva. Ignorata se un caricamento e' gia' in corso
+     * o se non ci sono altri log.
+     */
+    public void loadMore() {
+        synchronized (this) {
+            if (loadingMore || endReached || loaded.isEmpty()) {
+                return;
+            }
+            loadingMore = true;
+        }
+        executor.read("smsLogPagerNext", () -> trackLoading(this::loadNextPage));
+    }
+
+    /**
+     * Ricarica la lista dalla prima pagina.
+     */
+    public void refresh() {
+        executor.read("smsLogPagerFirst", () -> trackLoading(this::reloadAll));
+    }
+
+    /**
+     * Rimuove l'osservatore del database. Il pager non si aggiorna piu'.
+     */
+    public void close() {
+        database.getInvalidationTracker().removeObserver(observer);
+    }
+
+    private void trackLoading(Runnable load) {
+        if (runningLoads.getAndIncrement() == 0) {
+            loading.postValue(true);
+        }
+        try {
+            load.run();
+        } finally {
+            if (runningLoads.decrementAndGet() == 0) {
+                loading.postValue(false);
+            }
+        }
+    }
+
+    private void reloadAll() {
+        long reload;
+        synchronized (this) {
+            reload = ++startedReloads;
+        }
+        List<SmsLog> page = smsLogDao.getFirstPage(PAGE_SIZE);
+        synchronized (this) {
+            if (reload < publishedReload) {
+                return; // Una ricarica piu' recente ha gia' pubblicato
+            }
+            publishedReload = reload;
+            endReached = page.size() < PAGE_SIZE;
+            publish(page);
+        }
+    }
+
+    private void loadNextPage() {
+        SmsLog last;
+        synchronized (this) {
+            if (loaded.isEmpty()) {
+                loadingMore = false;
+                return;
+            }
+            last = loaded.get(loaded.size() - 1);
+        }
+        List<SmsLog> page;
+        try {
+            page = smsLogDao.getPageBefore(last.getTimestamp(), last.getId(), PAGE_SIZE);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                loadingMore = false;
+            }
+            throw e;
+        }
+        synchronized (this) {
+            loadingMore = false;
+            if (loaded.isEmpty() || loaded.get(loaded.size() - 1) != last) {
+                return; // Lista ricaricata da capo: la pagina non la continua piu'
+            }
+            endReached = page.size() < PAGE_SIZE;
+            if (page.isEmpty()) {
+                return;
+            }
+            List<SmsLog> merged = new ArrayList<>(loaded.size() + page.size());
+            merged.addAll(loaded);
+            merged.addAll(page);
+            publish(merged);
+        }
+    }
+
+    /**
+     * Ricarica i log dal confine della prima pagina in avanti e li unisce
+     * alle pagine successive gia' caricate.
+     */
+    private void reloadHead() {
+        long reload;
+        List<SmsLog> current;
+        synchronized (this) {
+            reload = ++startedReloads;
+            current = loaded;
+        }
+        if (current.isEmpty()) {
+            reloadAll();
+            return;
+        }
+
+        int boundaryIndex = Math.min(PAGE_SIZE, current.size()) - 1;
+        SmsLog boundary = current.get(boundaryIndex);
+        List<SmsLog> head = smsLogDao.getLogsSince(boundary.getTimestamp(), boundary.getId());
+        if (head.isEmpty() || head.get(head.size() - 1).getId() != boundary.getId()) {
+            // Il confine e' stato eliminato: le pagine caricate non sono piu' valide
+            reloadAll();
+            return;
+        }
+
+        boolean replaced;
+        synchronized (this) {
+            if (reload < publishedReload) {
+                return; // Una ricarica piu' recente ha gia' pubblicato
+            }
+            replaced = boundaryIndex >= loaded.size() || loaded.get(boundaryIndex) != boundary;
+            if (!replaced) {
+                // Le pagine successive sono quelle attuali, anche se caricate nel frattempo
+                publishedReload = reload;
+                List<SmsLog> tail = loaded.subList(boundaryIndex + 1, loaded.size());
+                List<SmsLog> merged = new ArrayList<>(head.size() + tail.size());
+                merged.addAll(head);
+                merged.addAll(tail);
+                publish(merged);
+            }
+        }
+        if (replaced) {
+            // Lista ricaricata nel frattempo da una lettura avviata prima: si riparte da quella
+            reloadHead();
+        }
+    }
+
+    /** Da chiamare sotto {@code this}. */
+    private void publish(List<SmsLog> list) {
+        loaded = Collections.unmodifiableList(list);
+        logs.postValue(loaded);
+    }
+}
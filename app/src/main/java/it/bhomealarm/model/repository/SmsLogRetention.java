@@ -0,0 +1,352 @@
+package it.bhomealarm.model.repository;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.util.Log;
+
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPOutputStream;
+
+import it.bhomealarm.model.dao.SmsLogArchiveDao;
+import it.bhomealarm.model.dao.SmsLogDao;
+import it.bhomealarm.model.database.AppDatabase;
+import it.bhomealarm.model.entity.SmsLog;
+import it.bhomealarm.model.entity.SmsLogArchive;
+
+/**
+ * Conservazione e compattazione della tabella {@code sms_log}.
+ * <p>
+ * Un'esecuzione ({@link #run(SmsLogRetentionPolicy)}):
+ * <ol>
+ *     <li>rimuove i log che violano la politica, dal piu' vecchio, a blocchi di al
+ *         massimo {@value #CHUNK_SIZE} righe. Ogni blocco e' una transazione separata
+ *         accodata sulla corsia di scrittura di {@link RepositoryExecutor}: tra un
+ *         blocco e l'altro le scritture dell'app (nuovi SMS, stati) possono passare,
+ *         e il lock di scrittura non viene mai tenuto a lungo. Prima i log piu'
+ *         vecchi di {@code maxAge}; poi i log in eccesso rispetto a {@code maxRows}
+ *         e {@code maxBytes}, calcolati una sola volta per esecuzione (conteggio e
+ *         stima della dimensione leggono l'intera tabella);</li>
+ *     <li>se previsto dalla politica, salva ogni blocco compresso in
+ *         {@code sms_log_archive} nella stessa transazione dell'eliminazione;</li>
+ *     <li>elimina i blocchi piu' vecchi dell'archivio oltre
+ *         {@link SmsLogRetentionPolicy#getArchiveMaxBytes()}: altrimenti l'archivio,
+ *         nello stesso file, crescerebbe senza limite;</li>
+ *     <li>restituisce al filesystem le pagine liberate con {@code PRAGMA incremental_vacuum}.
+ *         I database nuovi sono creati in modalita' {@code auto_vacuum = INCREMENTAL};
+ *         quelli creati prima vengono convertiti una sola volta con un VACUUM
+ *         completo, eseguito dal thread del job e non dalla corsia di scrittura:
+ *         le scritture dell'app attendono la connessione per la sua durata, ma il
+ *         job parte solo a dispositivo inattivo.</li>
+ * </ol>
+ * L'esecuzione e' sincrona e va chiamata da un thread in background (il job
+ * periodico), mai dalla corsia di scrittura stessa.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see SmsLogRetentionPolicy
+ * @see SmsLogRetentionReport
+ */
+final class SmsLogRetention {
+
+    private static final String TAG = "SmsLogRetention";
+
+    /** Righe massime eliminate in una transazione. */
+    static final int CHUNK_SIZE = 500;
+
+    /** Blocchi massimi per esecuzione: il resto viene rimosso all'esecuzione successiva. */
+    private static final int MAX_CHUNKS_PER_RUN = 200;
+
+    /** Valore di {@code PRAGMA auto_vacuum} per la modalita' incrementale. */
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    /** Motivo per cui un blocco viene rimosso. */
+    private enum Reason { AGE, COUNT, SIZE }
+
+    private final AppDatabase database;
+    private final SmsLogDao smsLogDao;
+    private final SmsLogArchiveDao archiveDao;
+    private final RepositoryExecutor executor;
+
+    SmsLogRetention(AppDatabase database, RepositoryExecutor executor) {
+        this.database = database;
+        this.smsLogDao = database.smsLogDao();
+        this.archiveDao = database.smsLogArchiveDao();
+        this.executor = executor;
+    }
+
+    /**
+     * Applica la politica e compatta il database.
+     *
+     * @param policy Politica di conservazione
+     * @return l'esito dell'esecuzione
+     * @throws ExecutionException se un blocco fallisce (i blocchi precedenti restano applicati)
+     * @throws InterruptedException se il thread viene interrotto
+     */
+    SmsLogRetentionReport run(SmsLogRetentionPolicy policy) throws ExecutionException, InterruptedException {
+        long startedAt = System.currentTimeMillis();
+        long fileBefore = executor.submitRead("retentionFileSize", this::fileSizeBytes).get();
+
+        int[] deleted = new int[Reason.values().length];
+        int archived = 0;
+        int chunks = 0;
+
+        long cutoff = policy.getMaxAgeMs() > 0 ? startedAt - policy.getMaxAgeMs() : 0;
+        while (cutoff > 0 && chunks < MAX_CHUNKS_PER_RUN) {
+            ChunkResult result = executor.submitWrite("retentionChunk",
+                    () -> deleteChunk(smsLogDao.getOldestBefore(cutoff, CHUNK_SIZE), Reason.AGE, policy)).get();
+            if (result == null) {
+                break;
+            }
+            chunks++;
+            deleted[Reason.AGE.ordinal()] += result.deleted;
+            archived += result.archived;
+        }
+
+        // Eccesso calcolato una volta: i log inseriti nel frattempo sono i piu' recenti
+        int[] excess = executor.submitWrite("retentionExcess", () -> computeExcess(policy)).get();
+        for (Reason reason : new Reason[] {Reason.COUNT, Reason.SIZE}) {
+            int left = excess[reason.ordinal()];
+            while (left > 0 && chunks < MAX_CHUNKS_PER_RUN) {
+                int limit = Math.min(CHUNK_SIZE, left);
+                ChunkResult result = executor.submitWrite("retentionChunk",
+                        () -> deleteChunk(smsLogDao.getOldest(limit), reason, policy)).get();
+                if (result == null) {
+                    break;
+                }
+                chunks++;
+                left -= result.deleted;
+                deleted[reason.ordinal()] += result.deleted;
+                archived += result.archived;
+            }
+        }
+
+        int archivePruned = executor.submitWrite("retentionArchive", () -> pruneArchive(policy)).get();
+
+        int total = deleted[0] + deleted[1] + deleted[2] + archivePruned;
+        long autoVacuum = executor.submitRead("retentionAutoVacuum", this::autoVacuumMode).get();
+        if (autoVacuum != AUTO_VACUUM_INCREMENTAL) {
+            convertToIncrementalVacuum();
+        } else if (total > 0) {
+            executor.submitWrite("retentionVacuum", () -> {
+                incrementalVacuum();
+                return null;
+            }).get();
+        }
+
+        int remaining = executor.submitRead("retentionCount", smsLogDao::getLogCount).get();
+        long fileAfter = executor.submitRead("retentionFileSize", this::fileSizeBytes).get();
+
+        SmsLogRetentionReport report = new SmsLogRetentionReport(startedAt,
+                deleted[Reason.AGE.ordinal()], deleted[Reason.COUNT.ordinal()], deleted[Reason.SIZE.ordinal()],
+                archived, archivePruned, chunks, remaining, fileBefore, fileAfter, System.currentTimeMillis() - startedAt);
+        Log.i(TAG, "Conservazione log completata: " + report);
+        return report;
+    }
+
+    /**
+     * Calcola quanti dei log piu' vecchi superano i limiti di righe e di
+     * dimensione, dopo l'eliminazione per eta'. Da chiamare sulla corsia di scrittura.
+     *
+     * @return righe da rimuovere, indicizzate per {@link Reason#ordinal()}
+     */
+    private int[] computeExcess(SmsLogRetentionPolicy policy) {
+        int[] excess = new int[Reason.values().length];
+        if (policy.getMaxRows() <= 0 && policy.getMaxBytes() <= 0) {
+            return excess;
+        }
+        int count = smsLogDao.getLogCount();
+        if (policy.getMaxRows() > 0) {
+            excess[Reason.COUNT.ordinal()] = Math.max(0, count - policy.getMaxRows());
+        }
+        if (policy.getMaxBytes() > 0 && count > 0) {
+            long bytes = smsLogDao.estimateSizeBytes();
+            long avgRow = Math.max(1, bytes / count);
+            // Le righe rimosse per numero liberano gia' parte dello spazio
+            long over = bytes - (long) excess[Reason.COUNT.ordinal()] * avgRow - policy.getMaxBytes();
+            if (over > 0) {
+                excess[Reason.SIZE.ordinal()] = (int) Math.min(Integer.MAX_VALUE, (over + avgRow - 1) / avgRow);
+            }
+        }
+        return excess;
+    }
+
+    /**
+     * Elimina i blocchi piu' vecchi dell'archivio finche' la sua dimensione
+     * compressa non rientra nel limite della politica. Da chiamare sulla corsia di scrittura.
+     *
+     * @return il numero di blocchi eliminati
+     */
+    private int pruneArchive(SmsLogRetentionPolicy policy) {
+        if (policy.getArchiveMaxBytes() <= 0) {
+            return 0;
+        }
+        List<Long> sizes = archiveDao.getPayloadSizesOldestFirst();
+        long bytes = 0;
+        for (Long size : sizes) {
+            bytes += size != null ? size : 0;
+        }
+        int excess = 0;
+        while (bytes > policy.getArchiveMaxBytes() && excess < sizes.size()) {
+            Long size = sizes.get(excess++);
+            bytes -= size != null ? size : 0;
+        }
+        return excess > 0 ? archiveDao.deleteOldest(excess) : 0;
+    }
+
+    /**
+     * Elimina (ed eventualmente archivia) un blocco di log.
+     * Da chiamare sulla corsia di scrittura.
+     *
+     * @param rows log da rimuovere, dal piu' vecchio
+     * @return l'esito del blocco, o null se non c'e' nulla da rimuovere
+     */
+    private ChunkResult deleteChunk(List<SmsLog> rows, Reason reason, SmsLogRetentionPolicy policy) {
+        if (rows.isEmpty()) {
+            return null;
+        }
+        return database.runInTransaction(() -> {
+            int archived = 0;
+            if (policy.isArchiveEnabled()) {
+                archiveDao.insert(buildArchive(rows));
+                archived = rows.size();
+            }
+
+            List<Long> ids = new ArrayList<>(rows.size());
+            for (SmsLog row : rows) {
+                ids.add(row.getId());
+            }
+            int deleted = smsLogDao.deleteByIds(ids);
+            return new ChunkResult(reason, deleted, archived);
+        });
+    }
+
+    /**
+     * Comprime un blocco di log in una riga di archivio.
+     * Formato: una riga per log, campi separati da tabulazione
+     * (id, panel_id, direction, status, timestamp, message_id, error_message, message),
+     * con {@code \\}, tabulazione e a capo sostituiti da sequenze di escape.
+     */
+    private static SmsLogArchive buildArchive(List<SmsLog> rows) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (Writer out = new OutputStreamWriter(new GZIPOutputStream(bytes), StandardCharsets.UTF_8)) {
+            StringBuilder line = new StringBuilder(128);
+            for (SmsLog row : rows) {
+                line.setLength(0);
+                line.append(row.getId()).append('\t')
+                        .append(row.getPanelId() != null ? row.getPanelId() : "").append('\t')
+                        .append(row.getDirection()).append('\t')
+                        .append(row.getStatus()).append('\t')
+                        .append(row.getTimestamp()).append('\t');
+                appendEscaped(line, row.getMessageId());
+                line.append('\t');
+                appendEscaped(line, row.getErrorMessage());
+                line.append('\t');
+                appendEscaped(line, row.getMessage());
+                line.append('\n');
+                out.append(line);
+            }
+        } catch (IOException e) {
+            // Scrittura in memoria: non puo' fallire
+            throw new IllegalStateException(e);
+        }
+
+        SmsLogArchive archive = new SmsLogArchive();
+        archive.setFirstTimestamp(rows.get(0).getTimestamp());
+        archive.setLastTimestamp(rows.get(rows.size() - 1).getTimestamp());
+        archive.setRowCount(rows.size());
+        archive.setFormat(SmsLogArchive.FORMAT_TSV_GZIP);
+        archive.setPayload(bytes.toByteArray());
+        archive.setCreatedAt(System.currentTimeMillis());
+        return archive;
+    }
+
+    private static void appendEscaped(StringBuilder sb, String value) {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case '\t': sb.append("\\t"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                default: sb.append(c); break;
+            }
+        }
+    }
+
+    /**
+     * Converte il database ad {@code auto_vacuum = INCREMENTAL} con un VACUUM
+     * completo, che restituisce anche tutte le pagine libere. Eseguito una sola
+     * volta per i database creati prima della modalita' incrementale.
+     * <p>
+     * Da chiamare dal thread del job, fuori da transazioni: la corsia di scrittura
+     * resta libera di accodare lavoro, che attende la connessione fino alla fine.
+     * Se fallisce (ad es. spazio insufficiente per la copia temporanea) viene
+     * ritentato all'esecuzione successiva.
+     */
+    private void convertToIncrementalVacuum() {
+        SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+        Log.i(TAG, "Conversione del database ad auto_vacuum incrementale");
+        try {
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+        } catch (SQLException e) {
+            Log.w(TAG, "Conversione ad auto_vacuum incrementale non riuscita", e);
+        }
+    }
+
+    /**
+     * Restituisce al filesystem le pagine libere del database in modalita'
+     * incrementale. Da chiamare sulla corsia di scrittura, fuori da transazioni.
+     */
+    private void incrementalVacuum() {
+        SupportSQLiteDatabase db = database.getOpenHelper().getWritableDatabase();
+        try (Cursor cursor = db.query("PRAGMA incremental_vacuum")) {
+            while (cursor.moveToNext()) {
+                // Ogni passo libera una pagina
+            }
+        }
+    }
+
+    private long autoVacuumMode() {
+        return queryLong(database.getOpenHelper().getReadableDatabase(), "PRAGMA auto_vacuum");
+    }
+
+    private long fileSizeBytes() {
+        SupportSQLiteDatabase db = database.getOpenHelper().getReadableDatabase();
+        return queryLong(db, "PRAGMA page_count") * queryLong(db, "PRAGMA page_size");
+    }
+
+    private static long queryLong(SupportSQLiteDatabase db, String sql) {
+        try (Cursor cursor = db.query(sql)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    /**
+     * Esito di un singolo blocco.
+     */
+    private static final class ChunkResult {
+
+        final Reason reason;
+        final int deleted;
+        final int archived;
+
+        ChunkResult(Reason reason, int deleted, int archived) {
+            this.reason = reason;
+            this.deleted = deleted;
+            this.archived = archived;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package it.bhomealarm.model.repository;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+import it.bhomealarm.util.Constants;
+
+/**
+ * Politica di conservazione immutabile della tabella {@code sms_log}.
+ * <p>
+ * Un log viene rimosso se viola almeno uno dei limiti:
+ * <ul>
+ *     <li><b>eta'</b>: piu' vecchio di {@link #getMaxAgeMs()};</li>
+ *     <li><b>numero di righe</b>: oltre {@link #getMaxRows()} si rimuovono i piu' vecchi;</li>
+ *     <li><b>dimensione</b>: oltre {@link #getMaxBytes()} (stima) si rimuovono i piu' vecchi.</li>
+ * </ul>
+ * Un limite a 0 e' disattivato. Con {@link #isArchiveEnabled()} i log rimossi
+ * vengono salvati compressi in {@code sms_log_archive}; oltre
+ * {@link #getArchiveMaxBytes()} i blocchi piu' vecchi dell'archivio vengono eliminati.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see AlarmRepository#runSmsLogRetention(SmsLogRetentionPolicy)
+ */
+public final class SmsLogRetentionPolicy {
+
+    private final long maxAgeMs;
+    private final int maxRows;
+    private final long maxBytes;
+    private final boolean archiveEnabled;
+    private final long archiveMaxBytes;
+
+    public SmsLogRetentionPolicy(long maxAgeMs, int maxRows, long maxBytes, boolean archiveEnabled,
+                                 long archiveMaxBytes) {
+        this.maxAgeMs = Math.max(0, maxAgeMs);
+        this.maxRows = Math.max(0, maxRows);
+        this.maxBytes = Math.max(0, maxBytes);
+        this.archiveEnabled = archiveEnabled;
+        this.archiveMaxBytes = Math.max(0, archiveMaxBytes);
+    }
+
+    /**
+     * Legge la politica dalle preferenze, con i valori predefiniti di {@link Constants}.
+     *
+     * @param prefs SharedPreferences dell'app ({@link Constants#PREF_NAME})
+     * @return la politica configurata
+     */
+    public static SmsLogRetentionPolicy fromPreferences(SharedPreferences prefs) {
+        int maxAgeDays = prefs.getInt(Constants.PREF_LOG_RETENTION_DAYS, Constants.LOG_RETENTION_DAYS);
+        int maxRows = prefs.getInt(Constants.PREF_LOG_MAX_ROWS, Constants.LOG_MAX_ROWS);
+        long maxBytes = prefs.getLong(Constants.PREF_LOG_MAX_BYTES, Constants.LOG_MAX_BYTES);
+        boolean archive = prefs.getBoolean(Constants.PREF_LOG_ARCHIVE, Constants.LOG_ARCHIVE_ENABLED);
+        long archiveMaxBytes = prefs.getLong(Constants.PREF_LOG_ARCHIVE_MAX_BYTES, Constants.LOG_ARCHIVE_MAX_BYTES);
+        return new SmsLogRetentionPolicy(TimeUnit.DAYS.toMillis(maxAgeDays), maxRows, maxBytes, archive,
+                archiveMaxBytes);
+    }
+
+    /** @return eta' massima di un log in millisecondi (0 = illimitata) */
+    public long getMaxAgeMs() { return maxAgeMs; }
+
+    /** @return numero massimo di log (0 = illimitato) */
+    public int getMaxRows() { return maxRows; }
+
+    /** @return dimensione massima stimata dei log in byte (0 = illimitata) */
+    public long getMaxBytes() { return maxBytes; }
+
+    /** @return true se i log rimossi vanno archiviati compressi */
+    public boolean isArchiveEnabled() { return archiveEnabled; }
+
+    /** @return dimensione massima dell'archivio compresso in byte (0 = illimitata) */
+    public long getArchiveMaxBytes() { return archiveMaxBytes; }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "SmsLogRetentionPolicy{maxAgeMs=" + maxAgeMs + ", maxRows=" + maxRows
+                + ", maxBytes=" + maxBytes + ", archive=" + archiveEnabled
+                + ", archiveMaxBytes=" + archiveMaxBytes + '}';
+    }
+}
@@ -0,0 +1,97 @@
+package it.bhomealarm.model.repository;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Esito immutabile di un'esecuzione della conservazione dei log SMS.
+ * <p>
+ * Riporta quanti log sono stati rimossi per ciascun limite della politica,
+ * quanti sono stati archiviati, in quanti blocchi (transazioni), quanti blocchi
+ * dell'archivio sono stati eliminati per rispettarne la dimensione massima e lo spazio
+ * recuperato dal file del database con la compattazione ({@code incremental_vacuum},
+ * o il VACUUM completo della conversione una tantum).
+ * <p>
+ * L'ultimo esito e' disponibile tramite {@link AlarmRepository#getSmsLogRetentionReport()}.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see SmsLogRetentionPolicy
+ */
+public final class SmsLogRetentionReport {
+
+    /** Nessuna esecuzione ancora effettuata. */
+    static final SmsLogRetentionReport EMPTY = new SmsLogRetentionReport(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+    private final long startedAt;
+    private final int deletedByAge;
+    private final int deletedByCount;
+    private final int deletedBySize;
+    private final int archived;
+    private final int archivePruned;
+    private final int chunks;
+    private final int remainingRows;
+    private final long fileBytesBefore;
+    private final long fileBytesAfter;
+    private final long durationMs;
+
+    SmsLogRetentionReport(long startedAt, int deletedByAge, int deletedByCount, int deletedBySize,
+                          int archived, int archivePruned, int chunks, int remainingRows,
+                          long fileBytesBefore, long fileBytesAfter, long durationMs) {
+        this.startedAt = startedAt;
+        this.deletedByAge = deletedByAge;
+        this.deletedByCount = deletedByCount;
+        this.deletedBySize = deletedBySize;
+        this.archived = archived;
+        this.archivePruned = archivePruned;
+        this.chunks = chunks;
+        this.remainingRows = remainingRows;
+        this.fileBytesBefore = fileBytesBefore;
+        this.fileBytesAfter = fileBytesAfter;
+        this.durationMs = durationMs;
+    }
+
+    /** @return istante di avvio dell'esecuzione (millisecondi) */
+    public long getStartedAt() { return startedAt; }
+
+    /** @return log rimossi perche' troppo vecchi */
+    public int getDeletedByAge() { return deletedByAge; }
+
+    /** @return log rimossi per rispettare il numero massimo di righe */
+    public int getDeletedByCount() { return deletedByCount; }
+
+    /** @return log rimossi per rispettare la dimensione massima */
+    public int getDeletedBySize() { return deletedBySize; }
+
+    /** @return totale dei log rimossi */
+    public int getDeletedTotal() { return deletedByAge + deletedByCount + deletedBySize; }
+
+    /** @return log salvati nell'archivio compresso */
+    public int getArchived() { return archived; }
+
+    /** @return blocchi dell'archivio eliminati perche' oltre la dimensione massima */
+    public int getArchivePruned() { return archivePruned; }
+
+    /** @return numero di blocchi (transazioni) eseguiti */
+    public int getChunks() { return chunks; }
+
+    /** @return log rimasti in {@code sms_log} */
+    public int getRemainingRows() { return remainingRows; }
+
+    /** @return dimensione del file del database prima dell'esecuzione (byte) */
+    public long getFileBytesBefore() { return fileBytesBefore; }
+
+    /** @return dimensione del file del database dopo la compattazione (byte) */
+    public long getFileBytesAfter() { return fileBytesAfter; }
+
+    /** @return durata complessiva dell'esecuzione (millisecondi) */
+    public long getDurationMs() { return durationMs; }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "SmsLogRetentionReport{age=" + deletedByAge + ", count=" + deletedByCount
+                + ", size=" + deletedBySize + ", archived=" + archived + ", archivePruned=" + archivePruned + ", chunks=" + chunks
+                + ", remaining=" + remainingRows + ", file=" + fileBytesBefore + "->" + fileBytesAfter
+                + ", durationMs=" + durationMs + '}';
+    }
+}
@@ -0,0 +1,247 @@
+package it.bhomealarm.model.repository;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+import it.bhomealarm.model.dao.SmsLogDao;
+import it.bhomealarm.model.database.AppDatabase;
+import it.bhomealarm.model.entity.SmsLog;
+
+/**
+ * Scrittore a raggruppamento per la tabella {@code sms_log}.
+ * <p>
+ * Ogni SMS genera fino a tre scritture (inserimento PENDING, poi SENT e
+ * DELIVERED). Invece di eseguirle una per una, ognuna con la propria
+ * transazione SQLite, lo scrittore le accumula per {@value #FLUSH_DELAY_MS} ms
+ * e le applica in un'unica transazione:
+ * <ul>
+ *     <li>gli inserimenti con un solo {@code @Insert List<SmsLog>};</li>
+ *     <li>le transizioni di stato di un messaggio ancora in buffer vengono
+ *         applicate direttamente alla riga da inserire;</li>
+ *     <li>le altre transizioni vengono ridotte all'ultimo stato per messaggio
+ *         e raggruppate per stato in {@code UPDATE ... WHERE message_id IN (...)}.</li>
+ * </ul>
+ * Il buffer viene svuotato subito quando raggiunge {@value #MAX_PENDING}
+ * operazioni e quando l'app passa in background ({@link #flush()}).
+ * <p>
+ * Lo svuotamento gira sulla corsia di scrittura di {@link RepositoryExecutor}:
+ * l'ordine rispetto alle altre scritture del repository resta quello di invio.
+ * Se la corsia rifiuta lo svuotamento i dati restano in buffer e ne viene
+ * programmato un altro alla scrittura successiva.
+ * <p>
+ * Le letture di {@code sms_log} non vedono il buffer: i log compaiono fino a
+ * {@value #FLUSH_DELAY_MS} ms dopo la scrittura. Chi legge in modo sincrono e
+ * deve vederli chiama prima {@link #flush()} sulla stessa corsia di scrittura
+ * (vedi {@link AlarmRepository#runSmsLogRetention}); chi osserva la tabella
+ * viene notificato allo svuotamento.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see AlarmRepository#insertSmsLog(SmsLog)
+ */
+final class SmsLogWriter {
+
+    private static final String TAG = "SmsLogWriter";
+
+    /** Finestra di raggruppamento delle scritture. */
+    static final long FLUSH_DELAY_MS = 50;
+
+    /** Numero di operazioni in buffer oltre il quale si svuota subito. */
+    static final int MAX_PENDING = 64;
+
+    /**
+     * Numero massimo di message_id per istruzione UPDATE (ben sotto il limite
+     * di 999 parametri di SQLite).
+     */
+    private static final int MAX_IDS_PER_UPDATE = 500;
+
+    private final AppDatabase database;
+    private final SmsLogDao smsLogDao;
+    private final RepositoryExecutor executor;
+
+    private final Object lock = new Object();
+
+    /** Log da inserire, nell'ordine di arrivo. */
+    private List<SmsLog> pendingInserts = new ArrayList<>();
+
+    /** Log in buffer con message_id, per applicare gli stati prima dell'inserimento. */
+    private Map<String, SmsLog> pendingById = new HashMap<>();
+
+    /** Ultimo stato richiesto per i messaggi gia' scritti. */
+    private Map<String, StatusUpdate> pendingUpdates = new LinkedHashMap<>();
+
+    /** True se uno svuotamento e' gia' programmato o accodato. */
+    private boolean flushScheduled;
+
+    SmsLogWriter(AppDatabase database, RepositoryExecutor executor) {
+        this.database = database;
+        this.smsLogDao = database.smsLogDao();
+        this.executor = executor;
+    }
+
+    /**
+     * Accoda l'inserimento di un log.
+     *
+     * @param log Log da inserire
+     */
+    void insert(SmsLog log) {
+        boolean full;
+        synchronized (lock) {
+            pendingInserts.add(log);
+            if (log.getMessageId() != null) {
+                pendingById.put(log.getMessageId(), log);
+            }
+            full = size() >= MAX_PENDING;
+        }
+        scheduleFlush(full);
+    }
+
+    /**
+     * Accoda una transizione di stato.
+     *
+     * @param messageId ID del messaggio
+     * @param status Nuovo stato (costanti STATUS_* di {@link SmsLog})
+     * @param errorMessage Messaggio di errore, o null
+     */
+    void updateStatus(String messageId, int status, String errorMessage) {
+        if (messageId == null) {
+            return;
+        }
+        boolean full;
+        synchronized (lock) {
+            SmsLog buffered = pendingById.get(messageId);
+            if (buffered != null) {
+                // Il log non e' ancora stato scritto: si inserisce gia' aggiornato
+                buffered.setStatus(status);
+                if (errorMessage != null) {
+                    buffered.setErrorMessage(errorMessage);
+                }
+                return;
+            }
+            pendingUpdates.put(messageId, new StatusUpdate(status, errorMessage));
+            full = size() >= MAX_PENDING;
+        }
+        scheduleFlush(full);
+    }
+
+    /**
+     * Svuota subito il buffer (ad es. quando l'app passa in background).
+     */
+    void flush() {
+        boolean empty;
+        synchronized (lock) {
+            empty = size() == 0;
+        }
+        if (!empty) {
+            try {
+                executor.write("flushSmsLog", this::drain);
+            } catch (RejectedExecutionException e) {
+                Log.e(TAG, "Svuotamento log SMS rifiutato", e);
+            }
+        }
+    }
+
+    private int size() {
+        return pendingInserts.size() + pendingUpdates.size();
+    }
+
+    private void scheduleFlush(boolean immediate) {
+        synchronized (lock) {
+            if (flushScheduled && !immediate) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        if (immediate) {
+            try {
+                executor.write("flushSmsLog", this::drain);
+            } catch (RejectedExecutionException e) {
+                Log.e(TAG, "Svuotamento log SMS rifiutato", e);
+                onFlushRejected();
+            }
+        } else {
+            executor.writeDelayed("flushSmsLog", this::drain, FLUSH_DELAY_MS, this::onFlushRejected);
+        }
+    }
+
+    /**
+     * Lo svuotamento programmato e' stato scartato: il successivo inserimento
+     * o cambio di stato ne programma un altro.
+     */
+    private void onFlushRejected() {
+        synchronized (lock) {
+            flushScheduled = false;
+        }
+    }
+
+    /**
+     * Scrive il contenuto del buffer in un'unica transazione.
+     * Da chiamare sulla corsia di scrittura.
+     */
+    private void drain() {
+        List<SmsLog> inserts;
+        Map<String, StatusUpdate> updates;
+        synchronized (lock) {
+            flushScheduled = false;
+            if (size() == 0) {
+                return;
+            }
+            inserts = pendingInserts;
+            updates = pendingUpdates;
+            pendingInserts = new ArrayList<>();
+            pendingById = new HashMap<>();
+            pendingUpdates = new LinkedHashMap<>();
+        }
+
+        database.runInTransaction(() -> {
+            if (!inserts.isEmpty()) {
+                smsLogDao.insertAll(inserts);
+            }
+            applyUpdates(updates);
+        });
+    }
+
+    private void applyUpdates(Map<String, StatusUpdate> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+
+        Map<Integer, List<String>> byStatus = new HashMap<>();
+        for (Map.Entry<String, StatusUpdate> entry : updates.entrySet()) {
+            StatusUpdate update = entry.getValue();
+            if (update.errorMessage != null) {
+                smsLogDao.updateStatusWithError(entry.getKey(), update.status, update.errorMessage);
+            } else {
+                byStatus.computeIfAbsent(update.status, k -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+
+        for (Map.Entry<Integer, List<String>> entry : byStatus.entrySet()) {
+            List<String> ids = entry.getValue();
+            for (int from = 0; from < ids.size(); from += MAX_IDS_PER_UPDATE) {
+                int to = Math.min(ids.size(), from + MAX_IDS_PER_UPDATE);
+                smsLogDao.updateStatusBatch(ids.subList(from, to), entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Transizione di stato in attesa di scrittura.
+     */
+    private static final class StatusUpdate {
+
+        final int status;
+        final String errorMessage;
+
+        StatusUpdate(int status, String errorMessage) {
+            this.status = status;
+            this.errorMessage = errorMessage;
+        }
+    }
+}
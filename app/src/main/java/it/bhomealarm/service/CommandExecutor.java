@@ -0,0 +1,490 @@
+package it.bhomealarm.service;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import it.bhomealarm.protocol.SmsProtocol;
+import it.bhomealarm.util.Constants;
+
+/**
+ * Esecutore dei comandi SMS con ripetizione automatica.
+ * <p>
+ * Incapsula {@link SmsService#sendCommand(String, String)} aggiungendo per ogni comando:
+ * <ul>
+ *     <li>un timeout di risposta per tentativo, adattivo in base ai tempi di
+ *         risposta osservati ({@link ResponseTimeEstimator}) o fisso;</li>
+ *     <li>una politica di ripetizione ({@link RetryPolicy}) con backoff esponenziale e
+ *         jitter, basata su {@link Constants#MAX_RETRIES} e {@link Constants#RETRY_DELAY};</li>
+ *     <li>una classe di idempotenza ({@link Idempotency}) che decide se e' sicuro
+ *         ripetere il comando quando non arriva risposta;</li>
+ *     <li>la correlazione tra risposta e tentativo: la risposta viene attribuita
+ *         all'ultimo tentativo inviato, anche se arriva durante l'attesa prima
+ *         della ripetizione (che in quel caso viene annullata).</li>
+ * </ul>
+ * Ogni tentativo passa dalla coda di invio ({@link OutboundCommandQueue}), e' registrato
+ * nella tabella dei comandi in attesa ({@link SmsService#sendCommand(String, String)})
+ * e ne viene rimosso quando il comando si conclude. I tentativi ancora in coda
+ * vengono scartati solo quando il comando riceve risposta o fallisce: un comando
+ * annullato ({@link Request#cancel()}, {@link #cancelAll()}) resta in coda e
+ * viene inviato comunque. Il timeout di risposta parte dall'invio effettivo, che il
+ * chiamante segnala con {@link Request#sent(SmsEventBus.SmsSent)}: il tempo passato
+ * in coda non conta, e la stima usa la SIM effettivamente usata per l'invio. Fino
+ * all'invio vale invece {@link Constants#OUTBOUND_MAX_QUEUE_WAIT}: la coda puo'
+ * trattenere un comando per ore (budget esaurito, limite dell'operatore, radio
+ * spenta) e pubblica l'esito definitivo solo alla sua scadenza.
+ * <p>
+ * Il chiamante riceve le risposte da {@link SmsEventBus} con il message_id del
+ * tentativo abbinato da {@link SmsReceiver}, individua il comando con
+ * {@link #findByMessageId(String)} o {@link Request#ownsMessageId(String)} e lo
+ * conclude con {@link Request#complete()} o {@link Request#fail(String, boolean)}.
+ * <p>
+ * Tutti i metodi vanno chiamati dal main thread; anche i callback sono invocati
+ * sul main thread.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see SmsService
+ */
+public class CommandExecutor {
+
+    private static final String TAG = "CommandExecutor";
+
+    /**
+     * Classe di idempotenza di un comando: indica se e' sicuro ripeterlo
+     * quando non si sa se il tentativo precedente e' arrivato.
+     */
+    public enum Idempotency {
+        /** Sola lettura (CONF1-5?, SYS?): si puo' ripetere sempre. */
+        SAFE,
+        /** Porta la centrale in uno stato preciso (SCE, CUST, SYS OFF, SET): ripeterlo non cambia l'esito. */
+        IDEMPOTENT,
+        /** Effetto non noto: si ripete solo se l'SMS non e' partito. */
+        UNSAFE
+    }
+
+    /**
+     * Callback degli eventi di un comando.
+     */
+    public interface Callback {
+
+        /**
+         * Un tentativo e' stato inviato.
+         *
+         * @param request Comando
+         * @param attempt Numero del tentativo (1 = primo invio)
+         * @param messageId ID del messaggio SMS del tentativo
+         */
+        void onAttemptSent(Request request, int attempt, String messageId);
+
+        /**
+         * Il tentativo corrente e' fallito e il comando verra' ripetuto.
+         *
+         * @param request Comando
+         * @param nextAttempt Numero del prossimo tentativo
+         * @param delayMs Attesa prima del prossimo tentativo
+         * @param reason Motivo del fallimento
+         */
+        void onRetryScheduled(Request request, int nextAttempt, long delayMs, String reason);
+
+        /**
+         * Il comando e' fallito definitivamente.
+         *
+         * @param request Comando
+         * @param reason Motivo dell'ultimo fallimento
+         */
+        void onFailed(Request request, String reason);
+    }
+
+    /**
+     * Politica di ripetizione immutabile.
+     */
+    public static final class RetryPolicy {
+
+        /** Ripetizioni massime dopo il primo invio. */
+        public final int maxRetries;
+
+        /** Attesa base prima della prima ripetizione. */
+        public final long baseDelayMs;
+
+        /** Attesa massima tra due tentativi. */
+        public final long maxDelayMs;
+
+        /** Ripetere anche quando scade il timeout (l'SMS potrebbe essere arrivato). */
+        public final boolean retryOnTimeout;
+
+        public RetryPolicy(int maxRetries, long baseDelayMs, long maxDelayMs, boolean retryOnTimeout) {
+            this.maxRetries = Math.max(0, maxRetries);
+            this.baseDelayMs = Math.max(0, baseDelayMs);
+            this.maxDelayMs = Math.max(this.baseDelayMs, maxDelayMs);
+            this.retryOnTimeout = retryOnTimeout;
+        }
+
+        /**
+         * Calcola l'attesa prima di una ripetizione: backoff esponenziale limitato
+         * a {@link #maxDelayMs}, di cui meta' fissa e meta' casuale (jitter), cosi'
+         * piu' comandi falliti insieme non si ripetono tutti nello stesso istante.
+         *
+         * @param retry Numero della ripetizione (1 = prima ripetizione)
+         * @param random Sorgente casuale
+         * @return attesa in millisecondi
+         */
+        long backoffDelay(int retry, Random random) {
+            long exp = Math.min(maxDelayMs, baseDelayMs << Math.min(retry - 1, 16));
+            long half = exp / 2;
+            return half + (long) (random.nextDouble() * (exp - half));
+        }
+    }
+
+    private final SmsService smsService;
+    private final ResponseTimeEstimator estimator;
+    private final Handler handler;
+    private final Random random = new Random();
+    private final List<Request> active = new ArrayList<>();
+
+    public CommandExecutor(SmsService smsService, ResponseTimeEstimator estimator) {
+        this.smsService = smsService;
+        this.estimator = estimator;
+        this.handler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Classifica un comando per idempotenza.
+     *
+     * @param command Comando SMS
+     * @return la classe di idempotenza
+     */
+    public static Idempotency classify(String command) {
+        if (command == null) {
+            return Idempotency.UNSAFE;
+        }
+        if (command.startsWith("CONF") || SmsProtocol.CMD_STATUS.equals(command)) {
+            return Idempotency.SAFE;
+        }
+        if (command.startsWith("SCE:") || command.startsWith("CUST:")
+                || SmsProtocol.CMD_DISARM.equals(command) || command.startsWith("SET:")) {
+            return Idempotency.IDEMPOTENT;
+        }
+        return Idempotency.UNSAFE;
+    }
+
+    /**
+     * Restituisce la politica di ripetizione predefinita per un comando.
+     *
+     * @param command Comando SMS
+     * @return la politica in base alla classe di idempotenza
+     */
+    public static RetryPolicy policyFor(String command) {
+        boolean retryOnTimeout = classify(command) != Idempotency.UNSAFE;
+        return new RetryPolicy(Constants.MAX_RETRIES, Constants.RETRY_DELAY,
+                Constants.RETRY_MAX_DELAY, retryOnTimeout);
+    }
+
+    /**
+     * Invia un comando con la politica predefinita e timeout adattivo.
+     *
+     * @param phone Numero della centrale
+     * @param command Comando SMS
+     * @param callback Callback degli eventi
+     * @return il comando in corso
+     */
+    public Request execute(String phone, String command, Callback callback) {
+        return execute(phone, command, 0, policyFor(command), callback);
+    }
+
+    /**
+     * Invia un comando con la politica predefinita.
+     *
+     * @param phone Numero della centrale
+     * @param command Comando SMS
+     * @param timeoutMs Timeout di risposta per tentativo (0 = adattivo)
+     * @param callback Callback degli eventi
+     * @return il comando in corso
+     */
+    public Request execute(String phone, String command, long timeoutMs, Callback callback) {
+        return execute(phone, command, timeoutMs, policyFor(command), callback);
+    }
+
+    /**
+     * Invia un comando con una politica specifica.
+     *
+     * @param phone Numero della centrale
+     * @param command Comando SMS
+     * @param timeoutMs Timeout di risposta per tentativo (0 = adattivo)
+     * @param policy Politica di ripetizione
+     * @param callback Callback degli eventi
+     * @return il comando in corso
+     */
+    public Request execute(String phone, String command, long timeoutMs, RetryPolicy policy,
+                           Callback callback) {
+        Request request = new Request(phone, command, timeoutMs, policy, callback);
+        active.add(request);
+        request.sendAttempt();
+        return request;
+    }
+
+    /**
+     * Cerca il comando in corso a cui appartiene un messaggio SMS inviato.
+     *
+     * @param messageId ID del messaggio
+     * @return il comando, o null
+     */
+    public Request findByMessageId(String messageId) {
+        for (Request request : active) {
+            if (request.ownsMessageId(messageId)) {
+                return request;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Annulla tutti i comandi in corso (timeout e ripetizioni in attesa).
+     * I tentativi gia' accodati vengono inviati comunque.
+     */
+    public void cancelAll() {
+        for (Request request : new ArrayList<>(active)) {
+            request.cancel();
+        }
+    }
+
+    /**
+     * Un comando in corso con i suoi tentativi.
+     */
+    public final class Request {
+
+        private final String phone;
+        private final String command;
+        private final long timeoutMs;
+        private final RetryPolicy policy;
+        private final Callback callback;
+
+        /** ID dei messaggi inviati, uno per tentativo. */
+        private final List<String> messageIds = new ArrayList<>();
+
+        private final Runnable timeoutTask = this::onTimeout;
+        private final Runnable queueTimeoutTask = this::onQueueTimeout;
+        private final Runnable retryTask = this::sendAttempt;
+
+        /** Centrale e SIM dell'ultimo invio, per la stima del tempo di risposta; null prima dell'invio. */
+        private String estimatorKey;
+
+        private int attempt;
+        private boolean awaitingResponse;
+        private long lastSentAt;
+
+        /** Altre richieste in attesa quando e' partito l'ultimo tentativo. */
+        private boolean overlapped;
+        private boolean finished;
+        private long roundTripMs = -1;
+
+        private Request(String phone, String command, long timeoutMs, RetryPolicy policy, Callback callback) {
+            this.phone = phone;
+            this.command = command;
+            this.timeoutMs = timeoutMs;
+            this.policy = policy;
+            this.callback = callback;
+        }
+
+        /** @return il comando SMS */
+        public String getCommand() { return command; }
+
+        /** @return il numero dell'ultimo tentativo inviato (1 = primo invio) */
+        public int getAttempt() { return attempt; }
+
+        /** @return true se il comando non e' ancora concluso */
+        public boolean isActive() { return !finished; }
+
+        /** @return tempo tra l'invio dell'ultimo tentativo e la risposta, o -1 */
+        public long getRoundTripMs() { return roundTripMs; }
+
+        /**
+         * @param messageId ID di un messaggio SMS
+         * @return true se il messaggio e' uno dei tentativi di questo comando
+         */
+        public boolean ownsMessageId(String messageId) {
+            return messageId != null && messageIds.contains(messageId);
+        }
+
+        /**
+         * Segnala che e' arrivata la risposta. La risposta viene attribuita
+         * all'ultimo tentativo inviato; una ripetizione in attesa viene annullata.
+         *
+         * @return il numero del tentativo a cui e' attribuita la risposta, o 0 se
+         *         il comando era gia' concluso
+         */
+        public int complete() {
+            if (finished) {
+                return 0;
+            }
+            roundTripMs = SystemClock.elapsedRealtime() - lastSentAt;
+            // Algoritmo di Karn: i tempi di risposte ripetute o accodate ad altre
+            // richieste non dicono nulla sulla rete
+            if (attempt == 1 && !overlapped && estimatorKey != null) {
+                estimator.addSample(estimatorKey, roundTripMs);
+            }
+            // Un tentativo successivo ancora in coda ripeterebbe un comando gia' eseguito
+            finish(true);
+            return attempt;
+        }
+
+        /**
+         * Segnala il fallimento del tentativo corrente.
+         *
+         * @param reason Motivo del fallimento
+         * @param retryable true se il tentativo puo' essere ripetuto (SMS non partito,
+         *                  centrale occupata); la politica decide se ci sono tentativi residui
+         */
+        public void fail(String reason, boolean retryable) {
+            if (finished) {
+                return;
+            }
+            awaitingResponse = false;
+            handler.removeCallbacks(timeoutTask);
+            handler.removeCallbacks(queueTimeoutTask);
+            if (retryable && attempt <= policy.maxRetries) {
+                scheduleRetry(reason);
+            } else {
+                finish(true);
+                callback.onFailed(this, reason);
+            }
+        }
+
+        /**
+         * Segnala che l'SMS di un tentativo e' stato inviato dalla coda
+         * ({@link OutboundCommandQueue}). Se e' il tentativo corrente, da ora
+         * partono il tempo di risposta e il timeout: il comando puo' essere
+         * rimasto in coda prima dell'invio, e l'attesa massima in coda
+         * ({@link Constants#OUTBOUND_MAX_QUEUE_WAIT}) viene sostituita dal timeout
+         * di risposta, stimato per la centrale e la SIM indicate nell'esito. Se
+         * l'invio fallisce la coda pubblica l'esito negativo, e il chiamante lo
+         * segnala con {@link #fail(String, boolean)}.
+         *
+         * @param event Esito di invio positivo del messaggio
+         */
+        public void sent(SmsEventBus.SmsSent event) {
+            if (finished || !awaitingResponse || messageIds.isEmpty()
+                    || !messageIds.get(messageIds.size() - 1).equals(event.messageId)) {
+                return;
+            }
+            estimatorKey = ResponseTimeEstimator.keyFor(event.panelId, event.simSlot);
+            lastSentAt = SystemClock.elapsedRealtime();
+            handler.removeCallbacks(queueTimeoutTask);
+            handler.removeCallbacks(timeoutTask);
+            handler.postDelayed(timeoutTask, currentTimeoutMs());
+        }
+
+        /**
+         * Fa ripartire il timeout del tentativo corrente (ad es. quando arriva
+         * una risposta correlata che indica che la centrale sta rispondendo).
+         */
+        public void touch() {
+            if (!finished && awaitingResponse) {
+                // Una risposta correlata implica che l'SMS e' partito
+                handler.removeCallbacks(queueTimeoutTask);
+                handler.removeCallbacks(timeoutTask);
+                handler.postDelayed(timeoutTask, currentTimeoutMs());
+            }
+        }
+
+        /**
+         * Annulla il comando senza notificare il callback. Le risposte non
+         * vengono piu' attese, ma un tentativo ancora in coda viene inviato
+         * comunque (ad es. un inserimento quando l'utente lascia la schermata).
+         */
+        public void cancel() {
+            finish(false);
+        }
+
+        private void sendAttempt() {
+            if (finished) {
+                return;
+            }
+            attempt++;
+            String messageId = smsService.sendCommand(phone, command);
+            if (messageId == null) {
+                // L'SMS non e' partito: ripetere e' sempre sicuro
+                fail("Errore invio comando", true);
+                return;
+            }
+            messageIds.add(messageId);
+            lastSentAt = SystemClock.elapsedRealtime();
+            overlapped = false;
+            for (Request other : active) {
+                if (other != this && other.awaitingResponse) {
+                    // La centrale risponde in ordine: questa risposta arrivera' dopo le altre
+                    overlapped = true;
+                }
+            }
+            awaitingResponse = true;
+            handler.postDelayed(queueTimeoutTask, Constants.OUTBOUND_MAX_QUEUE_WAIT);
+            callback.onAttemptSent(this, attempt, messageId);
+        }
+
+        private void onTimeout() {
+            if (finished) {
+                return;
+            }
+            if (estimatorKey != null) {
+                estimator.onTimeout(estimatorKey);
+            }
+            fail("Timeout: nessuna risposta ricevuta", policy.retryOnTimeout);
+        }
+
+        /**
+         * Il tentativo corrente e' ancora in coda dopo {@link Constants#OUTBOUND_MAX_QUEUE_WAIT}.
+         * Non si ripete, perche' accoderebbe un duplicato: il comando fallisce
+         * verso il chiamante, ma il tentativo resta in coda e parte appena
+         * possibile. Solo le letture ({@link Idempotency#SAFE}) vengono tolte
+         * dalla coda, perche' la loro risposta non e' piu' attesa da nessuno.
+         */
+        private void onQueueTimeout() {
+            if (finished) {
+                return;
+            }
+            boolean discard = classify(command) == Idempotency.SAFE;
+            Log.d(TAG, command + ": ancora in coda dopo " + Constants.OUTBOUND_MAX_QUEUE_WAIT + " ms");
+            finish(discard);
+            callback.onFailed(this, discard
+                    ? "Comando non inviato: coda di invio bloccata"
+                    : "Comando ancora in coda: verra' inviato appena possibile");
+        }
+
+        private long currentTimeoutMs() {
+            if (timeoutMs > 0) {
+                return timeoutMs;
+            }
+            return estimatorKey != null ? estimator.getTimeoutMs(estimatorKey) : Constants.TIMEOUT_SMS_RESPONSE;
+        }
+
+        private void scheduleRetry(String reason) {
+            long delay = policy.backoffDelay(attempt, random);
+            Log.d(TAG, command + ": tentativo " + attempt + " fallito (" + reason
+                    + "), nuovo invio tra " + delay + " ms");
+            handler.postDelayed(retryTask, delay);
+            callback.onRetryScheduled(this, attempt + 1, delay, reason);
+        }
+
+        /**
+         * @param discardQueued true se i tentativi ancora in coda non devono piu' partire
+         */
+        private void finish(boolean discardQueued) {
+            finished = true;
+            awaitingResponse = false;
+            handler.removeCallbacks(timeoutTask);
+            handler.removeCallbacks(queueTimeoutTask);
+            handler.removeCallbacks(retryTask);
+            active.remove(this);
+            // Una risposta tardiva non deve essere attribuita ad altri comandi
+            smsService.releaseCommand(messageIds);
+            if (discardQueued) {
+                smsService.discardQueuedCommand(messageIds);
+            }
+        }
+    }
+}
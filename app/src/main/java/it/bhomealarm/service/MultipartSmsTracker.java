@@ -0,0 +1,118 @@
+package it.bhomealarm.service;
+
+import android.app.Activity;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Aggregazione degli esiti delle parti di un SMS concatenato.
+ * <p>
+ * {@code sendMultipartTextMessage} restituisce un esito di invio e un rapporto di
+ * consegna per ogni parte. Il tracker li riduce a un solo esito per messaggio,
+ * cosi' {@code sms_log} e {@link SmsService} vedono un unico stato:
+ * <ul>
+ *     <li><b>invio</b>: riuscito quando tutte le parti sono state inviate, fallito
+ *         alla prima parte non inviata (le successive vengono ignorate);</li>
+ *     <li><b>consegna</b>: consegnato quando tutte le parti sono state consegnate;
+ *         se una parte ha un rapporto negativo, quel codice viene riportato
+ *         dopo l'ultimo rapporto.</li>
+ * </ul>
+ * Lo stato e' solo in memoria: se il processo viene chiuso durante l'invio, il
+ * conteggio riparte dai callback successivi (il numero di parti e' negli intent).
+ * <p>
+ * Thread-safe.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see SmsService
+ * @see SmsSentReceiver
+ */
+final class MultipartSmsTracker {
+
+    /** Esito non ancora definitivo. */
+    static final int PENDING = Integer.MIN_VALUE;
+
+    private final Map<String, Progress> sent = new HashMap<>();
+    private final Map<String, Progress> delivered = new HashMap<>();
+
+    /**
+     * Inizia il conteggio di un messaggio in partenza, scartando quello di un invio precedente.
+     *
+     * @param messageId ID del messaggio
+     * @param partCount Numero di parti
+     */
+    synchronized void start(String messageId, int partCount) {
+        sent.put(messageId, new Progress(partCount));
+        delivered.put(messageId, new Progress(partCount));
+    }
+
+    /**
+     * Registra l'esito di invio di una parte.
+     *
+     * @param messageId ID del messaggio
+     * @param partCount Numero di parti
+     * @param resultCode Codice risultato della parte
+     * @return l'esito del messaggio, o {@link #PENDING} se non ancora definitivo
+     */
+    synchronized int onPartSent(String messageId, int partCount, int resultCode) {
+        Progress progress = get(sent, messageId, partCount);
+        progress.reported++;
+        int result = PENDING;
+        if (!progress.done && resultCode != Activity.RESULT_OK) {
+            // Il messaggio non potra' essere completo: esito subito, senza consegna
+            progress.done = true;
+            delivered.remove(messageId);
+            result = resultCode;
+        } else if (!progress.done && progress.reported >= progress.partCount) {
+            progress.done = true;
+            result = Activity.RESULT_OK;
+        }
+        if (progress.reported >= progress.partCount) {
+            sent.remove(messageId);
+        }
+        return result;
+    }
+
+    /**
+     * Registra il rapporto di consegna di una parte.
+     *
+     * @param messageId ID del messaggio
+     * @param partCount Numero di parti
+     * @param resultCode Codice risultato della parte
+     * @return l'esito del messaggio, o {@link #PENDING} se non ancora definitivo
+     */
+    synchronized int onPartDelivered(String messageId, int partCount, int resultCode) {
+        Progress progress = get(delivered, messageId, partCount);
+        progress.reported++;
+        if (resultCode != Activity.RESULT_OK) {
+            progress.failureCode = resultCode;
+        }
+        if (progress.reported < progress.partCount) {
+            return PENDING;
+        }
+        delivered.remove(messageId);
+        return progress.failureCode != null ? progress.failureCode : Activity.RESULT_OK;
+    }
+
+    private static Progress get(Map<String, Progress> map, String messageId, int partCount) {
+        Progress progress = map.get(messageId);
+        if (progress == null) {
+            progress = new Progress(partCount);
+            map.put(messageId, progress);
+        }
+        return progress;
+    }
+
+    /** Avanzamento di un messaggio. */
+    private static final class Progress {
+        final int partCount;
+        int reported;
+        boolean done;
+        Integer failureCode;
+
+        Progress(int partCount) {
+            this.partCount = partCount;
+        }
+    }
+}
@@ -0,0 +1,595 @@
+package it.bhomealarm.service;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.telephony.SmsManager;
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import it.bhomealarm.model.entity.OutboundCommand;
+import it.bhomealarm.model.repository.AlarmRepository;
+import it.bhomealarm.util.Constants;
+
+/**
+ * Coda persistente dei comandi in uscita.
+ * <p>
+ * {@link SmsService#sendCommand(String, String)} non invia subito l'SMS: accoda il
+ * comando nella tabella {@code outbound_commands} e restituisce il suo message_id.
+ * La coda lo invia appena possibile rispettando:
+ * <ul>
+ *     <li><b>ordine per centrale</b>: per ogni numero di destinazione si invia solo
+ *         il comando piu' vecchio, e il successivo parte dopo l'esito di invio del
+ *         precedente;</li>
+ *     <li><b>limite di frequenza</b>: almeno {@link Constants#OUTBOUND_MIN_INTERVAL}
+ *         tra due SMS, anche verso centrali diverse, e il budget al minuto e
+ *         all'ora della SIM ({@link SmsRateLimiter});</li>
+ *     <li><b>limite dell'operatore</b>: dopo {@code RESULT_ERROR_LIMIT_EXCEEDED} la
+ *         SIM si sospende per {@link Constants#OUTBOUND_LIMIT_PAUSE}, il suo budget
+ *         si riduce e il comando resta in coda;</li>
+ *     <li><b>scelta della SIM</b>: sui dispositivi Dual-SIM ogni invio usa la SIM
+ *         scelta da {@link SimRouter} (principale, alternata o con minor latenza
+ *         di consegna); dopo un errore di invio il tentativo successivo passa
+ *         subito all'altra SIM.</li>
+ * </ul>
+ * Gli errori di rete (radio spenta, nessun servizio) vengono ripetuti con backoff
+ * finche' il comando non scade ({@link Constants#OUTBOUND_COMMAND_TTL}); gli altri
+ * errori al massimo {@link Constants#OUTBOUND_MAX_ATTEMPTS} volte. Un comando
+ * identico a quello che lo precede in coda, non ancora inviato, lo sostituisce e
+ * ne condivide l'esito. Su {@link SmsEventBus} viene pubblicato solo l'esito finale
+ * di ogni comando.
+ * Profondita' della coda, tempi di attesa e budget delle SIM sono disponibili
+ * tramite {@link #getStats()}.
+ * <p>
+ * L'invio avviene su un thread dedicato del processo, che tiene in memoria le righe
+ * lette all'ultimo passaggio: gli esiti di invio le ritrovano per message_id senza
+ * rileggere la tabella. Finche' la coda non e' vuota e' pianificato anche
+ * {@link OutboundQueueWorker} (WorkManager), che riprende l'invio se il processo
+ * viene chiuso o il dispositivo riavviato. Se la corsia di scrittura del repository
+ * e' piena e rifiuta un aggiornamento, il passaggio viene ripianificato dopo
+ * {@link Constants#RETRY_DELAY}: la coda non si ferma.
+ * <p>
+ * Thread-safe.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see OutboundCommand
+ * @see OutboundQueueWorker
+ */
+public final class OutboundCommandQueue {
+
+    private static final String TAG = "OutboundCommandQueue";
+
+    private static volatile OutboundCommandQueue instance;
+
+    private final Context context;
+    private final AlarmRepository repository;
+    private final SmsService smsService;
+    private final SmsEventBus eventBus = SmsEventBus.getInstance();
+    private final SmsRateLimiter rateLimiter;
+    private final SimRouter router;
+    private final MutableLiveData<OutboundQueueStats> stats = new MutableLiveData<>(OutboundQueueStats.EMPTY);
+
+    /** Thread di invio: tutte le decisioni sulla coda vengono prese qui, una alla volta. */
+    private final ScheduledExecutorService dispatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "outbound-queue");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Prossimo passaggio pianificato. Accesso solo dal thread di invio. */
+    private ScheduledFuture<?> scheduledPass;
+
+    /** Timestamp dell'ultimo SMS inviato. Accesso solo dal thread di invio. */
+    private long lastDispatchAt;
+
+    /** Righe lette all'ultimo passaggio, per message_id. Accesso solo dal thread di invio. */
+    private final Map<String, OutboundCommand> rowsByMessageId = new HashMap<>();
+
+    /** Vale true dopo la prima lettura della coda. Accesso solo dal thread di invio. */
+    private boolean indexed;
+
+    /**
+     * Comandi sostituiti da un duplicato: message_id del comando rimasto in coda
+     * &rarr; message_id di quelli sostituiti, che ne ricevono l'esito.
+     * Accesso solo dal thread di invio.
+     */
+    private final Map<String, List<String>> replaced = new HashMap<>();
+
+    /** Istante del passaggio pianificato con WorkManager, 0 se nessuno. Accesso solo dal thread di invio. */
+    private long workDueAt;
+
+    /** Vale true durante il passaggio eseguito da {@link OutboundQueueWorker}. Accesso solo dal thread di invio. */
+    private boolean draining;
+
+    /** Metriche di attesa in coda. Accesso solo dal thread di invio. */
+    private long dispatchedCount;
+    private long totalWaitMs;
+    private long maxWaitMs;
+    private long lastWaitMs;
+
+    private OutboundCommandQueue(Application application) {
+        context = application;
+        repository = AlarmRepository.getInstance(application);
+        smsService = SmsService.getInstance(application);
+        SharedPreferences prefs = application.getSharedPreferences(Constants.PREF_NAME, Context.MODE_PRIVATE);
+        rateLimiter = new SmsRateLimiter(prefs);
+        router = new SimRouter(prefs);
+    }
+
+    public static OutboundCommandQueue getInstance(Context context) {
+        if (instance == null) {
+            synchronized (OutboundCommandQueue.class) {
+                if (instance == null) {
+                    instance = new OutboundCommandQueue((Application) context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Accoda un comando e ne avvia l'invio.
+     *
+     * @param phoneNumber Numero del destinatario
+     * @param command Comando da inviare
+     * @param simSlot Slot SIM (-1 = predefinita)
+     * @return message_id assegnato al comando
+     */
+    public String enqueue(String phoneNumber, String command, int simSlot) {
+        String messageId = UUID.randomUUID().toString();
+        long panelId = repository.findPanelIdByPhone(phoneNumber);
+        repository.enqueueOutboundCommand(new OutboundCommand(messageId,
+                panelId != AlarmRepository.NO_PANEL ? panelId : null,
+                phoneNumber, command, simSlot, System.currentTimeMillis()));
+        kick();
+        return messageId;
+    }
+
+    /**
+     * Rimuove dalla coda i comandi non ancora consegnati a SmsManager, ad es. le
+     * ripetizioni di una richiesta che ha gia' ricevuto risposta. Quelli gia' in invio
+     * proseguono e il loro esito viene pubblicato come di consueto.
+     *
+     * @param messageIds ID dei messaggi; quelli non in coda vengono ignorati
+     */
+    public void cancel(Collection<String> messageIds) {
+        if (messageIds.isEmpty()) {
+            return;
+        }
+        List<String> ids = new ArrayList<>(messageIds);
+        dispatcher.execute(() -> {
+            List<Long> removed = new ArrayList<>();
+            for (String messageId : ids) {
+                OutboundCommand row = findRow(messageId);
+                if (row == null || row.getStatus() != OutboundCommand.STATUS_QUEUED) {
+                    continue;
+                }
+                List<String> others = replaced.get(messageId);
+                if (others != null) {
+                    others.removeAll(ids);
+                    if (!others.isEmpty()) {
+                        // Sostituisce il comando di un'altra richiesta, che lo attende ancora
+                        continue;
+                    }
+                    replaced.remove(messageId);
+                }
+                Log.d(TAG, row.getCommand() + ": non piu' necessario, rimosso dalla coda");
+                rowsByMessageId.remove(messageId);
+                removed.add(row.getId());
+            }
+            repository.deleteOutboundCommands(removed);
+        });
+    }
+
+    /**
+     * Avvia un passaggio sulla coda (all'avvio dell'app o dopo un cambiamento).
+     */
+    public void kick() {
+        dispatcher.execute(this::runPass);
+    }
+
+    /**
+     * Restituisce le metriche della coda, aggiornate a ogni passaggio.
+     *
+     * @return LiveData con l'ultima istantanea
+     */
+    public LiveData<OutboundQueueStats> getStats() {
+        return stats;
+    }
+
+    /**
+     * Esegue un passaggio sulla coda e ne attende la fine.
+     * Chiamato da {@link OutboundQueueWorker}; mai dal main thread.
+     *
+     * @return true se il passaggio e' stato eseguito
+     */
+    boolean drain() {
+        try {
+            dispatcher.submit(() -> {
+                // Il lavoro pianificato e' quello in esecuzione
+                workDueAt = 0;
+                draining = true;
+                try {
+                    runPass();
+                } finally {
+                    draining = false;
+                }
+            }).get();
+            return true;
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Errore invio coda comandi", e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Riceve l'esito di invio di un SMS da {@link SmsService#onSmsSent(String, int)}.
+     * Per i comandi in coda decide se ripetere l'invio; l'esito viene pubblicato su
+     * {@link SmsEventBus} solo se e' definitivo.
+     *
+     * @param messageId ID del messaggio
+     * @param resultCode Codice risultato di SmsManager
+     * @param errorMessage Descrizione dell'errore, o null se inviato
+     */
+    void onSent(String messageId, int resultCode, String errorMessage) {
+        dispatcher.execute(() -> {
+            OutboundCommand row = findRow(messageId);
+            if (row == null) {
+                // SMS non inviato dalla coda
+                eventBus.publish(new SmsEventBus.SmsSent(messageId, resultCode, errorMessage));
+                return;
+            }
+            try {
+                if (errorMessage == null) {
+                    rateLimiter.onSent(row.getSimSlot());
+                    router.onSendOk(messageId, row.getSimSlot(),
+                            smsService.getSimSnapshot().getSubscriptionId(row.getSimSlot()),
+                            row.getDispatchedAt());
+                    repository.deleteOutboundCommands(Collections.singletonList(row.getId()));
+                    publishResult(row, resultCode, null);
+                } else {
+                    handleFailure(row, resultCode, errorMessage);
+                }
+            } catch (RejectedExecutionException e) {
+                // La riga resta in invio: dopo OUTBOUND_SENDING_TIMEOUT viene riconsiderata
+                Log.w(TAG, row.getCommand() + ": esito di invio non salvato", e);
+            }
+            runPass();
+        });
+    }
+
+    /**
+     * Riceve un rapporto di consegna positivo da {@link SmsService#onSmsDelivered(String, int)},
+     * per misurare la latenza della SIM usata.
+     *
+     * @param messageId ID del messaggio consegnato
+     */
+    void onDelivered(String messageId) {
+        long now = System.currentTimeMillis();
+        dispatcher.execute(() -> router.onDelivered(messageId, now));
+    }
+
+    // ========== Passaggio sulla coda ==========
+
+    /**
+     * Invia i comandi pronti e pianifica il passaggio successivo. Se il repository
+     * rifiuta un aggiornamento (corsia di scrittura piena) il passaggio si interrompe
+     * e viene ripianificato.
+     */
+    private void runPass() {
+        try {
+            pass();
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Repository sovraccarico, passaggio ripianificato", e);
+            if (scheduledPass != null) {
+                scheduledPass.cancel(false);
+            }
+            schedule(Constants.RETRY_DELAY);
+        }
+    }
+
+    private void pass() {
+        if (scheduledPass != null) {
+            scheduledPass.cancel(false);
+            scheduledPass = null;
+        }
+        List<OutboundCommand> rows = repository.loadOutboundCommands();
+        if (rows == null) {
+            schedule(Constants.RETRY_DELAY);
+            return;
+        }
+        index(rows);
+        if (rows.isEmpty()) {
+            cancelWork();
+            publishStats(0);
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<Long> removed = new ArrayList<>();
+        Map<String, List<OutboundCommand>> byPhone = groupByPhone(rows, removed);
+        SubscriptionCache.Snapshot sims = smsService.getSimSnapshot();
+        List<Integer> subscriptionIds = new ArrayList<>();
+        for (int slot : sims.getSlots()) {
+            subscriptionIds.add(sims.getSubscriptionId(slot));
+        }
+        long nextDue = Long.MAX_VALUE;
+
+        for (List<OutboundCommand> pending : byPhone.values()) {
+            OutboundCommand head = pending.get(0);
+            while (head.getStatus() == OutboundCommand.STATUS_QUEUED
+                    && now - head.getCreatedAt() >= Constants.OUTBOUND_COMMAND_TTL) {
+                Log.w(TAG, head.getCommand() + " scaduto senza essere inviato");
+                removed.add(head.getId());
+                publishResult(head, Activity.RESULT_CANCELED, "Comando scaduto prima dell'invio");
+                pending.remove(0);
+                if (pending.isEmpty()) {
+                    head = null;
+                    break;
+                }
+                head = pending.get(0);
+            }
+            if (head == null) {
+                continue;
+            }
+
+            if (head.getStatus() == OutboundCommand.STATUS_SENDING) {
+                long lostAt = head.getDispatchedAt() + Constants.OUTBOUND_SENDING_TIMEOUT;
+                if (now < lostAt) {
+                    nextDue = Math.min(nextDue, lostAt);
+                    continue;
+                }
+                // Esito mai arrivato (processo chiuso o riavvio): si ripete l'invio
+                Log.w(TAG, head.getCommand() + ": esito di invio non ricevuto, nuovo invio");
+                head.setStatus(OutboundCommand.STATUS_QUEUED);
+            }
+
+            long due = Math.max(head.getNextAttemptAt(), lastDispatchAt + Constants.OUTBOUND_MIN_INTERVAL);
+            if (due > now) {
+                nextDue = Math.min(nextDue, due);
+                continue;
+            }
+            int slot = router.select(sims.getSlots(), subscriptionIds, rateLimiter, now);
+            long budgetDelay = rateLimiter.delayMs(slot, now);
+            if (budgetDelay > 0) {
+                nextDue = Math.min(nextDue, now + budgetDelay);
+                continue;
+            }
+            head.setSimSlot(slot);
+            dispatch(head, now);
+            nextDue = Math.min(nextDue, head.getStatus() == OutboundCommand.STATUS_SENDING
+                    ? now + Constants.OUTBOUND_SENDING_TIMEOUT
+                    : head.getNextAttemptAt());
+        }
+
+        repository.deleteOutboundCommands(removed);
+        publishStats(rows.size() - removed.size());
+        if (nextDue == Long.MAX_VALUE) {
+            cancelWork();
+        } else {
+            schedule(Math.max(0, nextDue - now));
+        }
+    }
+
+    /**
+     * Raggruppa le righe per numero di destinazione, nell'ordine di accodamento.
+     * Un comando non ancora inviato identico al successivo per lo stesso numero
+     * viene sostituito da quest'ultimo (ad es. la ripetizione di un comando
+     * ancora in coda), aggiunto a {@code removed} e ne ricevera' l'esito.
+     */
+    private Map<String, List<OutboundCommand>> groupByPhone(List<OutboundCommand> rows, List<Long> removed) {
+        Map<String, List<OutboundCommand>> byPhone = new LinkedHashMap<>();
+        for (OutboundCommand row : rows) {
+            List<OutboundCommand> pending = byPhone.get(row.getPhoneNumber());
+            if (pending == null) {
+                pending = new ArrayList<>();
+                byPhone.put(row.getPhoneNumber(), pending);
+            }
+            if (!pending.isEmpty()) {
+                OutboundCommand previous = pending.get(pending.size() - 1);
+                if (previous.isUndispatched() && previous.getCommand().equals(row.getCommand())) {
+                    pending.remove(pending.size() - 1);
+                    removed.add(previous.getId());
+                    replace(previous, row);
+                }
+            }
+            pending.add(row);
+        }
+        return byPhone;
+    }
+
+    /**
+     * Invia un comando e lo segna in attesa dell'esito.
+     */
+    private void dispatch(OutboundCommand row, long now) {
+        row.setAttempts(row.getAttempts() + 1);
+        row.setStatus(OutboundCommand.STATUS_SENDING);
+        row.setDispatchedAt(now);
+        // Salvato prima dell'invio: se il processo si chiude, la riga risulta in corso.
+        // Se il repository lo rifiuta, l'SMS non parte e il passaggio viene ripianificato
+        repository.updateOutboundCommand(row);
+        lastDispatchAt = now;
+        rateLimiter.consume(row.getSimSlot(), now);
+        if (row.getAttempts() == 1) {
+            lastWaitMs = Math.max(0, now - row.getCreatedAt());
+            maxWaitMs = Math.max(maxWaitMs, lastWaitMs);
+            totalWaitMs += lastWaitMs;
+            dispatchedCount++;
+        }
+
+        String error = smsService.dispatch(row);
+        if (error != null) {
+            handleFailure(row, SmsManager.RESULT_ERROR_GENERIC_FAILURE, error);
+            return;
+        }
+        if (row.getPanelId() != null) {
+            List<String> ids = Collections.singletonList(row.getMessageId());
+            try {
+                if (row.getAttempts() > 1) {
+                    repository.releasePendingCommands(ids);
+                }
+                repository.trackPendingCommand(row.getMessageId(), row.getPanelId(), row.getCommand());
+            } catch (RejectedExecutionException e) {
+                // L'SMS e' partito: la correlazione in memoria e' gia' registrata, manca solo la copia su database
+                Log.w(TAG, row.getCommand() + ": comando in attesa non salvato", e);
+            }
+        }
+    }
+
+    /**
+     * Decide se ripetere un invio fallito o concludere il comando.
+     * Se un'altra SIM e' disponibile il nuovo tentativo parte subito da quella.
+     */
+    private void handleFailure(OutboundCommand row, int resultCode, String errorMessage) {
+        long now = System.currentTimeMillis();
+        row.setLastError(errorMessage);
+        row.setStatus(OutboundCommand.STATUS_QUEUED);
+
+        // L'errore puo' dipendere da una SIM rimossa o disattivata: SIM da rileggere
+        smsService.invalidateSubscriptions();
+        router.onSendFailed(row.getSimSlot(), now);
+        boolean failover = router.hasAlternative(smsService.getSimSnapshot().getSlots(), row.getSimSlot(), now);
+
+        if (resultCode == SmsManager.RESULT_ERROR_LIMIT_EXCEEDED) {
+            // Il comando resta in coda: ripartira' dall'altra SIM o quando questa avra' di nuovo budget
+            long pausedUntil = rateLimiter.onLimitExceeded(row.getSimSlot(), now);
+            row.setNextAttemptAt(failover ? now : pausedUntil);
+            repository.updateOutboundCommand(row);
+            return;
+        }
+
+        boolean transientError = resultCode == SmsManager.RESULT_ERROR_RADIO_OFF
+                || resultCode == SmsManager.RESULT_ERROR_NO_SERVICE;
+        if (transientError || row.getAttempts() < Constants.OUTBOUND_MAX_ATTEMPTS) {
+            long delay = failover ? 0 : Math.min(Constants.RETRY_MAX_DELAY,
+                    (long) Constants.RETRY_DELAY << Math.min(row.getAttempts() - 1, 16));
+            Log.d(TAG, row.getCommand() + ": invio fallito (" + errorMessage + "), nuovo invio tra " + delay + " ms");
+            row.setNextAttemptAt(now + delay);
+            repository.updateOutboundCommand(row);
+            return;
+        }
+
+        Log.e(TAG, row.getCommand() + ": invio fallito definitivamente (" + errorMessage + ")");
+        repository.deleteOutboundCommands(Collections.singletonList(row.getId()));
+        publishResult(row, resultCode, errorMessage);
+    }
+
+    /**
+     * Pianifica il prossimo passaggio nel processo e, come riserva, con WorkManager.
+     * <p>
+     * Il lavoro di riserva viene sostituito solo se il nuovo passaggio e' piu'
+     * vicino di quello gia' pianificato; durante il passaggio eseguito dal lavoro
+     * stesso il successivo viene accodato dopo di esso, senza interromperlo.
+     */
+    private void schedule(long delayMs) {
+        scheduledPass = dispatcher.schedule(this::runPass, delayMs, TimeUnit.MILLISECONDS);
+        long dueAt = System.currentTimeMillis() + delayMs;
+        if (draining) {
+            OutboundQueueWorker.schedule(context, delayMs, true);
+            workDueAt = dueAt;
+        } else if (workDueAt == 0 || dueAt < workDueAt) {
+            OutboundQueueWorker.schedule(context, delayMs, false);
+            workDueAt = dueAt;
+        }
+    }
+
+    /**
+     * Annulla il lavoro di riserva (coda vuota). Il lavoro in esecuzione termina da se'.
+     */
+    private void cancelWork() {
+        if (workDueAt != 0 && !draining) {
+            OutboundQueueWorker.cancel(context);
+        }
+        workDueAt = 0;
+    }
+
+    private void publishStats(int queued) {
+        stats.postValue(new OutboundQueueStats(queued, dispatchedCount, totalWaitMs, maxWaitMs,
+                lastWaitMs, rateLimiter.snapshot(System.currentTimeMillis())));
+    }
+
+    /**
+     * Pubblica l'esito finale di un comando, anche per i comandi che ha sostituito,
+     * con la centrale e la SIM dell'ultimo invio.
+     */
+    private void publishResult(OutboundCommand row, int resultCode, String errorMessage) {
+        rowsByMessageId.remove(row.getMessageId());
+        long panelId = row.getPanelId() != null ? row.getPanelId() : AlarmRepository.NO_PANEL;
+        eventBus.publish(new SmsEventBus.SmsSent(row.getMessageId(), resultCode, errorMessage,
+                panelId, row.getSimSlot()));
+        List<String> others = replaced.remove(row.getMessageId());
+        if (others != null) {
+            for (String messageId : others) {
+                eventBus.publish(new SmsEventBus.SmsSent(messageId, resultCode, errorMessage,
+                        panelId, row.getSimSlot()));
+            }
+        }
+    }
+
+    /**
+     * Registra che {@code survivor} sostituisce il duplicato {@code previous},
+     * insieme ai comandi che questo aveva gia' sostituito.
+     */
+    private void replace(OutboundCommand previous, OutboundCommand survivor) {
+        rowsByMessageId.remove(previous.getMessageId());
+        List<String> others = replaced.get(survivor.getMessageId());
+        if (others == null) {
+            others = new ArrayList<>();
+            replaced.put(survivor.getMessageId(), others);
+        }
+        others.add(previous.getMessageId());
+        List<String> earlier = replaced.remove(previous.getMessageId());
+        if (earlier != null) {
+            others.addAll(earlier);
+        }
+    }
+
+    /**
+     * Aggiorna l'indice per message_id con le righe appena lette.
+     */
+    private void index(List<OutboundCommand> rows) {
+        rowsByMessageId.clear();
+        for (OutboundCommand row : rows) {
+            rowsByMessageId.put(row.getMessageId(), row);
+        }
+        indexed = true;
+    }
+
+    /**
+     * Cerca una riga della coda per message_id. La tabella viene letta solo se
+     * nessun passaggio l'ha ancora fatto (esito arrivato subito dopo l'avvio).
+     *
+     * @return la riga, o null se il messaggio non e' in coda
+     */
+    private OutboundCommand findRow(String messageId) {
+        if (!indexed) {
+            List<OutboundCommand> rows = repository.loadOutboundCommands();
+            if (rows != null) {
+                index(rows);
+            }
+        }
+        return rowsByMessageId.get(messageId);
+    }
+}
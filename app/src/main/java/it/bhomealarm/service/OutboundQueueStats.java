@@ -0,0 +1,126 @@
+package it.bhomealarm.service;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Istantanea immutabile delle metriche di {@link OutboundCommandQueue}.
+ * <p>
+ * Contiene:
+ * <ul>
+ *     <li>i comandi in coda al momento dell'istantanea;</li>
+ *     <li>i comandi inviati dall'avvio del processo e il tempo trascorso in coda
+ *         prima del primo invio (medio, massimo e dell'ultimo comando);</li>
+ *     <li>per ogni SIM il budget di invio disponibile ({@link SmsRateLimiter}).</li>
+ * </ul>
+ * <p>
+ * Le istanze vengono pubblicate tramite {@link OutboundCommandQueue#getStats()}.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see OutboundCommandQueue
+ */
+public final class OutboundQueueStats {
+
+    /** Statistiche vuote (nessun comando inviato). */
+    static final OutboundQueueStats EMPTY = new OutboundQueueStats(0, 0, 0, 0, 0, Collections.emptyMap());
+
+    private final int queued;
+    private final long dispatched;
+    private final long totalWaitMs;
+    private final long maxWaitMs;
+    private final long lastWaitMs;
+    private final Map<Integer, SimBudgetStats> budgets;
+
+    OutboundQueueStats(int queued, long dispatched, long totalWaitMs, long maxWaitMs, long lastWaitMs,
+                       Map<Integer, SimBudgetStats> budgets) {
+        this.queued = queued;
+        this.dispatched = dispatched;
+        this.totalWaitMs = totalWaitMs;
+        this.maxWaitMs = maxWaitMs;
+        this.lastWaitMs = lastWaitMs;
+        this.budgets = Collections.unmodifiableMap(budgets);
+    }
+
+    /** @return comandi in coda (da inviare o in attesa dell'esito di invio) */
+    public int getQueued() { return queued; }
+
+    /** @return comandi inviati per la prima volta dall'avvio del processo */
+    public long getDispatched() { return dispatched; }
+
+    /** @return attesa media in coda prima del primo invio, in millisecondi */
+    public long getAverageWaitMs() { return dispatched > 0 ? totalWaitMs / dispatched : 0; }
+
+    /** @return attesa massima in coda prima del primo invio, in millisecondi */
+    public long getMaxWaitMs() { return maxWaitMs; }
+
+    /** @return attesa in coda dell'ultimo comando inviato, in millisecondi */
+    public long getLastWaitMs() { return lastWaitMs; }
+
+    /** @return budget di invio per slot SIM (-1 = SIM predefinita) */
+    public Map<Integer, SimBudgetStats> getBudgets() { return budgets; }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "OutboundQueueStats{queued=" + queued + ", dispatched=" + dispatched
+                + ", avgWait=" + getAverageWaitMs() + "ms, maxWait=" + maxWaitMs
+                + "ms, budgets=" + budgets + '}';
+    }
+
+    /**
+     * Budget di invio di una SIM al momento dell'istantanea.
+     */
+    public static final class SimBudgetStats {
+
+        private final int minuteTokens;
+        private final int minuteCapacity;
+        private final int hourTokens;
+        private final int hourCapacity;
+        private final double factor;
+        private final long pausedUntil;
+        private final int limitHits;
+
+        SimBudgetStats(int minuteTokens, int minuteCapacity, int hourTokens, int hourCapacity,
+                       double factor, long pausedUntil, int limitHits) {
+            this.minuteTokens = minuteTokens;
+            this.minuteCapacity = minuteCapacity;
+            this.hourTokens = hourTokens;
+            this.hourCapacity = hourCapacity;
+            this.factor = factor;
+            this.pausedUntil = pausedUntil;
+            this.limitHits = limitHits;
+        }
+
+        /** @return SMS inviabili subito nel bucket al minuto */
+        public int getMinuteTokens() { return minuteTokens; }
+
+        /** @return capacita' effettiva al minuto */
+        public int getMinuteCapacity() { return minuteCapacity; }
+
+        /** @return SMS inviabili subito nel bucket orario */
+        public int getHourTokens() { return hourTokens; }
+
+        /** @return capacita' effettiva oraria */
+        public int getHourCapacity() { return hourCapacity; }
+
+        /** @return frazione del budget configurato in uso (1 = nessun limite osservato) */
+        public double getFactor() { return factor; }
+
+        /** @return timestamp fino al quale la SIM e' sospesa (0 = mai sospesa) */
+        public long getPausedUntil() { return pausedUntil; }
+
+        /** @return errori di limite SMS osservati */
+        public int getLimitHits() { return limitHits; }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "SimBudget{minute=" + minuteTokens + "/" + minuteCapacity
+                    + ", hour=" + hourTokens + "/" + hourCapacity
+                    + ", factor=" + factor + ", limitHits=" + limitHits + '}';
+        }
+    }
+}
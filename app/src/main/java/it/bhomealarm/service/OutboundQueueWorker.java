@@ -0,0 +1,70 @@
+package it.bhomealarm.service;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.TimeUnit;
+
+import it.bhomealarm.util.Constants;
+
+/**
+ * Lavoro (WorkManager) che riprende l'invio della coda dei comandi in uscita.
+ * <p>
+ * Viene pianificato da {@link OutboundCommandQueue} per l'istante del prossimo
+ * invio finche' la coda non e' vuota. Se il processo e' ancora attivo l'invio e'
+ * gia' avvenuto e il passaggio non trova nulla da fare; se il processo e' stato
+ * chiuso o il dispositivo riavviato, WorkManager lo riavvia e la coda riprende.
+ * <p>
+ * La pianificazione e' unica ({@link Constants#WORK_OUTBOUND_QUEUE}): una nuova
+ * pianificazione sostituisce quella in attesa, oppure, se richiesta dal lavoro in
+ * esecuzione, viene accodata dopo di esso.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see OutboundCommandQueue
+ */
+public class OutboundQueueWorker extends Worker {
+
+    public OutboundQueueWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Pianifica il prossimo passaggio sulla coda.
+     *
+     * @param context Context dell'applicazione
+     * @param delayMs Attesa prima del passaggio in millisecondi
+     * @param append true se chiamato dal lavoro in esecuzione, che non va interrotto
+     */
+    static void schedule(Context context, long delayMs, boolean append) {
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(OutboundQueueWorker.class)
+                .setInitialDelay(delayMs, TimeUnit.MILLISECONDS)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(Constants.WORK_OUTBOUND_QUEUE,
+                append ? ExistingWorkPolicy.APPEND_OR_REPLACE : ExistingWorkPolicy.REPLACE, request);
+    }
+
+    /**
+     * Annulla il passaggio pianificato (coda vuota).
+     *
+     * @param context Context dell'applicazione
+     */
+    static void cancel(Context context) {
+        WorkManager.getInstance(context).cancelUniqueWork(Constants.WORK_OUTBOUND_QUEUE);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        // Il passaggio pianifica da se' il successivo, se la coda non e' vuota
+        return OutboundCommandQueue.getInstance(getApplicationContext()).drain()
+                ? Result.success()
+                : Result.retry();
+    }
+}
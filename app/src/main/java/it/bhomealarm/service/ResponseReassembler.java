@@ -0,0 +1,116 @@
+package it.bhomealarm.service;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import it.bhomealarm.protocol.ResponseAssembler;
+import it.bhomealarm.util.Constants;
+
+/**
+ * Stadio di ricostruzione tra {@link SmsReceiver} e i consumatori delle risposte.
+ * <p>
+ * Una risposta CONF lunga puo' arrivare in piu' SMS indipendenti: i frammenti
+ * successivi al primo non hanno prefisso e, elaborati da soli, non verrebbero
+ * riconosciuti. Gli SMS di ogni centrale passano da un {@link ResponseAssembler}:
+ * <ul>
+ *     <li>finche' la risposta non e' completa viene pubblicato
+ *         {@link SmsEventBus.SmsPartial} con i campi ricevuti finora (ad es. le
+ *         zone gia' arrivate), per aggiornare subito l'UI;</li>
+ *     <li>la risposta completa (terminata da '#' o con tutti i campi attesi)
+ *         segue il normale percorso di {@link SmsReceiver}: abbinamento al
+ *         comando, aggiornamento della centrale e {@link SmsEventBus.SmsReceived};</li>
+ *     <li>se il frammento successivo non arriva entro
+ *         {@link Constants#REASSEMBLY_TIMEOUT} (o la risposta supera la lunghezza
+ *         massima, o dallo stesso mittente ne inizia un'altra) la risposta viene
+ *         consegnata come incompleta ({@link SmsEventBus.SmsReceived#complete}
+ *         false): il comando viene abbinato, ma il corpo non va applicato.</li>
+ * </ul>
+ * Le risposte che non sono CONF, o gia' complete in un solo SMS, passano senza attese.
+ * <p>
+ * Usato solo dal main thread (i broadcast di {@link SmsReceiver} e la scadenza
+ * pianificata sullo stesso Looper).
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see ResponseAssembler
+ * @see SmsReceiver
+ */
+final class ResponseReassembler {
+
+    private static final String TAG = "ResponseReassembler";
+
+    private static ResponseReassembler instance;
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ResponseAssembler assembler = new ResponseAssembler(
+            Constants.REASSEMBLY_TIMEOUT, Constants.REASSEMBLY_MAX_LENGTH, Constants.REASSEMBLY_MAX_SENDERS);
+
+    /** Ultimo numero mittente ricevuto per centrale (le risposte sono raggruppate per centrale). */
+    private final Map<Long, String> senders = new HashMap<>();
+
+    private final Runnable expireTask = this::expire;
+
+    private ResponseReassembler(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    static ResponseReassembler getInstance(Context context) {
+        if (instance == null) {
+            instance = new ResponseReassembler(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Aggiunge un SMS ricevuto da una centrale.
+     *
+     * @param panelId ID della centrale mittente
+     * @param sender Numero del mittente, come ricevuto
+     * @param body Corpo dell'SMS
+     */
+    void offer(long panelId, String sender, String body) {
+        senders.put(panelId, sender);
+        emit(assembler.offer(String.valueOf(panelId), body, System.currentTimeMillis()));
+        scheduleExpiry();
+    }
+
+    private void expire() {
+        emit(assembler.expire(System.currentTimeMillis()));
+        scheduleExpiry();
+    }
+
+    private void emit(List<ResponseAssembler.Assembled> responses) {
+        for (ResponseAssembler.Assembled response : responses) {
+            long panelId = Long.parseLong(response.getSender());
+            String sender = senders.get(panelId);
+            if (!response.isFinal()) {
+                Log.d(TAG, "Risposta in ricostruzione dalla centrale " + panelId
+                        + " (" + response.getFragments() + " SMS)");
+                SmsEventBus.getInstance().publish(new SmsEventBus.SmsPartial(
+                        panelId, sender, response.getBody(), response.getFragments()));
+                continue;
+            }
+            boolean complete = response.getState() != ResponseAssembler.State.INCOMPLETE;
+            if (!complete) {
+                Log.w(TAG, "Risposta incompleta dalla centrale " + panelId
+                        + " dopo " + response.getFragments() + " SMS: " + response.getBody());
+            }
+            SmsReceiver.deliver(context, panelId, sender, response.getBody(), complete);
+        }
+    }
+
+    private void scheduleExpiry() {
+        handler.removeCallbacks(expireTask);
+        long next = assembler.nextDeadline();
+        if (next != Long.MAX_VALUE) {
+            handler.postDelayed(expireTask, Math.max(0, next - System.currentTimeMillis()));
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package it.bhomealarm.service;
+
+import android.app.Application;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import it.bhomealarm.callback.RepositoryCallback;
+import it.bhomealarm.model.repository.AlarmRepository;
+import it.bhomealarm.util.Constants;
+
+/**
+ * Stima adattiva del tempo di risposta della centrale, per centrale e per SIM.
+ * <p>
+ * Usa lo stesso stimatore di TCP (RFC 6298): una media mobile del tempo di andata
+ * e ritorno (SRTT) e della sua variabilita' (RTTVAR). Il timeout di risposta e'
+ * {@code SRTT + 4 * RTTVAR}, limitato tra {@link Constants#TIMEOUT_ADAPTIVE_MIN} e
+ * {@link Constants#TIMEOUT_ADAPTIVE_MAX}; a ogni timeout scaduto raddoppia fino
+ * al campione successivo.
+ * <p>
+ * La SIM e' quella effettivamente usata per l'invio, riportata dall'esito di invio.
+ * Senza campioni per una coppia centrale/SIM la stima viene inizializzata dalla
+ * cronologia di {@code sms_log} della centrale, che non registra la SIM (tempo tra
+ * un SMS inviato e la risposta successiva);
+ * finche' non e' disponibile si usa {@link Constants#TIMEOUT_SMS_RESPONSE}.
+ * Le stime sono salvate nelle SharedPreferences e sopravvivono ai riavvii.
+ * <p>
+ * Thread-safe.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see CommandExecutor
+ */
+public final class ResponseTimeEstimator {
+
+    private static final String TAG = "ResponseTimeEstimator";
+
+    /** Prefisso delle chiavi nelle SharedPreferences. */
+    private static final String PREF_PREFIX = "rtt_";
+
+    /** Peso del nuovo campione nella media (alpha = 1/8). */
+    private static final double ALPHA = 0.125;
+
+    /** Peso del nuovo scarto nella variabilita' (beta = 1/4). */
+    private static final double BETA = 0.25;
+
+    /** Moltiplicatore della variabilita' nel timeout. */
+    private static final int K = 4;
+
+    /** Raddoppi massimi del timeout dopo timeout consecutivi. */
+    private static final int MAX_BACKOFF_SHIFT = 3;
+
+    private static volatile ResponseTimeEstimator instance;
+
+    private final AlarmRepository repository;
+    private final SharedPreferences prefs;
+
+    /** Stime caricate, per chiave centrale/SIM. */
+    private final Map<String, Estimate> estimates = new HashMap<>();
+
+    /** Centrali per cui l'inizializzazione da sms_log e' gia' stata avviata. */
+    private final Set<String> bootstrapped = new HashSet<>();
+
+    private ResponseTimeEstimator(Application application) {
+        repository = AlarmRepository.getInstance(application);
+        prefs = application.getSharedPreferences(Constants.PREF_NAME, Context.MODE_PRIVATE);
+    }
+
+    public static ResponseTimeEstimator getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ResponseTimeEstimator.class) {
+                if (instance == null) {
+                    instance = new ResponseTimeEstimator((Application) context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Restituisce la chiave di una coppia centrale/SIM. Va costruita dall'esito
+     * di invio ({@link SmsEventBus.SmsSent}), perche' la coda di invio sceglie la
+     * SIM di ogni tentativo e puo' usarne una diversa da quella selezionata.
+     *
+     * @param panelId Centrale destinataria
+     * @param simSlot Slot della SIM usata per l'invio (-1 = predefinita)
+     * @return chiave per {@link #getTimeoutMs(String)} e {@link #addSample(String, long)}
+     */
+    public static String keyFor(long panelId, int simSlot) {
+        return panelId + "_" + simSlot;
+    }
+
+    /**
+     * Restituisce il timeout di risposta per una coppia centrale/SIM.
+     *
+     * @param key Chiave da {@link #keyFor(long, int)}
+     * @return timeout in millisecondi
+     */
+    public long getTimeoutMs(String key) {
+        synchronized (estimates) {
+            Estimate estimate = load(key);
+            if (estimate != null) {
+                return estimate.timeoutMs();
+            }
+        }
+        bootstrap(key);
+        return Constants.TIMEOUT_SMS_RESPONSE;
+    }
+
+    /**
+     * Aggiunge un tempo di risposta misurato.
+     * <p>
+     * Vanno usati solo campioni non ambigui: risposta al primo tentativo e
+     * nessun'altra richiesta in attesa alla stessa centrale (algoritmo di Karn).
+     *
+     * @param key Chiave da {@link #keyFor(long, int)}
+     * @param rttMs Tempo tra l'invio e la risposta in millisecondi
+     */
+    public void addSample(String key, long rttMs) {
+        if (rttMs <= 0) {
+            return;
+        }
+        Estimate estimate;
+        synchronized (estimates) {
+            estimate = load(key);
+            if (estimate == null) {
+                estimate = new Estimate(0, 0, 0);
+                estimates.put(key, estimate);
+            }
+            estimate.add(rttMs);
+        }
+        save(key, estimate);
+    }
+
+    /**
+     * Segnala un timeout scaduto: il timeout successivo raddoppia
+     * fino al prossimo campione valido.
+     *
+     * @param key Chiave da {@link #keyFor(long, int)}
+     */
+    public void onTimeout(String key) {
+        Estimate estimate;
+        synchronized (estimates) {
+            estimate = load(key);
+            if (estimate == null) {
+                return;
+            }
+            estimate.backoffShift = Math.min(MAX_BACKOFF_SHIFT, estimate.backoffShift + 1);
+        }
+        save(key, estimate);
+    }
+
+    /**
+     * Carica la stima dalla cache o dalle preferences. Da chiamare con il lock su {@link #estimates}.
+     */
+    private Estimate load(String key) {
+        Estimate estimate = estimates.get(key);
+        if (estimate == null && prefs.contains(PREF_PREFIX + key + "_srtt")) {
+            estimate = new Estimate(
+                    prefs.getLong(PREF_PREFIX + key + "_srtt", 0),
+                    prefs.getLong(PREF_PREFIX + key + "_rttvar", 0),
+                    prefs.getInt(PREF_PREFIX + key + "_backoff", 0));
+            estimates.put(key, estimate);
+        }
+        return estimate;
+    }
+
+    private void save(String key, Estimate estimate) {
+        long srtt;
+        long rttvar;
+        int backoff;
+        synchronized (estimates) {
+            srtt = Math.round(estimate.srtt);
+            rttvar = Math.round(estimate.rttvar);
+            backoff = estimate.backoffShift;
+        }
+        prefs.edit()
+                .putLong(PREF_PREFIX + key + "_srtt", srtt)
+                .putLong(PREF_PREFIX + key + "_rttvar", rttvar)
+                .putInt(PREF_PREFIX + key + "_backoff", backoff)
+                .apply();
+    }
+
+    /**
+     * Inizializza la stima dalla cronologia SMS della centrale, una volta per processo.
+     */
+    private void bootstrap(String key) {
+        long panelId = panelOf(key);
+        if (panelId == AlarmRepository.NO_PANEL) {
+            return;
+        }
+        synchronized (bootstrapped) {
+            if (!bootstrapped.add(key)) {
+                return;
+            }
+        }
+        repository.loadResponseTimes(panelId, Constants.RTT_BOOTSTRAP_SAMPLES, new RepositoryCallback<List<Long>>() {
+            @Override
+            public void onSuccess(List<Long> samples) {
+                synchronized (estimates) {
+                    if (load(key) != null) {
+                        return; // Nel frattempo e' arrivato un campione reale
+                    }
+                }
+                // Dal piu' vecchio al piu' recente, come se arrivassero ora
+                for (int i = samples.size() - 1; i >= 0; i--) {
+                    long rtt = samples.get(i);
+                    if (rtt <= Constants.TIMEOUT_ADAPTIVE_MAX) {
+                        addSample(key, rtt);
+                    }
+                }
+                Log.d(TAG, "Stima iniziale " + key + " da " + samples.size() + " risposte in sms_log");
+            }
+
+            @Override
+            public void onError(Exception error) {
+                Log.w(TAG, "Cronologia tempi di risposta non disponibile", error);
+            }
+        });
+    }
+
+    private static long panelOf(String key) {
+        try {
+            return Long.parseLong(key.substring(0, key.lastIndexOf('_')));
+        } catch (RuntimeException e) {
+            return AlarmRepository.NO_PANEL;
+        }
+    }
+
+    /**
+     * Stima per una coppia centrale/SIM. Accesso sotto il lock su {@link #estimates}.
+     */
+    private static final class Estimate {
+
+        double srtt;
+        double rttvar;
+        int backoffShift;
+        boolean seeded;
+
+        Estimate(double srtt, double rttvar, int backoffShift) {
+            this.srtt = srtt;
+            this.rttvar = rttvar;
+            this.backoffShift = backoffShift;
+            this.seeded = srtt > 0;
+        }
+
+        void add(long rtt) {
+            if (!seeded) {
+                srtt = rtt;
+                rttvar = rtt / 2.0;
+                seeded = true;
+            } else {
+                rttvar = (1 - BETA) * rttvar + BETA * Math.abs(srtt - rtt);
+                srtt = (1 - ALPHA) * srtt + ALPHA * rtt;
+            }
+            backoffShift = 0;
+        }
+
+        long timeoutMs() {
+            long rto = Math.round(srtt + K * rttvar) << backoffShift;
+            return Math.max(Constants.TIMEOUT_ADAPTIVE_MIN, Math.min(Constants.TIMEOUT_ADAPTIVE_MAX, rto));
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package it.bhomealarm.service;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import it.bhomealarm.util.Constants;
+
+/**
+ * Scelta della SIM per ogni SMS in uscita sui dispositivi Dual-SIM.
+ * <p>
+ * Tre modalita' ({@link Constants#PREF_SIM_ROUTING}):
+ * <ul>
+ *     <li><b>{@link Constants#SIM_ROUTING_PRIMARY}</b>: si usa la SIM selezionata
+ *         nelle impostazioni; l'altra solo se la principale ha appena fallito;</li>
+ *     <li><b>{@link Constants#SIM_ROUTING_ROUND_ROBIN}</b>: le SIM si alternano,
+ *         saltando quelle senza budget di invio ({@link SmsRateLimiter});</li>
+ *     <li><b>{@link Constants#SIM_ROUTING_LEAST_LATENCY}</b>: si usa la SIM con il
+ *         minor tempo medio tra invio e rapporto di consegna, misurato per
+ *         abbonamento; ogni {@link #EXPLORE_EVERY} invii si prova la SIM con meno
+ *         misure, cosi' la stima dell'altra resta aggiornata.</li>
+ * </ul>
+ * In tutte le modalita' una SIM con un errore di invio (nessun servizio, radio
+ * spenta, limite SMS...) viene esclusa per {@link Constants#SIM_FAILOVER_COOLDOWN}
+ * se ce n'e' un'altra disponibile: il tentativo successivo passa subito all'altra SIM.
+ * <p>
+ * Le latenze medie sono salvate nelle SharedPreferences.
+ * Non thread-safe: usato solo dal thread di invio di {@link OutboundCommandQueue}.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see OutboundCommandQueue
+ */
+final class SimRouter {
+
+    private static final String TAG = "SimRouter";
+
+    /** Prefisso delle chiavi nelle SharedPreferences. */
+    private static final String PREF_PREFIX = "sim_latency_";
+
+    /** Peso del nuovo campione nella media della latenza. */
+    private static final double ALPHA = 0.2;
+
+    /** Ogni quanti invii la modalita' least-latency prova la SIM meno misurata. */
+    private static final int EXPLORE_EVERY = 10;
+
+    /** Oltre questo tempo un invio senza rapporto di consegna viene dimenticato. */
+    private static final long DELIVERY_WINDOW = 60 * 60_000L;
+
+    private final SharedPreferences prefs;
+
+    /** Slot SIM esclusi dopo un errore, con il timestamp di fine esclusione. */
+    private final Map<Integer, Long> failedUntil = new HashMap<>();
+
+    /** Latenza media di consegna per subscription ID. */
+    private final Map<Integer, Latency> latencies = new HashMap<>();
+
+    /** Invii in attesa del rapporto di consegna, per message_id. */
+    private final Map<String, Sent> awaitingDelivery = new HashMap<>();
+
+    private int roundRobin;
+    private int selections;
+
+    SimRouter(SharedPreferences prefs) {
+        this.prefs = prefs;
+    }
+
+    /**
+     * Sceglie lo slot SIM per il prossimo invio.
+     *
+     * @param slots Slot delle SIM attive (vuoto o uno solo = nessuna scelta)
+     * @param subscriptionIds Subscription ID per ogni slot di {@code slots}
+     * @param limiter Budget di invio, per evitare le SIM senza token
+     * @param now Timestamp corrente
+     * @return lo slot da usare (-1 = SIM predefinita)
+     */
+    int select(List<Integer> slots, List<Integer> subscriptionIds, SmsRateLimiter limiter, long now) {
+        int preferred = prefs.getInt(Constants.PREF_SELECTED_SIM, -1);
+        if (slots.size() < 2) {
+            return preferred;
+        }
+        int primary = slots.contains(preferred) ? preferred : slots.get(0);
+
+        int mode = prefs.getInt(Constants.PREF_SIM_ROUTING, Constants.SIM_ROUTING_PRIMARY);
+        int choice = -1;
+        if (mode == Constants.SIM_ROUTING_ROUND_ROBIN) {
+            choice = selectRoundRobin(slots, limiter, now);
+        } else if (mode == Constants.SIM_ROUTING_LEAST_LATENCY) {
+            choice = selectLeastLatency(slots, subscriptionIds, limiter, now);
+        } else if (isHealthy(primary, now)) {
+            choice = primary;
+        } else {
+            for (int slot : slots) {
+                if (isHealthy(slot, now)) {
+                    choice = slot;
+                    break;
+                }
+            }
+        }
+        // Tutte le SIM in errore: si riprova la principale
+        return choice >= 0 ? choice : primary;
+    }
+
+    /**
+     * Verifica se, escludendo una SIM, ne resta un'altra utilizzabile.
+     *
+     * @param slots Slot delle SIM attive
+     * @param failedSlot Slot appena fallito
+     * @param now Timestamp corrente
+     * @return true se il tentativo successivo puo' passare a un'altra SIM
+     */
+    boolean hasAlternative(List<Integer> slots, int failedSlot, long now) {
+        for (int slot : slots) {
+            if (slot != failedSlot && isHealthy(slot, now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Segnala un errore di invio: la SIM viene esclusa per un periodo.
+     *
+     * @param slot Slot SIM
+     * @param now Timestamp corrente
+     */
+    void onSendFailed(int slot, long now) {
+        failedUntil.put(slot, now + Constants.SIM_FAILOVER_COOLDOWN);
+        Log.d(TAG, "SIM " + slot + " esclusa fino a " + (now + Constants.SIM_FAILOVER_COOLDOWN));
+    }
+
+    /**
+     * Segnala un invio riuscito: la SIM torna disponibile e si attende il rapporto di consegna.
+     *
+     * @param messageId ID del messaggio
+     * @param slot Slot SIM usato
+     * @param subscriptionId Subscription ID della SIM (-1 se non noto)
+     * @param dispatchedAt Timestamp di invio
+     */
+    void onSendOk(String messageId, int slot, int subscriptionId, long dispatchedAt) {
+        failedUntil.remove(slot);
+        if (subscriptionId < 0) {
+            return;
+        }
+        Iterator<Sent> it = awaitingDelivery.values().iterator();
+        while (it.hasNext()) {
+            if (dispatchedAt - it.next().dispatchedAt > DELIVERY_WINDOW) {
+                it.remove();
+            }
+        }
+        awaitingDelivery.put(messageId, new Sent(subscriptionId, dispatchedAt));
+    }
+
+    /**
+     * Registra la latenza di consegna di un SMS.
+     *
+     * @param messageId ID del messaggio
+     * @param now Timestamp di arrivo del rapporto di consegna
+     */
+    void onDelivered(String messageId, long now) {
+        Sent sent = awaitingDelivery.remove(messageId);
+        if (sent == null) {
+            return;
+        }
+        long sample = now - sent.dispatchedAt;
+        Latency latency = loadLatency(sent.subscriptionId);
+        latency.meanMs = latency.samples == 0 ? sample : (1 - ALPHA) * latency.meanMs + ALPHA * sample;
+        latency.samples++;
+        prefs.edit()
+                .putLong(PREF_PREFIX + sent.subscriptionId + "_mean", Math.round(latency.meanMs))
+                .putInt(PREF_PREFIX + sent.subscriptionId + "_samples", latency.samples)
+                .apply();
+    }
+
+    private int selectRoundRobin(List<Integer> slots, SmsRateLimiter limiter, long now) {
+        int fallback = -1;
+        for (int i = 0; i < slots.size(); i++) {
+            int slot = slots.get((roundRobin + i) % slots.size());
+            if (!isHealthy(slot, now)) {
+                continue;
+            }
+            if (limiter.delayMs(slot, now) == 0) {
+                roundRobin = (roundRobin + i + 1) % slots.size();
+                return slot;
+            }
+            if (fallback < 0) {
+                fallback = slot;
+            }
+        }
+        return fallback;
+    }
+
+    private int selectLeastLatency(List<Integer> slots, List<Integer> subscriptionIds,
+                                   SmsRateLimiter limiter, long now) {
+        boolean explore = ++selections % EXPLORE_EVERY == 0;
+        int best = -1;
+        boolean bestReady = false;
+        double bestScore = 0;
+        for (int i = 0; i < slots.size(); i++) {
+            int slot = slots.get(i);
+            if (!isHealthy(slot, now)) {
+                continue;
+            }
+            Latency latency = loadLatency(subscriptionIds.get(i));
+            boolean ready = limiter.delayMs(slot, now) == 0;
+            // Le SIM senza misure vengono provate per prime
+            double score = explore ? latency.samples : (latency.samples == 0 ? -1 : latency.meanMs);
+            if (best < 0 || (ready && !bestReady) || (ready == bestReady && score < bestScore)) {
+                best = slot;
+                bestReady = ready;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    private boolean isHealthy(int slot, long now) {
+        Long until = failedUntil.get(slot);
+        return until == null || now >= until;
+    }
+
+    private Latency loadLatency(int subscriptionId) {
+        Latency latency = latencies.get(subscriptionId);
+        if (latency == null) {
+            latency = new Latency();
+            latency.meanMs = prefs.getLong(PREF_PREFIX + subscriptionId + "_mean", 0);
+            latency.samples = prefs.getInt(PREF_PREFIX + subscriptionId + "_samples", 0);
+            latencies.put(subscriptionId, latency);
+        }
+        return latency;
+    }
+
+    /** Latenza media di consegna di un abbonamento. */
+    private static final class Latency {
+        double meanMs;
+        int samples;
+    }
+
+    /** Invio in attesa del rapporto di consegna. */
+    private static final class Sent {
+        final int subscriptionId;
+        final long dispatchedAt;
+
+        Sent(int subscriptionId, long dispatchedAt) {
+            this.subscriptionId = subscriptionId;
+            this.dispatchedAt = dispatchedAt;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package it.bhomealarm.service;
+
+import android.app.Activity;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import it.bhomealarm.callback.SmsEventListener;
+import it.bhomealarm.model.repository.AlarmRepository;
+
+/**
+ * Dispatcher degli eventi SMS verso un numero qualsiasi di componenti.
+ * <p>
+ * Sostituisce i listener singoli di {@link SmsReceiver} e {@link SmsService}: ogni
+ * componente sottoscrive i tipi di evento che gli interessano ({@link SmsReceived},
+ * {@link SmsPartial}, {@link SmsSent}, {@link SmsDelivered}) senza sovrascrivere gli altri, e riceve
+ * tutti gli eventi pubblicati finche' la sottoscrizione e' attiva.
+ * <p>
+ * I sottoscrittori sono in un array copy-on-write aggiornato con compare-and-set:
+ * la pubblicazione legge l'array senza lock ne' allocazioni, sottoscrizione e
+ * rimozione lo sostituiscono con una copia. Ogni sottoscrizione sceglie il proprio
+ * executor di consegna ({@link #MAIN_THREAD}, {@link #DIRECT} o uno proprio); un
+ * evento gia' accodato non viene consegnato se nel frattempo la sottoscrizione e'
+ * stata rimossa.
+ * <p>
+ * Le sottoscrizioni legate a un {@link LifecycleOwner} vengono rimosse
+ * automaticamente alla sua distruzione; le altre vanno rimosse con
+ * {@link Subscription#unsubscribe()} (ad es. in {@code onCleared()} di un ViewModel).
+ * <p>
+ * Thread-safe.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see SmsEventListener
+ */
+public final class SmsEventBus {
+
+    private static final String TAG = "SmsEventBus";
+
+    /** Consegna sul main thread, tramite un unico Handler condiviso. */
+    public static final Executor MAIN_THREAD = new Executor() {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            handler.post(command);
+        }
+    };
+
+    /** Consegna sincrona sul thread che pubblica l'evento. */
+    public static final Executor DIRECT = Runnable::run;
+
+    private static final Subscription<?>[] EMPTY = new Subscription<?>[0];
+
+    private static final SmsEventBus INSTANCE = new SmsEventBus();
+
+    /** Sottoscrizioni attive; l'array non viene mai modificato, solo sostituito. */
+    private final AtomicReference<Subscription<?>[]> subscriptions = new AtomicReference<>(EMPTY);
+
+    private SmsEventBus() {
+    }
+
+    public static SmsEventBus getInstance() {
+        return INSTANCE;
+    }
+
+    // ========== Eventi ==========
+
+    /**
+     * Risposta CONF divisa in piu' SMS, non ancora completa: contiene i campi
+     * completi ricevuti finora. La risposta completa arrivera' come {@link SmsReceived}.
+     */
+    public static final class SmsPartial {
+
+        /** Centrale mittente. */
+        public final long panelId;
+
+        /** Numero del mittente, come ricevuto. */
+        public final String sender;
+
+        /** Campi ricevuti finora, con il prefisso della risposta (es. "CONF1:..&Z1=..&"). */
+        public final String body;
+
+        /** SMS ricevuti finora per questa risposta. */
+        public final int fragments;
+
+        public SmsPartial(long panelId, String sender, String body, int fragments) {
+            this.panelId = panelId;
+            this.sender = sender;
+            this.body = body;
+            this.fragments = fragments;
+        }
+    }
+
+    /**
+     * SMS ricevuto da una centrale configurata (gia' salvato nel log e, se di
+     * stato, gia' applicato alla centrale).
+     */
+    public static final class SmsReceived {
+
+        /** Centrale mittente. */
+        public final long panelId;
+
+        /** Numero del mittente, come ricevuto. */
+        public final String sender;
+
+        /** Corpo del messaggio. */
+        public final String body;
+
+        /** message_id del comando a cui la risposta e' stata attribuita, o null. */
+        public final String requestMessageId;
+
+        /**
+         * false se la risposta CONF e' stata chiusa prima di essere completa
+         * (frammento successivo non arrivato in tempo, limite di lunghezza o nuova
+         * risposta dallo stesso mittente): i campi mancanti non sono assenti ma
+         * sconosciuti, quindi il corpo non va applicato alla configurazione.
+         */
+        public final boolean complete;
+
+        public SmsReceived(long panelId, String sender, String body, String requestMessageId) {
+            this(panelId, sender, body, requestMessageId, true);
+        }
+
+        public SmsReceived(long panelId, String sender, String body, String requestMessageId,
+                           boolean complete) {
+            this.panelId = panelId;
+            this.sender = sender;
+            this.body = body;
+            this.requestMessageId = requestMessageId;
+            this.complete = complete;
+        }
+    }
+
+    /**
+     * Esito dell'invio di un SMS alla rete.
+     */
+    public static final class SmsSent {
+
+        /** ID del messaggio generato da {@link SmsService}. */
+        public final String messageId;
+
+        /** Codice risultato ({@code Activity.RESULT_OK} in caso di successo). */
+        public final int resultCode;
+
+        /** Descrizione dell'errore, o null in caso di successo. */
+        public final String errorMessage;
+
+        /** Centrale destinataria, o {@code AlarmRepository.NO_PANEL} se non nota. */
+        public final long panelId;
+
+        /** Slot della SIM usata per l'invio, o -1 se non noto. */
+        public final int simSlot;
+
+        public SmsSent(String messageId, int resultCode, String errorMessage) {
+            this(messageId, resultCode, errorMessage, AlarmRepository.NO_PANEL, -1);
+        }
+
+        public SmsSent(String messageId, int resultCode, String errorMessage, long panelId, int simSlot) {
+            this.messageId = messageId;
+            this.resultCode = resultCode;
+            this.errorMessage = errorMessage;
+            this.panelId = panelId;
+            this.simSlot = simSlot;
+        }
+
+        /** @return true se l'SMS e' stato accettato dalla rete */
+        public boolean isSuccess() {
+            return errorMessage == null;
+        }
+    }
+
+    /**
+     * Report di consegna di un SMS.
+     */
+    public static final class SmsDelivered {
+
+        /** ID del messaggio generato da {@link SmsService}. */
+        public final String messageId;
+
+        /** Codice risultato ({@code Activity.RESULT_OK} se consegnato). */
+        public final int resultCode;
+
+        public SmsDelivered(String messageId, int resultCode) {
+            this.messageId = messageId;
+            this.resultCode = resultCode;
+        }
+
+        /** @return true se il report conferma la consegna */
+        public boolean isSuccess() {
+            return resultCode == Activity.RESULT_OK;
+        }
+    }
+
+    // ========== Sottoscrizione ==========
+
+    /**
+     * Sottoscrive un tipo di evento.
+     *
+     * @param type Classe dell'evento
+     * @param executor Executor su cui consegnare gli eventi
+     * @param listener Destinatario degli eventi
+     * @param <E> Tipo dell'evento
+     * @return la sottoscrizione, da rimuovere con {@link Subscription#unsubscribe()}
+     */
+    public <E> Subscription<E> subscribe(Class<E> type, Executor executor, SmsEventListener<? super E> listener) {
+        Subscription<E> subscription = new Subscription<>(this, type, executor, listener);
+        Subscription<?>[] current;
+        Subscription<?>[] updated;
+        do {
+            current = subscriptions.get();
+            updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = subscription;
+        } while (!subscriptions.compareAndSet(current, updated));
+        return subscription;
+    }
+
+    /**
+     * Sottoscrive un tipo di evento finche' il {@link LifecycleOwner} non viene distrutto.
+     * Va chiamato dal main thread.
+     *
+     * @param owner Componente a cui legare la sottoscrizione (Activity, Fragment, ...)
+     * @param type Classe dell'evento
+     * @param executor Executor su cui consegnare gli eventi
+     * @param listener Destinatario degli eventi
+     * @param <E> Tipo dell'evento
+     * @return la sottoscrizione (gia' rimossa se il componente e' distrutto)
+     */
+    public <E> Subscription<E> subscribe(LifecycleOwner owner, Class<E> type, Executor executor,
+                                         SmsEventListener<? super E> listener) {
+        Subscription<E> subscription = subscribe(type, executor, listener);
+        Lifecycle lifecycle = owner.getLifecycle();
+        if (lifecycle.getCurrentState() == Lifecycle.State.DESTROYED) {
+            subscription.unsubscribe();
+            return subscription;
+        }
+        lifecycle.addObserver(new DefaultLifecycleObserver() {
+            @Override
+            public void onDestroy(@NonNull LifecycleOwner source) {
+                source.getLifecycle().removeObserver(this);
+                subscription.unsubscribe();
+            }
+        });
+        return subscription;
+    }
+
+    /**
+     * Pubblica un evento a tutte le sottoscrizioni del suo tipo.
+     *
+     * @param event Evento da consegnare
+     */
+    public void publish(Object event) {
+        for (Subscription<?> subscription : subscriptions.get()) {
+            subscription.offer(event);
+        }
+    }
+
+    private void remove(Subscription<?> subscription) {
+        Subscription<?>[] current;
+        Subscription<?>[] updated;
+        do {
+            current = subscriptions.get();
+            int index = -1;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == subscription) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return;
+            }
+            if (current.length == 1) {
+                updated = EMPTY;
+            } else {
+                updated = new Subscription<?>[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, index);
+                System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            }
+        } while (!subscriptions.compareAndSet(current, updated));
+    }
+
+    /**
+     * Sottoscrizione a un tipo di evento.
+     *
+     * @param <E> Tipo dell'evento
+     */
+    public static final class Subscription<E> {
+
+        private final SmsEventBus bus;
+        private final Class<E> type;
+        private final Executor executor;
+        private final SmsEventListener<? super E> listener;
+        private volatile boolean active = true;
+
+        private Subscription(SmsEventBus bus, Class<E> type, Executor executor,
+                             SmsEventListener<? super E> listener) {
+            this.bus = bus;
+            this.type = type;
+            this.executor = executor;
+            this.listener = listener;
+        }
+
+        /** @return true finche' la sottoscrizione riceve eventi */
+        public boolean isActive() {
+            return active;
+        }
+
+        /**
+         * Rimuove la sottoscrizione. Gli eventi gia' accodati sull'executor
+         * non vengono consegnati. Chiamate ripetute non hanno effetto.
+         */
+        public void unsubscribe() {
+            if (active) {
+                active = false;
+                bus.remove(this);
+            }
+        }
+
+        private void offer(Object event) {
+            if (!active || !type.isInstance(event)) {
+                return;
+            }
+            E typed = type.cast(event);
+            executor.execute(() -> {
+                if (!active) {
+                    return;
+                }
+                try {
+                    listener.onEvent(typed);
+                } catch (RuntimeException e) {
+                    // Un sottoscrittore non deve impedire la consegna agli altri
+                    Log.e(TAG, "Errore nella consegna di " + type.getSimpleName(), e);
+                }
+            });
+        }
+    }
+}
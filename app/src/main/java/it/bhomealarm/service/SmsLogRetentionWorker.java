@@ -0,0 +1,77 @@
+package it.bhomealarm.service;
+
+import android.app.Application;
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.TimeUnit;
+
+import it.bhomealarm.model.repository.AlarmRepository;
+import it.bhomealarm.model.repository.SmsLogRetentionPolicy;
+import it.bhomealarm.model.repository.SmsLogRetentionReport;
+import it.bhomealarm.util.Constants;
+
+/**
+ * Job periodico (WorkManager) di conservazione dei log SMS.
+ * <p>
+ * Una volta al giorno, con batteria non scarica e dispositivo inattivo, legge la
+ * politica dalle preferenze ({@link SmsLogRetentionPolicy#fromPreferences}) e la
+ * applica con {@link AlarmRepository#runSmsLogRetention(SmsLogRetentionPolicy)}.
+ * L'esito viene registrato nel log e pubblicato da
+ * {@link AlarmRepository#getSmsLogRetentionReport()}: i dati di output di un
+ * lavoro periodico non sono osservabili.
+ * <p>
+ * La pianificazione e' unica ({@link Constants#WORK_LOG_RETENTION}) e viene
+ * mantenuta tra i riavvii da WorkManager.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see SmsLogRetentionReport
+ */
+public class SmsLogRetentionWorker extends Worker {
+
+    private static final String TAG = "SmsLogRetentionWorker";
+
+    public SmsLogRetentionWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Pianifica il job periodico, se non e' gia' pianificato.
+     *
+     * @param context Context dell'applicazione
+     */
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiresBatteryNotLow(true)
+                .setRequiresDeviceIdle(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(SmsLogRetentionWorker.class,
+                Constants.LOG_RETENTION_INTERVAL_HOURS, TimeUnit.HOURS)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(
+                Constants.WORK_LOG_RETENTION, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        SmsLogRetentionPolicy policy = SmsLogRetentionPolicy.fromPreferences(
+                context.getSharedPreferences(Constants.PREF_NAME, Context.MODE_PRIVATE));
+        Log.d(TAG, "Avvio conservazione log: " + policy);
+
+        SmsLogRetentionReport report = AlarmRepository.getInstance((Application) context)
+                .runSmsLogRetention(policy);
+        return report != null ? Result.success() : Result.retry();
+    }
+}
@@ -0,0 +1,230 @@
+package it.bhomealarm.service;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import it.bhomealarm.util.Constants;
+
+/**
+ * Limitatore di frequenza degli SMS in uscita, per SIM.
+ * <p>
+ * Ogni SIM ha due token bucket: uno per minuto e uno per ora, con capacita'
+ * configurabili ({@link Constants#PREF_SMS_BUDGET_PER_MINUTE},
+ * {@link Constants#PREF_SMS_BUDGET_PER_HOUR}). I token si ricaricano in modo
+ * continuo; un SMS puo' partire solo se entrambi i bucket hanno almeno un token.
+ * In questo modo una raffica di comandi (ad es. i permessi di tutti gli utenti)
+ * viene distribuita nel tempo invece di superare il limite dell'operatore o del
+ * sistema ({@code RESULT_ERROR_LIMIT_EXCEEDED}).
+ * <p>
+ * Il budget si adatta ai limiti osservati (AIMD): a ogni errore di limite la
+ * capacita' della SIM viene dimezzata, i bucket svuotati e la SIM sospesa per
+ * {@link Constants#OUTBOUND_LIMIT_PAUSE}; ogni invio riuscito recupera una parte
+ * della capacita' fino al valore configurato.
+ * <p>
+ * Lo stato e' salvato nelle SharedPreferences e sopravvive ai riavvii.
+ * Non thread-safe: usato solo dal thread di invio di {@link OutboundCommandQueue}.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see OutboundCommandQueue
+ */
+final class SmsRateLimiter {
+
+    private static final String TAG = "SmsRateLimiter";
+
+    /** Prefisso delle chiavi nelle SharedPreferences. */
+    private static final String PREF_PREFIX = "sms_budget_";
+
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 60 * MINUTE;
+
+    /** Fattore di capacita' minimo dopo errori di limite ripetuti. */
+    private static final double MIN_FACTOR = 0.1;
+
+    /** Riduzione del fattore a ogni errore di limite. */
+    private static final double DECREASE = 0.5;
+
+    /** Recupero del fattore a ogni invio riuscito. */
+    private static final double RECOVERY = 0.05;
+
+    private final SharedPreferences prefs;
+
+    /** Stato caricato, per slot SIM. */
+    private final Map<Integer, SimBudget> budgets = new LinkedHashMap<>();
+
+    SmsRateLimiter(SharedPreferences prefs) {
+        this.prefs = prefs;
+    }
+
+    /**
+     * Calcola quanto attendere prima di poter inviare un SMS dalla SIM.
+     *
+     * @param simSlot Slot SIM (-1 = predefinita)
+     * @param now Timestamp corrente
+     * @return attesa in millisecondi (0 = si puo' inviare subito)
+     */
+    long delayMs(int simSlot, long now) {
+        SimBudget budget = load(simSlot);
+        budget.refill(now, perMinute(), perHour());
+        long delay = Math.max(budget.minute.delayMs(), budget.hour.delayMs());
+        return Math.max(delay, budget.pausedUntil - now);
+    }
+
+    /**
+     * Consuma un token per un SMS in partenza.
+     *
+     * @param simSlot Slot SIM
+     * @param now Timestamp corrente
+     */
+    void consume(int simSlot, long now) {
+        SimBudget budget = load(simSlot);
+        budget.refill(now, perMinute(), perHour());
+        budget.minute.tokens = Math.max(0, budget.minute.tokens - 1);
+        budget.hour.tokens = Math.max(0, budget.hour.tokens - 1);
+        save(simSlot, budget);
+    }
+
+    /**
+     * Segnala un invio riuscito: la capacita' recupera verso il valore configurato.
+     *
+     * @param simSlot Slot SIM
+     */
+    void onSent(int simSlot) {
+        SimBudget budget = load(simSlot);
+        if (budget.factor < 1) {
+            budget.factor = Math.min(1, budget.factor + RECOVERY);
+            save(simSlot, budget);
+        }
+    }
+
+    /**
+     * Segnala un errore di limite SMS: capacita' dimezzata, bucket vuoti e SIM sospesa.
+     *
+     * @param simSlot Slot SIM
+     * @param now Timestamp corrente
+     * @return timestamp fino al quale la SIM e' sospesa
+     */
+    long onLimitExceeded(int simSlot, long now) {
+        SimBudget budget = load(simSlot);
+        budget.refill(now, perMinute(), perHour());
+        budget.factor = Math.max(MIN_FACTOR, budget.factor * DECREASE);
+        budget.minute.tokens = 0;
+        budget.hour.tokens = 0;
+        budget.pausedUntil = now + Constants.OUTBOUND_LIMIT_PAUSE;
+        budget.limitHits++;
+        save(simSlot, budget);
+        Log.w(TAG, "Limite SMS su SIM " + simSlot + ": capacita' al "
+                + Math.round(budget.factor * 100) + "%, sospesa fino a " + budget.pausedUntil);
+        return budget.pausedUntil;
+    }
+
+    /**
+     * Restituisce lo stato dei budget delle SIM usate finora.
+     *
+     * @param now Timestamp corrente
+     * @return stato per slot SIM
+     */
+    Map<Integer, OutboundQueueStats.SimBudgetStats> snapshot(long now) {
+        Map<Integer, OutboundQueueStats.SimBudgetStats> result = new LinkedHashMap<>();
+        for (Map.Entry<Integer, SimBudget> entry : budgets.entrySet()) {
+            SimBudget budget = entry.getValue();
+            budget.refill(now, perMinute(), perHour());
+            result.put(entry.getKey(), new OutboundQueueStats.SimBudgetStats(
+                    (int) budget.minute.tokens, budget.minute.capacity,
+                    (int) budget.hour.tokens, budget.hour.capacity,
+                    budget.factor, budget.pausedUntil, budget.limitHits));
+        }
+        return result;
+    }
+
+    private int perMinute() {
+        return Math.max(1, prefs.getInt(Constants.PREF_SMS_BUDGET_PER_MINUTE, Constants.SMS_BUDGET_PER_MINUTE));
+    }
+
+    private int perHour() {
+        return Math.max(1, prefs.getInt(Constants.PREF_SMS_BUDGET_PER_HOUR, Constants.SMS_BUDGET_PER_HOUR));
+    }
+
+    private SimBudget load(int simSlot) {
+        SimBudget budget = budgets.get(simSlot);
+        if (budget == null) {
+            String key = PREF_PREFIX + simSlot;
+            budget = new SimBudget();
+            if (prefs.contains(key + "_updated")) {
+                budget.minute.tokens = prefs.getFloat(key + "_minute", 0);
+                budget.hour.tokens = prefs.getFloat(key + "_hour", 0);
+                budget.updatedAt = prefs.getLong(key + "_updated", 0);
+                budget.factor = prefs.getFloat(key + "_factor", 1);
+                budget.pausedUntil = prefs.getLong(key + "_paused", 0);
+                budget.limitHits = prefs.getInt(key + "_limits", 0);
+            } else {
+                // Mai usata: bucket pieni
+                budget.minute.tokens = Double.MAX_VALUE;
+                budget.hour.tokens = Double.MAX_VALUE;
+            }
+            budgets.put(simSlot, budget);
+        }
+        return budget;
+    }
+
+    private void save(int simSlot, SimBudget budget) {
+        String key = PREF_PREFIX + simSlot;
+        prefs.edit()
+                .putFloat(key + "_minute", (float) budget.minute.tokens)
+                .putFloat(key + "_hour", (float) budget.hour.tokens)
+                .putLong(key + "_updated", budget.updatedAt)
+                .putFloat(key + "_factor", (float) budget.factor)
+                .putLong(key + "_paused", budget.pausedUntil)
+                .putInt(key + "_limits", budget.limitHits)
+                .apply();
+    }
+
+    /**
+     * Stato di una SIM: i due bucket e l'adattamento ai limiti osservati.
+     */
+    private static final class SimBudget {
+
+        final Bucket minute = new Bucket(MINUTE);
+        final Bucket hour = new Bucket(HOUR);
+        long updatedAt;
+        double factor = 1;
+        long pausedUntil;
+        int limitHits;
+
+        /**
+         * Aggiorna capacita' (configurazione e fattore correnti) e token maturati da {@link #updatedAt}.
+         */
+        void refill(long now, int perMinute, int perHour) {
+            long elapsed = updatedAt > 0 ? Math.max(0, now - updatedAt) : 0;
+            minute.refill(Math.max(1, (int) (perMinute * factor)), elapsed);
+            hour.refill(Math.max(1, (int) (perHour * factor)), elapsed);
+            updatedAt = now;
+        }
+    }
+
+    /**
+     * Token bucket con ricarica continua: {@code capacity} token ogni {@code windowMs}.
+     */
+    private static final class Bucket {
+
+        final long windowMs;
+        int capacity = 1;
+        double tokens;
+
+        Bucket(long windowMs) {
+            this.windowMs = windowMs;
+        }
+
+        void refill(int capacity, long elapsedMs) {
+            this.capacity = capacity;
+            tokens = Math.min(capacity, tokens + (double) elapsedMs * capacity / windowMs);
+        }
+
+        long delayMs() {
+            return tokens >= 1 ? 0 : (long) Math.ceil((1 - tokens) * windowMs / capacity);
+        }
+    }
+}
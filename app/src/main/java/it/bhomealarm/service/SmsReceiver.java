@@ -6,16 +6,16 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.telephony.SmsMessage;
 import android.util.Log;
 
-import it.bhomealarm.callback.OnSmsResultListener;
+import it.bhomealarm.model.entity.AlarmConfig;
+import it.bhomealarm.model.entity.PendingCommand;
 import it.bhomealarm.model.entity.SmsLog;
 import it.bhomealarm.model.repository.AlarmRepository;
+import it.bhomealarm.protocol.ResponseType;
+import it.bhomealarm.protocol.SmsCodec;
 import it.bhomealarm.util.Constants;
-import it.bhomealarm.util.PhoneNumberUtils;
 import it.bhomealarm.util.SmsParser;
 
 /**
@@ -31,10 +31,19 @@ import it.bhomealarm.util.SmsParser;
  * <p>
  * Quando un SMS viene ricevuto dal sistema di allarme, il receiver:
  * <ol>
- *     <li>Verifica che il mittente corrisponda al numero dell'allarme configurato</li>
- *     <li>Salva il messaggio nel database per lo storico</li>
- *     <li>Processa la risposta per aggiornare lo stato dell'allarme nelle SharedPreferences</li>
- *     <li>Notifica il listener per l'aggiornamento immediato dell'UI</li>
+ *     <li>Individua la centrale mittente tramite l'indice in memoria del repository
+ *         ({@link AlarmRepository#findPanelIdByPhone(String)})</li>
+ *     <li>Salva il messaggio nel database per lo storico, associato alla centrale</li>
+ *     <li>Passa il messaggio a {@link ResponseReassembler}, che riunisce le risposte
+ *         CONF divise in piu' SMS; i passi successivi vengono eseguiti sulla
+ *         risposta completa</li>
+ *     <li>Attribuisce la risposta al comando piu' vecchio in attesa per quella centrale
+ *         che accetta il tipo di risposta
+ *         ({@link AlarmRepository#matchPendingCommand(long, ResponseType)})</li>
+ *     <li>Processa la risposta per aggiornare lo stato della centrale nel database
+ *         e, se e' la centrale attiva, nelle SharedPreferences</li>
+ *     <li>Pubblica un evento {@link SmsEventBus.SmsReceived} con la centrale e il
+ *         comando abbinato, per l'aggiornamento immediato dell'UI</li>
  *     <li>Blocca il broadcast per evitare la notifica SMS standard del sistema</li>
  * </ol>
  * <p>
@@ -43,7 +52,7 @@ import it.bhomealarm.util.SmsParser;
  *
  * @author BHomeAlarm Team
  * @version 1.0
- * @see OnSmsResultListener
+ * @see SmsEventBus
  * @see SmsService
  * @see SmsParser
  */
@@ -54,33 +63,6 @@ public class SmsReceiver extends BroadcastReceiver {
      */
     private static final String TAG = "SmsReceiver";
 
-    /**
-     * Listener statico per notificare i componenti dell'applicazione
-     * quando vengono ricevuti messaggi dal sistema di allarme.
-     * E' statico per permettere la registrazione prima della ricezione degli SMS.
-     */
-    private static OnSmsResultListener listener;
-
-    /**
-     * Imposta il listener per ricevere notifiche sui messaggi SMS ricevuti.
-     * Il listener verra' chiamato sul main thread quando un SMS dal sistema
-     * di allarme viene ricevuto.
-     *
-     * @param listener Implementazione di OnSmsResultListener, o null per rimuovere il listener
-     */
-    public static void setListener(OnSmsResultListener listener) {
-        SmsReceiver.listener = listener;
-    }
-
-    /**
-     * Restituisce il listener attualmente registrato.
-     *
-     * @return Il listener corrente, o null se nessun listener e' registrato
-     */
-    public static OnSmsResultListener getListener() {
-        return listener;
-    }
-
     /**
      * Metodo principale chiamato dal sistema Android quando viene ricevuto un broadcast.
      * Gestisce tre tipi di action:
@@ -151,36 +133,68 @@ public class SmsReceiver extends BroadcastReceiver {
             return;
         }
 
-        // Verifica se il messaggio è dal sistema allarme
-        if (isFromAlarm(context, sender)) {
+        // Verifica se il messaggio è da una delle centrali configurate
+        AlarmRepository repository = AlarmRepository.getInstance((Application) context.getApplicationContext());
+        long panelId = repository.findPanelIdByPhone(sender);
+        if (panelId != AlarmRepository.NO_PANEL) {
             String messageBody = fullMessage.toString();
-            Log.d(TAG, "SMS ricevuto dall'allarme: " + messageBody);
+            Log.d(TAG, "SMS ricevuto dalla centrale " + panelId + ": " + messageBody);
 
             // Salva sempre nel database
-            saveToDatabase(context, messageBody);
-
-            // Processa la risposta e aggiorna lo stato nelle SharedPreferences
-            processAndSaveStatus(context, messageBody);
+            saveToDatabase(repository, panelId, messageBody);
 
-            // Notifica il listener se presente (per aggiornamento UI immediato)
-            notifyMessageReceived(sender, messageBody);
+            // Riunisce i frammenti: la risposta completa arriva a deliver()
+            ResponseReassembler.getInstance(context).offer(panelId, sender, messageBody);
 
             // Abort broadcast per non mostrare notifica SMS standard
             abortBroadcast();
         }
     }
 
+    /**
+     * Elabora una risposta completa di una centrale (eventualmente ricostruita da
+     * piu' SMS da {@link ResponseReassembler}): la abbina al comando, aggiorna lo
+     * stato della centrale e la pubblica su {@link SmsEventBus}.
+     * <p>
+     * Una risposta incompleta viene comunque abbinata al comando (che potra'
+     * essere ripetuto), ma non aggiorna lo stato della centrale.
+     *
+     * @param context     Contesto dell'applicazione
+     * @param panelId     ID della centrale mittente
+     * @param sender      Numero del mittente, come ricevuto
+     * @param messageBody Corpo della risposta
+     * @param complete    false se la risposta e' stata chiusa prima di essere completa
+     */
+    static void deliver(Context context, long panelId, String sender, String messageBody,
+                        boolean complete) {
+        AlarmRepository repository = AlarmRepository.getInstance((Application) context.getApplicationContext());
+        boolean activePanel = panelId == repository.getActivePanelId();
+
+        // Attribuisce la risposta al comando che l'ha richiesta
+        String requestMessageId = matchRequest(repository, panelId, messageBody);
+
+        // Processa la risposta e aggiorna lo stato della centrale
+        if (complete) {
+            processAndSaveStatus(context, repository, panelId, activePanel, messageBody);
+        }
+
+        // Notifica i sottoscrittori (per aggiornamento UI immediato)
+        SmsEventBus.getInstance().publish(
+                new SmsEventBus.SmsReceived(panelId, sender, messageBody, requestMessageId, complete));
+    }
+
     /**
      * Salva il messaggio ricevuto nel database per lo storico delle comunicazioni.
      * Il messaggio viene salvato con direzione INCOMING e stato RECEIVED.
      *
-     * @param context     Contesto dell'applicazione per accedere al repository
+     * @param repository  Repository per l'accesso al database
+     * @param panelId     ID della centrale mittente
      * @param messageBody Corpo del messaggio SMS ricevuto
      */
-    private void saveToDatabase(Context context, String messageBody) {
+    private void saveToDatabase(AlarmRepository repository, long panelId, String messageBody) {
         try {
-            AlarmRepository repository = AlarmRepository.getInstance((Application) context.getApplicationContext());
             SmsLog log = new SmsLog();
+            log.setPanelId(panelId);
             log.setMessage(messageBody);
             log.setDirection(SmsLog.DIRECTION_INCOMING);
             log.setStatus(SmsLog.STATUS_RECEIVED);
@@ -192,16 +206,49 @@ public class SmsReceiver extends BroadcastReceiver {
     }
 
     /**
-     * Processa la risposta SMS e salva lo stato dell'allarme nelle SharedPreferences.
+     * Abbina la risposta al comando piu' vecchio in attesa per la centrale che
+     * accetta il suo tipo, rimuovendolo dalla tabella dei comandi in attesa.
+     *
+     * @param repository  Repository per l'accesso alla tabella
+     * @param panelId     ID della centrale mittente
+     * @param messageBody Corpo del messaggio SMS ricevuto
+     * @return il message_id del comando abbinato, o null se la risposta non era attesa
+     */
+    private static String matchRequest(AlarmRepository repository, long panelId, String messageBody) {
+        ResponseType type = SmsCodec.identify(messageBody);
+        if (type == null) {
+            return null;
+        }
+        PendingCommand request = repository.matchPendingCommand(panelId, type);
+        if (request == null) {
+            Log.d(TAG, "Risposta " + type + " non attesa da nessun comando");
+            return null;
+        }
+        Log.d(TAG, "Risposta " + type + " attribuita a " + request.getCommand()
+                + (request.isOrphaned() ? " (processo precedente)" : "")
+                + " inviato " + (System.currentTimeMillis() - request.getSentAt()) + " ms fa");
+        return request.getMessageId();
+    }
+
+    /**
+     * Processa la risposta SMS e salva lo stato dell'allarme.
      * <p>
      * Questo metodo assicura che lo stato dell'allarme sia aggiornato anche quando
      * l'applicazione non e' in primo piano. Utilizza {@link SmsParser} per interpretare
      * la risposta e estrarre lo stato corrente del sistema.
+     * <p>
+     * Lo stato viene sempre salvato nella riga {@code alarm_config} della centrale
+     * mittente; le SharedPreferences, lette dalla Home, vengono aggiornate solo
+     * per la centrale attiva.
      *
      * @param context     Contesto dell'applicazione
+     * @param repository  Repository per l'accesso al database
+     * @param panelId     ID della centrale mittente
+     * @param activePanel true se la centrale mittente e' quella attiva
      * @param messageBody Corpo del messaggio SMS da processare
      */
-    private void processAndSaveStatus(Context context, String messageBody) {
+    private static void processAndSaveStatus(Context context, AlarmRepository repository, long panelId,
+                                      boolean activePanel, String messageBody) {
         try {
             String responseType = SmsParser.identifyResponse(messageBody);
 
@@ -209,6 +256,11 @@ public class SmsReceiver extends BroadcastReceiver {
                 SmsParser.ResponseData data = SmsParser.parseResponse(messageBody);
 
                 if (data.success && data.status != null) {
+                    repository.updateAlarmStatus(panelId, toConfigStatus(data.status), data.status);
+                    if (!activePanel) {
+                        return;
+                    }
+
                     SharedPreferences prefs = context.getSharedPreferences(Constants.PREF_NAME, Context.MODE_PRIVATE);
                     prefs.edit()
                             .putString(Constants.PREF_LAST_STATUS, data.status)
@@ -255,41 +307,17 @@ public class SmsReceiver extends BroadcastReceiver {
     }
 
     /**
-     * Verifica se il mittente dell'SMS corrisponde al numero del sistema di allarme configurato.
-     * Utilizza {@link PhoneNumberUtils#matches(String, String)} per un confronto flessibile
-     * che gestisce diversi formati di numeri telefonici.
+     * Converte lo stato testuale del protocollo nel codice salvato in {@link AlarmConfig}.
      *
-     * @param context Contesto per accedere alle SharedPreferences
-     * @param sender  Numero di telefono del mittente dell'SMS
-     * @return true se il mittente corrisponde al numero dell'allarme, false altrimenti
+     * @param status Stato ricevuto (ARMED, DISARMED, ...)
+     * @return Il codice STATUS_* corrispondente
      */
-    private boolean isFromAlarm(Context context, String sender) {
-        SharedPreferences prefs = context.getSharedPreferences(Constants.PREF_NAME, Context.MODE_PRIVATE);
-        String alarmPhone = prefs.getString(Constants.PREF_ALARM_PHONE, "");
-
-        if (alarmPhone.isEmpty()) {
-            return false;
-        }
-
-        return PhoneNumberUtils.matches(sender, alarmPhone);
-    }
-
-    /**
-     * Notifica il listener che e' stato ricevuto un messaggio dal sistema di allarme.
-     * La notifica viene eseguita sul main thread tramite Handler per garantire
-     * la compatibilita' con LiveData e l'aggiornamento dell'UI.
-     *
-     * @param sender Numero di telefono del mittente
-     * @param body   Corpo del messaggio SMS
-     */
-    private void notifyMessageReceived(String sender, String body) {
-        if (listener != null) {
-            new Handler(Looper.getMainLooper()).post(() -> {
-                // Ricontrolla listener perché potrebbe essere cambiato
-                if (listener != null) {
-                    listener.onSmsReceived(sender, body);
-                }
-            });
+    private static int toConfigStatus(String status) {
+        if (Constants.STATUS_ARMED.equals(status)) {
+            return AlarmConfig.STATUS_ARMED;
+        } else if (Constants.STATUS_DISARMED.equals(status)) {
+            return AlarmConfig.STATUS_DISARMED;
         }
+        return AlarmConfig.STATUS_UNKNOWN;
     }
 }
@@ -25,6 +25,8 @@ import it.bhomealarm.util.Constants;
  * Per ogni evento, il receiver:
  * <ol>
  *     <li>Estrae l'ID univoco del messaggio dall'intent</li>
+ *     <li>Per gli SMS concatenati, attende gli esiti di tutte le parti e li riduce
+ *         a un unico esito del messaggio</li>
  *     <li>Verifica il codice risultato dell'operazione</li>
  *     <li>Aggiorna lo stato del messaggio nel database tramite {@link AlarmRepository}</li>
  *     <li>Notifica il {@link SmsService} per propagare l'evento ai listener</li>
@@ -75,12 +77,23 @@ public class SmsSentReceiver extends BroadcastReceiver {
 
         String action = intent.getAction();
         int resultCode = getResultCode();
+        int partCount = intent.getIntExtra("part_count", 1);
 
         Log.d(TAG, "Received action: " + action + ", messageId: " + messageId + ", resultCode: " + resultCode);
 
         AlarmRepository repository = AlarmRepository.getInstance((android.app.Application) context.getApplicationContext());
         SmsService smsService = SmsService.getInstance(context);
 
+        if (partCount > 1) {
+            // SMS concatenato: un solo esito per messaggio, quando e' definitivo
+            resultCode = Constants.ACTION_SMS_SENT.equals(action)
+                    ? smsService.aggregatePartSent(messageId, partCount, resultCode)
+                    : smsService.aggregatePartDelivered(messageId, partCount, resultCode);
+            if (resultCode == MultipartSmsTracker.PENDING) {
+                return;
+            }
+        }
+
         switch (action) {
             case Constants.ACTION_SMS_SENT:
                 handleSmsSent(repository, smsService, messageId, resultCode);
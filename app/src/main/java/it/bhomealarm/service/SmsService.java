@@ -6,23 +6,22 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.os.Build;
 import android.telephony.SmsManager;
-import android.telephony.SubscriptionInfo;
-import android.telephony.SubscriptionManager;
 
 import androidx.core.content.ContextCompat;
 
 import android.content.SharedPreferences;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import it.bhomealarm.callback.OnSmsResultListener;
+import it.bhomealarm.model.entity.OutboundCommand;
 import it.bhomealarm.model.entity.SmsLog;
 import it.bhomealarm.model.repository.AlarmRepository;
+import it.bhomealarm.protocol.SmsEncoding;
 import it.bhomealarm.util.Constants;
 
 /**
@@ -34,7 +33,8 @@ import it.bhomealarm.util.Constants;
  *     <li>Gestione di dispositivi Dual-SIM con selezione dello slot</li>
  *     <li>Tracciamento dello stato di invio e consegna tramite PendingIntent</li>
  *     <li>Persistenza dei log SMS nel database tramite Repository</li>
- *     <li>Callback asincroni per notificare il risultato delle operazioni</li>
+ *     <li>Invio dei comandi tramite la coda persistente {@link OutboundCommandQueue}</li>
+ *     <li>Pubblicazione degli esiti di invio e consegna su {@link SmsEventBus}</li>
  * </ul>
  * <p>
  * L'invio degli SMS richiede il permesso {@link android.Manifest.permission#SEND_SMS}.
@@ -43,14 +43,14 @@ import it.bhomealarm.util.Constants;
  * Esempio di utilizzo:
  * <pre>
  * SmsService smsService = SmsService.getInstance(context);
- * smsService.setListener(new OnSmsResultListener() {...});
+ * SmsEventBus.getInstance().subscribe(SmsEventBus.SmsSent.class, SmsEventBus.MAIN_THREAD, event -> {...});
  * smsService.setSelectedSimSlot(0); // Usa SIM 1
  * String messageId = smsService.sendSms("+39123456789", "Messaggio");
  * </pre>
  *
  * @author BHomeAlarm Team
  * @version 1.0
- * @see OnSmsResultListener
+ * @see SmsEventBus
  * @see SmsReceiver
  * @see SmsSentReceiver
  */
@@ -79,10 +79,9 @@ public class SmsService {
     private final SharedPreferences prefs;
 
     /**
-     * Listener per notificare i risultati delle operazioni SMS.
-     * Puo' essere null se nessun componente e' in ascolto.
+     * Bus su cui vengono pubblicati gli esiti di invio e consegna.
      */
-    private OnSmsResultListener listener;
+    private final SmsEventBus eventBus = SmsEventBus.getInstance();
 
     /**
      * Contatore atomico per generare request code univoci per i PendingIntent.
@@ -90,6 +89,16 @@ public class SmsService {
      */
     private static final AtomicInteger requestCodeCounter = new AtomicInteger(0);
 
+    /**
+     * SIM attive e SmsManager per abbonamento, aggiornati al cambiamento delle SIM.
+     */
+    private final SubscriptionCache subscriptions;
+
+    /**
+     * Esiti delle parti degli SMS concatenati, ridotti a un esito per messaggio.
+     */
+    private final MultipartSmsTracker multipart = new MultipartSmsTracker();
+
     /**
      * Costruttore privato per implementare il pattern Singleton.
      * Inizializza il contesto, il repository e le SharedPreferences.
@@ -100,6 +109,7 @@ public class SmsService {
         this.context = context.getApplicationContext();
         this.repository = AlarmRepository.getInstance((android.app.Application) this.context);
         this.prefs = this.context.getSharedPreferences(Constants.PREF_NAME, Context.MODE_PRIVATE);
+        this.subscriptions = new SubscriptionCache(this.context);
     }
 
     /**
@@ -118,17 +128,6 @@ public class SmsService {
 
     // ========== Configuration ==========
 
-    /**
-     * Imposta il listener per ricevere notifiche sui risultati delle operazioni SMS.
-     * Il listener verra' chiamato quando un SMS viene inviato, consegnato o si verifica un errore.
-     *
-     * @param listener Implementazione di OnSmsResultListener, o null per rimuovere il listener
-     * @see OnSmsResultListener
-     */
-    public void setListener(OnSmsResultListener listener) {
-        this.listener = listener;
-    }
-
     /**
      * Imposta lo slot SIM da utilizzare per l'invio degli SMS.
      * L'impostazione viene salvata nelle SharedPreferences e persiste tra i riavvii dell'app.
@@ -148,15 +147,46 @@ public class SmsService {
         return prefs.getInt(Constants.PREF_SELECTED_SIM, -1);
     }
 
+    /**
+     * Imposta la modalita' di scelta della SIM per i comandi sui dispositivi Dual-SIM.
+     *
+     * @param mode {@link Constants#SIM_ROUTING_PRIMARY}, {@link Constants#SIM_ROUTING_ROUND_ROBIN}
+     *             o {@link Constants#SIM_ROUTING_LEAST_LATENCY}
+     * @see SimRouter
+     */
+    public void setSimRoutingMode(int mode) {
+        prefs.edit().putInt(Constants.PREF_SIM_ROUTING, mode).apply();
+    }
+
+    /**
+     * Restituisce la modalita' di scelta della SIM per i comandi.
+     *
+     * @return la modalita' (predefinita {@link Constants#SIM_ROUTING_PRIMARY})
+     */
+    public int getSimRoutingMode() {
+        return prefs.getInt(Constants.PREF_SIM_ROUTING, Constants.SIM_ROUTING_PRIMARY);
+    }
+
     // ========== SIM Information ==========
 
+    /**
+     * Restituisce l'istantanea corrente delle SIM attive.
+     * Non esegue chiamate a SubscriptionManager: l'istantanea e' mantenuta da
+     * {@link SubscriptionCache} e aggiornata quando le SIM cambiano.
+     *
+     * @return istantanea immutabile delle SIM
+     */
+    public SubscriptionCache.Snapshot getSimSnapshot() {
+        return subscriptions.get();
+    }
+
     /**
      * Verifica se il dispositivo supporta e ha attive due SIM (Dual-SIM).
      *
      * @return true se il dispositivo ha piu' di una SIM attiva, false altrimenti
      */
     public boolean isDualSim() {
-        return getSimCount() > 1;
+        return getSimSnapshot().isDualSim();
     }
 
     /**
@@ -167,18 +197,7 @@ public class SmsService {
      * @return Numero di SIM attive (1 o superiore), o 1 se il permesso non e' concesso
      */
     public int getSimCount() {
-        if (ContextCompat.checkSelfPermission(context, Manifest.permission.READ_PHONE_STATE)
-                != PackageManager.PERMISSION_GRANTED) {
-            return 1;
-        }
-
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP_MR1) {
-            SubscriptionManager sm = SubscriptionManager.from(context);
-            List<SubscriptionInfo> subscriptions = sm.getActiveSubscriptionInfoList();
-            return subscriptions != null ? subscriptions.size() : 1;
-        }
-
-        return 1;
+        return getSimSnapshot().getSimCount();
     }
 
     /**
@@ -188,45 +207,11 @@ public class SmsService {
      * Se il permesso READ_PHONE_STATE non e' concesso o non ci sono SIM rilevate,
      * restituisce una lista con una singola "SIM Predefinita".
      *
-     * @return Lista di oggetti SimInfo rappresentanti le SIM disponibili
+     * @return Lista immutabile di oggetti SimInfo rappresentanti le SIM disponibili
      * @see SimInfo
      */
     public List<SimInfo> getAvailableSims() {
-        List<SimInfo> sims = new ArrayList<>();
-
-        if (ContextCompat.checkSelfPermission(context, Manifest.permission.READ_PHONE_STATE)
-                != PackageManager.PERMISSION_GRANTED) {
-            sims.add(new SimInfo(0, "SIM Predefinita", ""));
-            return sims;
-        }
-
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP_MR1) {
-            SubscriptionManager sm = SubscriptionManager.from(context);
-            List<SubscriptionInfo> subscriptions = sm.getActiveSubscriptionInfoList();
-
-            if (subscriptions != null) {
-                for (SubscriptionInfo info : subscriptions) {
-                    String displayName = info.getDisplayName() != null
-                            ? info.getDisplayName().toString()
-                            : "SIM " + (info.getSimSlotIndex() + 1);
-                    String carrierName = info.getCarrierName() != null
-                            ? info.getCarrierName().toString()
-                            : "";
-
-                    sims.add(new SimInfo(
-                            info.getSimSlotIndex(),
-                            displayName,
-                            carrierName
-                    ));
-                }
-            }
-        }
-
-        if (sims.isEmpty()) {
-            sims.add(new SimInfo(0, "SIM Predefinita", ""));
-        }
-
-        return sims;
+        return getSimSnapshot().getSims();
     }
 
     /**
@@ -268,7 +253,7 @@ public class SmsService {
 
     /**
      * Invia un SMS al numero specificato usando la SIM selezionata nelle impostazioni.
-     * Il messaggio viene tracciato nel database e il risultato notificato tramite listener.
+     * Il messaggio viene tracciato nel database e il risultato pubblicato su {@link SmsEventBus}.
      *
      * @param phoneNumber Numero di telefono del destinatario (formato internazionale consigliato)
      * @param message     Testo del messaggio da inviare
@@ -298,152 +283,258 @@ public class SmsService {
     public String sendSms(String phoneNumber, String message, int simSlot) {
         String messageId = UUID.randomUUID().toString();
 
-        if (ContextCompat.checkSelfPermission(context, Manifest.permission.SEND_SMS)
-                != PackageManager.PERMISSION_GRANTED) {
-            if (listener != null) {
-                listener.onSmsError(Activity.RESULT_CANCELED, "Permesso SMS non concesso");
-            }
+        if (!hasSendPermission()) {
+            eventBus.publish(new SmsEventBus.SmsSent(messageId, Activity.RESULT_CANCELED,
+                    "Permesso SMS non concesso"));
             return null;
         }
 
+        long panelId = repository.findPanelIdByPhone(phoneNumber);
+        String error = send(messageId, panelId != AlarmRepository.NO_PANEL ? panelId : null,
+                phoneNumber, message, simSlot, true);
+        if (error != null) {
+            eventBus.publish(new SmsEventBus.SmsSent(messageId, -1, error));
+            return null;
+        }
+        return messageId;
+    }
+
+    /**
+     * Invia un comando della coda ({@link OutboundCommandQueue}).
+     * Al primo tentativo il log viene inserito, ai successivi torna PENDING.
+     *
+     * @param command Comando da inviare
+     * @return null se l'SMS e' stato consegnato a SmsManager, altrimenti la descrizione dell'errore
+     */
+    String dispatch(OutboundCommand command) {
+        return send(command.getMessageId(), command.getPanelId(), command.getPhoneNumber(),
+                command.getCommand(), command.getSimSlot(), command.getAttempts() == 1);
+    }
+
+    /**
+     * Registra il log e invia l'SMS tramite SmsManager.
+     * <p>
+     * Il testo viene inviato nella codifica con meno parti ({@link SmsEncoding#optimize(String)}).
+     * Se supera un SMS singolo viene diviso con {@code divideMessage} e inviato come SMS
+     * concatenato, con un PendingIntent di invio e di consegna per ogni parte; gli esiti
+     * delle parti vengono ridotti a un solo stato del log ({@link MultipartSmsTracker}).
+     *
+     * @return null se l'SMS e' stato consegnato a SmsManager, altrimenti la descrizione dell'errore
+     */
+    private String send(String messageId, Long panelId, String phoneNumber, String message,
+                        int simSlot, boolean firstAttempt) {
+        if (!hasSendPermission()) {
+            return "Permesso SMS non concesso";
+        }
+
         try {
-            // Salva il log nel database con stato PENDING
-            SmsLog log = new SmsLog();
-            log.setMessageId(messageId);
-            log.setMessage(message);
-            log.setDirection(SmsLog.DIRECTION_OUTGOING);
-            log.setStatus(SmsLog.STATUS_PENDING);
-            log.setTimestamp(System.currentTimeMillis());
-            repository.insertSmsLog(log);
+            String text = SmsEncoding.optimize(message);
+            if (firstAttempt) {
+                // Salva il log nel database con stato PENDING
+                SmsLog log = new SmsLog();
+                log.setMessageId(messageId);
+                log.setPanelId(panelId);
+                log.setMessage(text);
+                log.setDirection(SmsLog.DIRECTION_OUTGOING);
+                log.setStatus(SmsLog.STATUS_PENDING);
+                log.setTimestamp(System.currentTimeMillis());
+                repository.insertSmsLog(log);
+            } else {
+                repository.updateSmsLogStatusWithError(messageId, SmsLog.STATUS_PENDING, null);
+            }
 
             SmsManager smsManager = getSmsManager(simSlot);
+            ArrayList<String> parts = smsManager.divideMessage(text);
+
+            if (parts.size() <= 1) {
+                // Invia SMS
+                smsManager.sendTextMessage(
+                        phoneNumber,
+                        null,
+                        text,
+                        createResultIntent(Constants.ACTION_SMS_SENT, messageId, 1),
+                        createResultIntent(Constants.ACTION_SMS_DELIVERED, messageId, 1)
+                );
+                return null;
+            }
 
-            // Genera request code univoci per evitare conflitti
-            int sentRequestCode = requestCodeCounter.incrementAndGet();
-            int deliveredRequestCode = requestCodeCounter.incrementAndGet();
-
-            // Crea PendingIntent per callback invio
-            Intent sentIntent = new Intent(Constants.ACTION_SMS_SENT);
-            sentIntent.putExtra("message_id", messageId);
-            sentIntent.setPackage(context.getPackageName());
-            PendingIntent sentPI = PendingIntent.getBroadcast(
-                    context,
-                    sentRequestCode,
-                    sentIntent,
-                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-            );
-
-            // Crea PendingIntent per callback consegna
-            Intent deliveredIntent = new Intent(Constants.ACTION_SMS_DELIVERED);
-            deliveredIntent.putExtra("message_id", messageId);
-            deliveredIntent.setPackage(context.getPackageName());
-            PendingIntent deliveredPI = PendingIntent.getBroadcast(
-                    context,
-                    deliveredRequestCode,
-                    deliveredIntent,
-                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-            );
-
-            // Invia SMS
-            smsManager.sendTextMessage(
-                    phoneNumber,
-                    null,
-                    message,
-                    sentPI,
-                    deliveredPI
-            );
-
-            return messageId;
-
-        } catch (Exception e) {
-            if (listener != null) {
-                listener.onSmsError(-1, "Errore invio SMS: " + e.getMessage());
+            // SMS concatenato: un callback di invio e consegna per ogni parte
+            ArrayList<PendingIntent> sentIntents = new ArrayList<>(parts.size());
+            ArrayList<PendingIntent> deliveredIntents = new ArrayList<>(parts.size());
+            for (int i = 0; i < parts.size(); i++) {
+                sentIntents.add(createResultIntent(Constants.ACTION_SMS_SENT, messageId, parts.size()));
+                deliveredIntents.add(createResultIntent(Constants.ACTION_SMS_DELIVERED, messageId, parts.size()));
             }
+            multipart.start(messageId, parts.size());
+            smsManager.sendMultipartTextMessage(phoneNumber, null, parts, sentIntents, deliveredIntents);
             return null;
+
+        } catch (Exception e) {
+            String error = "Errore invio SMS: " + e.getMessage();
+            repository.updateSmsLogStatusWithError(messageId, SmsLog.STATUS_FAILED, error);
+            return error;
         }
     }
 
+    /**
+     * Crea il PendingIntent di callback di invio o consegna per un SMS o una sua parte.
+     * Ogni PendingIntent ha un request code univoco per evitare conflitti.
+     *
+     * @param action {@link Constants#ACTION_SMS_SENT} o {@link Constants#ACTION_SMS_DELIVERED}
+     * @param messageId ID del messaggio
+     * @param partCount Numero di parti del messaggio
+     */
+    private PendingIntent createResultIntent(String action, String messageId, int partCount) {
+        Intent intent = new Intent(action);
+        intent.putExtra("message_id", messageId);
+        intent.putExtra("part_count", partCount);
+        intent.setPackage(context.getPackageName());
+        return PendingIntent.getBroadcast(
+                context,
+                requestCodeCounter.incrementAndGet(),
+                intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+    }
+
+    /**
+     * Riduce l'esito di invio di una parte di un SMS concatenato all'esito del messaggio.
+     * Chiamato da {@link SmsSentReceiver}.
+     *
+     * @param messageId ID del messaggio
+     * @param partCount Numero di parti
+     * @param resultCode Codice risultato della parte
+     * @return l'esito del messaggio, o {@link MultipartSmsTracker#PENDING} se mancano altre parti
+     */
+    int aggregatePartSent(String messageId, int partCount, int resultCode) {
+        return multipart.onPartSent(messageId, partCount, resultCode);
+    }
+
+    /**
+     * Riduce il rapporto di consegna di una parte di un SMS concatenato a quello del messaggio.
+     * Chiamato da {@link SmsSentReceiver}.
+     *
+     * @param messageId ID del messaggio
+     * @param partCount Numero di parti
+     * @param resultCode Codice risultato della parte
+     * @return l'esito del messaggio, o {@link MultipartSmsTracker#PENDING} se mancano altre parti
+     */
+    int aggregatePartDelivered(String messageId, int partCount, int resultCode) {
+        return multipart.onPartDelivered(messageId, partCount, resultCode);
+    }
+
+    /**
+     * Ottiene l'istanza corretta di SmsManager per lo slot SIM specificato.
+     * Gli SmsManager sono creati una volta per abbonamento da {@link SubscriptionCache}.
+     *
+     * @param simSlot Slot SIM desiderato (0, 1) o -1 per il default
+     * @return Istanza di SmsManager configurata per la SIM specificata
+     */
+    private SmsManager getSmsManager(int simSlot) {
+        return subscriptions.getSmsManager(simSlot);
+    }
+
+    /**
+     * Scarta l'istantanea delle SIM (ad es. dopo un errore di invio, che puo'
+     * dipendere da una SIM rimossa o disattivata) e la ricostruisce.
+     */
+    void invalidateSubscriptions() {
+        subscriptions.refresh();
+    }
+
+    /**
+     * Verifica se l'app ha il permesso di inviare SMS.
+     *
+     * @return true se il permesso SEND_SMS e' concesso
+     */
+    private boolean hasSendPermission() {
+        return ContextCompat.checkSelfPermission(context, Manifest.permission.SEND_SMS)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    // ========== Commands ==========
+
     /**
      * Invia un comando al sistema di allarme tramite SMS.
      * Metodo di convenienza che utilizza la SIM selezionata nelle impostazioni.
+     * <p>
+     * Il comando non viene inviato subito ma accodato in {@link OutboundCommandQueue},
+     * che lo invia rispettando l'ordine per centrale e i limiti di invio, e lo
+     * ripete in caso di errore di rete anche dopo la chiusura dell'app. L'esito
+     * definitivo dell'invio viene pubblicato su {@link SmsEventBus}.
+     * <p>
+     * Se il destinatario e' una centrale configurata, all'invio il comando viene
+     * registrato nella tabella dei comandi in attesa: la risposta gli verra'
+     * attribuita da {@link SmsReceiver}. Quando il comando si conclude va chiamato
+     * {@link #releaseCommand(Collection)}. Un comando accodato viene inviato anche
+     * se la richiesta che lo ha accodato viene annullata, salvo
+     * {@link #discardQueuedCommand(Collection)}.
      *
      * @param alarmPhoneNumber Numero di telefono del sistema di allarme
      * @param command          Comando da inviare (es. "ARM", "DISARM", "STATUS")
      * @return ID univoco del messaggio per il tracciamento, o null in caso di errore
      */
     public String sendCommand(String alarmPhoneNumber, String command) {
-        return sendSms(alarmPhoneNumber, command, getSelectedSimSlot());
+        if (!hasSendPermission()) {
+            eventBus.publish(new SmsEventBus.SmsSent(UUID.randomUUID().toString(),
+                    Activity.RESULT_CANCELED, "Permesso SMS non concesso"));
+            return null;
+        }
+        return OutboundCommandQueue.getInstance(context)
+                .enqueue(alarmPhoneNumber, command, getSelectedSimSlot());
     }
 
     /**
-     * Ottiene l'istanza corretta di SmsManager per lo slot SIM specificato.
-     * Gestisce le differenze tra versioni Android per la selezione della SIM.
+     * Segnala che un comando si e' concluso (risposta ricevuta, fallito o annullato):
+     * i suoi tentativi non attendono piu' risposta. Quelli ancora in coda vengono
+     * comunque inviati (ad es. un inserimento accodato quando l'utente lascia l'app).
      *
-     * @param simSlot Slot SIM desiderato (0, 1) o -1 per il default
-     * @return Istanza di SmsManager configurata per la SIM specificata
+     * @param messageIds ID dei messaggi inviati per il comando
      */
-    private SmsManager getSmsManager(int simSlot) {
-        // Se simSlot è -1, usa la SIM predefinita del sistema
-        if (simSlot >= 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP_MR1) {
-            SubscriptionManager sm = SubscriptionManager.from(context);
-
-            if (ContextCompat.checkSelfPermission(context, Manifest.permission.READ_PHONE_STATE)
-                    == PackageManager.PERMISSION_GRANTED) {
-
-                List<SubscriptionInfo> subscriptions = sm.getActiveSubscriptionInfoList();
-                if (subscriptions != null && simSlot < subscriptions.size()) {
-                    int subscriptionId = subscriptions.get(simSlot).getSubscriptionId();
-
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-                        return context.getSystemService(SmsManager.class)
-                                .createForSubscriptionId(subscriptionId);
-                    } else {
-                        return SmsManager.getSmsManagerForSubscriptionId(subscriptionId);
-                    }
-                }
-            }
-        }
+    public void releaseCommand(Collection<String> messageIds) {
+        repository.releasePendingCommands(messageIds);
+    }
 
-        // Fallback a SmsManager default
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
-            return context.getSystemService(SmsManager.class);
-        } else {
-            return SmsManager.getDefault();
-        }
+    /**
+     * Rimuove dalla coda i tentativi di un comando non ancora inviati, quando
+     * inviarli non ha piu' senso (ad es. e' gia' arrivata la risposta a un
+     * tentativo precedente).
+     *
+     * @param messageIds ID dei messaggi inviati per il comando
+     */
+    public void discardQueuedCommand(Collection<String> messageIds) {
+        OutboundCommandQueue.getInstance(context).cancel(messageIds);
     }
 
     // ========== Callbacks from BroadcastReceiver ==========
 
     /**
      * Metodo di callback chiamato da {@link SmsSentReceiver} quando un SMS e' stato inviato.
-     * Notifica il listener del risultato dell'operazione di invio.
+     * Pubblica l'esito dell'operazione di invio ({@link SmsEventBus.SmsSent}); per i
+     * comandi in coda l'esito passa prima da {@link OutboundCommandQueue}, che lo
+     * pubblica solo quando e' definitivo.
      *
      * @param messageId  ID univoco del messaggio inviato
      * @param resultCode Codice risultato (Activity.RESULT_OK per successo, altrimenti codice errore)
      */
     public void onSmsSent(String messageId, int resultCode) {
-        if (listener != null) {
-            if (resultCode == Activity.RESULT_OK) {
-                listener.onSmsSent(messageId);
-            } else {
-                listener.onSmsError(resultCode, getErrorMessage(resultCode));
-            }
-        }
+        String error = resultCode == Activity.RESULT_OK ? null : getErrorMessage(resultCode);
+        OutboundCommandQueue.getInstance(context).onSent(messageId, resultCode, error);
     }
 
     /**
      * Metodo di callback chiamato da {@link SmsSentReceiver} quando un SMS e' stato consegnato.
-     * Notifica il listener solo in caso di consegna avvenuta con successo.
+     * Pubblica il report di consegna ({@link SmsEventBus.SmsDelivered}) e, se positivo,
+     * lo segnala alla coda per misurare la latenza della SIM usata.
      *
      * @param messageId  ID univoco del messaggio consegnato
      * @param resultCode Codice risultato (Activity.RESULT_OK per successo)
      */
     public void onSmsDelivered(String messageId, int resultCode) {
-        if (listener != null) {
-            if (resultCode == Activity.RESULT_OK) {
-                listener.onSmsDelivered(messageId);
-            }
+        if (resultCode == Activity.RESULT_OK) {
+            OutboundCommandQueue.getInstance(context).onDelivered(messageId);
         }
+        eventBus.publish(new SmsEventBus.SmsDelivered(messageId, resultCode));
     }
 
     /**
@@ -462,6 +553,8 @@ public class SmsService {
                 return "PDU nullo";
             case SmsManager.RESULT_ERROR_RADIO_OFF:
                 return "Radio spenta";
+            case SmsManager.RESULT_ERROR_LIMIT_EXCEEDED:
+                return "Limite SMS superato";
             default:
                 return "Errore sconosciuto (" + resultCode + ")";
         }
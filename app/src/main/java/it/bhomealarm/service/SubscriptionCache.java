@@ -0,0 +1,239 @@
+package it.bhomealarm.service;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.telephony.SmsManager;
+import android.telephony.SubscriptionInfo;
+import android.telephony.SubscriptionManager;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache degli abbonamenti (SIM) attivi e dei relativi SmsManager.
+ * <p>
+ * {@code SubscriptionManager.getActiveSubscriptionInfoList()} e' una chiamata IPC:
+ * invece di ripeterla a ogni SMS e a ogni richiesta della UI, la cache mantiene
+ * un'istantanea immutabile ({@link Snapshot}) con le SIM attive e un SmsManager
+ * gia' creato per ogni abbonamento. L'istantanea viene ricostruita:
+ * <ul>
+ *     <li>da {@link SubscriptionManager.OnSubscriptionsChangedListener}, quando
+ *         una SIM viene inserita, rimossa, attivata o disattivata;</li>
+ *     <li>quando viene concesso il permesso READ_PHONE_STATE (prima e' vuota);</li>
+ *     <li>su richiesta con {@link #refresh()}, ad es. dopo un errore di invio.</li>
+ * </ul>
+ * Gli SmsManager degli abbonamenti ancora attivi vengono riutilizzati tra una
+ * ricostruzione e l'altra.
+ * <p>
+ * Thread-safe: l'istantanea corrente e' pubblicata tramite un campo volatile.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see SmsService
+ */
+public final class SubscriptionCache {
+
+    private static final String TAG = "SubscriptionCache";
+
+    private final Context context;
+
+    /** SmsManager della SIM predefinita: risolve l'abbonamento al momento dell'invio. */
+    private final SmsManager defaultManager;
+
+    private volatile Snapshot snapshot;
+
+    SubscriptionCache(Context context) {
+        this.context = context.getApplicationContext();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            defaultManager = this.context.getSystemService(SmsManager.class);
+        } else {
+            defaultManager = SmsManager.getDefault();
+        }
+        snapshot = build(null);
+        registerListener();
+    }
+
+    /**
+     * Restituisce l'istantanea corrente delle SIM attive.
+     *
+     * @return istantanea immutabile, mai null
+     */
+    public Snapshot get() {
+        Snapshot current = snapshot;
+        if (!current.permissionGranted && hasPhoneStatePermission()) {
+            // Permesso concesso dopo l'ultima lettura
+            refresh();
+            current = snapshot;
+        }
+        return current;
+    }
+
+    /**
+     * Ricostruisce l'istantanea interrogando SubscriptionManager.
+     */
+    void refresh() {
+        Snapshot rebuilt = build(snapshot);
+        snapshot = rebuilt;
+        Log.d(TAG, "SIM attive: " + rebuilt.slots);
+    }
+
+    /**
+     * Restituisce lo SmsManager per uno slot SIM.
+     *
+     * @param simSlot Slot SIM (0, 1) o -1 per la SIM predefinita
+     * @return SmsManager dell'abbonamento nello slot, o quello predefinito se lo slot non ha una SIM attiva
+     */
+    SmsManager getSmsManager(int simSlot) {
+        Snapshot current = get();
+        SmsManager manager = current.managers.get(current.resolve(simSlot));
+        return manager != null ? manager : defaultManager;
+    }
+
+    private void registerListener() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP_MR1) {
+            return;
+        }
+        // Il listener va creato su un thread con Looper: le notifiche arrivano sul main thread
+        new Handler(Looper.getMainLooper()).post(() -> {
+            SubscriptionManager.OnSubscriptionsChangedListener listener =
+                    new SubscriptionManager.OnSubscriptionsChangedListener() {
+                        @Override
+                        public void onSubscriptionsChanged() {
+                            refresh();
+                        }
+                    };
+            SubscriptionManager.from(context).addOnSubscriptionsChangedListener(listener);
+        });
+    }
+
+    private boolean hasPhoneStatePermission() {
+        return ContextCompat.checkSelfPermission(context, Manifest.permission.READ_PHONE_STATE)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    private Snapshot build(Snapshot previous) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP_MR1 || !hasPhoneStatePermission()) {
+            return new Snapshot(false, null, Collections.<Integer, SmsManager>emptyMap(),
+                    Collections.<Integer, Integer>emptyMap());
+        }
+
+        List<SubscriptionInfo> subscriptions;
+        try {
+            subscriptions = SubscriptionManager.from(context).getActiveSubscriptionInfoList();
+        } catch (SecurityException e) {
+            Log.w(TAG, "Lettura SIM attive non consentita", e);
+            return new Snapshot(false, null, Collections.<Integer, SmsManager>emptyMap(),
+                    Collections.<Integer, Integer>emptyMap());
+        }
+
+        Map<Integer, SmsManager> managers = new HashMap<>();
+        Map<Integer, Integer> subscriptionIds = new HashMap<>();
+        if (subscriptions != null) {
+            for (SubscriptionInfo info : subscriptions) {
+                int slot = info.getSimSlotIndex();
+                int subscriptionId = info.getSubscriptionId();
+                SmsManager manager = previous != null
+                        && previous.subscriptionIds.containsKey(slot)
+                        && previous.subscriptionIds.get(slot) == subscriptionId
+                        ? previous.managers.get(slot)
+                        : null;
+                if (manager == null) {
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+                        manager = context.getSystemService(SmsManager.class)
+                                .createForSubscriptionId(subscriptionId);
+                    } else {
+                        manager = SmsManager.getSmsManagerForSubscriptionId(subscriptionId);
+                    }
+                }
+                managers.put(slot, manager);
+                subscriptionIds.put(slot, subscriptionId);
+            }
+        }
+        return new Snapshot(true, subscriptions, managers, subscriptionIds);
+    }
+
+    /**
+     * Istantanea immutabile delle SIM attive.
+     */
+    public static final class Snapshot {
+
+        private final boolean permissionGranted;
+        private final int simCount;
+        private final List<SmsService.SimInfo> sims;
+        private final List<Integer> slots;
+        private final Map<Integer, SmsManager> managers;
+        private final Map<Integer, Integer> subscriptionIds;
+
+        Snapshot(boolean permissionGranted, List<SubscriptionInfo> subscriptions,
+                 Map<Integer, SmsManager> managers, Map<Integer, Integer> subscriptionIds) {
+            this.permissionGranted = permissionGranted;
+            this.managers = Collections.unmodifiableMap(managers);
+            this.subscriptionIds = Collections.unmodifiableMap(subscriptionIds);
+
+            List<SmsService.SimInfo> sims = new ArrayList<>();
+            List<Integer> slots = new ArrayList<>();
+            if (subscriptions != null) {
+                for (SubscriptionInfo info : subscriptions) {
+                    String displayName = info.getDisplayName() != null
+                            ? info.getDisplayName().toString()
+                            : "SIM " + (info.getSimSlotIndex() + 1);
+                    String carrierName = info.getCarrierName() != null
+                            ? info.getCarrierName().toString()
+                            : "";
+                    sims.add(new SmsService.SimInfo(info.getSimSlotIndex(), displayName, carrierName));
+                    slots.add(info.getSimSlotIndex());
+                }
+            }
+            // Senza permesso o senza SIM rilevate la UI mostra la SIM predefinita
+            simCount = permissionGranted && subscriptions != null ? subscriptions.size() : 1;
+            if (sims.isEmpty()) {
+                sims.add(new SmsService.SimInfo(0, "SIM Predefinita", ""));
+            }
+            this.sims = Collections.unmodifiableList(sims);
+            this.slots = Collections.unmodifiableList(slots);
+        }
+
+        /** @return SIM da mostrare all'utente (almeno una, eventualmente la "SIM Predefinita") */
+        public List<SmsService.SimInfo> getSims() { return sims; }
+
+        /** @return numero di SIM attive, 1 se non determinabile */
+        public int getSimCount() { return simCount; }
+
+        /** @return true se ci sono almeno due SIM attive */
+        public boolean isDualSim() { return simCount > 1; }
+
+        /** @return slot delle SIM attive, vuoto se non determinabili */
+        public List<Integer> getSlots() { return slots; }
+
+        /**
+         * @param simSlot Slot SIM
+         * @return subscription ID della SIM nello slot, o -1 se lo slot non ha una SIM attiva
+         */
+        public int getSubscriptionId(int simSlot) {
+            Integer subscriptionId = subscriptionIds.get(resolve(simSlot));
+            return subscriptionId != null ? subscriptionId : -1;
+        }
+
+        /**
+         * Risolve lo slot richiesto nello slot di una SIM attiva. Per compatibilita'
+         * con le impostazioni salvate, uno slot senza SIM e' inteso come posizione
+         * nella lista delle SIM attive (ad es. unica SIM nello slot 2).
+         */
+        int resolve(int simSlot) {
+            if (simSlot < 0 || subscriptionIds.containsKey(simSlot)) {
+                return simSlot;
+            }
+            return simSlot < slots.size() ? slots.get(simSlot) : -1;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package it.bhomealarm.util;
 
+import it.bhomealarm.protocol.SmsProtocol;
+
 /**
  * Classe contenente tutte le costanti globali dell'applicazione BHomeAlarm.
  * <p>
@@ -19,11 +21,16 @@ package it.bhomealarm.util;
  *     <li>ID notifiche e codici richiesta</li>
  * </ul>
  * <p>
+ * Le costanti del protocollo SMS (comandi, prefissi, separatori, stati e codici
+ * di errore) sono definite nel modulo {@code bhome-protocol} ({@link SmsProtocol})
+ * e qui solo riesportate per comodita'.
+ * <p>
  * La classe e' dichiarata final e ha un costruttore privato per impedirne
  * l'istanziazione (pattern utility class).
  *
  * @author BHomeAlarm Team
  * @version 1.0
+ * @see SmsProtocol
  */
 public final class Constants {
 
@@ -38,204 +45,204 @@ public final class Constants {
      * Comando SMS per richiedere la configurazione parte 1.
      * Contiene: versione firmware, flags utente, elenco zone.
      */
-    public static final String CMD_CONF1 = "CONF1?";
+    public static final String CMD_CONF1 = SmsProtocol.CMD_CONF1;
 
     /**
      * Comando SMS per richiedere la configurazione parte 2.
      * Contiene: scenari 1-8.
      */
-    public static final String CMD_CONF2 = "CONF2?";
+    public static final String CMD_CONF2 = SmsProtocol.CMD_CONF2;
 
     /**
      * Comando SMS per richiedere la configurazione parte 3.
      * Contiene: scenari 9-16.
      */
-    public static final String CMD_CONF3 = "CONF3?";
+    public static final String CMD_CONF3 = SmsProtocol.CMD_CONF3;
 
     /**
      * Comando SMS per richiedere la configurazione parte 4.
      * Contiene: utenti 1-8 e utente joker.
      */
-    public static final String CMD_CONF4 = "CONF4?";
+    public static final String CMD_CONF4 = SmsProtocol.CMD_CONF4;
 
     /**
      * Comando SMS per richiedere la configurazione parte 5.
      * Contiene: utenti 9-16.
      */
-    public static final String CMD_CONF5 = "CONF5?";
+    public static final String CMD_CONF5 = SmsProtocol.CMD_CONF5;
 
     /**
      * Formato comando SMS per attivare l'allarme con uno scenario predefinito.
      * Parametro: numero scenario (01-16).
      * Esempio: SCE:05 attiva lo scenario 5.
      */
-    public static final String CMD_ARM_SCENARIO = "SCE:%02d";
+    public static final String CMD_ARM_SCENARIO = SmsProtocol.CMD_ARM_SCENARIO;
 
     /**
      * Formato comando SMS per attivare l'allarme con zone personalizzate.
-     * Parametro: maschera zone (8 caratteri 0/1).
-     * Esempio: CUST:11001100 attiva zone 1,2,5,6.
+     * Parametro: numeri delle zone concatenati ({@link it.bhomealarm.protocol.ZoneMask#toDigits()}).
+     * Esempio: CUST:134 attiva zone 1,3,4.
      */
-    public static final String CMD_ARM_CUSTOM = "CUST:%s";
+    public static final String CMD_ARM_CUSTOM = SmsProtocol.CMD_ARM_CUSTOM;
 
     /**
      * Comando SMS per disattivare l'allarme.
      */
-    public static final String CMD_DISARM = "SYS OFF";
+    public static final String CMD_DISARM = SmsProtocol.CMD_DISARM;
 
     /**
      * Comando SMS per richiedere lo stato corrente del sistema.
      */
-    public static final String CMD_STATUS = "SYS?";
+    public static final String CMD_STATUS = SmsProtocol.CMD_STATUS;
 
     /**
      * Formato comando SMS per configurare un utente.
      * Parametri: numero utente (01-16), numero telefono.
      */
-    public static final String CMD_SET_USER = "SET:U%02d%s";
+    public static final String CMD_SET_USER = SmsProtocol.CMD_SET_USER;
 
     // ========== SMS Response Prefixes ==========
 
     /**
      * Prefisso risposta SMS per configurazione parte 1.
      */
-    public static final String RESP_CONF1 = "CONF1:";
+    public static final String RESP_CONF1 = SmsProtocol.RESP_CONF1;
 
     /**
      * Prefisso risposta SMS per configurazione parte 2.
      */
-    public static final String RESP_CONF2 = "CONF2:";
+    public static final String RESP_CONF2 = SmsProtocol.RESP_CONF2;
 
     /**
      * Prefisso risposta SMS per configurazione parte 3.
      */
-    public static final String RESP_CONF3 = "CONF3:";
+    public static final String RESP_CONF3 = SmsProtocol.RESP_CONF3;
 
     /**
      * Prefisso risposta SMS per configurazione parte 4.
      */
-    public static final String RESP_CONF4 = "CONF4:";
+    public static final String RESP_CONF4 = SmsProtocol.RESP_CONF4;
 
     /**
      * Prefisso risposta SMS per configurazione parte 5.
      */
-    public static final String RESP_CONF5 = "CONF5:";
+    public static final String RESP_CONF5 = SmsProtocol.RESP_CONF5;
 
     /**
      * Prefisso risposta SMS per operazione completata con successo.
      */
-    public static final String RESP_OK = "OK:";
+    public static final String RESP_OK = SmsProtocol.RESP_OK;
 
     /**
      * Prefisso risposta SMS per stato del sistema.
      */
-    public static final String RESP_STATUS = "STATUS:";
+    public static final String RESP_STATUS = SmsProtocol.RESP_STATUS;
 
     /**
      * Prefisso risposta SMS per errore.
      */
-    public static final String RESP_ERROR = "ERR:";
+    public static final String RESP_ERROR = SmsProtocol.RESP_ERROR;
 
     // ========== SMS Separators ==========
 
     /**
      * Separatore tra comando e parametri nei messaggi SMS.
      */
-    public static final char SEP_COMMAND = ':';
+    public static final char SEP_COMMAND = SmsProtocol.SEP_COMMAND;
 
     /**
      * Separatore tra campi diversi nei messaggi SMS.
      */
-    public static final char SEP_FIELD = '&';
+    public static final char SEP_FIELD = SmsProtocol.SEP_FIELD;
 
     /**
      * Carattere di terminazione messaggio SMS.
      */
-    public static final char SEP_END = '#';
+    public static final char SEP_END = SmsProtocol.SEP_END;
 
     /**
      * Separatore tra chiave e valore nei campi SMS.
      */
-    public static final char SEP_ASSIGN = '=';
+    public static final char SEP_ASSIGN = SmsProtocol.SEP_ASSIGN;
 
     /**
      * Separatore per flags nei messaggi SMS.
      */
-    public static final char SEP_FLAGS = '.';
+    public static final char SEP_FLAGS = SmsProtocol.SEP_FLAGS;
 
     // ========== Alarm Status ==========
 
     /**
      * Stato allarme: sistema attivato.
      */
-    public static final String STATUS_ARMED = "ARMED";
+    public static final String STATUS_ARMED = SmsProtocol.STATUS_ARMED;
 
     /**
      * Stato allarme: sistema disattivato.
      */
-    public static final String STATUS_DISARMED = "DISARMED";
+    public static final String STATUS_DISARMED = SmsProtocol.STATUS_DISARMED;
 
     /**
      * Stato allarme: allarme in corso (intrusione rilevata).
      */
-    public static final String STATUS_ALARM = "ALARM";
+    public static final String STATUS_ALARM = SmsProtocol.STATUS_ALARM;
 
     /**
      * Stato allarme: manomissione rilevata.
      */
-    public static final String STATUS_TAMPER = "TAMPER";
+    public static final String STATUS_TAMPER = SmsProtocol.STATUS_TAMPER;
 
     /**
      * Stato allarme: stato non determinabile.
      */
-    public static final String STATUS_UNKNOWN = "UNKNOWN";
+    public static final String STATUS_UNKNOWN = SmsProtocol.STATUS_UNKNOWN;
 
     // ========== Zone Constants ==========
 
     /**
      * Numero totale di zone supportate dal sistema.
      */
-    public static final int ZONE_COUNT = 8;
+    public static final int ZONE_COUNT = SmsProtocol.ZONE_COUNT;
 
     /**
      * Valore che indica una zona non abilitata.
      */
-    public static final String ZONE_NOT_ENABLED = "NE";
+    public static final String ZONE_NOT_ENABLED = SmsProtocol.NOT_ENABLED;
 
     // ========== Scenario Constants ==========
 
     /**
      * Numero totale di scenari supportati dal sistema.
      */
-    public static final int SCENARIO_COUNT = 16;
+    public static final int SCENARIO_COUNT = SmsProtocol.SCENARIO_COUNT;
 
     /**
      * Valore che indica uno scenario non abilitato.
      */
-    public static final String SCENARIO_NOT_ENABLED = "NE";
+    public static final String SCENARIO_NOT_ENABLED = SmsProtocol.NOT_ENABLED;
 
     /**
      * Identificatore per scenario personalizzato (zone selezionate manualmente).
      */
-    public static final String SCENARIO_CUSTOM = "CUSTOM";
+    public static final String SCENARIO_CUSTOM = SmsProtocol.SCENARIO_CUSTOM;
 
     // ========== User Constants ==========
 
     /**
      * Numero totale di utenti supportati dal sistema.
      */
-    public static final int USER_COUNT = 16;
+    public static final int USER_COUNT = SmsProtocol.USER_COUNT;
 
     /**
      * Valore che indica un utente non abilitato.
      */
-    public static final String USER_NOT_ENABLED = "NE";
+    public static final String USER_NOT_ENABLED = SmsProtocol.NOT_ENABLED;
 
     /**
      * Prefisso per identificare l'utente Joker nelle risposte SMS.
      * L'utente Joker ha permessi speciali e puo' ricevere tutte le notifiche.
      */
-    public static final String USER_JOKER_PREFIX = "RJO";
+    public static final String USER_JOKER_PREFIX = SmsProtocol.USER_JOKER_PREFIX;
 
     // ========== User Permission Bits ==========
 
@@ -284,6 +291,7 @@ public final class Constants {
 
     /**
      * Timeout per attesa risposta SMS in millisecondi (60 secondi).
+     * Usato finche' non c'e' una stima del tempo di risposta della centrale.
      */
     public static final int TIMEOUT_SMS_RESPONSE = 60_000;
 
@@ -292,6 +300,43 @@ public final class Constants {
      */
     public static final int TIMEOUT_PARSING = 5_000;
 
+    /**
+     * Timeout di risposta minimo con stima adattiva in millisecondi (15 secondi).
+     */
+    public static final int TIMEOUT_ADAPTIVE_MIN = 15_000;
+
+    /**
+     * Timeout di risposta massimo con stima adattiva in millisecondi (3 minuti).
+     */
+    public static final int TIMEOUT_ADAPTIVE_MAX = 180_000;
+
+    /**
+     * Invii recenti di {@code sms_log} usati per la stima iniziale del tempo di risposta.
+     */
+    public static final int RTT_BOOTSTRAP_SAMPLES = 20;
+
+    /**
+     * Validita' di un comando in attesa di risposta in millisecondi (30 minuti).
+     * Oltre questo tempo una risposta non viene piu' attribuita al comando.
+     */
+    public static final long PENDING_COMMAND_TTL = 30 * 60_000L;
+
+    /**
+     * Attesa massima del frammento successivo di una risposta CONF divisa in
+     * piu' SMS, in millisecondi (60 secondi).
+     */
+    public static final long REASSEMBLY_TIMEOUT = 60_000L;
+
+    /**
+     * Caratteri massimi di una risposta ricostruita da piu' SMS.
+     */
+    public static final int REASSEMBLY_MAX_LENGTH = 2_048;
+
+    /**
+     * Centrali con una risposta in ricostruzione contemporaneamente.
+     */
+    public static final int REASSEMBLY_MAX_SENDERS = 8;
+
     /**
      * Ritardo tra tentativi di retry in millisecondi (5 secondi).
      */
@@ -302,6 +347,86 @@ public final class Constants {
      */
     public static final int MAX_RETRIES = 2;
 
+    /**
+     * Attesa massima tra due tentativi in millisecondi (60 secondi).
+     * Limita il backoff esponenziale che parte da {@link #RETRY_DELAY}.
+     */
+    public static final int RETRY_MAX_DELAY = 60_000;
+
+    // ========== Outbound Queue ==========
+
+    /**
+     * Intervallo minimo tra due SMS inviati dalla coda in millisecondi (3 secondi).
+     */
+    public static final long OUTBOUND_MIN_INTERVAL = 3_000;
+
+    /**
+     * Pausa di una SIM dopo un errore di limite SMS dell'operatore
+     * (RESULT_ERROR_LIMIT_EXCEEDED) in millisecondi (15 minuti).
+     */
+    public static final long OUTBOUND_LIMIT_PAUSE = 15 * 60_000L;
+
+    /**
+     * SMS inviabili al minuto per SIM, predefinito.
+     */
+    public static final int SMS_BUDGET_PER_MINUTE = 6;
+
+    /**
+     * SMS inviabili all'ora per SIM, predefinito. Resta sotto il limite di
+     * Android (30 SMS ogni 30 minuti per app) anche con invii concentrati.
+     */
+    public static final int SMS_BUDGET_PER_HOUR = 30;
+
+    /**
+     * Tentativi massimi di invio di un comando in coda per errori non transitori.
+     * Gli errori di rete (radio spenta, nessun servizio) e di limite non contano.
+     */
+    public static final int OUTBOUND_MAX_ATTEMPTS = 3;
+
+    /**
+     * Attesa dell'esito di invio prima di considerare perso un SMS consegnato a
+     * SmsManager (ad es. per un riavvio) e reinviarlo, in millisecondi (5 minuti).
+     */
+    public static final long OUTBOUND_SENDING_TIMEOUT = 5 * 60_000L;
+
+    /**
+     * Validita' di un comando in coda in millisecondi (24 ore).
+     * Oltre questo tempo il comando viene scartato senza essere inviato.
+     */
+    public static final long OUTBOUND_COMMAND_TTL = 24 * 60 * 60_000L;
+
+    /**
+     * Attesa massima in coda di un comando inviato da CommandExecutor prima di
+     * segnalarlo al chiamante come ancora in coda, in millisecondi (2 minuti).
+     */
+    public static final long OUTBOUND_MAX_QUEUE_WAIT = 2 * 60_000L;
+
+    /**
+     * Esclusione di una SIM dopo un errore di invio, se ce n'e' un'altra
+     * disponibile, in millisecondi (5 minuti).
+     */
+    public static final long SIM_FAILOVER_COOLDOWN = 5 * 60_000L;
+
+    /**
+     * Scelta della SIM: sempre la SIM selezionata, l'altra solo dopo un errore.
+     */
+    public static final int SIM_ROUTING_PRIMARY = 0;
+
+    /**
+     * Scelta della SIM: alternanza tra le SIM con budget di invio disponibile.
+     */
+    public static final int SIM_ROUTING_ROUND_ROBIN = 1;
+
+    /**
+     * Scelta della SIM: la SIM con il minor tempo medio di consegna osservato.
+     */
+    public static final int SIM_ROUTING_LEAST_LATENCY = 2;
+
+    /**
+     * Nome univoco del lavoro di invio della coda comandi (WorkManager).
+     */
+    public static final String WORK_OUTBOUND_QUEUE = "outbound_command_queue";
+
     // ========== Configuration States ==========
 
     /**
@@ -349,6 +474,44 @@ public final class Constants {
      */
     public static final int CONFIG_TOTAL_STEPS = 5;
 
+    /**
+     * Numero predefinito di richieste CONF in attesa di risposta contemporaneamente.
+     * Con {@link #CONFIG_TOTAL_STEPS} tutte le richieste partono subito e la
+     * configurazione richiede circa un solo tempo di andata e ritorno SMS;
+     * con 1 la procedura torna sequenziale.
+     */
+    public static final int CONFIG_PIPELINE_WINDOW = CONFIG_TOTAL_STEPS;
+
+    /**
+     * Sezione di configurazione CONF1 (zone e versione) nella maschera delle
+     * sezioni da sincronizzare: la sezione dello step n e' il bit {@code 1 << (n - 1)}.
+     */
+    public static final int CONFIG_SECTION_CONF1 = 1;
+
+    /** Sezione di configurazione CONF2 (scenari 1-8). */
+    public static final int CONFIG_SECTION_CONF2 = 1 << 1;
+
+    /** Sezione di configurazione CONF3 (scenari 9-16). */
+    public static final int CONFIG_SECTION_CONF3 = 1 << 2;
+
+    /** Sezione di configurazione CONF4 (utenti 1-8 e Joker). */
+    public static final int CONFIG_SECTION_CONF4 = 1 << 3;
+
+    /** Sezione di configurazione CONF5 (utenti 9-16). */
+    public static final int CONFIG_SECTION_CONF5 = 1 << 4;
+
+    /** Tutte le sezioni: configurazione completa. */
+    public static final int CONFIG_SECTIONS_ALL = (1 << CONFIG_TOTAL_STEPS) - 1;
+
+    /** Sezioni degli scenari (CONF2 e CONF3). */
+    public static final int CONFIG_SECTIONS_SCENARIOS = CONFIG_SECTION_CONF2 | CONFIG_SECTION_CONF3;
+
+    /** Sezioni degli utenti (CONF4 e CONF5), ad es. dopo una modifica della rubrica. */
+    public static final int CONFIG_SECTIONS_USERS = CONFIG_SECTION_CONF4 | CONFIG_SECTION_CONF5;
+
+    /** Scenari o utenti contenuti in ciascuna sezione CONF2-CONF5. */
+    public static final int CONFIG_SECTION_SLOTS = 8;
+
     // ========== Shared Preferences Keys ==========
 
     /**
@@ -371,6 +534,11 @@ public final class Constants {
      */
     public static final String PREF_SELECTED_SIM = "selected_sim_slot";
 
+    /**
+     * Chiave SharedPreferences: modalita' di scelta della SIM per i comandi.
+     */
+    public static final String PREF_SIM_ROUTING = "sim_routing";
+
     /**
      * Chiave SharedPreferences: ultimo stato conosciuto del sistema.
      */
@@ -386,37 +554,124 @@ public final class Constants {
      */
     public static final String PREF_CONFIGURED = "system_configured";
 
+    /**
+     * Chiave SharedPreferences: ID della centrale attiva (riga di {@code alarm_config}).
+     * <p>
+     * {@link #PREF_ALARM_PHONE} resta allineato al numero della centrale attiva.
+     */
+    public static final String PREF_ACTIVE_PANEL_ID = "active_panel_id";
+
+    /**
+     * Chiave SharedPreferences: richieste CONF in parallelo durante la configurazione
+     * (1-{@link #CONFIG_TOTAL_STEPS}, 1 = sequenziale).
+     */
+    public static final String PREF_CONFIG_PIPELINE_WINDOW = "config_pipeline_window";
+
+    /**
+     * Chiave SharedPreferences: giorni di conservazione dei log SMS (0 = illimitati).
+     */
+    public static final String PREF_LOG_RETENTION_DAYS = "log_retention_days";
+
+    /**
+     * Chiave SharedPreferences: numero massimo di log SMS conservati (0 = illimitato).
+     */
+    public static final String PREF_LOG_MAX_ROWS = "log_max_rows";
+
+    /**
+     * Chiave SharedPreferences: dimensione massima stimata dei log SMS in byte (0 = illimitata).
+     */
+    public static final String PREF_LOG_MAX_BYTES = "log_max_bytes";
+
+    /**
+     * Chiave SharedPreferences: archiviare compressi i log SMS rimossi.
+     */
+    public static final String PREF_LOG_ARCHIVE = "log_archive_enabled";
+
+    /**
+     * Chiave SharedPreferences: dimensione massima dell'archivio compresso dei log SMS
+     * in byte (0 = illimitata).
+     */
+    public static final String PREF_LOG_ARCHIVE_MAX_BYTES = "log_archive_max_bytes";
+
+    /**
+     * Chiave SharedPreferences: SMS inviabili al minuto per SIM.
+     */
+    public static final String PREF_SMS_BUDGET_PER_MINUTE = "sms_budget_per_minute";
+
+    /**
+     * Chiave SharedPreferences: SMS inviabili all'ora per SIM.
+     */
+    public static final String PREF_SMS_BUDGET_PER_HOUR = "sms_budget_per_hour";
+
+    // ========== SMS Log Retention ==========
+
+    /**
+     * Giorni di conservazione predefiniti dei log SMS (1 anno).
+     */
+    public static final int LOG_RETENTION_DAYS = 365;
+
+    /**
+     * Numero massimo predefinito di log SMS conservati.
+     */
+    public static final int LOG_MAX_ROWS = 20_000;
+
+    /**
+     * Dimensione massima predefinita dei log SMS in byte (5 MB).
+     */
+    public static final long LOG_MAX_BYTES = 5L * 1024 * 1024;
+
+    /**
+     * Archiviazione predefinita dei log SMS rimossi.
+     */
+    public static final boolean LOG_ARCHIVE_ENABLED = true;
+
+    /**
+     * Dimensione massima predefinita dell'archivio compresso dei log SMS in byte (1 MB).
+     * Oltre questo limite i blocchi piu' vecchi vengono eliminati.
+     */
+    public static final long LOG_ARCHIVE_MAX_BYTES = 1024 * 1024;
+
+    /**
+     * Intervallo del job periodico di conservazione dei log SMS in ore.
+     */
+    public static final int LOG_RETENTION_INTERVAL_HOURS = 24;
+
+    /**
+     * Nome univoco del job periodico di conservazione dei log SMS (WorkManager).
+     */
+    public static final String WORK_LOG_RETENTION = "sms_log_retention";
+
     // ========== Error Codes ==========
 
     /**
      * Codice errore: comando non riconosciuto dal sistema.
      */
-    public static final String ERROR_UNKNOWN_CMD = "E01";
+    public static final String ERROR_UNKNOWN_CMD = SmsProtocol.ERROR_UNKNOWN_CMD;
 
     /**
      * Codice errore: parametro non valido nel comando.
      */
-    public static final String ERROR_INVALID_PARAM = "E02";
+    public static final String ERROR_INVALID_PARAM = SmsProtocol.ERROR_INVALID_PARAM;
 
     /**
      * Codice errore: utente non autorizzato per l'operazione.
      */
-    public static final String ERROR_UNAUTHORIZED = "E03";
+    public static final String ERROR_UNAUTHORIZED = SmsProtocol.ERROR_UNAUTHORIZED;
 
     /**
      * Codice errore: sistema occupato, riprovare.
      */
-    public static final String ERROR_SYSTEM_BUSY = "E04";
+    public static final String ERROR_SYSTEM_BUSY = SmsProtocol.ERROR_SYSTEM_BUSY;
 
     /**
      * Codice errore: errore interno del sistema.
      */
-    public static final String ERROR_INTERNAL = "E05";
+    public static final String ERROR_INTERNAL = SmsProtocol.ERROR_INTERNAL;
 
     /**
      * Codice errore: timeout nell'attesa della risposta.
      */
-    public static final String ERROR_TIMEOUT = "TIMEOUT";
+    public static final String ERROR_TIMEOUT = SmsProtocol.ERROR_TIMEOUT;
 
     // ========== Intent Actions ==========
 
@@ -11,10 +11,9 @@ import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.List;
-
 import it.bhomealarm.R;
 import it.bhomealarm.model.entity.Scenario;
+import it.bhomealarm.protocol.ZoneMask;
 
 /**
  * Adapter RecyclerView per la visualizzazione della lista scenari.
@@ -208,14 +207,14 @@ public class ScenariosAdapter extends ListAdapter<Scenario, ScenariosAdapter.Sce
             textScenarioName.setText(displayName);
 
             // Zone: mostra l'elenco delle zone incluse
-            List<Integer> zones = scenario.getIncludedZones();
+            ZoneMask zones = scenario.getZones();
             if (zones.isEmpty()) {
                 textScenarioZones.setText("Nessuna zona");
             } else {
                 StringBuilder sb = new StringBuilder("Zone: ");
-                for (int i = 0; i < zones.size(); i++) {
-                    if (i > 0) sb.append(", ");
-                    sb.append(zones.get(i));
+                for (int zone = zones.first(); zone != 0; zone = zones.next(zone)) {
+                    if (zone != zones.first()) sb.append(", ");
+                    sb.append(zone);
                 }
                 textScenarioZones.setText(sb.toString());
             }
@@ -13,11 +13,11 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.card.MaterialCardView;
 import com.google.android.material.checkbox.MaterialCheckBox;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
 
 import it.bhomealarm.R;
 import it.bhomealarm.model.entity.Zone;
+import it.bhomealarm.protocol.ZoneMask;
 
 /**
  * Adapter per la visualizzazione e selezione multipla delle zone in una RecyclerView.
@@ -30,8 +30,11 @@ import it.bhomealarm.model.entity.Zone;
  * Caratteristiche principali:
  * <ul>
  *     <li>Selezione multipla delle zone tramite checkbox</li>
- *     <li>Gestione dello stato di selezione tramite Set di slot</li>
+ *     <li>Gestione dello stato di selezione tramite {@link ZoneMask}</li>
  *     <li>Utilizzo di DiffUtil per aggiornamenti efficienti della lista</li>
+ *     <li>Al cambio di selezione vengono notificate solo le zone cambiate, con il
+ *         payload {@link #PAYLOAD_SELECTION}: si aggiornano checkbox e card senza
+ *         rieseguire il binding completo della riga</li>
  *     <li>Callback per notificare i cambiamenti di selezione</li>
  * </ul>
  * </p>
@@ -59,8 +62,11 @@ public class ZonesAdapter extends ListAdapter<Zone, ZonesAdapter.ZoneViewHolder>
         void onZoneToggle(Zone zone, boolean selected);
     }
 
+    /** Payload di {@code notifyItemChanged} per il solo stato di selezione. */
+    static final Object PAYLOAD_SELECTION = new Object();
+
     private OnZoneToggleListener listener;
-    private final Set<Integer> selectedZoneSlots = new HashSet<>();
+    private ZoneMask selection = ZoneMask.EMPTY;
 
     private static final DiffUtil.ItemCallback<Zone> DIFF_CALLBACK = new DiffUtil.ItemCallback<Zone>() {
         @Override
@@ -83,16 +89,28 @@ public class ZonesAdapter extends ListAdapter<Zone, ZonesAdapter.ZoneViewHolder>
         this.listener = listener;
     }
 
-    public void setSelectedZones(Set<Integer> selectedSlots) {
-        selectedZoneSlots.clear();
-        if (selectedSlots != null) {
-            selectedZoneSlots.addAll(selectedSlots);
+    /**
+     * Imposta le zone selezionate, notificando solo le righe il cui stato cambia.
+     *
+     * @param selected zone selezionate (null = nessuna)
+     */
+    public void setSelectedZones(ZoneMask selected) {
+        ZoneMask updated = selected != null ? selected : ZoneMask.EMPTY;
+        ZoneMask changed = selection.diff(updated);
+        selection = updated;
+        if (changed.isEmpty()) {
+            return;
+        }
+        List<Zone> zones = getCurrentList();
+        for (int position = 0; position < zones.size(); position++) {
+            if (changed.contains(zones.get(position).getSlot())) {
+                notifyItemChanged(position, PAYLOAD_SELECTION);
+            }
         }
-        notifyDataSetChanged();
     }
 
-    public Set<Integer> getSelectedZoneSlots() {
-        return new HashSet<>(selectedZoneSlots);
+    public ZoneMask getSelectedZones() {
+        return selection;
     }
 
     @NonNull
@@ -108,6 +126,16 @@ public class ZonesAdapter extends ListAdapter<Zone, ZonesAdapter.ZoneViewHolder>
         holder.bind(getItem(position));
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull ZoneViewHolder holder, int position,
+                                 @NonNull List<Object> payloads) {
+        if (payloads.contains(PAYLOAD_SELECTION)) {
+            holder.bindSelection(getItem(position));
+        } else {
+            super.onBindViewHolder(holder, position, payloads);
+        }
+    }
+
     /**
      * ViewHolder per la visualizzazione di un singolo elemento zona.
      * <p>
@@ -141,20 +169,14 @@ public class ZonesAdapter extends ListAdapter<Zone, ZonesAdapter.ZoneViewHolder>
                 int position = getBindingAdapterPosition();
                 if (position != RecyclerView.NO_POSITION) {
                     Zone zone = getItem(position);
-                    boolean wasSelected = selectedZoneSlots.contains(zone.getSlot());
-                    boolean isNowSelected = !wasSelected;
-
-                    if (isNowSelected) {
-                        selectedZoneSlots.add(zone.getSlot());
-                    } else {
-                        selectedZoneSlots.remove(zone.getSlot());
-                    }
-
-                    checkboxZone.setChecked(isNowSelected);
-                    cardView.setChecked(isNowSelected);
+                    boolean isNowSelected = !selection.contains(zone.getSlot());
 
+                    // Lo stato visivo arriva da setSelectedZones(); senza
+                    // listener la selezione resta locale all'adapter
                     if (listener != null) {
                         listener.onZoneToggle(zone, isNowSelected);
+                    } else {
+                        setSelectedZones(selection.toggle(zone.getSlot()));
                     }
                 }
             });
@@ -176,7 +198,16 @@ public class ZonesAdapter extends ListAdapter<Zone, ZonesAdapter.ZoneViewHolder>
                     : zone.getName();
             textZoneName.setText(displayName);
 
-            boolean isSelected = selectedZoneSlots.contains(zone.getSlot());
+            bindSelection(zone);
+        }
+
+        /**
+         * Aggiorna solo checkbox e card in base allo stato di selezione corrente.
+         *
+         * @param zone la zona visualizzata
+         */
+        void bindSelection(Zone zone) {
+            boolean isSelected = selection.contains(zone.getSlot());
             checkboxZone.setChecked(isSelected);
             cardView.setChecked(isSelected);
         }
@@ -160,9 +160,14 @@ public class ConfigurationFragment extends Fragment {
     /**
      * Configura i listener per i pulsanti Start e Cancel.
      * Gestisce la richiesta di conferma se la configurazione e' in corso.
+     * La pressione prolungata su Start permette di scegliere le sezioni da aggiornare.
      */
     private void setupClickListeners() {
         buttonStart.setOnClickListener(v -> viewModel.startConfiguration());
+        buttonStart.setOnLongClickListener(v -> {
+            showSyncSectionsDialog();
+            return true;
+        });
 
         buttonCancel.setOnClickListener(v -> {
             if (Boolean.TRUE.equals(viewModel.getIsRunning().getValue())) {
@@ -214,7 +219,7 @@ public class ConfigurationFragment extends Fragment {
         viewModel.getErrorMessage().observe(getViewLifecycleOwner(), error -> {
             if (error != null && !error.isEmpty()) {
                 Snackbar.make(requireView(), error, Snackbar.LENGTH_LONG)
-                        .setAction(R.string.action_retry, v -> viewModel.startConfiguration())
+                        .setAction(R.string.action_retry, v -> viewModel.resumeConfiguration())
                         .show();
             }
         });
@@ -246,4 +251,27 @@ public class ConfigurationFragment extends Fragment {
                 })
                 .show();
     }
+
+    /**
+     * Mostra un dialog per scegliere le sezioni CONF da sincronizzare.
+     * Se l'utente conferma con almeno una sezione, avvia la sincronizzazione parziale.
+     */
+    private void showSyncSectionsDialog() {
+        boolean[] checked = {false, false, false, true, true};
+        new com.google.android.material.dialog.MaterialAlertDialogBuilder(requireContext())
+                .setTitle(R.string.dialog_sync_sections_title)
+                .setMultiChoiceItems(R.array.sync_sections, checked,
+                        (dialog, which, isChecked) -> checked[which] = isChecked)
+                .setNegativeButton(R.string.action_cancel, null)
+                .setPositiveButton(R.string.action_start, (dialog, which) -> {
+                    int sections = 0;
+                    for (int i = 0; i < checked.length; i++) {
+                        if (checked[i]) {
+                            sections |= 1 << i;
+                        }
+                    }
+                    viewModel.startSync(sections);
+                })
+                .show();
+    }
 }
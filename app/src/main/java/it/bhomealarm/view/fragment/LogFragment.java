@@ -11,6 +11,7 @@ import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.navigation.Navigation;
+import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.appbar.MaterialToolbar;
@@ -55,6 +56,9 @@ import it.bhomealarm.view.adapter.SmsLogAdapter;
  */
 public class LogFragment extends Fragment {
 
+    /** Elementi mancanti alla fine della lista oltre i quali si carica la pagina successiva */
+    private static final int LOAD_MORE_THRESHOLD = 10;
+
     /** ViewModel per la gestione dei log SMS */
     private LogViewModel viewModel;
 
@@ -137,12 +141,27 @@ public class LogFragment extends Fragment {
 
     /**
      * Configura la RecyclerView con l'adapter per la lista dei log SMS.
-     * Imposta il listener per il click su un log.
+     * Imposta il listener per il click su un log e richiede la pagina successiva
+     * quando lo scorrimento si avvicina alla fine della lista.
      */
     private void setupRecyclerView() {
         adapter = new SmsLogAdapter();
         adapter.setOnLogClickListener(this::showLogDetails);
         recyclerLogs.setAdapter(adapter);
+
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerLogs.getLayoutManager();
+        recyclerLogs.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy <= 0 || layoutManager == null) {
+                    return;
+                }
+                int lastVisible = layoutManager.findLastVisibleItemPosition();
+                if (lastVisible >= adapter.getItemCount() - LOAD_MORE_THRESHOLD) {
+                    viewModel.loadMore();
+                }
+            }
+        });
     }
 
     /**
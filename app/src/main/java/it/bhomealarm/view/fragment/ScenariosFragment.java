@@ -173,8 +173,7 @@ public class ScenariosFragment extends Fragment {
                     if (scenario.isCustom()) {
                         // Scenario custom: invia CUST: con i numeri delle zone
                         // Esempio: CUST:134 per attivare zone 1, 3 e 4
-                        String zoneNumbers = getZoneNumbersFromMask(scenario.getZoneMask());
-                        homeViewModel.armWithCustomZones(zoneNumbers);
+                        homeViewModel.armWithCustomZones(scenario.getZones());
                     } else {
                         // Scenario predefinito: invia SCE:XX
                         // Esempio: SCE:03 per attivare scenario 3
@@ -187,32 +186,6 @@ public class ScenariosFragment extends Fragment {
                 .show();
     }
 
-    /**
-     * Converte un bitmask delle zone in una stringa di numeri.
-     * <p>
-     * La stringa risultante contiene i numeri delle zone attive in ordine crescente,
-     * pronti per essere inviati con il comando CUST:.
-     * <p>
-     * Esempio di conversione:
-     * <ul>
-     *     <li>mask = 0b00001101 (13 decimale) → "134" (zone 1, 3, 4)</li>
-     *     <li>mask = 0b11111111 (255 decimale) → "12345678" (tutte le zone)</li>
-     *     <li>mask = 0b00000001 (1 decimale) → "1" (solo zona 1)</li>
-     * </ul>
-     *
-     * @param mask Bitmask delle zone (bit 0 = zona 1, bit 7 = zona 8)
-     * @return Stringa con i numeri delle zone concatenati
-     */
-    private String getZoneNumbersFromMask(int mask) {
-        StringBuilder sb = new StringBuilder();
-        for (int i = 1; i <= 8; i++) {
-            if ((mask & (1 << (i - 1))) != 0) {
-                sb.append(i);
-            }
-        }
-        return sb.toString();
-    }
-
     /**
      * Gestisce il long press su uno scenario.
      * <p>
@@ -30,8 +30,9 @@ import com.google.android.material.textfield.TextInputEditText;
 import com.google.android.material.textfield.TextInputLayout;
 
 import it.bhomealarm.R;
+import it.bhomealarm.model.repository.AlarmRepository;
+import it.bhomealarm.protocol.PhoneNumberUtils;
 import it.bhomealarm.util.Constants;
-import it.bhomealarm.util.PhoneNumberUtils;
 
 /**
  * Fragment per la configurazione del numero di telefono della centralina allarme.
@@ -287,8 +288,8 @@ public class SetupPhoneFragment extends Fragment {
     }
 
     /**
-     * Valida, normalizza e salva il numero di telefono nelle SharedPreferences.
-     * Se valido, naviga alla schermata home.
+     * Valida, normalizza e salva il numero di telefono nelle SharedPreferences
+     * e nella centrale attiva (creata se non esiste). Se valido, naviga alla schermata home.
      */
     private void saveAndContinue() {
         String phone = editPhone.getText() != null ? editPhone.getText().toString().trim() : "";
@@ -303,6 +304,8 @@ public class SetupPhoneFragment extends Fragment {
         prefs.edit()
                 .putString(Constants.PREF_ALARM_PHONE, normalized)
                 .apply();
+        AlarmRepository.getInstance(requireActivity().getApplication())
+                .saveActivePanelPhone(normalized);
 
         // Naviga a Home
         Navigation.findNavController(requireView())
@@ -28,6 +28,7 @@ import it.bhomealarm.R;
 import it.bhomealarm.controller.viewmodel.HomeViewModel;
 import it.bhomealarm.controller.viewmodel.ZonesViewModel;
 import it.bhomealarm.model.entity.Scenario;
+import it.bhomealarm.protocol.ZoneMask;
 import it.bhomealarm.view.adapter.ZonesAdapter;
 
 /**
@@ -181,7 +182,7 @@ public class ZonesFragment extends Fragment {
 
     /**
      * Configura gli observer per i LiveData del ViewModel.
-     * Osserva le zone, il conteggio selezioni, le zone selezionate e lo stato di salvataggio.
+     * Osserva le zone, le zone selezionate (e il loro conteggio) e lo stato di salvataggio.
      */
     private void observeData() {
         // Osserva la lista delle zone e aggiorna l'adapter
@@ -191,18 +192,13 @@ public class ZonesFragment extends Fragment {
             }
         });
 
-        // Osserva il conteggio delle zone selezionate e aggiorna il testo
-        viewModel.getSelectedCount().observe(getViewLifecycleOwner(), count -> {
-            if (count != null) {
+        // Osserva le zone selezionate: aggiorna il conteggio e solo le righe cambiate
+        viewModel.getSelectedZones().observe(getViewLifecycleOwner(), selectedZones -> {
+            if (selectedZones != null) {
+                int count = selectedZones.count();
                 textSelectedCount.setText(getResources().getQuantityString(
                         R.plurals.zones_selected_count, count, count));
                 updateSaveButtonState();
-            }
-        });
-
-        // Osserva le zone selezionate e aggiorna i checkbox nell'adapter
-        viewModel.getSelectedZones().observe(getViewLifecycleOwner(), selectedZones -> {
-            if (selectedZones != null) {
                 adapter.setSelectedZones(selectedZones);
             }
         });
@@ -278,8 +274,8 @@ public class ZonesFragment extends Fragment {
      * @param scenario Lo scenario appena salvato
      */
     private void showArmAfterSaveDialog(Scenario scenario) {
-        // Recupera la stringa dei numeri zone per il comando CUST:
-        String zoneNumbers = viewModel.getZoneNumbersString();
+        // Zone da inviare con il comando CUST:
+        ZoneMask zones = viewModel.getSelection();
 
         new MaterialAlertDialogBuilder(requireContext())
                 .setTitle(R.string.dialog_arm_after_save_title)
@@ -291,7 +287,7 @@ public class ZonesFragment extends Fragment {
                 })
                 .setPositiveButton(R.string.action_yes, (dialog, which) -> {
                     // Invia comando di attivazione e torna alla home
-                    homeViewModel.armWithCustomZones(zoneNumbers);
+                    homeViewModel.armWithCustomZones(zones);
                     Navigation.findNavController(requireView())
                             .popBackStack(R.id.homeFragment, false);
                 })
@@ -0,0 +1,89 @@
+package it.bhomealarm.protocol;
+
+import java.util.Objects;
+
+/**
+ * Esito decodificato di una risposta a comando (OK, STATUS, ERR o SYS), valore immutabile.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see SmsCodec#decodeResponse(String)
+ */
+public final class CommandResponse {
+
+    private final boolean success;
+    private final String status;
+    private final String scenario;
+    private final String zones;
+    private final String errorCode;
+
+    /**
+     * Crea un esito.
+     *
+     * @param success {@code true} se l'operazione ha avuto successo
+     * @param status stato del sistema (ARMED, DISARMED, ALARM, TAMPER, UNKNOWN), puo' essere null
+     * @param scenario scenario attivo, puo' essere null
+     * @param zones elenco zone attive (formato dipende dalla risposta), puo' essere null
+     * @param errorCode codice errore in caso di fallimento, puo' essere null
+     */
+    public CommandResponse(boolean success, String status, String scenario,
+                           String zones, String errorCode) {
+        this.success = success;
+        this.status = status;
+        this.scenario = scenario;
+        this.zones = zones;
+        this.errorCode = errorCode;
+    }
+
+    /**
+     * Crea un esito di fallimento con il solo codice errore.
+     *
+     * @param errorCode codice errore
+     * @return l'esito
+     */
+    public static CommandResponse failure(String errorCode) {
+        return new CommandResponse(false, null, null, null, errorCode);
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public String getScenario() {
+        return scenario;
+    }
+
+    public String getZones() {
+        return zones;
+    }
+
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CommandResponse)) return false;
+        CommandResponse other = (CommandResponse) o;
+        return success == other.success && Objects.equals(status, other.status)
+                && Objects.equals(scenario, other.scenario) && Objects.equals(zones, other.zones)
+                && Objects.equals(errorCode, other.errorCode);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(success, status, scenario, zones, errorCode);
+    }
+
+    @Override
+    public String toString() {
+        return "CommandResponse{success=" + success + ", status='" + status
+                + "', scenario='" + scenario + "', zones='" + zones
+                + "', errorCode='" + errorCode + "'}";
+    }
+}
@@ -0,0 +1,291 @@
+package it.bhomealarm.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Confronto precompilato tra un mittente SMS e uno o piu' numeri configurati.
+ * <p>
+ * Applica le stesse regole di {@link PhoneNumberUtils#matches(String, String)}
+ * (spazi, trattini e parentesi ignorati, prefisso +39/0039 rimosso, confronto
+ * sulle ultime 9 cifre o esatto per numeri piu' corti), ma:
+ * <ul>
+ *     <li>i numeri configurati vengono normalizzati una sola volta, alla
+ *         compilazione, e ridotti a una chiave {@code long} (cifre finali + lunghezza)</li>
+ *     <li>il mittente viene analizzato con un'unica scansione all'indietro,
+ *         senza espressioni regolari ne' allocazioni</li>
+ *     <li>la chiave viene cercata in una tabella hash ad indirizzamento aperto,
+ *         quindi il costo non dipende dal numero di numeri configurati</li>
+ * </ul>
+ * <p>
+ * I numeri configurati che contengono caratteri diversi da cifre (caso anomalo)
+ * non possono essere ridotti a chiave numerica e vengono confrontati con
+ * {@link PhoneNumberUtils#matches(String, String)}.
+ * <p>
+ * Le istanze sono immutabili e thread-safe: quando la configurazione cambia
+ * se ne compila una nuova.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see PhoneNumberUtils
+ */
+public final class CompiledPhoneMatcher {
+
+    /** Numero di cifre finali confrontate per i numeri lunghi. */
+    private static final int SUFFIX_DIGITS = 9;
+
+    /** Potenze di 10 per estrarre le ultime k cifre da una chiave. */
+    private static final long[] POW10 = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L,
+            1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L
+    };
+
+    /** Chiave "nessuna corrispondenza possibile" (mai presente in tabella). */
+    private static final long NO_KEY = 0L;
+
+    /** Matcher senza numeri configurati. */
+    private static final CompiledPhoneMatcher EMPTY = new CompiledPhoneMatcher(new String[0]);
+
+    /** Tabella hash: chiavi (0 = slot libero). */
+    private final long[] tableKeys;
+
+    /** Tabella hash: indice del numero configurato per ciascuna chiave. */
+    private final int[] tableIndexes;
+
+    /** Maschera per il calcolo dello slot (capacita' - 1). */
+    private final int tableMask;
+
+    /** Numeri configurati non numerici, confrontati con il percorso lento. */
+    private final String[] fallbackNumbers;
+
+    /** Indici dei numeri in {@link #fallbackNumbers}. */
+    private final int[] fallbackIndexes;
+
+    /** Numero di numeri configurati validi (non vuoti). */
+    private final int size;
+
+    private CompiledPhoneMatcher(String[] numbers) {
+        // Capacita' potenza di 2 con fattore di carico massimo 0.5
+        int capacity = Integer.highestOneBit(Math.max(2, numbers.length * 2) - 1) << 1;
+        tableKeys = new long[capacity];
+        tableIndexes = new int[capacity];
+        tableMask = capacity - 1;
+
+        List<String> fallback = new ArrayList<>(0);
+        List<Integer> fallbackIdx = new ArrayList<>(0);
+        int count = 0;
+
+        for (int i = 0; i < numbers.length; i++) {
+            String number = numbers[i];
+            if (PhoneNumberUtils.normalize(number).isEmpty()) {
+                continue;
+            }
+            count++;
+
+            // La chiave va calcolata sul numero originale: keyOf() normalizza gia'
+            long key = keyOf(number);
+            if (key == NO_KEY) {
+                fallback.add(number);
+                fallbackIdx.add(i);
+            } else {
+                insert(key, i);
+            }
+        }
+
+        size = count;
+        fallbackNumbers = fallback.toArray(new String[0]);
+        fallbackIndexes = new int[fallbackIdx.size()];
+        for (int i = 0; i < fallbackIndexes.length; i++) {
+            fallbackIndexes[i] = fallbackIdx.get(i);
+        }
+    }
+
+    /**
+     * Compila un matcher per i numeri indicati.
+     * <p>
+     * I numeri null o vuoti vengono ignorati (non corrispondono mai).
+     *
+     * @param numbers numeri configurati, in qualsiasi formato accettato da
+     *                {@link PhoneNumberUtils#normalize(String)}
+     * @return il matcher compilato
+     */
+    public static CompiledPhoneMatcher compile(String... numbers) {
+        if (numbers == null || numbers.length == 0) {
+            return EMPTY;
+        }
+        return new CompiledPhoneMatcher(numbers.clone());
+    }
+
+    /**
+     * Restituisce un matcher senza numeri configurati.
+     *
+     * @return matcher che non riconosce alcun mittente
+     */
+    public static CompiledPhoneMatcher empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Indica se il mittente corrisponde ad almeno uno dei numeri configurati.
+     *
+     * @param sender indirizzo del mittente (es. {@code SmsMessage.getOriginatingAddress()})
+     * @return {@code true} se corrisponde, {@code false} altrimenti o se null/vuoto
+     */
+    public boolean matches(CharSequence sender) {
+        return indexOf(sender) >= 0;
+    }
+
+    /**
+     * Restituisce la posizione, nell'array passato a {@link #compile(String...)},
+     * del numero configurato che corrisponde al mittente.
+     *
+     * @param sender indirizzo del mittente
+     * @return l'indice del numero corrispondente, oppure -1 se nessuno corrisponde
+     */
+    public int indexOf(CharSequence sender) {
+        if (sender == null || size == 0) {
+            return -1;
+        }
+
+        long key = keyOf(sender);
+        if (key != NO_KEY) {
+            int slot = slotOf(key);
+            long k;
+            while ((k = tableKeys[slot]) != NO_KEY) {
+                if (k == key) {
+                    return tableIndexes[slot];
+                }
+                slot = (slot + 1) & tableMask;
+            }
+        }
+
+        // Percorso lento solo per numeri configurati non numerici
+        if (fallbackNumbers.length > 0) {
+            String s = sender.toString();
+            for (int i = 0; i < fallbackNumbers.length; i++) {
+                if (PhoneNumberUtils.matches(s, fallbackNumbers[i])) {
+                    return fallbackIndexes[i];
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Numero di numeri configurati validi.
+     *
+     * @return numeri non vuoti passati a {@link #compile(String...)}
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Indica se non e' configurato alcun numero.
+     *
+     * @return {@code true} se il matcher non puo' riconoscere alcun mittente
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void insert(long key, int index) {
+        int slot = slotOf(key);
+        long k;
+        while ((k = tableKeys[slot]) != NO_KEY) {
+            if (k == key) {
+                return; // Numero duplicato: vale il primo
+            }
+            slot = (slot + 1) & tableMask;
+        }
+        tableKeys[slot] = key;
+        tableIndexes[slot] = index;
+    }
+
+    private int slotOf(long key) {
+        int h = (int) (key ^ (key >>> 32));
+        return (h * 0x9E3779B9) >>> 16 & tableMask;
+    }
+
+    /**
+     * Calcola la chiave di confronto di un numero con un'unica scansione all'indietro.
+     * <p>
+     * La chiave codifica la lunghezza confrontata L (min(lunghezza normalizzata, 9))
+     * nei 32 bit alti e il valore delle ultime L cifre in quelli bassi: due numeri
+     * corrispondono secondo {@link PhoneNumberUtils#matches(String, String)} se e solo
+     * se hanno la stessa chiave.
+     *
+     * @param s il numero, non normalizzato
+     * @return la chiave, oppure {@link #NO_KEY} se il numero e' vuoto dopo la
+     *         normalizzazione o se le cifre confrontate contengono caratteri non numerici
+     */
+    static long keyOf(CharSequence s) {
+        long value = 0;
+        int significant = 0;         // Caratteri non ignorati
+        int firstNonDigit = -1;      // Posizione (dalla fine) del primo non-cifra tra gli ultimi 9
+        int c0 = -1, c1 = -1, c2 = -1, c3 = -1; // Primi 4 caratteri significativi
+
+        for (int i = s.length() - 1; i >= 0; i--) {
+            char c = s.charAt(i);
+            if (isIgnored(c)) {
+                continue;
+            }
+            if (significant < SUFFIX_DIGITS) {
+                if (c >= '0' && c <= '9') {
+                    value += (c - '0') * POW10[significant];
+                } else if (firstNonDigit < 0) {
+                    firstNonDigit = significant;
+                }
+            }
+            significant++;
+            c3 = c2;
+            c2 = c1;
+            c1 = c0;
+            c0 = c;
+        }
+
+        // Prefisso internazionale italiano (stesso ordine di PhoneNumberUtils.normalize)
+        int prefix = 0;
+        if (c0 == '+' && c1 == '3' && c2 == '9') {
+            prefix = 3;
+        } else if (c0 == '0' && c1 == '0' && c2 == '3' && c3 == '9') {
+            prefix = 4;
+        }
+
+        int length = significant - prefix;
+        if (length <= 0) {
+            return NO_KEY;
+        }
+        int compared = Math.min(length, SUFFIX_DIGITS);
+        if (firstNonDigit >= 0 && firstNonDigit < compared) {
+            return NO_KEY;
+        }
+        return ((long) compared << 32) | (value % POW10[compared]);
+    }
+
+    /**
+     * Caratteri rimossi da {@link PhoneNumberUtils#normalize(String)}:
+     * spazi ({@code \s}), trattini e parentesi.
+     */
+    private static boolean isIgnored(char c) {
+        switch (c) {
+            case ' ':
+            case '\t':
+            case '\n':
+            case '\u000B':
+            case '\f':
+            case '\r':
+            case '-':
+            case '(':
+            case ')':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledPhoneMatcher{size=" + size + '}';
+    }
+}
@@ -0,0 +1,107 @@
+package it.bhomealarm.protocol;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Dati decodificati da una risposta CONF1 (valore immutabile).
+ * <p>
+ * CONF1 contiene le informazioni base del sistema:
+ * <ul>
+ *     <li>Versione firmware</li>
+ *     <li>Tipo utente (MAIN o secondario)</li>
+ *     <li>Flags permessi dell'utente</li>
+ *     <li>Elenco delle 8 zone con i rispettivi nomi</li>
+ * </ul>
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see SmsCodec#decodeConf1(String)
+ */
+public final class Conf1Response {
+
+    private final String version;
+    private final boolean main;
+    private final boolean rx1;
+    private final boolean rx2;
+    private final boolean verify;
+    private final boolean cmdOnOff;
+    private final List<ZoneEntry> zones;
+
+    /**
+     * Crea una risposta CONF1.
+     *
+     * @param version versione firmware (es. "08.99"), {@code null} se assente
+     * @param main {@code true} se l'utente e' il principale (MAIN)
+     * @param rx1 permesso ricezione notifiche RX1 (allarme)
+     * @param rx2 permesso ricezione notifiche RX2 (avvisi)
+     * @param verify permesso ricezione conferme operazioni
+     * @param cmdOnOff permesso invio comandi ON/OFF
+     * @param zones zone configurate; la lista non viene copiata e non deve
+     *              essere modificata dopo la costruzione
+     */
+    public Conf1Response(String version, boolean main, boolean rx1, boolean rx2,
+                         boolean verify, boolean cmdOnOff, List<ZoneEntry> zones) {
+        this.version = version;
+        this.main = main;
+        this.rx1 = rx1;
+        this.rx2 = rx2;
+        this.verify = verify;
+        this.cmdOnOff = cmdOnOff;
+        this.zones = Collections.unmodifiableList(zones);
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public boolean isMain() {
+        return main;
+    }
+
+    public boolean isRx1() {
+        return rx1;
+    }
+
+    public boolean isRx2() {
+        return rx2;
+    }
+
+    public boolean isVerify() {
+        return verify;
+    }
+
+    public boolean isCmdOnOff() {
+        return cmdOnOff;
+    }
+
+    /**
+     * @return le zone decodificate, in ordine di apparizione (lista non modificabile)
+     */
+    public List<ZoneEntry> getZones() {
+        return zones;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Conf1Response)) return false;
+        Conf1Response other = (Conf1Response) o;
+        return main == other.main && rx1 == other.rx1 && rx2 == other.rx2
+                && verify == other.verify && cmdOnOff == other.cmdOnOff
+                && Objects.equals(version, other.version) && zones.equals(other.zones);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(version, main, rx1, rx2, verify, cmdOnOff, zones);
+    }
+
+    @Override
+    public String toString() {
+        return "Conf1Response{version='" + version + "', main=" + main
+                + ", rx1=" + rx1 + ", rx2=" + rx2 + ", verify=" + verify
+                + ", cmdOnOff=" + cmdOnOff + ", zones=" + zones + '}';
+    }
+}
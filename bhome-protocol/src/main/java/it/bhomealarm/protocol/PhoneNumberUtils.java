@@ -1,6 +1,4 @@
-package it.bhomealarm.util;
-
-import android.text.TextUtils;
+package it.bhomealarm.protocol;
 
 /**
  * Classe di utilita per la gestione dei numeri telefonici.
@@ -46,7 +44,7 @@ public final class PhoneNumberUtils {
      *         oppure stringa vuota se il parametro e' null o vuoto
      */
     public static String normalize(String phoneNumber) {
-        if (TextUtils.isEmpty(phoneNumber)) {
+        if (isEmpty(phoneNumber)) {
             return "";
         }
 
@@ -84,7 +82,7 @@ public final class PhoneNumberUtils {
         String n1 = normalize(number1);
         String n2 = normalize(number2);
 
-        if (TextUtils.isEmpty(n1) || TextUtils.isEmpty(n2)) {
+        if (isEmpty(n1) || isEmpty(n2)) {
             return false;
         }
 
@@ -111,7 +109,7 @@ public final class PhoneNumberUtils {
      *         {@code false} se null, vuoto, troppo corto o contiene caratteri non validi
      */
     public static boolean isValid(String phoneNumber) {
-        if (TextUtils.isEmpty(phoneNumber)) {
+        if (isEmpty(phoneNumber)) {
             return false;
         }
 
@@ -140,7 +138,7 @@ public final class PhoneNumberUtils {
     public static String format(String phoneNumber) {
         String normalized = normalize(phoneNumber);
 
-        if (TextUtils.isEmpty(normalized)) {
+        if (isEmpty(normalized)) {
             return "";
         }
 
@@ -172,7 +170,7 @@ public final class PhoneNumberUtils {
      *         oppure stringa vuota se null
      */
     public static String mask(String phoneNumber) {
-        if (TextUtils.isEmpty(phoneNumber)) {
+        if (isEmpty(phoneNumber)) {
             return "";
         }
 
@@ -184,4 +182,17 @@ public final class PhoneNumberUtils {
 
         return "***" + normalized.substring(normalized.length() - 4);
     }
+
+    /**
+     * Verifica se una stringa e' null o vuota.
+     * <p>
+     * Equivalente a {@code TextUtils.isEmpty()} ma senza dipendenze Android,
+     * cosi' che la classe possa essere usata anche fuori dall'app (es. gateway lato server).
+     *
+     * @param s la stringa da verificare
+     * @return {@code true} se la stringa e' null o di lunghezza zero
+     */
+    private static boolean isEmpty(String s) {
+        return s == null || s.isEmpty();
+    }
 }
@@ -0,0 +1,226 @@
+package it.bhomealarm.protocol;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ricostruzione delle risposte CONF divise dalla centrale in piu' SMS.
+ * <p>
+ * Una risposta CONF lunga puo' arrivare in SMS indipendenti: il primo ha il
+ * prefisso ({@code CONF1:...&}), i successivi proseguono i campi senza prefisso
+ * e l'ultimo chiude la risposta. L'assemblatore mantiene un buffer per mittente
+ * e, per ogni SMS ricevuto con {@link #offer(String, String, long)}, restituisce:
+ * <ul>
+ *     <li>{@link State#PROGRESS}: la risposta non e' ancora completa; il corpo
+ *         contiene i soli campi completi ricevuti finora, decodificabili con
+ *         {@link SmsCodec} per mostrare risultati parziali (ad es. le zone
+ *         gia' ricevute);</li>
+ *     <li>{@link State#COMPLETE}: la risposta e' completa ({@link SmsCodec#isComplete(String)}),
+ *         oppure l'SMS non e' una risposta CONF e non ha frammenti da attendere;</li>
+ *     <li>{@link State#INCOMPLETE}: la risposta e' stata chiusa senza essere
+ *         completa, per scadenza del tempo di attesa ({@link #expire(long)}),
+ *         per limite di memoria o perche' il mittente ha iniziato un'altra risposta.</li>
+ * </ul>
+ * La memoria e' limitata: al massimo {@code maxLength} caratteri per mittente e
+ * {@code maxSenders} buffer aperti (oltre, il buffer piu' vecchio viene chiuso).
+ * <p>
+ * Non thread-safe: l'accesso va sincronizzato dal chiamante.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see SmsCodec#isComplete(String)
+ */
+public final class ResponseAssembler {
+
+    /**
+     * Stato di una risposta restituita dall'assemblatore.
+     */
+    public enum State {
+        /** In attesa di altri frammenti. */
+        PROGRESS,
+        /** Risposta completa. */
+        COMPLETE,
+        /** Risposta chiusa senza tutti i campi attesi. */
+        INCOMPLETE
+    }
+
+    private final long timeoutMs;
+    private final int maxLength;
+    private final int maxSenders;
+
+    /** Buffer aperti per mittente, in ordine di apertura. */
+    private final Map<String, Buffer> buffers = new LinkedHashMap<>();
+
+    /**
+     * @param timeoutMs attesa massima tra due frammenti della stessa risposta
+     * @param maxLength caratteri massimi di una risposta ricostruita
+     * @param maxSenders mittenti con una risposta in ricostruzione contemporaneamente
+     */
+    public ResponseAssembler(long timeoutMs, int maxLength, int maxSenders) {
+        this.timeoutMs = timeoutMs;
+        this.maxLength = maxLength;
+        this.maxSenders = maxSenders;
+    }
+
+    /**
+     * Aggiunge un SMS ricevuto.
+     *
+     * @param sender mittente (gia' normalizzato: i frammenti vengono uniti per mittente)
+     * @param body corpo dell'SMS
+     * @param now timestamp di ricezione
+     * @return le risposte prodotte, in ordine (almeno una: quella a cui appartiene l'SMS ricevuto)
+     */
+    public List<Assembled> offer(String sender, String body, long now) {
+        List<Assembled> out = new ArrayList<>(2);
+        Buffer buffer = buffers.get(sender);
+        ResponseType type = SmsCodec.identify(body);
+
+        if (type == null && buffer != null) {
+            // Frammento successivo della risposta in corso
+            if (buffer.text.length() + body.length() > maxLength) {
+                buffers.remove(sender);
+                out.add(buffer.close(sender, State.INCOMPLETE));
+                out.add(new Assembled(sender, body, 1, State.COMPLETE));
+                return out;
+            }
+            buffer.append(body, now + timeoutMs);
+            out.add(settle(sender, buffer));
+            return out;
+        }
+
+        if (buffer != null) {
+            // Nuova risposta: quella in corso non ricevera' altri frammenti
+            buffers.remove(sender);
+            out.add(buffer.close(sender, State.INCOMPLETE));
+        }
+        if (type == null || !type.isConfiguration() || SmsCodec.isComplete(body) || body.length() >= maxLength) {
+            State state = type == null || SmsCodec.isComplete(body) ? State.COMPLETE : State.INCOMPLETE;
+            out.add(new Assembled(sender, body, 1, state));
+            return out;
+        }
+
+        if (buffers.size() >= maxSenders) {
+            Iterator<Map.Entry<String, Buffer>> oldest = buffers.entrySet().iterator();
+            Map.Entry<String, Buffer> evicted = oldest.next();
+            oldest.remove();
+            out.add(evicted.getValue().close(evicted.getKey(), State.INCOMPLETE));
+        }
+        buffer = new Buffer();
+        buffer.append(body, now + timeoutMs);
+        buffers.put(sender, buffer);
+        out.add(buffer.progress(sender));
+        return out;
+    }
+
+    /**
+     * Chiude le risposte che non hanno ricevuto frammenti entro il tempo di attesa.
+     *
+     * @param now timestamp corrente
+     * @return le risposte chiuse ({@link State#INCOMPLETE})
+     */
+    public List<Assembled> expire(long now) {
+        List<Assembled> out = new ArrayList<>();
+        Iterator<Map.Entry<String, Buffer>> it = buffers.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Buffer> entry = it.next();
+            if (now >= entry.getValue().deadline) {
+                it.remove();
+                out.add(entry.getValue().close(entry.getKey(), State.INCOMPLETE));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * @return timestamp della prossima scadenza, o {@link Long#MAX_VALUE} se nessuna risposta e' in ricostruzione
+     */
+    public long nextDeadline() {
+        long next = Long.MAX_VALUE;
+        for (Buffer buffer : buffers.values()) {
+            next = Math.min(next, buffer.deadline);
+        }
+        return next;
+    }
+
+    private Assembled settle(String sender, Buffer buffer) {
+        String text = buffer.text.toString();
+        if (SmsCodec.isComplete(text)) {
+            buffers.remove(sender);
+            return new Assembled(sender, text, buffer.fragments, State.COMPLETE);
+        }
+        return buffer.progress(sender);
+    }
+
+    /** Risposta in ricostruzione. */
+    private static final class Buffer {
+        final StringBuilder text = new StringBuilder(SmsEncoding.GSM7_SINGLE * 2);
+        int fragments;
+        long deadline;
+
+        /** Fine dell'ultimo campo completo: i campi vengono estratti man mano che arrivano. */
+        int fieldsEnd;
+
+        void append(String body, long deadline) {
+            int from = text.length();
+            text.append(body);
+            fragments++;
+            this.deadline = deadline;
+            int last = text.lastIndexOf(String.valueOf(SmsProtocol.SEP_FIELD));
+            if (last >= from) {
+                fieldsEnd = last + 1;
+            } else if (fieldsEnd == 0) {
+                // Nessun campo completo: solo il prefisso, per identificare la risposta
+                fieldsEnd = text.indexOf(String.valueOf(SmsProtocol.SEP_COMMAND)) + 1;
+            }
+        }
+
+        Assembled progress(String sender) {
+            return new Assembled(sender, text.substring(0, fieldsEnd), fragments, State.PROGRESS);
+        }
+
+        Assembled close(String sender, State state) {
+            return new Assembled(sender, text.toString(), fragments, state);
+        }
+    }
+
+    /**
+     * Risposta (parziale o finale) prodotta dall'assemblatore. Immutabile.
+     */
+    public static final class Assembled {
+
+        private final String sender;
+        private final String body;
+        private final int fragments;
+        private final State state;
+
+        Assembled(String sender, String body, int fragments, State state) {
+            this.sender = sender;
+            this.body = body;
+            this.fragments = fragments;
+            this.state = state;
+        }
+
+        /** @return mittente */
+        public String getSender() { return sender; }
+
+        /** @return corpo ricostruito (per {@link State#PROGRESS}, solo i campi completi) */
+        public String getBody() { return body; }
+
+        /** @return SMS ricevuti per questa risposta */
+        public int getFragments() { return fragments; }
+
+        /** @return stato della risposta */
+        public State getState() { return state; }
+
+        /** @return true se non arriveranno altri frammenti */
+        public boolean isFinal() { return state != State.PROGRESS; }
+
+        @Override
+        public String toString() {
+            return "Assembled{" + state + ", fragments=" + fragments + ", body='" + body + "'}";
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package it.bhomealarm.protocol;
+
+/**
+ * Tipi di risposta SMS riconosciuti dal {@link SmsCodec}.
+ * <p>
+ * Il formato multilinea {@code SYS: ON/OFF} viene identificato come {@link #STATUS}.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see SmsCodec#identify(String)
+ */
+public enum ResponseType {
+
+    /** Configurazione base: versione, flags, zone. */
+    CONF1,
+
+    /** Scenari 1-8. */
+    CONF2,
+
+    /** Scenari 9-16. */
+    CONF3,
+
+    /** Utenti 1-8 e utente Joker. */
+    CONF4,
+
+    /** Utenti 9-16. */
+    CONF5,
+
+    /** Conferma operazione completata. */
+    OK,
+
+    /** Stato corrente del sistema (formato STATUS: o SYS:). */
+    STATUS,
+
+    /** Errore nell'esecuzione del comando. */
+    ERROR;
+
+    /**
+     * Indica se il tipo appartiene alla sequenza di configurazione CONF1-5.
+     *
+     * @return {@code true} per CONF1..CONF5
+     */
+    public boolean isConfiguration() {
+        return ordinal() <= CONF5.ordinal();
+    }
+}
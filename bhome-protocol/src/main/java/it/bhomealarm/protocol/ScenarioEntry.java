@@ -0,0 +1,60 @@
+package it.bhomealarm.protocol;
+
+import java.util.Objects;
+
+/**
+ * Scenario decodificato da una risposta CONF2 o CONF3 (valore immutabile).
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see SmsCodec#decodeScenarios(String)
+ */
+public final class ScenarioEntry {
+
+    private final int slot;
+    private final String name;
+    private final boolean enabled;
+
+    /**
+     * Crea uno scenario.
+     *
+     * @param slot numero dello scenario (1-16)
+     * @param name nome assegnato allo scenario ("NE" se non abilitato)
+     * @param enabled {@code true} se lo scenario e' abilitato
+     */
+    public ScenarioEntry(int slot, String name, boolean enabled) {
+        this.slot = slot;
+        this.name = name;
+        this.enabled = enabled;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ScenarioEntry)) return false;
+        ScenarioEntry other = (ScenarioEntry) o;
+        return slot == other.slot && enabled == other.enabled && Objects.equals(name, other.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(slot, name, enabled);
+    }
+
+    @Override
+    public String toString() {
+        return "ScenarioEntry{slot=" + slot + ", name='" + name + "', enabled=" + enabled + '}';
+    }
+}
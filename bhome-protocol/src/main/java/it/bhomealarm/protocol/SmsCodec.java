@@ -0,0 +1,701 @@
+package it.bhomealarm.protocol;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * Codec del protocollo SMS del sistema di allarme BHome.
+ * <p>
+ * Codifica i comandi da inviare alla centrale e decodifica ogni tipo di
+ * risposta in oggetti valore immutabili. Non dipende da Android: lo stesso
+ * codice gira nell'app, sul gateway SMS lato server e nei test JVM.
+ * <p>
+ * Comandi supportati:
+ * <ul>
+ *     <li><b>CONFn?</b> - Richiesta configurazione (1-5)</li>
+ *     <li><b>SCE:nn</b> - Attivazione con scenario</li>
+ *     <li><b>CUST:nnn</b> - Attivazione con zone personalizzate ({@link ZoneMask})</li>
+ *     <li><b>SET:Unnpppp</b> - Permessi utente</li>
+ *     <li><b>SYS OFF</b> / <b>SYS?</b> - Disattivazione / richiesta stato</li>
+ * </ul>
+ * <p>
+ * Risposte supportate:
+ * <ul>
+ *     <li><b>CONF1:</b> Configurazione base (versione, flags, zone)</li>
+ *     <li><b>CONF2/CONF3:</b> Scenari di attivazione (1-8 e 9-16)</li>
+ *     <li><b>CONF4/CONF5:</b> Utenti autorizzati (1-8 e 9-16)</li>
+ *     <li><b>OK:</b> Conferma operazione completata</li>
+ *     <li><b>STATUS:</b> Stato corrente del sistema</li>
+ *     <li><b>ERR:</b> Errore nell'esecuzione del comando</li>
+ *     <li><b>SYS:</b> Formato alternativo per lo stato del sistema</li>
+ * </ul>
+ * <p>
+ * Il parsing avviene in un'unica passata tramite {@link SmsTokenizer}, lavorando
+ * su offset all'interno del messaggio originale: non vengono usati {@code split}
+ * ne' espressioni regolari e le stringhe vengono create solo per i valori estratti.
+ * Tutti i metodi sono statici e thread-safe.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see SmsProtocol
+ * @see SmsTokenizer
+ */
+public final class SmsCodec {
+
+    /**
+     * Costruttore privato per impedire l'istanziazione della classe.
+     */
+    private SmsCodec() {} // No instantiation
+
+    // ========== Encoding ==========
+
+    /**
+     * Codifica la richiesta di una parte della configurazione.
+     *
+     * @param part parte richiesta (1-5)
+     * @return il comando (es. "CONF3?")
+     * @throws IllegalArgumentException se la parte non e' compresa tra 1 e 5
+     */
+    public static String encodeConfRequest(int part) {
+        switch (part) {
+            case 1: return SmsProtocol.CMD_CONF1;
+            case 2: return SmsProtocol.CMD_CONF2;
+            case 3: return SmsProtocol.CMD_CONF3;
+            case 4: return SmsProtocol.CMD_CONF4;
+            case 5: return SmsProtocol.CMD_CONF5;
+            default: throw new IllegalArgumentException("Invalid CONF part: " + part);
+        }
+    }
+
+    /**
+     * Codifica il comando di attivazione con scenario ({@link SmsProtocol#CMD_ARM_SCENARIO}).
+     *
+     * @param scenario numero scenario (1-16)
+     * @return il comando (es. "SCE:05")
+     */
+    public static String encodeArmScenario(int scenario) {
+        StringBuilder sb = new StringBuilder(6).append("SCE:");
+        appendTwoDigits(sb, scenario);
+        return sb.toString();
+    }
+
+    /**
+     * Codifica il comando di attivazione con zone personalizzate
+     * ({@link SmsProtocol#CMD_ARM_CUSTOM}).
+     *
+     * @param zones numeri delle zone da attivare concatenati (es. "134")
+     * @return il comando (es. "CUST:134")
+     * @see #encodeArmCustom(ZoneMask)
+     */
+    public static String encodeArmCustom(String zones) {
+        return "CUST:" + zones;
+    }
+
+    /**
+     * Codifica il comando di attivazione con zone personalizzate
+     * ({@link SmsProtocol#CMD_ARM_CUSTOM}).
+     *
+     * @param zones zone da attivare
+     * @return il comando (es. "CUST:134" per le zone 1, 3 e 4)
+     */
+    public static String encodeArmCustom(ZoneMask zones) {
+        return "CUST:" + zones.toDigits();
+    }
+
+    /**
+     * Codifica il comando di disattivazione.
+     *
+     * @return {@link SmsProtocol#CMD_DISARM}
+     */
+    public static String encodeDisarm() {
+        return SmsProtocol.CMD_DISARM;
+    }
+
+    /**
+     * Codifica la richiesta di stato.
+     *
+     * @return {@link SmsProtocol#CMD_STATUS}
+     */
+    public static String encodeStatusRequest() {
+        return SmsProtocol.CMD_STATUS;
+    }
+
+    /**
+     * Codifica il comando di configurazione permessi utente
+     * ({@link SmsProtocol#CMD_SET_USER}).
+     * <p>
+     * I permessi sono scritti come 4 cifre binarie, dal bit piu' significativo
+     * (RX1) al meno significativo (CMD ON/OFF).
+     *
+     * @param slot numero utente (1-16)
+     * @param permissions bitmask dei permessi (0-15)
+     * @return il comando (es. "SET:U031010")
+     */
+    public static String encodeSetUser(int slot, int permissions) {
+        StringBuilder sb = new StringBuilder(11).append("SET:U");
+        appendTwoDigits(sb, slot);
+        for (int bit = 3; bit >= 0; bit--) {
+            sb.append((permissions & (1 << bit)) != 0 ? '1' : '0');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Restituisce i tipi di risposta che la centrale puo' inviare a un comando.
+     * <p>
+     * Ogni comando puo' ricevere {@link ResponseType#ERROR}. Le richieste di
+     * configurazione attendono la sola parte richiesta, la richiesta di stato
+     * uno {@link ResponseType#STATUS}; attivazione e disattivazione rispondono
+     * con {@link ResponseType#OK} o con lo stato aggiornato, i permessi utente
+     * con {@link ResponseType#OK}.
+     *
+     * @param command il comando inviato
+     * @return i tipi attesi (solo ERROR per un comando sconosciuto o null)
+     */
+    public static EnumSet<ResponseType> expectedResponses(String command) {
+        EnumSet<ResponseType> types = EnumSet.of(ResponseType.ERROR);
+        if (command == null) {
+            return types;
+        }
+        if (SmsProtocol.CMD_CONF1.equals(command)) {
+            types.add(ResponseType.CONF1);
+        } else if (SmsProtocol.CMD_CONF2.equals(command)) {
+            types.add(ResponseType.CONF2);
+        } else if (SmsProtocol.CMD_CONF3.equals(command)) {
+            types.add(ResponseType.CONF3);
+        } else if (SmsProtocol.CMD_CONF4.equals(command)) {
+            types.add(ResponseType.CONF4);
+        } else if (SmsProtocol.CMD_CONF5.equals(command)) {
+            types.add(ResponseType.CONF5);
+        } else if (SmsProtocol.CMD_STATUS.equals(command)) {
+            types.add(ResponseType.STATUS);
+        } else if (command.startsWith("SCE:") || command.startsWith("CUST:")
+                || SmsProtocol.CMD_DISARM.equals(command)) {
+            types.add(ResponseType.OK);
+            types.add(ResponseType.STATUS);
+        } else if (command.startsWith("SET:")) {
+            types.add(ResponseType.OK);
+        }
+        return types;
+    }
+
+    /**
+     * Accoda un intero con almeno due cifre, come {@code %02d}.
+     */
+    private static void appendTwoDigits(StringBuilder sb, int value) {
+        if (value >= 0 && value < 10) {
+            sb.append('0');
+        }
+        sb.append(value);
+    }
+
+    // ========== Decoding ==========
+
+    /**
+     * Identifica il tipo di risposta SMS in base al prefisso.
+     *
+     * @param response il messaggio SMS da identificare
+     * @return il tipo di risposta, oppure {@code null} se non riconosciuto
+     *         o se il messaggio e' null
+     */
+    public static ResponseType identify(String response) {
+        if (response == null) return null;
+
+        if (response.startsWith(SmsProtocol.RESP_CONF1)) return ResponseType.CONF1;
+        if (response.startsWith(SmsProtocol.RESP_CONF2)) return ResponseType.CONF2;
+        if (response.startsWith(SmsProtocol.RESP_CONF3)) return ResponseType.CONF3;
+        if (response.startsWith(SmsProtocol.RESP_CONF4)) return ResponseType.CONF4;
+        if (response.startsWith(SmsProtocol.RESP_CONF5)) return ResponseType.CONF5;
+        if (response.startsWith(SmsProtocol.RESP_OK)) return ResponseType.OK;
+        if (response.startsWith(SmsProtocol.RESP_STATUS)) return ResponseType.STATUS;
+        if (response.startsWith(SmsProtocol.RESP_ERROR)) return ResponseType.ERROR;
+
+        // Formato alternativo: SYS: ON/OFF (risposta stato reale)
+        if (response.startsWith(SmsProtocol.RESP_SYS) || response.startsWith(SmsProtocol.RESP_SYS_SPACED)) {
+            return ResponseType.STATUS;
+        }
+
+        return null;
+    }
+
+    /**
+     * Verifica se una risposta SMS indica che ci sono altri messaggi in arrivo
+     * (termina con '&amp;').
+     *
+     * @param response il messaggio SMS da verificare
+     * @return {@code true} se il messaggio termina con il separatore campo
+     */
+    public static boolean hasContinuation(String response) {
+        return response != null && !response.isEmpty()
+                && response.charAt(response.length() - 1) == SmsProtocol.SEP_FIELD;
+    }
+
+    /**
+     * Verifica se una risposta SMS e' terminata correttamente (termina con '#').
+     *
+     * @param response il messaggio SMS da verificare
+     * @return {@code true} se il messaggio termina con il terminatore
+     */
+    public static boolean isTerminated(String response) {
+        return response != null && !response.isEmpty()
+                && response.charAt(response.length() - 1) == SmsProtocol.SEP_END;
+    }
+
+    /**
+     * Verifica se una risposta CONF contiene tutti i campi attesi: e' terminata
+     * ('#') oppure contiene, chiuso da '&amp;', l'ultimo campo della sua parte
+     * ({@code Z8} per CONF1, {@code S08}/{@code S16} per CONF2/CONF3,
+     * {@code R08} o {@code RJO} per CONF4, {@code RJO} per CONF5).
+     * Le risposte diverse da CONF sono sempre complete.
+     * <p>
+     * Una risposta CONF incompleta e' stata divisa dalla centrale in piu' SMS:
+     * i successivi non hanno prefisso e proseguono i campi.
+     *
+     * @param response il messaggio SMS da verificare
+     * @return {@code true} se non sono attesi altri frammenti
+     */
+    public static boolean isComplete(String response) {
+        ResponseType type = identify(response);
+        if (type == null || !type.isConfiguration() || isTerminated(response)) {
+            return type != null;
+        }
+        if (!hasContinuation(response)) {
+            return false; // Ultimo campo troncato
+        }
+        switch (type) {
+            case CONF1: return hasField(response, "Z8");
+            case CONF2: return hasField(response, "S08");
+            case CONF3: return hasField(response, "S16");
+            case CONF4: return hasField(response, "R08") || hasField(response, SmsProtocol.USER_JOKER_PREFIX);
+            default: return hasField(response, SmsProtocol.USER_JOKER_PREFIX);
+        }
+    }
+
+    /**
+     * Indica se la risposta contiene un campo {@code key=valore} (dopo il prefisso o dopo un '&amp;').
+     */
+    private static boolean hasField(String response, String key) {
+        int from = response.indexOf(SmsProtocol.SEP_COMMAND) + 1;
+        int index;
+        while ((index = response.indexOf(key, from)) >= 0) {
+            int end = index + key.length();
+            char before = response.charAt(index - 1);
+            if ((before == SmsProtocol.SEP_FIELD || before == SmsProtocol.SEP_COMMAND)
+                    && end < response.length() && response.charAt(end) == SmsProtocol.SEP_ASSIGN) {
+                return true;
+            }
+            from = end;
+        }
+        return false;
+    }
+
+    /**
+     * Calcola l'impronta del contenuto di una risposta CONF (FNV-1a a 64 bit).
+     * <p>
+     * Il terminatore '#' finale e gli spazi in coda sono esclusi: la stessa
+     * configurazione ha la stessa impronta anche se la risposta e' arrivata
+     * in piu' SMS o senza terminatore. Serve a riconoscere le sezioni che non
+     * sono cambiate dall'ultima sincronizzazione.
+     *
+     * @param response il messaggio SMS ricevuto dal sistema
+     * @return impronta del contenuto, mai 0 (riservato a "impronta sconosciuta");
+     *         0 se il messaggio e' null
+     */
+    public static long contentHash(String response) {
+        if (response == null) {
+            return 0L;
+        }
+        int end = response.length();
+        while (end > 0 && (Character.isWhitespace(response.charAt(end - 1))
+                || response.charAt(end - 1) == SmsProtocol.SEP_END)) {
+            end--;
+        }
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < end; i++) {
+            hash ^= response.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash != 0L ? hash : 1L;
+    }
+
+    /**
+     * Decodifica una risposta CONF1.
+     * <p>
+     * Formato atteso: {@code CONF1:VV.VV&FLAGS.PPPP&Z1=nome1&Z2=nome2&...&Z8=nome8&}
+     * <p>
+     * Dove:
+     * <ul>
+     *     <li>VV.VV = versione firmware</li>
+     *     <li>FLAGS = tipo utente (MAIN o altro)</li>
+     *     <li>PPPP = 4 bit permessi (rx1, rx2, verify, cmdOnOff)</li>
+     *     <li>Zn=nome = nome della zona n (1-8)</li>
+     * </ul>
+     *
+     * @param response il messaggio SMS ricevuto dal sistema
+     * @return i dati estratti, oppure {@code null} se il messaggio e' null
+     *         o non inizia con "CONF1:"
+     */
+    public static Conf1Response decodeConf1(String response) {
+        if (response == null || !response.startsWith(SmsProtocol.RESP_CONF1)) {
+            return null;
+        }
+
+        String version = null;
+        boolean main = false;
+        boolean rx1 = false, rx2 = false, verify = false, cmdOnOff = false;
+        List<ZoneEntry> zones = new ArrayList<>(SmsProtocol.ZONE_COUNT);
+
+        // Salta il prefisso "CONF1:" e l'eventuale terminatore
+        int start = SmsProtocol.RESP_CONF1.length();
+        int end = SmsTokenizer.stripTerminator(response, start, response.length());
+
+        SmsTokenizer fields = new SmsTokenizer().reset(response, start, end, SmsProtocol.SEP_FIELD);
+        while (fields.nextField()) {
+            if (fields.isFieldEmpty()) continue;
+
+            int fieldStart = fields.fieldStart();
+            int fieldEnd = fields.fieldEnd();
+            int dot = fields.indexOf(SmsProtocol.SEP_FLAGS);
+            boolean hasAssign = fields.contains(SmsProtocol.SEP_ASSIGN);
+
+            if (dot >= 0 && !hasAssign) {
+                // FLAGS.PPPP o versione
+                if (SmsTokenizer.isDigits(response, fieldStart, dot)
+                        && SmsTokenizer.isDigits(response, dot + 1, fieldEnd)) {
+                    // Versione firmware (\d+\.\d+)
+                    version = fields.fieldString();
+                } else if (hasFlagsContent(response, fieldStart, fieldEnd)) {
+                    // FLAGS.PPPP
+                    main = SmsTokenizer.regionEquals(response, fieldStart, dot, "MAIN");
+
+                    int permStart = dot + 1;
+                    int permEnd = SmsTokenizer.indexOf(response, SmsProtocol.SEP_FLAGS, permStart, fieldEnd);
+                    if (permEnd < 0) {
+                        permEnd = fieldEnd;
+                    }
+                    if (permEnd - permStart == 4) {
+                        rx1 = response.charAt(permStart) == '1';
+                        rx2 = response.charAt(permStart + 1) == '1';
+                        verify = response.charAt(permStart + 2) == '1';
+                        cmdOnOff = response.charAt(permStart + 3) == '1';
+                    }
+                }
+            } else if (hasAssign && fields.startsWith("Z")) {
+                // Zn=nome
+                ZoneEntry zone = decodeZone(response, fieldStart, fieldEnd);
+                if (zone != null) {
+                    zones.add(zone);
+                }
+            }
+        }
+
+        return new Conf1Response(version, main, rx1, rx2, verify, cmdOnOff, zones);
+    }
+
+    /**
+     * Indica se un campo FLAGS.PPPP contiene almeno un carattere diverso da '.'
+     * (un campo composto solo da separatori non contiene alcuna parte).
+     */
+    private static boolean hasFlagsContent(CharSequence s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) != SmsProtocol.SEP_FLAGS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decodifica una definizione di zona ({@code Zn=nome}, n = 1-8).
+     *
+     * @return la zona, oppure {@code null} se il formato non e' valido
+     */
+    private static ZoneEntry decodeZone(CharSequence s, int start, int end) {
+        // Z1=Ingresso
+        if (end - start < 4 || s.charAt(start + 1) < '1' || s.charAt(start + 1) > '8') {
+            return null;
+        }
+
+        String name = s.subSequence(start + 3, end).toString();
+        return new ZoneEntry(s.charAt(start + 1) - '0', name, !SmsProtocol.NOT_ENABLED.equals(name));
+    }
+
+    /**
+     * Decodifica una risposta CONF2 o CONF3 contenente gli scenari di attivazione.
+     * <p>
+     * Formato atteso: {@code CONFx:Snn=nome&Snn=nome&...}
+     * <p>
+     * CONF2 contiene scenari 1-8, CONF3 contiene scenari 9-16. Un campo troncato
+     * o con numero non valido interrompe la decodifica: vengono restituiti gli
+     * scenari letti fino a quel punto.
+     *
+     * @param response il messaggio SMS ricevuto dal sistema
+     * @return gli scenari estratti; lista vuota se il messaggio e' null o non valido
+     */
+    public static List<ScenarioEntry> decodeScenarios(String response) {
+        List<ScenarioEntry> scenarios = new ArrayList<>(8);
+
+        if (response == null ||
+                (!response.startsWith(SmsProtocol.RESP_CONF2) && !response.startsWith(SmsProtocol.RESP_CONF3))) {
+            return scenarios;
+        }
+
+        int start = SmsProtocol.RESP_CONF2.length();
+        int end = SmsTokenizer.stripTerminator(response, start, response.length());
+
+        SmsTokenizer fields = new SmsTokenizer().reset(response, start, end, SmsProtocol.SEP_FIELD);
+        while (fields.nextField()) {
+            if (!fields.startsWith("S") || !fields.contains(SmsProtocol.SEP_ASSIGN)) continue;
+
+            // Snn=nome
+            int fieldStart = fields.fieldStart();
+            if (fields.fieldLength() < 4) {
+                break; // Campo troncato: restituisci i risultati parziali
+            }
+            int number = SmsTokenizer.parseInt(response, fieldStart + 1, fieldStart + 3);
+            if (number == SmsTokenizer.NOT_A_NUMBER) {
+                break; // Numero non valido: restituisci i risultati parziali
+            }
+            String name = fields.substring(fieldStart + 4, fields.fieldEnd());
+            scenarios.add(new ScenarioEntry(number, name, !SmsProtocol.NOT_ENABLED.equals(name)));
+        }
+
+        return scenarios;
+    }
+
+    /**
+     * Decodifica una risposta CONF4 o CONF5 contenente gli utenti autorizzati.
+     * <p>
+     * Formato atteso: {@code CONFx:Rnn=nome&...&RJO=joker}
+     * <p>
+     * L'utente Joker (prefisso "RJO") e' restituito con slot 0. Un campo troncato
+     * interrompe la decodifica: vengono restituiti gli utenti letti fino a quel punto.
+     *
+     * @param response il messaggio SMS ricevuto dal sistema
+     * @return gli utenti estratti; lista vuota se il messaggio e' null o non valido
+     */
+    public static List<UserEntry> decodeUsers(String response) {
+        List<UserEntry> users = new ArrayList<>(9);
+
+        if (response == null ||
+                (!response.startsWith(SmsProtocol.RESP_CONF4) && !response.startsWith(SmsProtocol.RESP_CONF5))) {
+            return users;
+        }
+
+        int start = SmsProtocol.RESP_CONF4.length();
+        int end = SmsTokenizer.stripTerminator(response, start, response.length());
+
+        SmsTokenizer fields = new SmsTokenizer().reset(response, start, end, SmsProtocol.SEP_FIELD);
+        while (fields.nextField()) {
+            if (!fields.contains(SmsProtocol.SEP_ASSIGN)) continue;
+
+            int fieldStart = fields.fieldStart();
+            if (fields.fieldLength() < 4) {
+                break; // Campo troncato: restituisci i risultati parziali
+            }
+
+            // Prefisso di 3 caratteri (Rnn o RJO) seguito da '='
+            int prefixEnd = fieldStart + 3;
+
+            if (SmsTokenizer.regionEquals(response, fieldStart, prefixEnd, SmsProtocol.USER_JOKER_PREFIX)) {
+                // Joker user
+                users.add(new UserEntry(0, fields.substring(fieldStart + 4, fields.fieldEnd()), true, true));
+            } else if (response.charAt(fieldStart) == 'R'
+                    && SmsTokenizer.isDigits(response, fieldStart + 1, prefixEnd)) {
+                // Regular user Rnn
+                String name = fields.substring(fieldStart + 4, fields.fieldEnd());
+                int slot = SmsTokenizer.parseInt(response, fieldStart + 1, prefixEnd);
+                users.add(new UserEntry(slot, name, !SmsProtocol.NOT_ENABLED.equals(name), false));
+            }
+        }
+
+        return users;
+    }
+
+    /**
+     * Decodifica una risposta generica a comandi (OK, ERR, STATUS o SYS).
+     * <p>
+     * Gestisce i seguenti formati:
+     * <ul>
+     *     <li>{@code OK:ARMED:scenario} - Operazione completata, sistema armato</li>
+     *     <li>{@code OK:DISARMED} - Operazione completata, sistema disarmato</li>
+     *     <li>{@code STATUS:stato&SCE=scenario&ZONES=zone} - Stato del sistema</li>
+     *     <li>{@code ERR:codice} - Errore nell'esecuzione</li>
+     *     <li>{@code SYS: ON/OFF} - Formato alternativo stato (multilinea)</li>
+     * </ul>
+     *
+     * @param response il messaggio SMS ricevuto dal sistema
+     * @return l'esito decodificato; se il messaggio e' null o vuoto l'esito ha
+     *         codice errore {@link SmsProtocol#ERROR_TIMEOUT}, se non e' riconosciuto
+     *         {@link SmsProtocol#ERROR_UNKNOWN_CMD}
+     */
+    public static CommandResponse decodeResponse(String response) {
+        if (response == null || response.isEmpty()) {
+            return CommandResponse.failure(SmsProtocol.ERROR_TIMEOUT);
+        }
+
+        int end = SmsTokenizer.stripTerminator(response, 0, response.length());
+
+        if (SmsTokenizer.regionStartsWith(response, 0, end, SmsProtocol.RESP_OK)) {
+            return decodeOkDetails(response, SmsProtocol.RESP_OK.length(), end);
+        } else if (SmsTokenizer.regionStartsWith(response, 0, end, SmsProtocol.RESP_STATUS)) {
+            return decodeStatusDetails(response, SmsProtocol.RESP_STATUS.length(), end);
+        } else if (SmsTokenizer.regionStartsWith(response, 0, end, SmsProtocol.RESP_ERROR)) {
+            return CommandResponse.failure(response.substring(SmsProtocol.RESP_ERROR.length(), end));
+        } else if (SmsTokenizer.regionStartsWith(response, 0, end, SmsProtocol.RESP_SYS)
+                || SmsTokenizer.regionStartsWith(response, 0, end, SmsProtocol.RESP_SYS_SPACED)) {
+            // Formato reale: SYS: ON/OFF con altre righe
+            return decodeRealStatusFormat(response, end);
+        }
+        return CommandResponse.failure(SmsProtocol.ERROR_UNKNOWN_CMD);
+    }
+
+    /**
+     * Decodifica il formato reale di risposta stato multilinea.
+     * <p>
+     * Formato atteso (su piu' righe):
+     * <pre>
+     * SYS: ON
+     * SCE:---
+     * ZONES:cont giorno;cont notte;volumetrici
+     * 230V: KO
+     * BATT: OK
+     * </pre>
+     */
+    private static CommandResponse decodeRealStatusFormat(String content, int end) {
+        String status = null;
+        String scenario = null;
+        String zones = null;
+
+        SmsTokenizer lines = new SmsTokenizer().reset(content, 0, end, '\n');
+        while (lines.nextField()) {
+            int lineStart = SmsTokenizer.trimStart(content, lines.fieldStart(), lines.fieldEnd());
+            int lineEnd = SmsTokenizer.trimEnd(content, lineStart, lines.fieldEnd());
+
+            if (SmsTokenizer.regionStartsWith(content, lineStart, lineEnd, SmsProtocol.RESP_SYS)
+                    || SmsTokenizer.regionStartsWith(content, lineStart, lineEnd, SmsProtocol.RESP_SYS_SPACED)) {
+                // Estrai stato: ON = ARMED, OFF = DISARMED
+                int colon = SmsTokenizer.indexOf(content, SmsProtocol.SEP_COMMAND, lineStart, lineEnd);
+                int valueStart = SmsTokenizer.trimStart(content, colon + 1, lineEnd);
+                int valueEnd = SmsTokenizer.trimEnd(content, valueStart, lineEnd);
+                if (SmsTokenizer.regionEqualsIgnoreCase(content, valueStart, valueEnd, "ON")) {
+                    status = SmsProtocol.STATUS_ARMED;
+                } else if (SmsTokenizer.regionEqualsIgnoreCase(content, valueStart, valueEnd, "OFF")) {
+                    status = SmsProtocol.STATUS_DISARMED;
+                } else if (SmsTokenizer.regionContainsIgnoreCase(content, valueStart, valueEnd, "ALARM")) {
+                    status = SmsProtocol.STATUS_ALARM;
+                } else if (SmsTokenizer.regionContainsIgnoreCase(content, valueStart, valueEnd, "TAMPER")) {
+                    status = SmsProtocol.STATUS_TAMPER;
+                } else {
+                    status = SmsProtocol.STATUS_UNKNOWN;
+                }
+            } else if (SmsTokenizer.regionStartsWith(content, lineStart, lineEnd, "SCE:")) {
+                // Scenario attivo
+                int valueStart = SmsTokenizer.trimStart(content, lineStart + 4, lineEnd);
+                int valueEnd = SmsTokenizer.trimEnd(content, valueStart, lineEnd);
+                if (valueEnd > valueStart && !SmsTokenizer.regionEquals(content, valueStart, valueEnd, "---")) {
+                    scenario = content.substring(valueStart, valueEnd);
+                }
+            } else if (SmsTokenizer.regionStartsWith(content, lineStart, lineEnd, "ZONES:")) {
+                // Zone attive
+                int valueStart = SmsTokenizer.trimStart(content, lineStart + 6, lineEnd);
+                int valueEnd = SmsTokenizer.trimEnd(content, valueStart, lineEnd);
+                zones = content.substring(valueStart, valueEnd);
+            }
+            // 230V e BATT sono informativi, non li processiamo per ora
+        }
+
+        return new CommandResponse(true, status, scenario, zones, null);
+    }
+
+    /**
+     * Decodifica i dettagli di una risposta OK ({@code stato:scenario}, es. "ARMED:Casa").
+     */
+    private static CommandResponse decodeOkDetails(String s, int start, int end) {
+        // OK:ARMED:scenario_name o OK:DISARMED
+        SmsTokenizer parts = new SmsTokenizer().reset(s, start, end, SmsProtocol.SEP_COMMAND);
+        int index = 0;
+        int lastNonEmpty = -1;
+        int statusStart = start, statusEnd = end;
+        int scenarioStart = -1, scenarioEnd = -1;
+
+        while (parts.nextField()) {
+            if (index == 0) {
+                statusStart = parts.fieldStart();
+                statusEnd = parts.fieldEnd();
+            } else if (index == 1) {
+                scenarioStart = parts.fieldStart();
+                scenarioEnd = parts.fieldEnd();
+            }
+            if (!parts.isFieldEmpty()) {
+                lastNonEmpty = index;
+            }
+            index++;
+        }
+
+        // Stesse regole di String.split: le parti vuote finali vengono scartate,
+        // ma un testo senza separatori produce sempre una parte
+        String status = (index == 1 || lastNonEmpty >= 0) ? s.substring(statusStart, statusEnd) : null;
+        String scenario = lastNonEmpty >= 1 ? s.substring(scenarioStart, scenarioEnd) : null;
+        return new CommandResponse(true, status, scenario, null, null);
+    }
+
+    /**
+     * Decodifica i dettagli di una risposta STATUS ({@code stato&SCE=scenario&ZONES=zone}).
+     */
+    private static CommandResponse decodeStatusDetails(String s, int start, int end) {
+        // STATUS:ARMED&SCE=Casa&ZONES=1234
+        if (start >= end) {
+            return new CommandResponse(true, "", null, null, null);
+        }
+
+        String status = null;
+        String scenario = null;
+        String zones = null;
+
+        SmsTokenizer parts = new SmsTokenizer().reset(s, start, end, SmsProtocol.SEP_FIELD);
+        boolean pendingEmpty = false;
+
+        while (parts.nextField()) {
+            if (parts.isFieldEmpty()) {
+                // Una parte vuota conta solo se seguita da altre parti (come String.split)
+                pendingEmpty = true;
+                continue;
+            }
+            if (pendingEmpty) {
+                status = "";
+                pendingEmpty = false;
+            }
+
+            int partStart = parts.fieldStart();
+            int partEnd = parts.fieldEnd();
+            int assign = parts.indexOf(SmsProtocol.SEP_ASSIGN);
+
+            if (assign >= 0) {
+                // Accetta solo coppie chiave=valore con esattamente due parti
+                int valueEnd = SmsTokenizer.indexOf(s, SmsProtocol.SEP_ASSIGN, assign + 1, partEnd);
+                boolean trailingEmpty = true;
+                if (valueEnd >= 0) {
+                    for (int i = valueEnd; i < partEnd && trailingEmpty; i++) {
+                        trailingEmpty = s.charAt(i) == SmsProtocol.SEP_ASSIGN;
+                    }
+                } else {
+                    valueEnd = partEnd;
+                }
+
+                if (trailingEmpty && valueEnd > assign + 1) {
+                    if (SmsTokenizer.regionEquals(s, partStart, assign, "SCE")) {
+                        scenario = s.substring(assign + 1, valueEnd);
+                    } else if (SmsTokenizer.regionEquals(s, partStart, assign, "ZONES")) {
+                        zones = s.substring(assign + 1, valueEnd);
+                    }
+                }
+            } else {
+                status = parts.fieldString();
+            }
+        }
+
+        return new CommandResponse(true, status, scenario, zones, null);
+    }
+}
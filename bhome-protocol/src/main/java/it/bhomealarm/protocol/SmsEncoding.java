@@ -0,0 +1,159 @@
+package it.bhomealarm.protocol;
+
+import java.text.Normalizer;
+
+/**
+ * Calcolo della codifica e del numero di parti di un SMS.
+ * <p>
+ * Un SMS singolo contiene 160 caratteri nell'alfabeto GSM 7-bit (3GPP TS 23.038)
+ * oppure 70 in UCS-2; un messaggio piu' lungo viene diviso in parti concatenate
+ * da 153 (GSM 7-bit) o 67 (UCS-2) caratteri. Basta un carattere fuori
+ * dall'alfabeto GSM (ad es. una lettera accentata come "á" nel nome di una zona
+ * o di uno scenario) perche' l'intero messaggio passi a UCS-2 e le parti
+ * raddoppino.
+ * <p>
+ * {@link #optimize(String)} sceglie la codifica con meno parti: se sostituire i
+ * caratteri non GSM con l'equivalente piu' vicino (lettera senza accento,
+ * apostrofo e virgolette semplici...) riduce il numero di parti, il messaggio
+ * viene inviato in GSM 7-bit; altrimenti resta invariato.
+ * <p>
+ * Tutti i metodi sono statici e thread-safe.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see SmsCodec
+ */
+public final class SmsEncoding {
+
+    /** Caratteri di un SMS singolo in GSM 7-bit. */
+    public static final int GSM7_SINGLE = 160;
+
+    /** Caratteri di ogni parte di un SMS concatenato in GSM 7-bit. */
+    public static final int GSM7_PART = 153;
+
+    /** Caratteri di un SMS singolo in UCS-2. */
+    public static final int UCS2_SINGLE = 70;
+
+    /** Caratteri di ogni parte di un SMS concatenato in UCS-2. */
+    public static final int UCS2_PART = 67;
+
+    /** Alfabeto GSM 7-bit di base (un settetto per carattere), escape escluso. */
+    private static final String GSM7_BASIC =
+            "@£$¥èéùìòÇ\nØø\rÅåΔ_ΦΓΛΩΠΨΣΘΞÆæßÉ !\"#¤%&'()*+,-./0123456789:;<=>?"
+                    + "¡ABCDEFGHIJKLMNOPQRSTUVWXYZÄÖÑÜ§¿abcdefghijklmnopqrstuvwxyzäöñüà";
+
+    /** Tabella di estensione GSM 7-bit (due settetti per carattere). */
+    private static final String GSM7_EXTENSION = "\f^{}\\[~]|€";
+
+    /**
+     * Costruttore privato per impedire l'istanziazione della classe.
+     */
+    private SmsEncoding() {} // No instantiation
+
+    /**
+     * Verifica se un testo e' interamente rappresentabile in GSM 7-bit.
+     *
+     * @param text testo da verificare
+     * @return true se non serve UCS-2
+     */
+    public static boolean isGsm7(CharSequence text) {
+        return septets(text) >= 0;
+    }
+
+    /**
+     * Conta i settetti necessari a codificare un testo in GSM 7-bit.
+     *
+     * @param text testo da codificare
+     * @return numero di settetti, o -1 se il testo contiene caratteri non GSM
+     */
+    public static int septets(CharSequence text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (GSM7_BASIC.indexOf(c) >= 0) {
+                count++;
+            } else if (GSM7_EXTENSION.indexOf(c) >= 0) {
+                count += 2;
+            } else {
+                return -1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Calcola in quante parti viene diviso un testo, con la codifica che richiede
+     * (GSM 7-bit se possibile, altrimenti UCS-2).
+     *
+     * @param text testo da inviare
+     * @return numero di parti (almeno 1)
+     */
+    public static int parts(CharSequence text) {
+        int septets = septets(text);
+        if (septets >= 0) {
+            return septets <= GSM7_SINGLE ? 1 : (septets + GSM7_PART - 1) / GSM7_PART;
+        }
+        int units = text.length();
+        return units <= UCS2_SINGLE ? 1 : (units + UCS2_PART - 1) / UCS2_PART;
+    }
+
+    /**
+     * Restituisce la versione del messaggio da inviare con il minor numero di parti.
+     * I caratteri non GSM vengono sostituiti dall'equivalente GSM solo se cosi'
+     * l'intero messaggio diventa GSM 7-bit e le parti diminuiscono.
+     *
+     * @param message messaggio da inviare
+     * @return il messaggio originale o la sua versione GSM 7-bit
+     */
+    public static String optimize(String message) {
+        if (isGsm7(message)) {
+            return message;
+        }
+        String folded = foldToGsm7(message);
+        return isGsm7(folded) && parts(folded) < parts(message) ? folded : message;
+    }
+
+    /**
+     * Sostituisce i caratteri non GSM con l'equivalente GSM piu' vicino, dove esiste.
+     * I caratteri senza equivalente restano invariati.
+     *
+     * @param text testo da convertire
+     * @return il testo convertito
+     */
+    public static String foldToGsm7(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (GSM7_BASIC.indexOf(c) >= 0 || GSM7_EXTENSION.indexOf(c) >= 0) {
+                sb.append(c);
+            } else {
+                sb.append(fold(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String fold(char c) {
+        switch (c) {
+            case '‘': case '’': case '´': case '`':
+                return "'";
+            case '“': case '”': case '«': case '»':
+                return "\"";
+            case '–': case '—':
+                return "-";
+            case '…':
+                return "...";
+            case '\u00A0':
+                return " ";
+            default:
+                break;
+        }
+        // Lettera accentata: si tiene la lettera base (á -> a, Ê -> E)
+        String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+        char base = decomposed.charAt(0);
+        if (decomposed.length() > 1 && GSM7_BASIC.indexOf(base) >= 0) {
+            return String.valueOf(base);
+        }
+        return String.valueOf(c);
+    }
+}
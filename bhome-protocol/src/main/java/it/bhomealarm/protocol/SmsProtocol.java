@@ -0,0 +1,272 @@
+package it.bhomealarm.protocol;
+
+/**
+ * Costanti del protocollo SMS del sistema di allarme BHome.
+ * <p>
+ * Contiene esclusivamente i valori che fanno parte del protocollo di
+ * comunicazione con la centrale, indipendenti dalla piattaforma:
+ * <ul>
+ *     <li>Comandi SMS da inviare al sistema di allarme</li>
+ *     <li>Prefissi delle risposte SMS ricevute</li>
+ *     <li>Separatori per il parsing dei messaggi</li>
+ *     <li>Stati del sistema di allarme</li>
+ *     <li>Dimensioni e valori speciali di zone, scenari e utenti</li>
+ *     <li>Codici di errore</li>
+ * </ul>
+ * <p>
+ * Le costanti dell'app ({@code it.bhomealarm.util.Constants}) fanno riferimento
+ * a questi valori, cosi' che il protocollo sia definito in un solo punto.
+ * <p>
+ * La classe e' dichiarata final e ha un costruttore privato per impedirne
+ * l'istanziazione (pattern utility class).
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see SmsCodec
+ */
+public final class SmsProtocol {
+
+    /**
+     * Costruttore privato per impedire l'istanziazione della classe.
+     */
+    private SmsProtocol() {} // No instantiation
+
+    // ========== SMS Commands ==========
+
+    /**
+     * Comando SMS per richiedere la configurazione parte 1.
+     * Contiene: versione firmware, flags utente, elenco zone.
+     */
+    public static final String CMD_CONF1 = "CONF1?";
+
+    /**
+     * Comando SMS per richiedere la configurazione parte 2.
+     * Contiene: scenari 1-8.
+     */
+    public static final String CMD_CONF2 = "CONF2?";
+
+    /**
+     * Comando SMS per richiedere la configurazione parte 3.
+     * Contiene: scenari 9-16.
+     */
+    public static final String CMD_CONF3 = "CONF3?";
+
+    /**
+     * Comando SMS per richiedere la configurazione parte 4.
+     * Contiene: utenti 1-8 e utente joker.
+     */
+    public static final String CMD_CONF4 = "CONF4?";
+
+    /**
+     * Comando SMS per richiedere la configurazione parte 5.
+     * Contiene: utenti 9-16.
+     */
+    public static final String CMD_CONF5 = "CONF5?";
+
+    /**
+     * Formato comando SMS per attivare l'allarme con uno scenario predefinito.
+     * Parametro: numero scenario (01-16).
+     * Esempio: SCE:05 attiva lo scenario 5.
+     *
+     * @see SmsCodec#encodeArmScenario(int)
+     */
+    public static final String CMD_ARM_SCENARIO = "SCE:%02d";
+
+    /**
+     * Formato comando SMS per attivare l'allarme con zone personalizzate.
+     * Parametro: numeri delle zone concatenati ({@link ZoneMask#toDigits()}).
+     * Esempio: CUST:134 attiva zone 1,3,4.
+     *
+     * @see SmsCodec#encodeArmCustom(ZoneMask)
+     */
+    public static final String CMD_ARM_CUSTOM = "CUST:%s";
+
+    /**
+     * Comando SMS per disattivare l'allarme.
+     */
+    public static final String CMD_DISARM = "SYS OFF";
+
+    /**
+     * Comando SMS per richiedere lo stato corrente del sistema.
+     */
+    public static final String CMD_STATUS = "SYS?";
+
+    /**
+     * Formato comando SMS per configurare un utente.
+     * Parametri: numero utente (01-16), permessi (4 caratteri 0/1).
+     *
+     * @see SmsCodec#encodeSetUser(int, int)
+     */
+    public static final String CMD_SET_USER = "SET:U%02d%s";
+
+    // ========== SMS Response Prefixes ==========
+
+    /**
+     * Prefisso risposta SMS per configurazione parte 1.
+     */
+    public static final String RESP_CONF1 = "CONF1:";
+
+    /**
+     * Prefisso risposta SMS per configurazione parte 2.
+     */
+    public static final String RESP_CONF2 = "CONF2:";
+
+    /**
+     * Prefisso risposta SMS per configurazione parte 3.
+     */
+    public static final String RESP_CONF3 = "CONF3:";
+
+    /**
+     * Prefisso risposta SMS per configurazione parte 4.
+     */
+    public static final String RESP_CONF4 = "CONF4:";
+
+    /**
+     * Prefisso risposta SMS per configurazione parte 5.
+     */
+    public static final String RESP_CONF5 = "CONF5:";
+
+    /**
+     * Prefisso risposta SMS per operazione completata con successo.
+     */
+    public static final String RESP_OK = "OK:";
+
+    /**
+     * Prefisso risposta SMS per stato del sistema.
+     */
+    public static final String RESP_STATUS = "STATUS:";
+
+    /**
+     * Prefisso risposta SMS per errore.
+     */
+    public static final String RESP_ERROR = "ERR:";
+
+    /**
+     * Prefisso del formato reale di stato multilinea ({@code SYS: ON}).
+     */
+    public static final String RESP_SYS = "SYS:";
+
+    /**
+     * Variante con spazio del prefisso {@link #RESP_SYS} ({@code SYS : ON}).
+     */
+    public static final String RESP_SYS_SPACED = "SYS :";
+
+    // ========== SMS Separators ==========
+
+    /**
+     * Separatore tra comando e parametri nei messaggi SMS.
+     */
+    public static final char SEP_COMMAND = ':';
+
+    /**
+     * Separatore tra campi diversi nei messaggi SMS.
+     */
+    public static final char SEP_FIELD = '&';
+
+    /**
+     * Carattere di terminazione messaggio SMS.
+     */
+    public static final char SEP_END = '#';
+
+    /**
+     * Separatore tra chiave e valore nei campi SMS.
+     */
+    public static final char SEP_ASSIGN = '=';
+
+    /**
+     * Separatore per flags nei messaggi SMS.
+     */
+    public static final char SEP_FLAGS = '.';
+
+    // ========== Alarm Status ==========
+
+    /**
+     * Stato allarme: sistema attivato.
+     */
+    public static final String STATUS_ARMED = "ARMED";
+
+    /**
+     * Stato allarme: sistema disattivato.
+     */
+    public static final String STATUS_DISARMED = "DISARMED";
+
+    /**
+     * Stato allarme: allarme in corso (intrusione rilevata).
+     */
+    public static final String STATUS_ALARM = "ALARM";
+
+    /**
+     * Stato allarme: manomissione rilevata.
+     */
+    public static final String STATUS_TAMPER = "TAMPER";
+
+    /**
+     * Stato allarme: stato non determinabile.
+     */
+    public static final String STATUS_UNKNOWN = "UNKNOWN";
+
+    // ========== Zone / Scenario / User ==========
+
+    /**
+     * Numero totale di zone supportate dal sistema.
+     */
+    public static final int ZONE_COUNT = 8;
+
+    /**
+     * Numero totale di scenari supportati dal sistema.
+     */
+    public static final int SCENARIO_COUNT = 16;
+
+    /**
+     * Numero totale di utenti supportati dal sistema.
+     */
+    public static final int USER_COUNT = 16;
+
+    /**
+     * Valore che indica una zona, uno scenario o un utente non abilitato.
+     */
+    public static final String NOT_ENABLED = "NE";
+
+    /**
+     * Identificatore per scenario personalizzato (zone selezionate manualmente).
+     */
+    public static final String SCENARIO_CUSTOM = "CUSTOM";
+
+    /**
+     * Prefisso per identificare l'utente Joker nelle risposte SMS.
+     * L'utente Joker ha permessi speciali e puo' ricevere tutte le notifiche.
+     */
+    public static final String USER_JOKER_PREFIX = "RJO";
+
+    // ========== Error Codes ==========
+
+    /**
+     * Codice errore: comando non riconosciuto dal sistema.
+     */
+    public static final String ERROR_UNKNOWN_CMD = "E01";
+
+    /**
+     * Codice errore: parametro non valido nel comando.
+     */
+    public static final String ERROR_INVALID_PARAM = "E02";
+
+    /**
+     * Codice errore: utente non autorizzato per l'operazione.
+     */
+    public static final String ERROR_UNAUTHORIZED = "E03";
+
+    /**
+     * Codice errore: sistema occupato, riprovare.
+     */
+    public static final String ERROR_SYSTEM_BUSY = "E04";
+
+    /**
+     * Codice errore: errore interno del sistema.
+     */
+    public static final String ERROR_INTERNAL = "E05";
+
+    /**
+     * Codice errore: timeout nell'attesa della risposta.
+     */
+    public static final String ERROR_TIMEOUT = "TIMEOUT";
+}
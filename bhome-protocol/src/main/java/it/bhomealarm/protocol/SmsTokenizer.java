@@ -0,0 +1,460 @@
+package it.bhomealarm.protocol;
+
+/**
+ * Tokenizer a cursore per i messaggi SMS del sistema di allarme BHome.
+ * <p>
+ * Scorre una {@link CharSequence} in un'unica passata, suddividendola in campi
+ * in base a uno dei separatori definiti in {@link SmsProtocol}
+ * ({@code :}, {@code &}, {@code =}, {@code .}, {@code #}). Ogni campo viene
+ * esposto come coppia di offset ({@link #fieldStart()}, {@link #fieldEnd()})
+ * sulla sequenza originale, senza creare sottostringhe o array intermedi:
+ * le stringhe vengono materializzate solo per i valori che devono essere
+ * effettivamente memorizzati (es. nomi di zone, scenari e utenti).
+ * <p>
+ * Sostituisce l'uso di {@link String#split(String)} e {@link String#matches(String)}
+ * nel parsing, che compilano espressioni regolari e allocano array e
+ * sottostringhe per ogni messaggio ricevuto.
+ * <p>
+ * Esempio di utilizzo:
+ * <pre>
+ * SmsTokenizer tokenizer = new SmsTokenizer("Z1=Ingresso&amp;Z2=Soggiorno", SmsProtocol.SEP_FIELD);
+ * while (tokenizer.nextField()) {
+ *     int eq = tokenizer.indexOf(SmsProtocol.SEP_ASSIGN);
+ *     ...
+ * }
+ * </pre>
+ * <p>
+ * Un'istanza non e' thread-safe, ma e' riutilizzabile tramite
+ * {@link #reset(CharSequence, int, int, char)}.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see SmsCodec
+ * @see SmsProtocol
+ */
+public final class SmsTokenizer {
+
+    /** Valore restituito da {@link #parseInt(CharSequence, int, int)} se la regione non e' un intero. */
+    public static final int NOT_A_NUMBER = Integer.MIN_VALUE;
+
+    /** Sequenza di caratteri su cui opera il tokenizer. */
+    private CharSequence input;
+
+    /** Offset (esclusivo) di fine della regione da analizzare. */
+    private int limit;
+
+    /** Posizione corrente del cursore (inizio del prossimo campo). */
+    private int position;
+
+    /** Separatore tra i campi. */
+    private char separator;
+
+    /** Offset (inclusivo) di inizio del campo corrente. */
+    private int fieldStart;
+
+    /** Offset (esclusivo) di fine del campo corrente. */
+    private int fieldEnd;
+
+    /** Indica se il cursore ha gia' superato l'ultimo campo. */
+    private boolean exhausted;
+
+    /**
+     * Crea un tokenizer vuoto, da inizializzare con
+     * {@link #reset(CharSequence, int, int, char)}.
+     */
+    public SmsTokenizer() {
+        this.input = "";
+        this.exhausted = true;
+    }
+
+    /**
+     * Crea un tokenizer sull'intera sequenza specificata.
+     *
+     * @param input     la sequenza da analizzare
+     * @param separator il separatore tra i campi
+     */
+    public SmsTokenizer(CharSequence input, char separator) {
+        reset(input, 0, input.length(), separator);
+    }
+
+    /**
+     * Reinizializza il tokenizer su una regione della sequenza specificata.
+     *
+     * @param input     la sequenza da analizzare
+     * @param start     offset (inclusivo) di inizio della regione
+     * @param end       offset (esclusivo) di fine della regione
+     * @param separator il separatore tra i campi
+     * @return questa istanza, per concatenare le chiamate
+     */
+    public SmsTokenizer reset(CharSequence input, int start, int end, char separator) {
+        this.input = input;
+        this.limit = end;
+        this.position = start;
+        this.separator = separator;
+        this.fieldStart = start;
+        this.fieldEnd = start;
+        this.exhausted = false;
+        return this;
+    }
+
+    /**
+     * Avanza al campo successivo.
+     * <p>
+     * Come {@link String#split(String)}, una regione vuota produce un unico
+     * campo vuoto e due separatori consecutivi producono un campo vuoto.
+     * A differenza di {@code split}, i campi vuoti finali vengono restituiti:
+     * il chiamante puo' ignorarli con {@link #isFieldEmpty()}.
+     *
+     * @return {@code true} se e' disponibile un nuovo campo,
+     *         {@code false} se la regione e' stata interamente consumata
+     */
+    public boolean nextField() {
+        if (exhausted) {
+            return false;
+        }
+        fieldStart = position;
+        int i = position;
+        while (i < limit && input.charAt(i) != separator) {
+            i++;
+        }
+        fieldEnd = i;
+        if (i < limit) {
+            position = i + 1;
+        } else {
+            position = limit;
+            exhausted = true;
+        }
+        return true;
+    }
+
+    /**
+     * Indica se sono presenti altri campi dopo quello corrente.
+     *
+     * @return {@code true} se una successiva chiamata a {@link #nextField()} avra' successo
+     */
+    public boolean hasMoreFields() {
+        return !exhausted;
+    }
+
+    /** @return offset (inclusivo) di inizio del campo corrente */
+    public int fieldStart() {
+        return fieldStart;
+    }
+
+    /** @return offset (esclusivo) di fine del campo corrente */
+    public int fieldEnd() {
+        return fieldEnd;
+    }
+
+    /** @return lunghezza del campo corrente */
+    public int fieldLength() {
+        return fieldEnd - fieldStart;
+    }
+
+    /** @return {@code true} se il campo corrente e' vuoto */
+    public boolean isFieldEmpty() {
+        return fieldEnd == fieldStart;
+    }
+
+    /**
+     * Restituisce il carattere del campo corrente alla posizione relativa indicata.
+     *
+     * @param offset posizione relativa all'inizio del campo
+     * @return il carattere richiesto
+     */
+    public char charAt(int offset) {
+        return input.charAt(fieldStart + offset);
+    }
+
+    /**
+     * Cerca un carattere all'interno del campo corrente.
+     *
+     * @param c il carattere da cercare
+     * @return l'offset assoluto della prima occorrenza, o -1 se assente
+     */
+    public int indexOf(char c) {
+        return indexOf(input, c, fieldStart, fieldEnd);
+    }
+
+    /**
+     * Verifica se il campo corrente contiene il carattere specificato.
+     *
+     * @param c il carattere da cercare
+     * @return {@code true} se il carattere e' presente nel campo
+     */
+    public boolean contains(char c) {
+        return indexOf(c) >= 0;
+    }
+
+    /**
+     * Verifica se il campo corrente inizia con il prefisso specificato.
+     *
+     * @param prefix il prefisso da verificare
+     * @return {@code true} se il campo inizia con il prefisso
+     */
+    public boolean startsWith(CharSequence prefix) {
+        return regionStartsWith(input, fieldStart, fieldEnd, prefix);
+    }
+
+    /**
+     * Verifica se il campo corrente e' uguale alla stringa specificata.
+     *
+     * @param value la stringa da confrontare
+     * @return {@code true} se il campo coincide con la stringa
+     */
+    public boolean fieldEquals(CharSequence value) {
+        return regionEquals(input, fieldStart, fieldEnd, value);
+    }
+
+    /**
+     * Materializza il campo corrente come stringa.
+     *
+     * @return il contenuto del campo corrente
+     */
+    public String fieldString() {
+        return substring(fieldStart, fieldEnd);
+    }
+
+    /**
+     * Materializza una regione arbitraria della sequenza come stringa.
+     *
+     * @param start offset (inclusivo) di inizio
+     * @param end   offset (esclusivo) di fine
+     * @return il contenuto della regione
+     */
+    public String substring(int start, int end) {
+        return input.subSequence(start, end).toString();
+    }
+
+    /** @return la sequenza su cui opera il tokenizer */
+    public CharSequence input() {
+        return input;
+    }
+
+    // ========== Static region helpers ==========
+
+    /**
+     * Cerca un carattere in una regione di una sequenza.
+     *
+     * @param s     la sequenza
+     * @param c     il carattere da cercare
+     * @param start offset (inclusivo) di inizio
+     * @param end   offset (esclusivo) di fine
+     * @return l'offset assoluto della prima occorrenza, o -1 se assente
+     */
+    public static int indexOf(CharSequence s, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Verifica se una regione inizia con il prefisso specificato.
+     *
+     * @param s      la sequenza
+     * @param start  offset (inclusivo) di inizio della regione
+     * @param end    offset (esclusivo) di fine della regione
+     * @param prefix il prefisso da verificare
+     * @return {@code true} se la regione inizia con il prefisso
+     */
+    public static boolean regionStartsWith(CharSequence s, int start, int end, CharSequence prefix) {
+        int n = prefix.length();
+        if (end - start < n) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            if (s.charAt(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Verifica se una regione coincide con la stringa specificata.
+     *
+     * @param s     la sequenza
+     * @param start offset (inclusivo) di inizio della regione
+     * @param end   offset (esclusivo) di fine della regione
+     * @param value la stringa da confrontare
+     * @return {@code true} se la regione coincide con la stringa
+     */
+    public static boolean regionEquals(CharSequence s, int start, int end, CharSequence value) {
+        return end - start == value.length() && regionStartsWith(s, start, end, value);
+    }
+
+    /**
+     * Verifica se una regione coincide con la stringa specificata ignorando maiuscole/minuscole.
+     *
+     * @param s     la sequenza
+     * @param start offset (inclusivo) di inizio della regione
+     * @param end   offset (esclusivo) di fine della regione
+     * @param value la stringa da confrontare
+     * @return {@code true} se la regione coincide con la stringa
+     */
+    public static boolean regionEqualsIgnoreCase(CharSequence s, int start, int end, String value) {
+        int n = value.length();
+        if (end - start != n) {
+            return false;
+        }
+        return regionMatchesIgnoreCase(s, start, value);
+    }
+
+    /**
+     * Verifica se una regione contiene la stringa specificata ignorando maiuscole/minuscole.
+     *
+     * @param s     la sequenza
+     * @param start offset (inclusivo) di inizio della regione
+     * @param end   offset (esclusivo) di fine della regione
+     * @param value la stringa da cercare
+     * @return {@code true} se la stringa compare nella regione
+     */
+    public static boolean regionContainsIgnoreCase(CharSequence s, int start, int end, String value) {
+        int last = end - value.length();
+        for (int i = start; i <= last; i++) {
+            if (regionMatchesIgnoreCase(s, i, value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Verifica se una regione e' composta da almeno una cifra decimale ASCII
+     * (equivalente a {@code \d+}).
+     *
+     * @param s     la sequenza
+     * @param start offset (inclusivo) di inizio
+     * @param end   offset (esclusivo) di fine
+     * @return {@code true} se la regione non e' vuota e contiene solo cifre
+     */
+    public static boolean isDigits(CharSequence s, int start, int end) {
+        if (start >= end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Converte una regione in intero con la stessa sintassi di {@link Integer#parseInt(String)}
+     * (segno opzionale seguito da cifre), senza creare sottostringhe.
+     *
+     * @param s     la sequenza
+     * @param start offset (inclusivo) di inizio
+     * @param end   offset (esclusivo) di fine
+     * @return il valore intero, oppure {@link #NOT_A_NUMBER} se la regione
+     *         non rappresenta un intero valido
+     */
+    public static int parseInt(CharSequence s, int start, int end) {
+        if (start >= end) {
+            return NOT_A_NUMBER;
+        }
+        boolean negative = false;
+        int i = start;
+        char first = s.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+            if (i == end) {
+                return NOT_A_NUMBER;
+            }
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = Character.digit(s.charAt(i), 10);
+            if (digit < 0) {
+                return NOT_A_NUMBER;
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                return NOT_A_NUMBER;
+            }
+        }
+        long result = negative ? -value : value;
+        if (result > Integer.MAX_VALUE || result <= NOT_A_NUMBER) {
+            return NOT_A_NUMBER;
+        }
+        return (int) result;
+    }
+
+    /**
+     * Restituisce l'offset del primo carattere non di spaziatura della regione
+     * (stessa definizione di {@link String#trim()}).
+     *
+     * @param s     la sequenza
+     * @param start offset (inclusivo) di inizio
+     * @param end   offset (esclusivo) di fine
+     * @return il nuovo offset di inizio
+     */
+    public static int trimStart(CharSequence s, int start, int end) {
+        while (start < end && s.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Restituisce l'offset successivo all'ultimo carattere non di spaziatura della regione
+     * (stessa definizione di {@link String#trim()}).
+     *
+     * @param s     la sequenza
+     * @param start offset (inclusivo) di inizio
+     * @param end   offset (esclusivo) di fine
+     * @return il nuovo offset di fine
+     */
+    public static int trimEnd(CharSequence s, int start, int end) {
+        while (end > start && s.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Restituisce l'offset di fine della regione escluso l'eventuale terminatore
+     * finale ('#' o '&amp;').
+     *
+     * @param s     la sequenza
+     * @param start offset (inclusivo) di inizio
+     * @param end   offset (esclusivo) di fine
+     * @return il nuovo offset di fine
+     */
+    public static int stripTerminator(CharSequence s, int start, int end) {
+        if (end > start) {
+            char last = s.charAt(end - 1);
+            if (last == SmsProtocol.SEP_END || last == SmsProtocol.SEP_FIELD) {
+                return end - 1;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Confronta, ignorando maiuscole/minuscole, la stringa specificata con i
+     * caratteri della sequenza a partire dall'offset indicato.
+     *
+     * @param s      la sequenza
+     * @param offset offset di inizio del confronto (la regione deve essere sufficientemente lunga)
+     * @param value  la stringa da confrontare
+     * @return {@code true} se i caratteri coincidono
+     */
+    private static boolean regionMatchesIgnoreCase(CharSequence s, int offset, String value) {
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char a = s.charAt(offset + i);
+            char b = value.charAt(i);
+            if (a != b && Character.toUpperCase(a) != Character.toUpperCase(b)
+                    && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
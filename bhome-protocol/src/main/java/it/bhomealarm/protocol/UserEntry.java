@@ -0,0 +1,71 @@
+package it.bhomealarm.protocol;
+
+import java.util.Objects;
+
+/**
+ * Utente decodificato da una risposta CONF4 o CONF5 (valore immutabile).
+ * <p>
+ * L'utente Joker (prefisso "RJO") ha slot 0 ed e' sempre abilitato.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see SmsCodec#decodeUsers(String)
+ */
+public final class UserEntry {
+
+    private final int slot;
+    private final String name;
+    private final boolean enabled;
+    private final boolean joker;
+
+    /**
+     * Crea un utente.
+     *
+     * @param slot numero dell'utente (1-16, 0 per il Joker)
+     * @param name nome assegnato all'utente ("NE" se non abilitato)
+     * @param enabled {@code true} se l'utente e' abilitato
+     * @param joker {@code true} se e' l'utente Joker
+     */
+    public UserEntry(int slot, String name, boolean enabled, boolean joker) {
+        this.slot = slot;
+        this.name = name;
+        this.enabled = enabled;
+        this.joker = joker;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isJoker() {
+        return joker;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof UserEntry)) return false;
+        UserEntry other = (UserEntry) o;
+        return slot == other.slot && enabled == other.enabled && joker == other.joker
+                && Objects.equals(name, other.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(slot, name, enabled, joker);
+    }
+
+    @Override
+    public String toString() {
+        return "UserEntry{slot=" + slot + ", name='" + name + "', enabled=" + enabled
+                + ", joker=" + joker + '}';
+    }
+}
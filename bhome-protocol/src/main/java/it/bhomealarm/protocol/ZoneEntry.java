@@ -0,0 +1,60 @@
+package it.bhomealarm.protocol;
+
+import java.util.Objects;
+
+/**
+ * Zona decodificata da una risposta CONF1 (valore immutabile).
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see Conf1Response
+ */
+public final class ZoneEntry {
+
+    private final int slot;
+    private final String name;
+    private final boolean enabled;
+
+    /**
+     * Crea una zona.
+     *
+     * @param slot numero della zona (1-8)
+     * @param name nome assegnato alla zona ("NE" se non abilitata)
+     * @param enabled {@code true} se la zona e' abilitata
+     */
+    public ZoneEntry(int slot, String name, boolean enabled) {
+        this.slot = slot;
+        this.name = name;
+        this.enabled = enabled;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ZoneEntry)) return false;
+        ZoneEntry other = (ZoneEntry) o;
+        return slot == other.slot && enabled == other.enabled && Objects.equals(name, other.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(slot, name, enabled);
+    }
+
+    @Override
+    public String toString() {
+        return "ZoneEntry{slot=" + slot + ", name='" + name + "', enabled=" + enabled + '}';
+    }
+}
@@ -0,0 +1,202 @@
+package it.bhomealarm.protocol;
+
+/**
+ * Insieme di zone della centrale (valore immutabile).
+ * <p>
+ * Ogni bit rappresenta una zona: bit 0 = zona 1, ..., bit 7 = zona 8. E' lo
+ * stesso formato della colonna {@code zone_mask} degli scenari e viene
+ * convertito nella lista di cifre del comando {@code CUST:} (zone 1, 3 e 4 =
+ * maschera 13 = "134").
+ * <p>
+ * Le 256 maschere possibili sono create una sola volta: {@link #of(int)},
+ * {@link #toggle(int)} e gli altri metodi di modifica restituiscono istanze
+ * condivise, e {@link #toDigits()} una stringa precalcolata. Selezionare o
+ * deselezionare una zona non alloca memoria; il confronto tra istanze puo'
+ * usare {@code ==}.
+ * <p>
+ * Iterazione senza allocazioni:
+ * <pre>
+ * for (int zone = mask.first(); zone != 0; zone = mask.next(zone)) { ... }
+ * </pre>
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see SmsCodec#encodeArmCustom(ZoneMask)
+ */
+public final class ZoneMask {
+
+    /** Bit validi: una zona per bit, da 1 a {@link SmsProtocol#ZONE_COUNT}. */
+    private static final int VALID_BITS = (1 << SmsProtocol.ZONE_COUNT) - 1;
+
+    private static final ZoneMask[] CACHE = new ZoneMask[VALID_BITS + 1];
+
+    static {
+        for (int bits = 0; bits <= VALID_BITS; bits++) {
+            CACHE[bits] = new ZoneMask(bits);
+        }
+    }
+
+    /** Nessuna zona. */
+    public static final ZoneMask EMPTY = CACHE[0];
+
+    /** Tutte le zone. */
+    public static final ZoneMask ALL = CACHE[VALID_BITS];
+
+    private final int bits;
+    private final String digits;
+
+    private ZoneMask(int bits) {
+        this.bits = bits;
+        StringBuilder sb = new StringBuilder(Integer.bitCount(bits));
+        for (int zone = 1; zone <= SmsProtocol.ZONE_COUNT; zone++) {
+            if ((bits & bit(zone)) != 0) {
+                sb.append((char) ('0' + zone));
+            }
+        }
+        this.digits = sb.toString();
+    }
+
+    /**
+     * Restituisce la maschera con i bit indicati. I bit oltre la zona
+     * {@link SmsProtocol#ZONE_COUNT} vengono ignorati.
+     *
+     * @param bits bitmask delle zone (bit 0 = zona 1)
+     * @return la maschera condivisa
+     */
+    public static ZoneMask of(int bits) {
+        return CACHE[bits & VALID_BITS];
+    }
+
+    /**
+     * Decodifica la lista di cifre del comando {@code CUST:} (es. "134").
+     * L'ordine delle cifre e i duplicati non contano.
+     *
+     * @param digits numeri delle zone concatenati; null o vuota = nessuna zona
+     * @return la maschera corrispondente
+     * @throws IllegalArgumentException se contiene caratteri diversi dalle cifre 1-8
+     */
+    public static ZoneMask parseDigits(String digits) {
+        if (digits == null) {
+            return EMPTY;
+        }
+        int bits = 0;
+        for (int i = 0; i < digits.length(); i++) {
+            int zone = digits.charAt(i) - '0';
+            if (!isValidZone(zone)) {
+                throw new IllegalArgumentException("Invalid zone digit in: " + digits);
+            }
+            bits |= bit(zone);
+        }
+        return CACHE[bits];
+    }
+
+    /**
+     * @param zone numero della zona
+     * @return {@code true} se la zona e' tra 1 e {@link SmsProtocol#ZONE_COUNT}
+     */
+    public static boolean isValidZone(int zone) {
+        return zone >= 1 && zone <= SmsProtocol.ZONE_COUNT;
+    }
+
+    private static int bit(int zone) {
+        return 1 << (zone - 1);
+    }
+
+    /** @return bitmask delle zone (bit 0 = zona 1), come salvato in {@code zone_mask} */
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * @param zone numero della zona (1-8)
+     * @return {@code true} se la zona e' inclusa; {@code false} anche per zone non valide
+     */
+    public boolean contains(int zone) {
+        return isValidZone(zone) && (bits & bit(zone)) != 0;
+    }
+
+    /** @return numero di zone incluse */
+    public int count() {
+        return Integer.bitCount(bits);
+    }
+
+    /** @return {@code true} se non contiene zone */
+    public boolean isEmpty() {
+        return bits == 0;
+    }
+
+    /**
+     * @param zone numero della zona (1-8)
+     * @return la maschera con la zona invertita; questa maschera se la zona non e' valida
+     */
+    public ZoneMask toggle(int zone) {
+        return isValidZone(zone) ? CACHE[bits ^ bit(zone)] : this;
+    }
+
+    /**
+     * @param zone numero della zona (1-8)
+     * @param included {@code true} per includerla, {@code false} per escluderla
+     * @return la maschera risultante; questa maschera se la zona non e' valida
+     */
+    public ZoneMask with(int zone, boolean included) {
+        if (!isValidZone(zone)) {
+            return this;
+        }
+        return CACHE[included ? bits | bit(zone) : bits & ~bit(zone)];
+    }
+
+    /**
+     * Zone che differiscono tra le due maschere, ad es. per aggiornare solo le
+     * righe cambiate di una lista.
+     *
+     * @param other maschera da confrontare (null = nessuna zona)
+     * @return zone incluse in una sola delle due maschere
+     */
+    public ZoneMask diff(ZoneMask other) {
+        return CACHE[bits ^ (other != null ? other.bits : 0)];
+    }
+
+    /**
+     * @return la zona piu' bassa inclusa, 0 se la maschera e' vuota
+     */
+    public int first() {
+        return bits == 0 ? 0 : Integer.numberOfTrailingZeros(bits) + 1;
+    }
+
+    /**
+     * @param zone zona corrente dell'iterazione
+     * @return la zona inclusa successiva a {@code zone}, 0 se non ce ne sono altre
+     */
+    public int next(int zone) {
+        if (zone >= SmsProtocol.ZONE_COUNT) {
+            return 0;
+        }
+        int rest = zone <= 0 ? bits : bits & (-1 << zone);
+        return rest == 0 ? 0 : Integer.numberOfTrailingZeros(rest) + 1;
+    }
+
+    /**
+     * @return numeri delle zone in ordine crescente, nel formato del comando
+     *         {@code CUST:} (es. "134"); vuota se non ci sono zone
+     */
+    public String toDigits() {
+        return digits;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ZoneMask)) return false;
+        return bits == ((ZoneMask) o).bits;
+    }
+
+    @Override
+    public int hashCode() {
+        return bits;
+    }
+
+    @Override
+    public String toString() {
+        return "ZoneMask{" + digits + '}';
+    }
+}
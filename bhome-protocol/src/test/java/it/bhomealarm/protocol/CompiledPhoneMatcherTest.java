@@ -0,0 +1,95 @@
+package it.bhomealarm.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test di {@link CompiledPhoneMatcher}: per ogni coppia mittente/numero
+ * configurato il risultato deve coincidere con {@link PhoneNumberUtils#matches(String, String)}.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ */
+public class CompiledPhoneMatcherTest {
+
+    /** Numeri nei formati riportati dal sistema e in quelli inseriti dall'utente. */
+    private static final String[] NUMBERS = {
+            "3331234567", "+393331234567", "00393331234567", "+39 333 123 4567",
+            "333 123 4567", "(333) 123-4567", "333-123-4567", "\t+39\n3331234567 ",
+            "0393331234567", "+3903331234567", "39 3331234567", "+4915112345678",
+            "331234567", "31234567", "12345", "112", "+39", "0039", "+39112", "0039112",
+            "BHOME", "ALLARME01", "abc331234567", "3331234567x", "+39abc", "+", "-", "",
+            " ", "()", null,
+    };
+
+    @Test
+    public void matchesLikePhoneNumberUtils() {
+        for (String configured : NUMBERS) {
+            CompiledPhoneMatcher matcher = CompiledPhoneMatcher.compile(configured);
+            for (String sender : NUMBERS) {
+                assertEquals(describe(sender, configured),
+                        PhoneNumberUtils.matches(sender, configured), matcher.matches(sender));
+            }
+        }
+    }
+
+    @Test
+    public void indexOfReturnsFirstMatchingNumber() {
+        CompiledPhoneMatcher matcher = CompiledPhoneMatcher.compile(NUMBERS);
+
+        for (String sender : NUMBERS) {
+            int expected = -1;
+            for (int i = 0; i < NUMBERS.length && expected < 0; i++) {
+                if (PhoneNumberUtils.matches(sender, NUMBERS[i])) {
+                    expected = i;
+                }
+            }
+            assertEquals(describe(sender, null), expected, matcher.indexOf(sender));
+        }
+    }
+
+    @Test
+    public void italianPrefixesAndFormatting() {
+        CompiledPhoneMatcher matcher = CompiledPhoneMatcher.compile("3331234567");
+
+        assertTrue(matcher.matches("+393331234567"));
+        assertTrue(matcher.matches("00393331234567"));
+        assertTrue(matcher.matches("+39 333 123-4567"));
+        assertTrue(matcher.matches("(333) 123 4567"));
+        assertFalse(matcher.matches("+393479876543"));
+        assertFalse(matcher.matches("BHOME"));
+        assertFalse(matcher.matches(""));
+        assertFalse(matcher.matches(null));
+    }
+
+    @Test
+    public void shortNumbersMatchExactly() {
+        CompiledPhoneMatcher matcher = CompiledPhoneMatcher.compile("+39112");
+
+        assertTrue(matcher.matches("112"));
+        assertTrue(matcher.matches("0039 112"));
+        assertFalse(matcher.matches("0112"));
+    }
+
+    @Test
+    public void nonNumericConfiguredNumberUsesSlowPath() {
+        CompiledPhoneMatcher matcher = CompiledPhoneMatcher.compile("3331234567", "BHOME");
+
+        assertEquals(2, matcher.size());
+        assertEquals(1, matcher.indexOf("BHOME"));
+        assertEquals(-1, matcher.indexOf("BHOME2"));
+    }
+
+    @Test
+    public void emptyNumbersAreIgnored() {
+        assertTrue(CompiledPhoneMatcher.compile("", null, " - ").isEmpty());
+        assertFalse(CompiledPhoneMatcher.empty().matches("3331234567"));
+    }
+
+    private static String describe(String sender, String configured) {
+        return "sender=" + sender + " configured=" + configured;
+    }
+}
@@ -0,0 +1,220 @@
+package it.bhomealarm.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Riferimento per i test: il parser storico dell'app ({@code SmsParser}) basato
+ * su {@code split} ed espressioni regolari, prima del passaggio a {@link SmsTokenizer}.
+ * <p>
+ * La logica e' riportata senza modifiche; cambiano solo i tipi restituiti, che
+ * sono gli oggetti valore del modulo, cosi' i risultati si confrontano con
+ * {@code equals} con quelli di {@link SmsCodec}.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see SmsCodecTest
+ */
+final class LegacySmsParser {
+
+    private LegacySmsParser() {} // No instantiation
+
+    static Conf1Response parseConf1(String response) {
+        if (response == null || !response.startsWith(SmsProtocol.RESP_CONF1)) {
+            return null;
+        }
+
+        String version = null;
+        boolean[] flags = new boolean[5]; // main, rx1, rx2, verify, cmdOnOff
+        List<ZoneEntry> zones = new ArrayList<>();
+
+        try {
+            String content = removeTerminator(response.substring(6));
+            for (String field : content.split("&")) {
+                if (field.isEmpty()) continue;
+
+                if (field.contains(".") && !field.contains("=")) {
+                    if (field.matches("\\d+\\.\\d+")) {
+                        version = field;
+                    } else {
+                        parseFlags(field, flags);
+                    }
+                } else if (field.startsWith("Z") && field.contains("=")) {
+                    ZoneEntry zone = parseZone(field);
+                    if (zone != null) {
+                        zones.add(zone);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            return null;
+        }
+
+        return new Conf1Response(version, flags[0], flags[1], flags[2], flags[3], flags[4], zones);
+    }
+
+    private static void parseFlags(String field, boolean[] flags) {
+        String[] parts = field.split("\\.");
+        if (parts.length >= 1) {
+            flags[0] = "MAIN".equals(parts[0]);
+        }
+        if (parts.length >= 2 && parts[1].length() == 4) {
+            flags[1] = parts[1].charAt(0) == '1';
+            flags[2] = parts[1].charAt(1) == '1';
+            flags[3] = parts[1].charAt(2) == '1';
+            flags[4] = parts[1].charAt(3) == '1';
+        }
+    }
+
+    private static ZoneEntry parseZone(String field) {
+        if (field.length() < 4 || field.charAt(1) < '1' || field.charAt(1) > '8') {
+            return null;
+        }
+        String name = field.substring(3);
+        return new ZoneEntry(field.charAt(1) - '0', name, !SmsProtocol.NOT_ENABLED.equals(name));
+    }
+
+    static List<ScenarioEntry> parseScenarios(String response) {
+        List<ScenarioEntry> scenarios = new ArrayList<>();
+
+        if (response == null ||
+                (!response.startsWith(SmsProtocol.RESP_CONF2) && !response.startsWith(SmsProtocol.RESP_CONF3))) {
+            return scenarios;
+        }
+
+        try {
+            String content = removeTerminator(response.substring(6));
+            for (String field : content.split("&")) {
+                if (field.startsWith("S") && field.contains("=")) {
+                    int number = Integer.parseInt(field.substring(1, 3));
+                    String name = field.substring(4);
+                    scenarios.add(new ScenarioEntry(number, name, !SmsProtocol.NOT_ENABLED.equals(name)));
+                }
+            }
+        } catch (Exception e) {
+            // Risultati parziali
+        }
+
+        return scenarios;
+    }
+
+    static List<UserEntry> parseUsers(String response) {
+        List<UserEntry> users = new ArrayList<>();
+
+        if (response == null ||
+                (!response.startsWith(SmsProtocol.RESP_CONF4) && !response.startsWith(SmsProtocol.RESP_CONF5))) {
+            return users;
+        }
+
+        try {
+            String content = removeTerminator(response.substring(6));
+            for (String field : content.split("&")) {
+                if (!field.contains("=")) continue;
+
+                String prefix = field.substring(0, 3);
+                String name = field.substring(4);
+
+                if (SmsProtocol.USER_JOKER_PREFIX.equals(prefix)) {
+                    users.add(new UserEntry(0, name, true, true));
+                } else if (prefix.matches("R\\d{2}")) {
+                    int slot = Integer.parseInt(prefix.substring(1));
+                    users.add(new UserEntry(slot, name, !SmsProtocol.NOT_ENABLED.equals(name), false));
+                }
+            }
+        } catch (Exception e) {
+            // Risultati parziali
+        }
+
+        return users;
+    }
+
+    static CommandResponse parseResponse(String response) {
+        if (response == null || response.isEmpty()) {
+            return CommandResponse.failure(SmsProtocol.ERROR_TIMEOUT);
+        }
+
+        String content = removeTerminator(response);
+
+        if (content.startsWith(SmsProtocol.RESP_OK)) {
+            String[] parts = content.substring(3).split(":");
+            String status = parts.length >= 1 ? parts[0] : null;
+            String scenario = parts.length >= 2 ? parts[1] : null;
+            return new CommandResponse(true, status, scenario, null, null);
+        } else if (content.startsWith(SmsProtocol.RESP_STATUS)) {
+            return parseStatusDetails(content.substring(7));
+        } else if (content.startsWith(SmsProtocol.RESP_ERROR)) {
+            return CommandResponse.failure(content.substring(4));
+        } else if (content.startsWith("SYS:") || content.startsWith("SYS :")) {
+            return parseRealStatusFormat(content);
+        }
+        return CommandResponse.failure(SmsProtocol.ERROR_UNKNOWN_CMD);
+    }
+
+    private static CommandResponse parseRealStatusFormat(String content) {
+        String status = null;
+        String scenario = null;
+        String zones = null;
+
+        for (String line : content.split("\n")) {
+            line = line.trim();
+
+            if (line.startsWith("SYS:") || line.startsWith("SYS :")) {
+                String value = line.substring(line.indexOf(":") + 1).trim();
+                if ("ON".equalsIgnoreCase(value)) {
+                    status = SmsProtocol.STATUS_ARMED;
+                } else if ("OFF".equalsIgnoreCase(value)) {
+                    status = SmsProtocol.STATUS_DISARMED;
+                } else if (value.toUpperCase().contains("ALARM")) {
+                    status = SmsProtocol.STATUS_ALARM;
+                } else if (value.toUpperCase().contains("TAMPER")) {
+                    status = SmsProtocol.STATUS_TAMPER;
+                } else {
+                    status = SmsProtocol.STATUS_UNKNOWN;
+                }
+            } else if (line.startsWith("SCE:")) {
+                String value = line.substring(4).trim();
+                if (!"---".equals(value) && !value.isEmpty()) {
+                    scenario = value;
+                }
+            } else if (line.startsWith("ZONES:")) {
+                zones = line.substring(6).trim();
+            }
+        }
+
+        return new CommandResponse(true, status, scenario, zones, null);
+    }
+
+    private static CommandResponse parseStatusDetails(String details) {
+        String status = null;
+        String scenario = null;
+        String zones = null;
+
+        for (String part : details.split("&")) {
+            if (part.contains("=")) {
+                String[] kv = part.split("=");
+                if (kv.length == 2) {
+                    if ("SCE".equals(kv[0])) {
+                        scenario = kv[1];
+                    } else if ("ZONES".equals(kv[0])) {
+                        zones = kv[1];
+                    }
+                }
+            } else {
+                status = part;
+            }
+        }
+
+        return new CommandResponse(true, status, scenario, zones, null);
+    }
+
+    private static String removeTerminator(String content) {
+        if (content == null || content.isEmpty()) {
+            return content;
+        }
+        char last = content.charAt(content.length() - 1);
+        if (last == SmsProtocol.SEP_END || last == SmsProtocol.SEP_FIELD) {
+            return content.substring(0, content.length() - 1);
+        }
+        return content;
+    }
+}
@@ -0,0 +1,158 @@
+package it.bhomealarm.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import it.bhomealarm.protocol.ResponseAssembler.Assembled;
+import it.bhomealarm.protocol.ResponseAssembler.State;
+
+/**
+ * Test di {@link ResponseAssembler}: transizioni PROGRESS, COMPLETE e INCOMPLETE
+ * per le risposte CONF divise in piu' SMS.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ */
+public class ResponseAssemblerTest {
+
+    private static final long TIMEOUT = 60_000L;
+    private static final String PANEL = "3331234567";
+    private static final String OTHER = "3479876543";
+
+    private static final String CONF1_PART1 = "CONF1:08.99&MAIN.1111&Z1=Ingresso&Z2=Sogg";
+    private static final String CONF1_PART2 = "iorno&Z3=Cucina&Z4=Camera&Z5=Bagno&Z6=NE&Z7=NE&Z8=NE&";
+
+    private ResponseAssembler assembler;
+
+    @Before
+    public void setUp() {
+        assembler = new ResponseAssembler(TIMEOUT, 1000, 2);
+    }
+
+    @Test
+    public void nonConfigurationResponseIsComplete() {
+        Assembled result = single(assembler.offer(PANEL, "OK:ARMED:Casa#", 0));
+
+        assertEquals(State.COMPLETE, result.getState());
+        assertEquals("OK:ARMED:Casa#", result.getBody());
+        assertEquals(1, result.getFragments());
+        assertEquals(Long.MAX_VALUE, assembler.nextDeadline());
+    }
+
+    @Test
+    public void completeConfigurationInOneSms() {
+        String conf2 = "CONF2:S01=Casa&S02=NE&S03=NE&S04=NE&S05=NE&S06=NE&S07=NE&S08=NE&";
+        Assembled result = single(assembler.offer(PANEL, conf2, 0));
+
+        assertEquals(State.COMPLETE, result.getState());
+        assertEquals(conf2, result.getBody());
+    }
+
+    @Test
+    public void progressThenComplete() {
+        Assembled progress = single(assembler.offer(PANEL, CONF1_PART1, 0));
+
+        assertEquals(State.PROGRESS, progress.getState());
+        assertFalse(progress.isFinal());
+        // Solo i campi completi: il nome della zona 2 e' ancora troncato
+        assertEquals("CONF1:08.99&MAIN.1111&Z1=Ingresso&", progress.getBody());
+        assertEquals(1, SmsCodec.decodeConf1(progress.getBody()).getZones().size());
+        assertEquals(TIMEOUT, assembler.nextDeadline());
+
+        Assembled complete = single(assembler.offer(PANEL, CONF1_PART2, 1_000));
+
+        assertEquals(State.COMPLETE, complete.getState());
+        assertTrue(complete.isFinal());
+        assertEquals(CONF1_PART1 + CONF1_PART2, complete.getBody());
+        assertEquals(2, complete.getFragments());
+        assertEquals(8, SmsCodec.decodeConf1(complete.getBody()).getZones().size());
+        assertEquals(Long.MAX_VALUE, assembler.nextDeadline());
+    }
+
+    @Test
+    public void progressWithoutCompleteFieldsKeepsPrefix() {
+        Assembled progress = single(assembler.offer(PANEL, "CONF1:08.9", 0));
+
+        assertEquals(State.PROGRESS, progress.getState());
+        assertEquals("CONF1:", progress.getBody());
+    }
+
+    @Test
+    public void expiredResponseIsIncomplete() {
+        assembler.offer(PANEL, CONF1_PART1, 0);
+
+        assertTrue(assembler.expire(TIMEOUT - 1).isEmpty());
+
+        Assembled expired = single(assembler.expire(TIMEOUT));
+        assertEquals(State.INCOMPLETE, expired.getState());
+        assertEquals(CONF1_PART1, expired.getBody());
+        assertEquals(Long.MAX_VALUE, assembler.nextDeadline());
+    }
+
+    @Test
+    public void fragmentExtendsDeadline() {
+        assembler.offer(PANEL, CONF1_PART1, 0);
+        assembler.offer(PANEL, "iorno&Z3=Cucina&", 30_000);
+
+        assertEquals(30_000 + TIMEOUT, assembler.nextDeadline());
+        assertTrue(assembler.expire(TIMEOUT).isEmpty());
+    }
+
+    @Test
+    public void newResponseClosesPreviousOne() {
+        assembler.offer(PANEL, CONF1_PART1, 0);
+        List<Assembled> results = assembler.offer(PANEL, "ERR:E03#", 1_000);
+
+        assertEquals(2, results.size());
+        assertEquals(State.INCOMPLETE, results.get(0).getState());
+        assertEquals(CONF1_PART1, results.get(0).getBody());
+        assertEquals(State.COMPLETE, results.get(1).getState());
+        assertEquals("ERR:E03#", results.get(1).getBody());
+    }
+
+    @Test
+    public void sendersAreAssembledSeparately() {
+        assembler.offer(PANEL, CONF1_PART1, 0);
+        Assembled other = single(assembler.offer(OTHER, CONF1_PART2, 0));
+
+        // Senza risposta in corso per OTHER il frammento non ha prefisso: e' un SMS a se'
+        assertEquals(State.COMPLETE, other.getState());
+        assertEquals(State.COMPLETE, single(assembler.offer(PANEL, CONF1_PART2, 0)).getState());
+    }
+
+    @Test
+    public void tooManySendersEvictsOldest() {
+        assembler.offer(PANEL, CONF1_PART1, 0);
+        assembler.offer(OTHER, CONF1_PART1, 1);
+        List<Assembled> results = assembler.offer("12345", CONF1_PART1, 2);
+
+        assertEquals(2, results.size());
+        assertEquals(State.INCOMPLETE, results.get(0).getState());
+        assertEquals(PANEL, results.get(0).getSender());
+        assertEquals(State.PROGRESS, results.get(1).getState());
+    }
+
+    @Test
+    public void tooLongResponseIsIncomplete() {
+        assembler = new ResponseAssembler(TIMEOUT, CONF1_PART1.length() + 10, 2);
+        assembler.offer(PANEL, CONF1_PART1, 0);
+        List<Assembled> results = assembler.offer(PANEL, CONF1_PART2, 1_000);
+
+        assertEquals(2, results.size());
+        assertEquals(State.INCOMPLETE, results.get(0).getState());
+        assertEquals(CONF1_PART1, results.get(0).getBody());
+        assertEquals(State.COMPLETE, results.get(1).getState());
+        assertEquals(CONF1_PART2, results.get(1).getBody());
+    }
+
+    private static Assembled single(List<Assembled> results) {
+        assertEquals(results.toString(), 1, results.size());
+        return results.get(0);
+    }
+}
@@ -0,0 +1,134 @@
+package it.bhomealarm.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test di {@link SmsCodec}: la decodifica a passata singola deve restituire
+ * esattamente gli stessi risultati del parser storico basato su {@code split}
+ * ed espressioni regolari ({@link LegacySmsParser}), anche per messaggi
+ * troncati in qualsiasi punto.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ */
+public class SmsCodecTest {
+
+    /** Risposte reali (vedi {@code docs/SMS_PROTOCOL.md}). */
+    private static final String[] CORPUS = {
+            "CONF1:08.99&MAIN.1111&Z1=Ingresso&Z2=Soggiorno&Z3=Cucina&Z4=Camera&Z5=Bagno&Z6=NE&Z7=NE&Z8=NE&",
+            "CONF1:08.99&USER.0101&Z1=Ingresso&Z2=NE#",
+            "CONF2:S01=Casa&S02=Notte&S03=Fuori&S04=Vacanza&S05=NE&S06=NE&S07=NE&S08=NE&",
+            "CONF3:S09=Perimetrale&S10=Volumetrico&S11=NE&S12=NE&S13=NE&S14=NE&S15=NE&S16=NE#",
+            "CONF4:R01=Mario&R02=Anna&R03=Luca&R04=NE&R05=NE&R06=NE&R07=NE&R08=NE&",
+            "CONF5:R09=Guest&R10=NE&R11=NE&R12=NE&R13=NE&R14=NE&R15=NE&R16=NE&RJO=Admin#",
+            "OK:ARMED:Casa#",
+            "OK:DISARMED#",
+            "STATUS:ARMED&SCE=Casa&ZONES=1234#",
+            "ERR:E03#",
+            "SYS: ON\nSCE:---\nZONES:cont giorno;cont notte;volumetrici\n230V: KO\nBATT: OK",
+            "SYS : OFF\r\nSCE: Casa \r\nZONES: 12 \r\n",
+    };
+
+    /** Casi limite del formato: campi vuoti, separatori ripetuti, valori anomali. */
+    private static final String[] EDGE_CASES = {
+            "CONF1:", "CONF1:&&", "CONF1:.&..&", "CONF1:MAIN..1111&", "CONF1:.MAIN&",
+            "CONF1:8.&MAIN.11110&Z9=X&Z0=X&Za=X&Z1=&Z2=a=b&", "CONF1:1.2.3&MAIN.1111.X&",
+            "CONF2:S1=X&", "CONF2:Sxx=X&S01=A&", "CONF2:S01=&S02&S03=B#", "CONF3:X01=A&S09==&",
+            "CONF4:R1=X&", "CONF4:=abc&R01=A&", "CONF4:RJO=&R01=NE&", "CONF5:Rx1=A&R10=B&R1a=C&",
+            "OK:", "OK::", "OK::Casa", "OK:ARMED::", "OK:ARMED:Casa:X", "STATUS:", "STATUS:&",
+            "STATUS:&ARMED", "STATUS:ARMED&&", "STATUS:ARMED&SCE=a=b&ZONES=", "STATUS:SCE=&ZONES=12==",
+            "ERR:", "SYS:", "SYS : alarm zona 3", "SYS:tamper\nSCE:\nZONES:", "UNKNOWN", "",
+    };
+
+    @Test
+    public void decodeMatchesLegacyParser() {
+        for (String message : messages()) {
+            assertParity(message);
+        }
+    }
+
+    @Test
+    public void decodeMatchesLegacyParserOnTruncatedMessages() {
+        // Ogni prefisso di ogni messaggio: campi, chiavi e terminatori troncati
+        for (String message : messages()) {
+            for (int length = 0; length <= message.length(); length++) {
+                assertParity(message.substring(0, length));
+            }
+        }
+    }
+
+    @Test
+    public void truncatedScenarioFieldKeepsPartialResults() {
+        List<ScenarioEntry> scenarios = SmsCodec.decodeScenarios("CONF2:S01=Casa&S02=Notte&S0");
+
+        assertEquals(Arrays.asList(
+                new ScenarioEntry(1, "Casa", true),
+                new ScenarioEntry(2, "Notte", true)), scenarios);
+        assertFalse(SmsCodec.isComplete("CONF2:S01=Casa&S02=Notte&S0"));
+    }
+
+    @Test
+    public void truncatedUserFieldKeepsPartialResults() {
+        List<UserEntry> users = SmsCodec.decodeUsers("CONF5:R09=Guest&R10=NE&RJ=");
+
+        assertEquals(Arrays.asList(
+                new UserEntry(9, "Guest", true, false),
+                new UserEntry(10, "NE", false, false)), users);
+    }
+
+    @Test
+    public void decodeConf1() {
+        Conf1Response conf1 = SmsCodec.decodeConf1(CORPUS[0]);
+
+        assertEquals("08.99", conf1.getVersion());
+        assertTrue(conf1.isMain());
+        assertTrue(conf1.isRx1() && conf1.isRx2() && conf1.isVerify() && conf1.isCmdOnOff());
+        assertEquals(8, conf1.getZones().size());
+        assertEquals(new ZoneEntry(1, "Ingresso", true), conf1.getZones().get(0));
+        assertEquals(new ZoneEntry(8, "NE", false), conf1.getZones().get(7));
+        assertNull(SmsCodec.decodeConf1("CONF2:S01=Casa&"));
+    }
+
+    @Test
+    public void decodeMultilineStatus() {
+        CommandResponse response = SmsCodec.decodeResponse(CORPUS[10]);
+
+        assertTrue(response.isSuccess());
+        assertEquals(SmsProtocol.STATUS_ARMED, response.getStatus());
+        assertNull(response.getScenario());
+        assertEquals("cont giorno;cont notte;volumetrici", response.getZones());
+    }
+
+    @Test
+    public void isCompleteRequiresLastField() {
+        assertTrue(SmsCodec.isComplete(CORPUS[0]));
+        assertTrue(SmsCodec.isComplete(CORPUS[1]));
+        assertTrue(SmsCodec.isComplete(CORPUS[5]));
+        assertTrue(SmsCodec.isComplete("OK:ARMED"));
+        assertFalse(SmsCodec.isComplete("CONF1:08.99&MAIN.1111&Z1=Ingresso&"));
+        assertFalse(SmsCodec.isComplete("CONF4:R01=Mario&R08=N"));
+        assertFalse(SmsCodec.isComplete("Z8=NE&"));
+    }
+
+    private static List<String> messages() {
+        List<String> messages = new ArrayList<>(Arrays.asList(CORPUS));
+        messages.addAll(Arrays.asList(EDGE_CASES));
+        return messages;
+    }
+
+    private static void assertParity(String message) {
+        assertEquals(message, LegacySmsParser.parseConf1(message), SmsCodec.decodeConf1(message));
+        assertEquals(message, LegacySmsParser.parseScenarios(message), SmsCodec.decodeScenarios(message));
+        assertEquals(message, LegacySmsParser.parseUsers(message), SmsCodec.decodeUsers(message));
+        assertEquals(message, LegacySmsParser.parseResponse(message), SmsCodec.decodeResponse(message));
+    }
+}
@@ -0,0 +1,82 @@
+package it.bhomealarm.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test di {@link ZoneMask}: conversione da/verso le cifre del comando
+ * {@code CUST:} e iterazione sulle zone incluse.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ */
+public class ZoneMaskTest {
+
+    @Test
+    public void digitsRoundTripForEveryMask() {
+        for (int bits = 0; bits < 1 << SmsProtocol.ZONE_COUNT; bits++) {
+            ZoneMask mask = ZoneMask.of(bits);
+            assertSame(mask, ZoneMask.parseDigits(mask.toDigits()));
+            assertEquals(bits, mask.getBits());
+            assertEquals(Integer.bitCount(bits), mask.toDigits().length());
+        }
+    }
+
+    @Test
+    public void parseDigitsIgnoresOrderAndDuplicates() {
+        assertEquals("134", ZoneMask.parseDigits("431").toDigits());
+        assertEquals("134", ZoneMask.parseDigits("1134").toDigits());
+        assertSame(ZoneMask.EMPTY, ZoneMask.parseDigits(""));
+        assertSame(ZoneMask.EMPTY, ZoneMask.parseDigits(null));
+        assertEquals("12345678", ZoneMask.ALL.toDigits());
+        assertEquals("CUST:134", SmsCodec.encodeArmCustom(ZoneMask.parseDigits("134")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseDigitsRejectsZoneZero() {
+        ZoneMask.parseDigits("109");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseDigitsRejectsNonDigits() {
+        ZoneMask.parseDigits("1,3");
+    }
+
+    @Test
+    public void iterationVisitsIncludedZonesInOrder() {
+        for (int bits = 0; bits < 1 << SmsProtocol.ZONE_COUNT; bits++) {
+            ZoneMask mask = ZoneMask.of(bits);
+            StringBuilder visited = new StringBuilder();
+            for (int zone = mask.first(); zone != 0; zone = mask.next(zone)) {
+                assertTrue(mask.contains(zone));
+                visited.append(zone);
+            }
+            assertEquals(mask.toDigits(), visited.toString());
+        }
+    }
+
+    @Test
+    public void iterationBounds() {
+        assertEquals(0, ZoneMask.EMPTY.first());
+        assertEquals(0, ZoneMask.ALL.next(SmsProtocol.ZONE_COUNT));
+        assertEquals(1, ZoneMask.ALL.next(0));
+        assertEquals(8, ZoneMask.parseDigits("8").first());
+    }
+
+    @Test
+    public void updatesIgnoreInvalidZones() {
+        ZoneMask mask = ZoneMask.parseDigits("13");
+
+        assertEquals("123", mask.toggle(2).toDigits());
+        assertEquals("3", mask.with(1, false).toDigits());
+        assertEquals("24", mask.diff(ZoneMask.parseDigits("1234")).toDigits());
+        assertSame(mask, mask.toggle(0));
+        assertSame(mask, mask.with(9, true));
+        assertFalse(mask.contains(9));
+        assertEquals(ZoneMask.of(0x105), ZoneMask.parseDigits("13"));
+    }
+}
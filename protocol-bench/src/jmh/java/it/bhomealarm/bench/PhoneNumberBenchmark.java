@@ -0,0 +1,51 @@
+package it.bhomealarm.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import it.bhomealarm.protocol.CompiledPhoneMatcher;
+import it.bhomealarm.protocol.PhoneNumberUtils;
+
+/**
+ * Benchmark della normalizzazione e del confronto dei numeri telefonici.
+ * <p>
+ * {@link #matchSenders(Blackhole)} riproduce il controllo eseguito da
+ * {@code SmsReceiver} per ogni SMS in arrivo: il mittente viene confrontato
+ * con il numero dell'allarme salvato nelle preferenze.
+ * {@link #compiledMatchSenders(Blackhole)} esegue lo stesso controllo con il
+ * {@link CompiledPhoneMatcher} usato oggi dal receiver.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see SmsCorpus
+ */
+@State(Scope.Thread)
+public class PhoneNumberBenchmark {
+
+    private String alarmPhone = SmsCorpus.ALARM_PHONE;
+    private String[] senders = SmsCorpus.SENDERS;
+    private CompiledPhoneMatcher matcher = CompiledPhoneMatcher.compile(SmsCorpus.ALARM_PHONE);
+
+    @Benchmark
+    public void normalizeSenders(Blackhole bh) {
+        for (String sender : senders) {
+            bh.consume(PhoneNumberUtils.normalize(sender));
+        }
+    }
+
+    @Benchmark
+    public void matchSenders(Blackhole bh) {
+        for (String sender : senders) {
+            bh.consume(PhoneNumberUtils.matches(sender, alarmPhone));
+        }
+    }
+
+    @Benchmark
+    public void compiledMatchSenders(Blackhole bh) {
+        for (String sender : senders) {
+            bh.consume(matcher.matches(sender));
+        }
+    }
+}
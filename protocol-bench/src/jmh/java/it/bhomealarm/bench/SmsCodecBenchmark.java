@@ -0,0 +1,116 @@
+package it.bhomealarm.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import it.bhomealarm.protocol.CommandResponse;
+import it.bhomealarm.protocol.Conf1Response;
+import it.bhomealarm.protocol.ResponseType;
+import it.bhomealarm.protocol.SmsCodec;
+import it.bhomealarm.protocol.ZoneMask;
+
+/**
+ * Benchmark del codec del protocollo SMS.
+ * <p>
+ * Un metodo per ciascun formato (CONF1-5, OK, STATUS, ERR, SYS multilinea)
+ * piu' {@link #dispatchCorpus(Blackhole)}, che riproduce il percorso di un
+ * SMS in arrivo (identificazione del tipo e decodifica dell'intero corpus),
+ * e {@link #encodeCommands(Blackhole)} per i comandi in uscita.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ * @see SmsCorpus
+ */
+@State(Scope.Thread)
+public class SmsCodecBenchmark {
+
+    // Campi non final: impediscono al JIT di trattare i messaggi come costanti
+    private String conf1 = SmsCorpus.CONF1;
+    private String conf2 = SmsCorpus.CONF2;
+    private String conf3 = SmsCorpus.CONF3;
+    private String conf4 = SmsCorpus.CONF4;
+    private String conf5 = SmsCorpus.CONF5;
+    private String okArmed = SmsCorpus.OK_ARMED;
+    private String okDisarmed = SmsCorpus.OK_DISARMED;
+    private String status = SmsCorpus.STATUS;
+    private String error = SmsCorpus.ERROR;
+    private String sysMultiline = SmsCorpus.SYS_MULTILINE;
+    private String[] corpus = SmsCorpus.ALL;
+    private int scenario = 5;
+    private int userSlot = 3;
+    private int permissions = 0b1010;
+    private ZoneMask customZones = ZoneMask.parseDigits("1256");
+
+    @Benchmark
+    public Conf1Response decodeConf1() {
+        return SmsCodec.decodeConf1(conf1);
+    }
+
+    @Benchmark
+    public void decodeScenarios(Blackhole bh) {
+        bh.consume(SmsCodec.decodeScenarios(conf2));
+        bh.consume(SmsCodec.decodeScenarios(conf3));
+    }
+
+    @Benchmark
+    public void decodeUsers(Blackhole bh) {
+        bh.consume(SmsCodec.decodeUsers(conf4));
+        bh.consume(SmsCodec.decodeUsers(conf5));
+    }
+
+    @Benchmark
+    public void decodeOk(Blackhole bh) {
+        bh.consume(SmsCodec.decodeResponse(okArmed));
+        bh.consume(SmsCodec.decodeResponse(okDisarmed));
+    }
+
+    @Benchmark
+    public CommandResponse decodeStatus() {
+        return SmsCodec.decodeResponse(status);
+    }
+
+    @Benchmark
+    public CommandResponse decodeError() {
+        return SmsCodec.decodeResponse(error);
+    }
+
+    @Benchmark
+    public CommandResponse decodeSysMultiline() {
+        return SmsCodec.decodeResponse(sysMultiline);
+    }
+
+    @Benchmark
+    public void dispatchCorpus(Blackhole bh) {
+        for (String sms : corpus) {
+            ResponseType type = SmsCodec.identify(sms);
+            if (type == null) {
+                continue;
+            }
+            switch (type) {
+                case CONF1:
+                    bh.consume(SmsCodec.decodeConf1(sms));
+                    break;
+                case CONF2:
+                case CONF3:
+                    bh.consume(SmsCodec.decodeScenarios(sms));
+                    break;
+                case CONF4:
+                case CONF5:
+                    bh.consume(SmsCodec.decodeUsers(sms));
+                    break;
+                default:
+                    bh.consume(SmsCodec.decodeResponse(sms));
+                    break;
+            }
+        }
+    }
+
+    @Benchmark
+    public void encodeCommands(Blackhole bh) {
+        bh.consume(SmsCodec.encodeArmScenario(scenario));
+        bh.consume(SmsCodec.encodeArmCustom(customZones));
+        bh.consume(SmsCodec.encodeSetUser(userSlot, permissions));
+    }
+}
@@ -0,0 +1,62 @@
+package it.bhomealarm.bench;
+
+/**
+ * Corpus di risposte SMS realistiche usato dai benchmark.
+ * <p>
+ * I messaggi sono presi dagli esempi di {@code docs/SMS_PROTOCOL.md} e dal
+ * formato di stato multilinea effettivamente inviato dalla centrale.
+ *
+ * @author BHomeAlarm Team
+ * @version 1.0
+ */
+final class SmsCorpus {
+
+    private SmsCorpus() {} // No instantiation
+
+    static final String CONF1 =
+            "CONF1:08.99&MAIN.1111&Z1=Ingresso&Z2=Soggiorno&Z3=Cucina&Z4=Camera&Z5=Bagno&Z6=NE&Z7=NE&Z8=NE&";
+
+    static final String CONF2 =
+            "CONF2:S01=Casa&S02=Notte&S03=Fuori&S04=Vacanza&S05=NE&S06=NE&S07=NE&S08=NE&";
+
+    static final String CONF3 =
+            "CONF3:S09=Perimetrale&S10=Volumetrico&S11=NE&S12=NE&S13=NE&S14=NE&S15=NE&S16=NE#";
+
+    static final String CONF4 =
+            "CONF4:R01=Mario&R02=Anna&R03=Luca&R04=NE&R05=NE&R06=NE&R07=NE&R08=NE&";
+
+    static final String CONF5 =
+            "CONF5:R09=Guest&R10=NE&R11=NE&R12=NE&R13=NE&R14=NE&R15=NE&R16=NE&RJO=Admin#";
+
+    static final String OK_ARMED = "OK:ARMED:Casa#";
+
+    static final String OK_DISARMED = "OK:DISARMED#";
+
+    static final String STATUS = "STATUS:ARMED&SCE=Casa&ZONES=1234#";
+
+    static final String ERROR = "ERR:E03#";
+
+    static final String SYS_MULTILINE =
+            "SYS: ON\nSCE:---\nZONES:cont giorno;cont notte;volumetrici\n230V: KO\nBATT: OK";
+
+    /** Tutte le risposte, nell'ordine tipico di una sessione (configurazione + comandi). */
+    static final String[] ALL = {
+            CONF1, CONF2, CONF3, CONF4, CONF5,
+            OK_ARMED, STATUS, OK_DISARMED, ERROR, SYS_MULTILINE
+    };
+
+    /** Numero dell'allarme come salvato nelle preferenze (normalizzato). */
+    static final String ALARM_PHONE = "3331234567";
+
+    /** Mittenti come li riporta il sistema, nei formati piu' comuni. */
+    static final String[] SENDERS = {
+            "+393331234567",
+            "00393331234567",
+            "333 123 4567",
+            "(333) 123-4567",
+            "3331234567",
+            "+393479876543",
+            "+4915112345678",
+            "12345"
+    };
+}